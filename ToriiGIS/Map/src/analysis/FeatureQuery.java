@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package analysis;
+
+import database.DatabaseTable;
+import io.Wkb;
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import layer.Attributes;
+import layer.Circle;
+import layer.Geometry;
+import layer.Layer;
+import layer.Line;
+import layer.Surface;
+
+/**
+ * This class describes an analysis of the features of a layer or of a
+ * table of a spatial database (PostGIS).
+ * <br>A query consists of conditions, which all have to be fulfilled, and
+ * an optional buffer of the remaining features. Its results are either a
+ * new layer or statistics of the areas and lengths. For a database table the
+ * query is compiled to SQL, e.g. ST_Intersects, ST_Buffer and ST_Area, and
+ * only the results are transferred. Otherwise the query is executed on the
+ * features of the layer in parallel.
+ * <br>Queries are immutable, every function returns a new query:
+ * <pre>
+ * FeatureQuery.of(table).where("type", "=", "forest").intersects(district).statistics()
+ * </pre>
+ * @author Christoph
+ */
+public final class FeatureQuery {
+    
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final List<String> OPERATORS = Arrays.asList("=", "<>", "<", "<=", ">", ">=");
+    
+    private final Layer layer;
+    private final DatabaseTable table;
+    private final List<Condition> conditions;
+    private final double bufferDistance;
+
+    private FeatureQuery(Layer layer, DatabaseTable table, List<Condition> conditions, double bufferDistance) {
+        this.layer = layer;
+        this.table = table;
+        this.conditions = conditions;
+        this.bufferDistance = bufferDistance;
+    }
+    
+    /**
+     * This function creates a query of all features of a layer.
+     * @param layer the Layer-object
+     * @return the new FeatureQuery-object, which is executed locally
+     */
+    public static FeatureQuery of(Layer layer) {
+        return new FeatureQuery(layer, null, Collections.emptyList(), 0.0);
+    }
+    
+    /**
+     * This function creates a query of all features of a database table.
+     * @param table the DatabaseTable-object
+     * @return the new FeatureQuery-object, which is executed by the database
+     */
+    public static FeatureQuery of(DatabaseTable table) {
+        return new FeatureQuery(null, table, Collections.emptyList(), 0.0);
+    }
+    
+    /**
+     * This function adds a comparison of an attribute with a value.
+     * Both are compared as numbers, if the value and the attribute of the
+     * feature are numbers, otherwise as text. The columns of a database table
+     * are compared the same way, whatever their type is.
+     * @param attrName the name of the attribute, i.e. of the column
+     * @param operator one of =, &lt;&gt;, &lt;, &lt;=, &gt;, &gt;=
+     * @param value the value to compare with
+     * @return the new FeatureQuery-object
+     */
+    public FeatureQuery where(String attrName, String operator, String value) {
+        if(!IDENTIFIER.matcher(attrName).matches()) {
+            throw new IllegalArgumentException("invalid attribute name: " + attrName);
+        }
+        if(!OPERATORS.contains(operator)) {
+            throw new IllegalArgumentException("invalid operator: " + operator);
+        }
+        return this.with(new AttributeCondition(attrName, operator, value));
+    }
+    
+    /**
+     * This function adds the condition, that the features have to intersect a geometry.
+     * @param geom the Geometry-object in the coordinates of the layer
+     * @return the new FeatureQuery-object
+     */
+    public FeatureQuery intersects(Geometry geom) {
+        return this.with(new IntersectsCondition(geom));
+    }
+    
+    /**
+     * This function replaces the geometries of the resulting features by
+     * their buffers. The conditions are tested against the original geometries.
+     * @param distance the distance of the buffer
+     * @return the new FeatureQuery-object
+     */
+    public FeatureQuery buffer(double distance) {
+        return new FeatureQuery(this.layer, this.table, this.conditions, distance);
+    }
+    
+    /**
+     * This function returns the information, whether the query is executed by the database.
+     * @return TRUE for a database table, FALSE for a layer
+     */
+    public boolean isPushedDown() {
+        return this.table != null;
+    }
+    
+    /**
+     * This function executes the query and creates a layer of the resulting
+     * features with their attributes. Rows of a database are streamed into the layer.
+     * @return the future layer
+     */
+    public CompletableFuture<Layer> toLayer() {
+        if(this.table != null) {
+            ArrayList<Object> parameters = new ArrayList<>();
+            String sql = this.selectStatement(parameters);
+            return this.table.getDatabase().queryLayer(sql, parameters.toArray()).thenApply((result) -> {
+                result.setCrs("EPSG:" + this.table.getSrid());
+                return result;
+            });
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            int[] features = this.matchingFeatures();
+            List<ArrayList<Geometry>> geometries = Arrays.stream(features).parallel()
+                                                         .mapToObj(this::resultGeometries)
+                                                         .collect(Collectors.toList());
+            List<String[]> rows = new ArrayList<>(features.length);
+            for(int i : features) {
+                String[] attrs = this.layer.getFeatureAttrs(i);
+                rows.add(attrs == null ? new String[0] : attrs);
+            }
+            Attributes attributes = this.layer.getAttributeTable();
+            String[] attrNames = attributes == null || attributes.getAttrNames() == null
+                                 ? new String[0] : attributes.getAttrNames();
+            return Overlay.createLayer(geometries, rows, attrNames, this.layer.getCrs());
+        });
+    }
+    
+    /**
+     * This function executes the query and calculates the statistics of the
+     * areas and lengths of the resulting features. A database returns only
+     * the statistics.
+     * @return the future FeatureStatistics-object
+     */
+    public CompletableFuture<FeatureStatistics> statistics() {
+        if(this.table != null) {
+            ArrayList<Object> parameters = new ArrayList<>();
+            String sql = "SELECT count(*), sum(ST_Area(g)), min(ST_Area(g)), max(ST_Area(g)),"
+                         + " sum(ST_Length(g)), min(ST_Length(g)), max(ST_Length(g))"
+                         + " FROM (SELECT " + this.geometryExpression(parameters) + " AS g FROM "
+                         + this.table.getTable() + this.whereClause(parameters) + ") AS features";
+            return this.table.getDatabase().submit((connection) -> {
+                try(PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for(int i = 0; i < parameters.size(); i++) {
+                        statement.setObject(i + 1, parameters.get(i));
+                    }
+                    try(ResultSet result = statement.executeQuery()) {
+                        result.next();
+                        long count = result.getLong(1);
+                        double[] values = new double[6];
+                        for(int i = 0; i < values.length; i++) {
+                            values[i] = result.getDouble(i + 2);
+                            if(result.wasNull()) {
+                                values[i] = i % 3 == 0 ? 0.0 : Double.NaN;
+                            }
+                        }
+                        return new FeatureStatistics(count, values[0], values[1], values[2],
+                                                     values[3], values[4], values[5]);
+                    }
+                }
+            });
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            int[] features = this.matchingFeatures();
+            double[][] measures = Arrays.stream(features).parallel().mapToObj((i) -> {
+                double area = 0.0;
+                double length = 0.0;
+                for(Geometry geom : this.resultGeometries(i)) {
+                    if(geom instanceof Surface) {
+                        area += ((Surface) geom).getArea();
+                    } else if(geom instanceof Line) {
+                        length += ((Line) geom).getLength();
+                    }
+                }
+                return new double[] {area, length};
+            }).toArray(double[][]::new);
+            
+            double sumOfAreas = 0.0;
+            double minArea = Double.NaN;
+            double maxArea = Double.NaN;
+            double sumOfLengths = 0.0;
+            double minLength = Double.NaN;
+            double maxLength = Double.NaN;
+            for(double[] measure : measures) {
+                sumOfAreas += measure[0];
+                minArea = Double.isNaN(minArea) ? measure[0] : Math.min(minArea, measure[0]);
+                maxArea = Double.isNaN(maxArea) ? measure[0] : Math.max(maxArea, measure[0]);
+                sumOfLengths += measure[1];
+                minLength = Double.isNaN(minLength) ? measure[1] : Math.min(minLength, measure[1]);
+                maxLength = Double.isNaN(maxLength) ? measure[1] : Math.max(maxLength, measure[1]);
+            }
+            return new FeatureStatistics(measures.length, sumOfAreas, minArea, maxArea,
+                                         sumOfLengths, minLength, maxLength);
+        });
+    }
+    
+    /**
+     * This function returns the SELECT-statement, which creates the layer of
+     * the results in the database, e.g. for logging.
+     * @return the SQL-statement with question marks for the parameters, null for a layer
+     */
+    public String toSql() {
+        if(this.table == null) {
+            return null;
+        }
+        return this.selectStatement(new ArrayList<>());
+    }
+    
+    private String selectStatement(List<Object> parameters) {
+        return "SELECT ST_AsBinary(" + this.geometryExpression(parameters) + "), "
+               + this.table.getColumnList() + " FROM " + this.table.getTable() + this.whereClause(parameters);
+    }
+    
+    private FeatureQuery with(Condition condition) {
+        ArrayList<Condition> extended = new ArrayList<>(this.conditions);
+        extended.add(condition);
+        return new FeatureQuery(this.layer, this.table, Collections.unmodifiableList(extended), this.bufferDistance);
+    }
+    
+    private String geometryExpression(List<Object> parameters) {
+        if(this.bufferDistance == 0.0) {
+            return this.table.getGeometryColumn();
+        }
+        parameters.add(this.bufferDistance);
+        return "ST_Buffer(" + this.table.getGeometryColumn() + ", ?)";
+    }
+    
+    private String whereClause(List<Object> parameters) {
+        if(this.conditions.isEmpty()) {
+            return "";
+        }
+        return " WHERE " + this.conditions.stream().map((condition) -> condition.toSql(this.table, parameters))
+                                                   .collect(Collectors.joining(" AND "));
+    }
+    
+    /**
+     * This function tests all features of the layer in parallel.
+     * @return the indices of the matching features in ascending order
+     */
+    private int[] matchingFeatures() {
+        Attributes attributes = this.layer.getAttributeTable();
+        List<Condition> prepared = this.conditions.stream().map((condition) -> condition.prepare(attributes))
+                                                  .collect(Collectors.toList());
+        return IntStream.range(0, this.layer.getCountOfFeatures()).parallel().filter((i) -> {
+            for(Condition condition : prepared) {
+                if(!condition.test(this.layer, i)) {
+                    return false;
+                }
+            }
+            return true;
+        }).toArray();
+    }
+    
+    /**
+     * This function returns the geometries of a resulting feature of the layer.
+     * @param featureIndex the index of the feature
+     * @return the original geometries or the polygons of their buffer
+     */
+    private ArrayList<Geometry> resultGeometries(int featureIndex) {
+        ArrayList<Geometry> geometries = this.layer.getFeatureGeometries(featureIndex);
+        if(this.bufferDistance == 0.0) {
+            return geometries;
+        }
+        List<Area> areas = geometries.stream().map((geom) -> Overlay.bufferArea(geom, this.bufferDistance))
+                                     .collect(Collectors.toList());
+        return new ArrayList<>(Overlay.toPolygons(Overlay.cascadedUnion(areas)));
+    }
+    
+    /**
+     * This class describes a condition of a query.
+     */
+    private abstract static class Condition {
+        
+        /**
+         * This function appends the condition to an SQL-statement.
+         * @param table the queried table
+         * @param parameters the list for the values of the question marks
+         * @return the SQL-expression
+         */
+        abstract String toSql(DatabaseTable table, List<Object> parameters);
+        
+        /**
+         * This function prepares the condition for the features of a layer.
+         * @param attributes the attribute table of the layer, may be null
+         * @return the prepared condition
+         */
+        Condition prepare(Attributes attributes) {
+            return this;
+        }
+        
+        /**
+         * This function tests a feature of a layer.
+         * @param layer the Layer-object
+         * @param featureIndex the index of the feature
+         * @return TRUE if the feature fulfills the condition
+         */
+        abstract boolean test(Layer layer, int featureIndex);
+        
+    }
+    
+    /**
+     * This class compares an attribute with a value.
+     */
+    private static final class AttributeCondition extends Condition {
+        
+        /**
+         * The regular expression (POSIX) for texts, which are numbers for
+         * Double.valueOf() and for the database.
+         */
+        private static final String NUMBER_PATTERN
+                = "^\\s*([-+]?([0-9]+\\.?[0-9]*|\\.[0-9]+)([eE][-+]?[0-9]+)?|NaN|[-+]?Infinity)\\s*$";
+        
+        private final String attrName;
+        private final String operator;
+        private final String value;
+        private final Double number;
+        private final int column;
+        
+        private AttributeCondition(String attrName, String operator, String value) {
+            this(attrName, operator, value, -1);
+        }
+        
+        private AttributeCondition(String attrName, String operator, String value, int column) {
+            this.attrName = attrName;
+            this.operator = operator;
+            this.value = value;
+            this.number = parseNumber(value);
+            this.column = column;
+        }
+        
+        @Override
+        String toSql(DatabaseTable table, List<Object> parameters) {
+            //the column is read as text like the attributes of a layer, i.e. independent of its type
+            String text = "CAST(" + table.quoteIdentifier(this.attrName) + " AS text)";
+            String textComparison = text + " COLLATE \"C\" " + this.operator + " ?";
+            if(this.number == null) {
+                parameters.add(this.value);
+                return textComparison;
+            }
+            parameters.add(NUMBER_PATTERN);
+            parameters.add(this.number);
+            parameters.add(this.value);
+            return "(CASE WHEN " + text + " ~ ? THEN CAST(" + text + " AS double precision) " + this.operator + " ?"
+                   + " ELSE " + textComparison + " END)";
+        }
+        
+        @Override
+        Condition prepare(Attributes attributes) {
+            return new AttributeCondition(this.attrName, this.operator, this.value,
+                                          attributes == null ? -1 : attributes.indexOf(this.attrName));
+        }
+        
+        @Override
+        boolean test(Layer layer, int featureIndex) {
+            String[] attrs = layer.getFeatureAttrs(featureIndex);
+            if(this.column < 0 || attrs == null || this.column >= attrs.length || attrs[this.column] == null) {
+                //like NULL in SQL, a missing value fulfills no comparison
+                return false;
+            }
+            int comparison;
+            Double attrNumber = this.number == null ? null : parseNumber(attrs[this.column]);
+            if(attrNumber != null) {
+                comparison = Double.compare(attrNumber, this.number);
+            } else {
+                comparison = attrs[this.column].compareTo(this.value);
+            }
+            switch(this.operator) {
+                case "=":
+                    return comparison == 0;
+                case "<>":
+                    return comparison != 0;
+                case "<":
+                    return comparison < 0;
+                case "<=":
+                    return comparison <= 0;
+                case ">":
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+        
+        private static Double parseNumber(String value) {
+            try {
+                return value == null ? null : Double.valueOf(value.trim());
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+        
+    }
+    
+    /**
+     * This class tests, whether a feature intersects a geometry.
+     */
+    private static final class IntersectsCondition extends Condition {
+        
+        private final Geometry geom;
+        private final FeatureShape shape;
+        private final Rectangle2D envelope;
+        
+        private IntersectsCondition(Geometry geom) {
+            this.geom = geom;
+            this.shape = FeatureShape.of(Collections.singletonList(geom));
+            this.envelope = geom.getEnvelope();
+        }
+        
+        @Override
+        String toSql(DatabaseTable table, List<Object> parameters) {
+            Geometry simple = this.geom instanceof Circle ? ((Circle) this.geom).toPolygon(FeatureShape.CIRCLE_SEGMENTS) : this.geom;
+            parameters.add(Wkb.toBytes(simple, false));
+            return "ST_Intersects(" + table.getGeometryColumn() + ", ST_GeomFromWKB(?, " + table.getSrid() + "))";
+        }
+        
+        @Override
+        boolean test(Layer layer, int featureIndex) {
+            ArrayList<Geometry> geometries = layer.getFeatureGeometries(featureIndex);
+            boolean candidate = false;
+            for(Geometry part : geometries) {
+                candidate |= FeatureShape.envelopeDistance(part.getEnvelope(), this.envelope) == 0.0;
+            }
+            return candidate && FeatureShape.of(geometries).intersects(this.shape);
+        }
+        
+    }
+    
+}
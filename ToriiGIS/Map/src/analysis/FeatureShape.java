@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package analysis;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import layer.Circle;
+import layer.Geometry;
+import layer.Point;
+import layer.Polygon;
+import layer.VertexCursor;
+import layer.VertexSequence;
+
+/**
+ * This class holds the coordinates of a feature in a form, which is suitable
+ * for geometric predicates.
+ * <br>Every geometry of the feature becomes a component with a flat array of
+ * x and y coordinates. Circles are approximated by polygons, Z-coordinates
+ * are ignored. All predicates treat the boundary of a polygon as part of it.
+ * @author Christoph
+ */
+final class FeatureShape {
+    
+    static final int PUNTAL = 0;
+    static final int LINEAL = 1;
+    static final int AREAL = 2;
+    
+    /**
+     * The tolerance for the comparison of distances with zero.
+     */
+    static final double EPSILON = 1e-9;
+    
+    /**
+     * The number of vertices used to approximate circles.
+     */
+    static final int CIRCLE_SEGMENTS = 64;
+    
+    private final ArrayList<Component> components;
+    private final Rectangle2D envelope;
+    
+    private FeatureShape(ArrayList<Component> components) {
+        this.components = components;
+        Rectangle2D bounds = null;
+        for(Component c : components) {
+            if(bounds == null) {
+                bounds = (Rectangle2D) c.envelope.clone();
+            } else {
+                bounds.add(c.envelope);
+            }
+        }
+        this.envelope = bounds;
+    }
+    
+    /**
+     * This function creates the shape of a feature.
+     * @param geometries the geometries of the feature
+     * @return the new FeatureShape-object
+     */
+    static FeatureShape of(List<Geometry> geometries) {
+        ArrayList<Component> components = new ArrayList<>(geometries.size());
+        VertexCursor cursor = new VertexCursor();
+        for(Geometry geom : geometries) {
+            if(geom instanceof Circle) {
+                geom = ((Circle) geom).toPolygon(CIRCLE_SEGMENTS);
+            }
+            if(geom instanceof Point) {
+                Point p = (Point) geom;
+                components.add(new Component(PUNTAL, new double[] {p.getXCoord(), p.getYCoord()}));
+            } else if(geom instanceof VertexSequence) {
+                VertexSequence vertices = (VertexSequence) geom;
+                int count = vertices.getCountOfVertices();
+                if(count == 0) {
+                    continue;
+                }
+                double[] xy = new double[2 * count];
+                cursor.reset(vertices);
+                while(cursor.next()) {
+                    xy[2 * cursor.getIndex()] = cursor.getX();
+                    xy[2 * cursor.getIndex() + 1] = cursor.getY();
+                }
+                int dimension = geom instanceof Polygon && count > 2 ? AREAL : count > 1 ? LINEAL : PUNTAL;
+                components.add(new Component(dimension, dimension == PUNTAL ? new double[] {xy[0], xy[1]} : xy));
+            }
+        }
+        return new FeatureShape(components);
+    }
+    
+    /**
+     * This function returns the envelope of all components.
+     * @return the envelope or null, if the feature is empty
+     */
+    Rectangle2D getEnvelope() {
+        return this.envelope;
+    }
+    
+    /**
+     * This function returns the information, wether the feature has no coordinates.
+     * @return TRUE if the feature is empty, otherwise FALSE
+     */
+    boolean isEmpty() {
+        return this.components.isEmpty();
+    }
+    
+    /**
+     * This function returns the components of the feature.
+     * @return a List of all components
+     */
+    List<Component> getComponents() {
+        return this.components;
+    }
+    
+    /**
+     * This function checks, wether both features share at least one point.
+     * @param other the other feature
+     * @return TRUE if the features intersect, otherwise FALSE
+     */
+    boolean intersects(FeatureShape other) {
+        return this.isWithinDistance(other, 0.0);
+    }
+    
+    /**
+     * This function checks, wether the distance between both features
+     * is not greater than the given distance.
+     * @param other the other feature
+     * @param distance the maximum distance
+     * @return TRUE if the features are within the distance, otherwise FALSE
+     */
+    boolean isWithinDistance(FeatureShape other, double distance) {
+        if(this.isEmpty() || other.isEmpty() || envelopeDistance(this.envelope, other.envelope) > distance + EPSILON) {
+            return false;
+        }
+        for(Component a : this.components) {
+            for(Component b : other.components) {
+                if(a.isWithinDistance(b, distance)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * This function checks, wether every point of the other feature lies
+     * inside or on the boundary of this feature. Every component of the other
+     * feature has to be covered by one component of this feature.
+     * @param other the other feature
+     * @return TRUE if this feature contains the other one, otherwise FALSE
+     */
+    boolean contains(FeatureShape other) {
+        if(this.isEmpty() || other.isEmpty() || !containsEnvelope(this.envelope, other.envelope)) {
+            return false;
+        }
+        for(Component b : other.components) {
+            boolean covered = false;
+            for(Component a : this.components) {
+                if(a.covers(b)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if(!covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * This function returns the distance between two rectangles.
+     * @param a the first rectangle
+     * @param b the second rectangle
+     * @return the distance, 0 if the rectangles intersect
+     */
+    static double envelopeDistance(Rectangle2D a, Rectangle2D b) {
+        double dx = Math.max(0.0, Math.max(a.getMinX() - b.getMaxX(), b.getMinX() - a.getMaxX()));
+        double dy = Math.max(0.0, Math.max(a.getMinY() - b.getMaxY(), b.getMinY() - a.getMaxY()));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+    
+    /**
+     * This function checks, wether the first rectangle contains the second one.
+     * In contrast to Rectangle2D.contains, rectangles without width or height
+     * are supported.
+     * @param a the outer rectangle
+     * @param b the inner rectangle
+     * @return TRUE if a contains b, otherwise FALSE
+     */
+    static boolean containsEnvelope(Rectangle2D a, Rectangle2D b) {
+        return b.getMinX() >= a.getMinX() - EPSILON && b.getMaxX() <= a.getMaxX() + EPSILON
+                && b.getMinY() >= a.getMinY() - EPSILON && b.getMaxY() <= a.getMaxY() + EPSILON;
+    }
+    
+    /**
+     * This class represents a single point, line or polygon.
+     * The segments of a polygon include the closing edge, a point has
+     * one segment with the length zero.
+     */
+    static final class Component {
+        
+        final int dimension;
+        final double[] xy;
+        final int countOfVertices;
+        final Rectangle2D envelope;
+        
+        Component(int dimension, double[] xy) {
+            this.dimension = dimension;
+            this.xy = xy;
+            this.countOfVertices = xy.length / 2;
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for(int i = 0; i < xy.length; i += 2) {
+                minX = Math.min(minX, xy[i]);
+                maxX = Math.max(maxX, xy[i]);
+                minY = Math.min(minY, xy[i + 1]);
+                maxY = Math.max(maxY, xy[i + 1]);
+            }
+            this.envelope = new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+        }
+        
+        int countOfSegments() {
+            switch(this.dimension) {
+                case AREAL: return this.countOfVertices;
+                case LINEAL: return this.countOfVertices - 1;
+                default: return 1;
+            }
+        }
+        
+        double x1(int segment) {
+            return this.xy[2 * segment];
+        }
+        
+        double y1(int segment) {
+            return this.xy[2 * segment + 1];
+        }
+        
+        double x2(int segment) {
+            return this.xy[2 * ((segment + 1) % this.countOfVertices)];
+        }
+        
+        double y2(int segment) {
+            return this.xy[2 * ((segment + 1) % this.countOfVertices) + 1];
+        }
+        
+        /**
+         * This function checks, wether the component is within the given
+         * distance of another component. If one component lies inside a
+         * polygon, its first vertice is inside too, otherwise the boundaries
+         * have to cross.
+         * @param other the other component
+         * @param distance the maximum distance
+         * @return TRUE if the components are within the distance, otherwise FALSE
+         */
+        boolean isWithinDistance(Component other, double distance) {
+            if(envelopeDistance(this.envelope, other.envelope) > distance + EPSILON) {
+                return false;
+            }
+            if(this.dimension == AREAL && this.locate(other.xy[0], other.xy[1]) >= 0) {
+                return true;
+            }
+            if(other.dimension == AREAL && other.locate(this.xy[0], this.xy[1]) >= 0) {
+                return true;
+            }
+            for(int i = 0; i < this.countOfSegments(); i++) {
+                for(int j = 0; j < other.countOfSegments(); j++) {
+                    if(segmentDistance(this, i, other, j) <= distance + EPSILON) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * This function checks, wether every point of another component lies
+         * inside or on this component. For lines, the vertices and the middle
+         * of every segment of the other component are tested.
+         * @param other the other component
+         * @return TRUE if this component covers the other one, otherwise FALSE
+         */
+        boolean covers(Component other) {
+            if(other.dimension > this.dimension || !containsEnvelope(this.envelope, other.envelope)) {
+                return false;
+            }
+            for(int j = 0; j < other.countOfSegments(); j++) {
+                double mx = 0.5 * (other.x1(j) + other.x2(j));
+                double my = 0.5 * (other.y1(j) + other.y2(j));
+                if(!this.coversPoint(other.x1(j), other.y1(j)) || !this.coversPoint(mx, my)) {
+                    return false;
+                }
+                if(this.dimension == AREAL) {
+                    for(int i = 0; i < this.countOfSegments(); i++) {
+                        if(crossesProperly(this, i, other, j)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+        
+        private boolean coversPoint(double x, double y) {
+            if(this.dimension == AREAL) {
+                return this.locate(x, y) >= 0;
+            }
+            for(int i = 0; i < this.countOfSegments(); i++) {
+                if(Line2D.ptSegDist(this.x1(i), this.y1(i), this.x2(i), this.y2(i), x, y) <= EPSILON) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * This function locates a point relative to a polygon by the
+         * crossing number algorithm.
+         * @param x the x-coordinate of the point
+         * @param y the y-coordinate of the point
+         * @return 1 if the point is inside, 0 if it is on the boundary, -1 if it is outside
+         */
+        int locate(double x, double y) {
+            boolean inside = false;
+            for(int i = 0; i < this.countOfVertices; i++) {
+                double x1 = this.x1(i);
+                double y1 = this.y1(i);
+                double x2 = this.x2(i);
+                double y2 = this.y2(i);
+                if(Line2D.ptSegDist(x1, y1, x2, y2, x, y) <= EPSILON) {
+                    return 0;
+                }
+                if((y1 > y) != (y2 > y) && x < x1 + (y - y1) * (x2 - x1) / (y2 - y1)) {
+                    inside = !inside;
+                }
+            }
+            return inside ? 1 : -1;
+        }
+        
+    }
+    
+    /**
+     * This function returns the distance between two segments.
+     * @param a the first component
+     * @param i the index of the segment of the first component
+     * @param b the second component
+     * @param j the index of the segment of the second component
+     * @return the distance, 0 if the segments intersect
+     */
+    static double segmentDistance(Component a, int i, Component b, int j) {
+        double ax1 = a.x1(i);
+        double ay1 = a.y1(i);
+        double ax2 = a.x2(i);
+        double ay2 = a.y2(i);
+        double bx1 = b.x1(j);
+        double by1 = b.y1(j);
+        double bx2 = b.x2(j);
+        double by2 = b.y2(j);
+        if(Line2D.linesIntersect(ax1, ay1, ax2, ay2, bx1, by1, bx2, by2)) {
+            return 0.0;
+        }
+        return Math.min(Math.min(Line2D.ptSegDist(ax1, ay1, ax2, ay2, bx1, by1),
+                                 Line2D.ptSegDist(ax1, ay1, ax2, ay2, bx2, by2)),
+                        Math.min(Line2D.ptSegDist(bx1, by1, bx2, by2, ax1, ay1),
+                                 Line2D.ptSegDist(bx1, by1, bx2, by2, ax2, ay2)));
+    }
+    
+    /**
+     * This function checks, wether two segments cross in a single point,
+     * which is no end point of them.
+     * @param a the first component
+     * @param i the index of the segment of the first component
+     * @param b the second component
+     * @param j the index of the segment of the second component
+     * @return TRUE if the segments cross, otherwise FALSE
+     */
+    static boolean crossesProperly(Component a, int i, Component b, int j) {
+        int a1 = Line2D.relativeCCW(a.x1(i), a.y1(i), a.x2(i), a.y2(i), b.x1(j), b.y1(j));
+        int a2 = Line2D.relativeCCW(a.x1(i), a.y1(i), a.x2(i), a.y2(i), b.x2(j), b.y2(j));
+        int b1 = Line2D.relativeCCW(b.x1(j), b.y1(j), b.x2(j), b.y2(j), a.x1(i), a.y1(i));
+        int b2 = Line2D.relativeCCW(b.x1(j), b.y1(j), b.x2(j), b.y2(j), a.x2(i), a.y2(i));
+        return a1 * a2 < 0 && b1 * b2 < 0
+                && Line2D.ptSegDist(a.x1(i), a.y1(i), a.x2(i), a.y2(i), b.x1(j), b.y1(j)) > EPSILON
+                && Line2D.ptSegDist(a.x1(i), a.y1(i), a.x2(i), a.y2(i), b.x2(j), b.y2(j)) > EPSILON
+                && Line2D.ptSegDist(b.x1(j), b.y1(j), b.x2(j), b.y2(j), a.x1(i), a.y1(i)) > EPSILON
+                && Line2D.ptSegDist(b.x1(j), b.y1(j), b.x2(j), b.y2(j), a.x2(i), a.y2(i)) > EPSILON;
+    }
+    
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package analysis;
+
+/**
+ * This class contains the number of features and the sums and ranges of
+ * their areas and lengths. Like in PostGIS, the area is calculated for
+ * polygons and circles and the length for lines, i.e. the length of a
+ * polygon is zero.
+ * @author Christoph
+ */
+public final class FeatureStatistics {
+    
+    private final long count;
+    private final double sumOfAreas;
+    private final double minArea;
+    private final double maxArea;
+    private final double sumOfLengths;
+    private final double minLength;
+    private final double maxLength;
+
+    /**
+     * The constructor creates new statistics.
+     * @param count the number of features
+     * @param sumOfAreas the sum of the areas
+     * @param minArea the smallest area, NaN if there are no features
+     * @param maxArea the largest area, NaN if there are no features
+     * @param sumOfLengths the sum of the lengths
+     * @param minLength the smallest length, NaN if there are no features
+     * @param maxLength the largest length, NaN if there are no features
+     */
+    public FeatureStatistics(long count, double sumOfAreas, double minArea, double maxArea,
+                             double sumOfLengths, double minLength, double maxLength) {
+        this.count = count;
+        this.sumOfAreas = sumOfAreas;
+        this.minArea = minArea;
+        this.maxArea = maxArea;
+        this.sumOfLengths = sumOfLengths;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+    }
+    
+    /**
+     * This function returns the number of features.
+     * @return the number of features
+     */
+    public long getCount() {
+        return this.count;
+    }
+    
+    /**
+     * This function returns the sum of the areas of all features.
+     * @return the sum in square map units
+     */
+    public double getSumOfAreas() {
+        return this.sumOfAreas;
+    }
+    
+    /**
+     * This function returns the smallest area of a feature.
+     * @return the area in square map units, NaN if there are no features
+     */
+    public double getMinArea() {
+        return this.minArea;
+    }
+    
+    /**
+     * This function returns the largest area of a feature.
+     * @return the area in square map units, NaN if there are no features
+     */
+    public double getMaxArea() {
+        return this.maxArea;
+    }
+    
+    /**
+     * This function returns the mean area of the features.
+     * @return the area in square map units, NaN if there are no features
+     */
+    public double getMeanArea() {
+        return this.count == 0 ? Double.NaN : this.sumOfAreas / this.count;
+    }
+    
+    /**
+     * This function returns the sum of the lengths of all features.
+     * @return the sum in map units
+     */
+    public double getSumOfLengths() {
+        return this.sumOfLengths;
+    }
+    
+    /**
+     * This function returns the smallest length of a feature.
+     * @return the length in map units, NaN if there are no features
+     */
+    public double getMinLength() {
+        return this.minLength;
+    }
+    
+    /**
+     * This function returns the largest length of a feature.
+     * @return the length in map units, NaN if there are no features
+     */
+    public double getMaxLength() {
+        return this.maxLength;
+    }
+    
+    /**
+     * This function returns the mean length of the features.
+     * @return the length in map units, NaN if there are no features
+     */
+    public double getMeanLength() {
+        return this.count == 0 ? Double.NaN : this.sumOfLengths / this.count;
+    }
+    
+    @Override
+    public String toString() {
+        return "FeatureStatistics{count=" + this.count + ", sumOfAreas=" + this.sumOfAreas
+                + ", minArea=" + this.minArea + ", maxArea=" + this.maxArea
+                + ", sumOfLengths=" + this.sumOfLengths + ", minLength=" + this.minLength
+                + ", maxLength=" + this.maxLength + "}";
+    }
+    
+}
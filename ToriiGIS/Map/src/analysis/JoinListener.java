@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package analysis;
+
+import java.util.EventListener;
+
+/**
+ * This interface has to be implemented by all classes, which want to
+ * receive the results of a spatial join.
+ * @author Christoph
+ */
+public interface JoinListener extends EventListener {
+    
+    /**
+     * This function is called for every pair of features, which fulfil the
+     * predicate of the join. Pairs are reported in the order of the left
+     * features, one at a time.
+     * @param leftFeature the zero-based index of the feature of the left layer
+     * @param rightFeature the zero-based index of the feature of the right layer
+     * @param attrs the attribute values of the left feature followed by those of the right feature
+     */
+    public void featuresJoined(int leftFeature, int rightFeature, String[] attrs);
+    
+}
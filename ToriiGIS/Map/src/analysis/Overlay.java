@@ -0,0 +1,700 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package analysis;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import layer.Attributes;
+import layer.Circle;
+import layer.CoordinateDimension;
+import layer.Geometry;
+import layer.Layer;
+import layer.Line;
+import layer.PackedCoordinates;
+import layer.Point;
+import layer.Polygon;
+import layer.VertexCursor;
+import layer.VertexSequence;
+
+/**
+ * This class contains the overlay operations for polygons and circles:
+ * union, intersection, difference and buffer.
+ * <br>The boolean operations are calculated by java.awt.geom.Area. The
+ * resulting rings are converted back into packed coordinates. Because a
+ * polygon of a layer has no holes, every hole is connected with its outer
+ * ring by a bridge, i.e. two coincident edges. The area of such a polygon
+ * is correct and it is drawn and hit like a polygon with a hole.
+ * <br>The operations on whole layers (union of many geometries, dissolve and
+ * clip) process the features in parallel.
+ * @author Christoph
+ */
+public final class Overlay {
+    
+    private static final Logger LOG = Logger.getLogger(Overlay.class.getName());
+    
+    /**
+     * The maximum distance between curves (e.g. of circles and buffers)
+     * and their approximation, relative to the size of the result.
+     */
+    private static final double FLATNESS = 1.0 - Math.cos(Math.PI / FeatureShape.CIRCLE_SEGMENTS);
+    
+    /**
+     * The sine of the smallest angle between two edges, which is not
+     * treated as a straight line.
+     */
+    private static final double COLLINEARITY = 1e-9;
+
+    private Overlay() {
+    }
+    
+    /**
+     * This function returns the union of two geometries.
+     * @param a the first polygon or circle
+     * @param b the second polygon or circle
+     * @return an ArrayList of the resulting polygons
+     */
+    public static ArrayList<Polygon> union(Geometry a, Geometry b) {
+        Area area = toArea(a);
+        area.add(toArea(b));
+        return toPolygons(area);
+    }
+    
+    /**
+     * This function returns the intersection of two geometries.
+     * @param a the first polygon or circle
+     * @param b the second polygon or circle
+     * @return an ArrayList of the resulting polygons, empty if the geometries do not overlap
+     */
+    public static ArrayList<Polygon> intersection(Geometry a, Geometry b) {
+        Area area = toArea(a);
+        area.intersect(toArea(b));
+        return toPolygons(area);
+    }
+    
+    /**
+     * This function returns the part of the first geometry, which is not
+     * covered by the second one.
+     * @param a the polygon or circle to subtract from
+     * @param b the polygon or circle to subtract
+     * @return an ArrayList of the resulting polygons
+     */
+    public static ArrayList<Polygon> difference(Geometry a, Geometry b) {
+        Area area = toArea(a);
+        area.subtract(toArea(b));
+        return toPolygons(area);
+    }
+    
+    /**
+     * This function returns the area within a distance around a geometry.
+     * A negative distance shrinks polygons and circles. The corners of the
+     * buffer are rounded.
+     * @param geom the Geometry-object
+     * @param distance the distance of the buffer
+     * @return an ArrayList of the resulting polygons
+     */
+    public static ArrayList<Polygon> buffer(Geometry geom, double distance) {
+        return toPolygons(bufferArea(geom, distance));
+    }
+    
+    /**
+     * This function returns the union of many polygons and circles
+     * (cascaded union). The geometries are sorted spatially and merged
+     * pairwise in parallel, level by level, i.e. mostly neighbouring
+     * geometries of similar size are merged.
+     * @param geometries the polygons and circles
+     * @return an ArrayList of the resulting polygons
+     */
+    public static ArrayList<Polygon> union(List<? extends Geometry> geometries) {
+        List<Area> areas = geometries.parallelStream().map(Overlay::toArea).collect(Collectors.toList());
+        return toPolygons(cascadedUnion(areas));
+    }
+    
+    /**
+     * This function merges all features with the same attribute value.
+     * Features, which are no polygons or circles, will be skipped.
+     * @param layer the Layer-object
+     * @param attrName the name of the attribute, or null to merge all features
+     * @return a new layer with one feature for every attribute value
+     */
+    public static Layer dissolve(Layer layer, String attrName) {
+        Attributes attributes = layer.getAttributeTable();
+        int column = attrName == null || attributes == null ? -1 : attributes.indexOf(attrName);
+        if(attrName != null && column < 0) {
+            throw new IllegalArgumentException("the layer has no attribute " + attrName);
+        }
+        
+        AtomicInteger skipped = new AtomicInteger();
+        List<Area> areas = IntStream.range(0, layer.getCountOfFeatures()).parallel().mapToObj((i) -> {
+            Area area = new Area();
+            for(Geometry geom : layer.getFeatureGeometries(i)) {
+                if(isAreal(geom)) {
+                    area.add(toArea(geom));
+                } else {
+                    skipped.incrementAndGet();
+                }
+            }
+            return area;
+        }).collect(Collectors.toList());
+        if(skipped.get() > 0) {
+            LOG.warning(skipped.get() + " geometries are no polygons and were not dissolved");
+        }
+        
+        LinkedHashMap<String, List<Area>> groups = new LinkedHashMap<>();
+        for(int i = 0; i < areas.size(); i++) {
+            String value = column < 0 ? null : attributes.getAttr(i, column);
+            groups.computeIfAbsent(value, (key) -> new ArrayList<>()).add(areas.get(i));
+        }
+        
+        ArrayList<ArrayList<Geometry>> features = new ArrayList<>();
+        ArrayList<String[]> rows = new ArrayList<>();
+        groups.forEach((value, group) -> {
+            features.add(new ArrayList<>(toPolygons(cascadedUnion(group))));
+            rows.add(column < 0 ? new String[0] : new String[] {value});
+        });
+        return createLayer(features, rows, column < 0 ? new String[0] : new String[] {attrName}, layer.getCrs());
+    }
+    
+    /**
+     * This function cuts all features of a layer at the boundary of a polygon
+     * or circle and keeps the parts inside. The attributes of the features
+     * will be copied, features completely outside will be dropped.
+     * @param layer the Layer-object
+     * @param clip the polygon or circle
+     * @return a new layer with the clipped features
+     */
+    public static Layer clip(Layer layer, Geometry clip) {
+        Area clipArea = toArea(clip);
+        Rectangle2D clipBounds = clipArea.getBounds2D();
+        
+        List<ArrayList<Geometry>> clipped = IntStream.range(0, layer.getCountOfFeatures()).parallel().mapToObj((i) -> {
+            ArrayList<Geometry> parts = new ArrayList<>();
+            for(Geometry geom : layer.getFeatureGeometries(i)) {
+                if(FeatureShape.envelopeDistance(geom.getEnvelope(), clipBounds) > 0.0) {
+                    continue;
+                }
+                if(isAreal(geom)) {
+                    Area area = toArea(geom);
+                    area.intersect(clipArea);
+                    parts.addAll(toPolygons(area));
+                } else if(geom instanceof Point) {
+                    Point p = (Point) geom;
+                    if(clipArea.contains(p.getXCoord(), p.getYCoord())) {
+                        parts.add(geom);
+                    }
+                } else if(geom instanceof Line) {
+                    parts.addAll(clipLine((Line) geom, clipArea));
+                }
+            }
+            return parts;
+        }).collect(Collectors.toList());
+        
+        ArrayList<ArrayList<Geometry>> features = new ArrayList<>();
+        ArrayList<String[]> rows = new ArrayList<>();
+        for(int i = 0; i < clipped.size(); i++) {
+            if(!clipped.get(i).isEmpty()) {
+                features.add(clipped.get(i));
+                String[] attrs = layer.getFeatureAttrs(i);
+                rows.add(attrs == null ? new String[0] : attrs);
+            }
+        }
+        Attributes attributes = layer.getAttributeTable();
+        String[] attrNames = attributes == null || attributes.getAttrNames() == null ? new String[0] : attributes.getAttrNames();
+        return createLayer(features, rows, attrNames, layer.getCrs());
+    }
+    
+    /**
+     * This function returns the information, wether a geometry encloses an area.
+     * @param geom the Geometry-object
+     * @return TRUE for polygons and circles, otherwise FALSE
+     */
+    static boolean isAreal(Geometry geom) {
+        return geom instanceof Polygon || geom instanceof Circle;
+    }
+    
+    /**
+     * This function converts a polygon or circle into an Area-object.
+     * @param geom the polygon or circle
+     * @return the new Area-object
+     * @throws IllegalArgumentException if the geometry encloses no area
+     */
+    static Area toArea(Geometry geom) {
+        if(geom instanceof Circle) {
+            Circle circle = (Circle) geom;
+            double r = circle.getRadius();
+            return new Area(new Ellipse2D.Double(circle.getCentrePoint().getXCoord() - r,
+                                                 circle.getCentrePoint().getYCoord() - r, 2 * r, 2 * r));
+        }
+        if(geom instanceof Polygon) {
+            return new Area(toPath((Polygon) geom, true));
+        }
+        throw new IllegalArgumentException("only polygons and circles can be used for overlay operations");
+    }
+    
+    /**
+     * This function returns the buffer of a geometry as Area-object.
+     * @param geom the Geometry-object
+     * @param distance the distance of the buffer, negative values shrink polygons and circles
+     * @return the new Area-object
+     */
+    static Area bufferArea(Geometry geom, double distance) {
+        if(geom instanceof Circle) {
+            Circle circle = (Circle) geom;
+            return toArea(new Circle(circle.getCentrePoint(), Math.max(0.0, circle.getRadius() + distance)));
+        }
+        if(distance <= 0.0 && !isAreal(geom)) {
+            return new Area();
+        }
+        BasicStroke stroke = new BasicStroke((float) (2 * Math.abs(distance)), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        Shape outline;
+        if(geom instanceof Point) {
+            Point p = (Point) geom;
+            outline = new Ellipse2D.Double(p.getXCoord() - distance, p.getYCoord() - distance, 2 * distance, 2 * distance);
+        } else if(geom instanceof VertexSequence) {
+            outline = stroke.createStrokedShape(toPath((VertexSequence) geom, isAreal(geom)));
+        } else {
+            throw new IllegalArgumentException("unsupported geometry " + geom.getClass().getSimpleName());
+        }
+        if(!isAreal(geom)) {
+            return new Area(outline);
+        }
+        Area area = toArea(geom);
+        if(distance > 0.0) {
+            area.add(new Area(outline));
+        } else {
+            area.subtract(new Area(outline));
+        }
+        return area;
+    }
+    
+    /**
+     * This function creates a path from the vertices of a line or polygon.
+     * @param vertices the vertices
+     * @param closed TRUE if the path should be closed
+     * @return the new Path2D-object
+     */
+    static Path2D toPath(VertexSequence vertices, boolean closed) {
+        Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, vertices.getCountOfVertices() + 1);
+        VertexCursor cursor = new VertexCursor(vertices);
+        while(cursor.next()) {
+            if(cursor.getIndex() == 0) {
+                path.moveTo(cursor.getX(), cursor.getY());
+            } else {
+                path.lineTo(cursor.getX(), cursor.getY());
+            }
+        }
+        if(closed && vertices.getCountOfVertices() > 0) {
+            path.closePath();
+        }
+        return path;
+    }
+    
+    /**
+     * This function merges many areas pairwise in parallel until one area is left.
+     * The areas are sorted by the strips of their centres before, so that
+     * neighbours are merged first.
+     * @param areas the areas to merge
+     * @return the union of all areas
+     */
+    static Area cascadedUnion(List<Area> areas) {
+        List<Area> level = areas.stream().filter((area) -> !area.isEmpty()).collect(Collectors.toList());
+        if(level.isEmpty()) {
+            return new Area();
+        }
+        int countOfStrips = (int) Math.ceil(Math.sqrt(level.size()));
+        int stripSize = (level.size() + countOfStrips - 1) / countOfStrips;
+        level.sort(Comparator.comparingDouble((area) -> area.getBounds2D().getCenterX()));
+        for(int s = 0; s < level.size(); s += stripSize) {
+            List<Area> strip = level.subList(s, Math.min(level.size(), s + stripSize));
+            //serpentine order keeps the last area of a strip near the first one of the next strip
+            Comparator<Area> byY = Comparator.comparingDouble((area) -> area.getBounds2D().getCenterY());
+            strip.sort((s / stripSize) % 2 == 0 ? byY : byY.reversed());
+        }
+        
+        while(level.size() > 1) {
+            List<Area> current = level;
+            level = IntStream.range(0, (current.size() + 1) / 2).parallel().mapToObj((k) -> {
+                Area merged = current.get(2 * k);
+                if(2 * k + 1 < current.size()) {
+                    merged.add(current.get(2 * k + 1));
+                }
+                return merged;
+            }).collect(Collectors.toList());
+        }
+        return level.get(0);
+    }
+    
+    /**
+     * This function converts an area into polygons. Curves are approximated
+     * by line segments and holes are connected with their outer rings.
+     * @param area the Area-object
+     * @return an ArrayList of polygons, one for every outer ring
+     */
+    static ArrayList<Polygon> toPolygons(Area area) {
+        ArrayList<Polygon> polygons = new ArrayList<>();
+        if(area.isEmpty()) {
+            return polygons;
+        }
+        Rectangle2D bounds = area.getBounds2D();
+        double flatness = Math.max(FLATNESS * 0.5 * Math.max(bounds.getWidth(), bounds.getHeight()), Double.MIN_NORMAL);
+        
+        //java.awt.geom.Area returns outer rings clockwise and holes counter-clockwise
+        ArrayList<double[]> outers = new ArrayList<>();
+        ArrayList<double[]> holes = new ArrayList<>();
+        for(double[] ring : readRings(area.getPathIterator(null, flatness))) {
+            ring = removeCollinearVertices(ring);
+            if(ring.length < 6) {
+                continue;
+            }
+            if(signedArea(ring) < 0) {
+                outers.add(ring);
+            } else {
+                holes.add(ring);
+            }
+        }
+        
+        //every hole belongs to the smallest outer ring containing it
+        ArrayList<ArrayList<double[]>> holesOfOuters = new ArrayList<>();
+        outers.forEach((outer) -> {
+            holesOfOuters.add(new ArrayList<>());
+        });
+        for(double[] hole : holes) {
+            int best = -1;
+            for(int k = 0; k < outers.size(); k++) {
+                if(containsPoint(outers.get(k), hole[0], hole[1])
+                        && (best < 0 || -signedArea(outers.get(k)) < -signedArea(outers.get(best)))) {
+                    best = k;
+                }
+            }
+            if(best >= 0) {
+                holesOfOuters.get(best).add(hole);
+            } else {
+                LOG.warning("a hole outside of all outer rings was dropped");
+            }
+        }
+        
+        for(int k = 0; k < outers.size(); k++) {
+            double[] ring = outers.get(k);
+            ArrayList<double[]> ringHoles = holesOfOuters.get(k);
+            //the bridges run to the left, i.e. no hole must be left of a hole, which is bridged later
+            ringHoles.sort(Comparator.comparingDouble((hole) -> hole[2 * leftmost(hole)]));
+            for(double[] hole : ringHoles) {
+                ring = bridge(ring, hole);
+            }
+            assert Topology.findCrossings(ring).isEmpty() : "the bridges of the holes intersect the ring";
+            polygons.add(new Polygon(new PackedCoordinates(CoordinateDimension.XY, ring, 0, ring.length / 2)));
+        }
+        return polygons;
+    }
+    
+    /**
+     * This function reads the rings of a flattened path.
+     * The closing vertice of every ring will be dropped.
+     * @param it the PathIterator-object, which contains only straight segments
+     * @return an ArrayList of rings with interleaved x- and y-coordinates
+     */
+    private static ArrayList<double[]> readRings(PathIterator it) {
+        ArrayList<double[]> rings = new ArrayList<>();
+        double[] coords = new double[6];
+        double[] ring = new double[64];
+        int length = 0;
+        for(; !it.isDone(); it.next()) {
+            int type = it.currentSegment(coords);
+            if(type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_CLOSE) {
+                if(length >= 4 && ring[0] == ring[length - 2] && ring[1] == ring[length - 1]) {
+                    length -= 2;
+                }
+                if(length > 0) {
+                    rings.add(Arrays.copyOf(ring, length));
+                }
+                length = 0;
+            }
+            if(type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+                if(length + 2 > ring.length) {
+                    ring = Arrays.copyOf(ring, 2 * ring.length);
+                }
+                ring[length++] = coords[0];
+                ring[length++] = coords[1];
+            }
+        }
+        if(length > 0) {
+            rings.add(Arrays.copyOf(ring, length));
+        }
+        return rings;
+    }
+    
+    /**
+     * This function removes vertices, which lie on the straight line between
+     * their neighbours, e.g. the former corners of merged polygons.
+     * @param ring the interleaved x- and y-coordinates of a ring
+     * @return the ring without collinear and duplicate vertices
+     */
+    private static double[] removeCollinearVertices(double[] ring) {
+        int n = ring.length / 2;
+        double[] result = new double[ring.length];
+        int count = 0;
+        for(int i = 0; i < n; i++) {
+            double px = count > 0 ? result[2 * count - 2] : ring[2 * ((i + n - 1) % n)];
+            double py = count > 0 ? result[2 * count - 1] : ring[2 * ((i + n - 1) % n) + 1];
+            int next = (i + 1) % n;
+            double ux = ring[2 * i] - px;
+            double uy = ring[2 * i + 1] - py;
+            double vx = ring[2 * next] - ring[2 * i];
+            double vy = ring[2 * next + 1] - ring[2 * i + 1];
+            double cross = ux * vy - uy * vx;
+            if(Math.abs(cross) > COLLINEARITY * Math.hypot(ux, uy) * Math.hypot(vx, vy)) {
+                result[2 * count] = ring[2 * i];
+                result[2 * count + 1] = ring[2 * i + 1];
+                count++;
+            }
+        }
+        return Arrays.copyOf(result, 2 * count);
+    }
+    
+    /**
+     * This function connects a hole with its outer ring. The bridge starts at
+     * the leftmost vertice of the hole and ends at a vertice of the outer ring,
+     * which is visible from there (see the hole elimination of the ear
+     * clipping triangulation by Eberly).
+     * @param outer the outer ring
+     * @param hole the hole with opposite orientation
+     * @return the combined ring
+     */
+    private static double[] bridge(double[] outer, double[] hole) {
+        int n = outer.length / 2;
+        int h = leftmost(hole);
+        double hx = hole[2 * h];
+        double hy = hole[2 * h + 1];
+        
+        //find the nearest edge left of the hole on a horizontal ray
+        double qx = Double.NEGATIVE_INFINITY;
+        int m = -1;
+        for(int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            double ax = outer[2 * i];
+            double ay = outer[2 * i + 1];
+            double bx = outer[2 * j];
+            double by = outer[2 * j + 1];
+            if(ay != by && hy >= Math.min(ay, by) && hy <= Math.max(ay, by)) {
+                double x = ax + (hy - ay) * (bx - ax) / (by - ay);
+                if(x <= hx && x > qx) {
+                    qx = x;
+                    m = ax < bx ? i : j;
+                }
+            }
+        }
+        if(m < 0) {
+            LOG.warning("a hole could not be connected with its outer ring and was dropped");
+            return outer;
+        }
+        
+        //a vertice inside the triangle between the hole, the ray and m may hide m
+        double mx = outer[2 * m];
+        double my = outer[2 * m + 1];
+        double minTan = Double.POSITIVE_INFINITY;
+        if(qx != hx) {
+            for(int i = 0; i < n; i++) {
+                double px = outer[2 * i];
+                double py = outer[2 * i + 1];
+                if(i != m && px >= mx && px <= hx && px != hx
+                        && inTriangle(hy < my ? hx : qx, hy, mx, my, hy < my ? qx : hx, hy, px, py)) {
+                    double tan = Math.abs(hy - py) / (hx - px);
+                    if(tan < minTan || (tan == minTan && px > outer[2 * m])) {
+                        minTan = tan;
+                        m = i;
+                    }
+                }
+            }
+        }
+        
+        int k = hole.length / 2;
+        double[] ring = new double[outer.length + hole.length + 4];
+        System.arraycopy(outer, 0, ring, 0, 2 * (m + 1));
+        int pos = 2 * (m + 1);
+        for(int i = 0; i <= k; i++) {
+            int v = (h + i) % k;
+            ring[pos++] = hole[2 * v];
+            ring[pos++] = hole[2 * v + 1];
+        }
+        System.arraycopy(outer, 2 * m, ring, pos, outer.length - 2 * m);
+        return ring;
+    }
+    
+    private static int leftmost(double[] ring) {
+        int left = 0;
+        for(int i = 1; i < ring.length / 2; i++) {
+            if(ring[2 * i] < ring[2 * left] || (ring[2 * i] == ring[2 * left] && ring[2 * i + 1] < ring[2 * left + 1])) {
+                left = i;
+            }
+        }
+        return left;
+    }
+    
+    private static boolean inTriangle(double ax, double ay, double bx, double by, double cx, double cy,
+                                      double px, double py) {
+        return (cx - px) * (ay - py) - (ax - px) * (cy - py) >= 0
+                && (ax - px) * (by - py) - (bx - px) * (ay - py) >= 0
+                && (bx - px) * (cy - py) - (cx - px) * (by - py) >= 0;
+    }
+    
+    /**
+     * This function calculates the signed area of a ring.
+     * @param ring the interleaved x- and y-coordinates
+     * @return the area, negative for clockwise rings
+     */
+    static double signedArea(double[] ring) {
+        int n = ring.length / 2;
+        double area = 0.0;
+        for(int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            area += ring[2 * i] * ring[2 * j + 1] - ring[2 * j] * ring[2 * i + 1];
+        }
+        return 0.5 * area;
+    }
+    
+    private static boolean containsPoint(double[] ring, double x, double y) {
+        return new FeatureShape.Component(FeatureShape.AREAL, ring).locate(x, y) >= 0;
+    }
+    
+    /**
+     * This function cuts a line at the boundary of an area and returns the parts inside.
+     * @param line the Line-object
+     * @param area the clipping area
+     * @return an ArrayList of lines
+     */
+    private static ArrayList<Line> clipLine(Line line, Area area) {
+        Rectangle2D bounds = area.getBounds2D();
+        ArrayList<double[]> rings = readRings(area.getPathIterator(null,
+                Math.max(FLATNESS * 0.5 * Math.max(bounds.getWidth(), bounds.getHeight()), Double.MIN_NORMAL)));
+        ArrayList<Line> parts = new ArrayList<>();
+        PackedCoordinates current = null;
+        ArrayList<Double> cuts = new ArrayList<>();
+        for(int i = 0; i + 1 < line.getCountOfVertices(); i++) {
+            double x1 = line.getVerticeX(i);
+            double y1 = line.getVerticeY(i);
+            double z1 = line.getVerticeZ(i);
+            double x2 = line.getVerticeX(i + 1);
+            double y2 = line.getVerticeY(i + 1);
+            double z2 = line.getVerticeZ(i + 1);
+            
+            //collect the positions of all intersections along the segment
+            cuts.clear();
+            cuts.add(0.0);
+            for(double[] ring : rings) {
+                int n = ring.length / 2;
+                for(int e = 0; e < n; e++) {
+                    int f = (e + 1) % n;
+                    double t = intersectionParameter(x1, y1, x2, y2, ring[2 * e], ring[2 * e + 1], ring[2 * f], ring[2 * f + 1]);
+                    if(t > 0.0 && t < 1.0) {
+                        cuts.add(t);
+                    }
+                }
+            }
+            cuts.add(1.0);
+            cuts.sort(null);
+            
+            for(int c = 0; c + 1 < cuts.size(); c++) {
+                double t1 = cuts.get(c);
+                double t2 = cuts.get(c + 1);
+                if(t2 - t1 <= FeatureShape.EPSILON) {
+                    continue;
+                }
+                double tm = 0.5 * (t1 + t2);
+                if(area.contains(x1 + tm * (x2 - x1), y1 + tm * (y2 - y1))) {
+                    if(current == null) {
+                        current = new PackedCoordinates();
+                        current.add(x1 + t1 * (x2 - x1), y1 + t1 * (y2 - y1), z1 + t1 * (z2 - z1));
+                    }
+                    current.add(x1 + t2 * (x2 - x1), y1 + t2 * (y2 - y1), z1 + t2 * (z2 - z1));
+                } else if(current != null) {
+                    parts.add(new Line(current));
+                    current = null;
+                }
+            }
+        }
+        if(current != null) {
+            parts.add(new Line(current));
+        }
+        return parts;
+    }
+    
+    /**
+     * This function returns the position of the intersection of two segments
+     * along the first segment.
+     * @return the position between 0 and 1, or NaN if the segments do not cross
+     */
+    private static double intersectionParameter(double x1, double y1, double x2, double y2,
+                                                double x3, double y3, double x4, double y4) {
+        if(!Line2D.linesIntersect(x1, y1, x2, y2, x3, y3, x4, y4)) {
+            return Double.NaN;
+        }
+        double denominator = (x2 - x1) * (y4 - y3) - (y2 - y1) * (x4 - x3);
+        if(denominator == 0.0) {
+            return Double.NaN;
+        }
+        return ((x3 - x1) * (y4 - y3) - (y3 - y1) * (x4 - x3)) / denominator;
+    }
+    
+    /**
+     * This function creates a layer from features and their attributes.
+     * Features with one geometry become simple geometries, all others
+     * multi-geometries. The attribute rows are ordered like the features
+     * of the new layer.
+     * @param features the geometries of every feature
+     * @param rows the attribute values of every feature
+     * @param attrNames the names of the attributes
+     * @param crs the coordinate reference system
+     * @return the new Layer-object
+     */
+    static Layer createLayer(List<ArrayList<Geometry>> features, List<String[]> rows,
+                             String[] attrNames, String crs) {
+        ArrayList<Geometry> geometries = new ArrayList<>();
+        ArrayList<ArrayList<Geometry>> multiGeometries = new ArrayList<>();
+        ArrayList<String[]> geometryRows = new ArrayList<>();
+        ArrayList<String[]> multiGeometryRows = new ArrayList<>();
+        for(int i = 0; i < features.size(); i++) {
+            if(features.get(i).size() == 1) {
+                geometries.add(features.get(i).get(0));
+                geometryRows.add(rows.get(i));
+            } else if(!features.get(i).isEmpty()) {
+                multiGeometries.add(features.get(i));
+                multiGeometryRows.add(rows.get(i));
+            }
+        }
+        geometryRows.addAll(multiGeometryRows);
+        ArrayList<Attributes> attributeList = new ArrayList<>();
+        attributeList.add(new Attributes(attrNames, geometryRows));
+        Layer result = new Layer(geometries, attributeList, multiGeometries);
+        result.setCrs(crs);
+        return result;
+    }
+    
+}
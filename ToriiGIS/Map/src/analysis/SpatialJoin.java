@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package analysis;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import layer.Attributes;
+import layer.Layer;
+import layer.RTree;
+
+/**
+ * This class joins the features of two layers by a spatial predicate.
+ * <br>The features of the right layer are stored in an R-tree. The features
+ * of the left layer are split into chunks, which are tested in parallel
+ * against the candidates from the tree. The results are passed to a
+ * JoinListener chunk by chunk, i.e. the listener gets the first pairs
+ * before the whole join is finished.
+ * @author Christoph
+ */
+public class SpatialJoin {
+    
+    /**
+     * The predicates, which can be used for a join.
+     * CONTAINS and WITHIN include the boundary of polygons.
+     */
+    public static enum Predicate {
+        INTERSECTS,
+        CONTAINS,
+        WITHIN,
+        DISTANCE_WITHIN
+    }
+    
+    private static final int CHUNK_SIZE = 256;
+    
+    private final Layer left;
+    private final Layer right;
+    private final Predicate predicate;
+    private final double distance;
+
+    /**
+     * The constructor of this class.
+     * @param left the layer, which will be scanned
+     * @param right the layer, which will be indexed
+     * @param predicate INTERSECTS, CONTAINS or WITHIN
+     */
+    public SpatialJoin(Layer left, Layer right, Predicate predicate) {
+        this(left, right, predicate, 0.0);
+    }
+    
+    /**
+     * The constructor of this class.
+     * @param left the layer, which will be scanned
+     * @param right the layer, which will be indexed
+     * @param predicate the spatial predicate, which has to be fulfilled by the left feature
+     * @param distance the maximum distance for DISTANCE_WITHIN
+     */
+    public SpatialJoin(Layer left, Layer right, Predicate predicate, double distance) {
+        if(distance < 0.0) {
+            throw new IllegalArgumentException("the distance must not be negative");
+        }
+        this.left = left;
+        this.right = right;
+        this.predicate = predicate;
+        this.distance = distance;
+    }
+    
+    /**
+     * This function returns the names of the joined attributes. Names of the
+     * right layer, which occur in the left layer too, get a numeric suffix.
+     * @return an array of the names of the left attributes followed by the right ones
+     */
+    public String[] getAttrNames() {
+        String[] leftNames = attrNamesOf(this.left);
+        String[] rightNames = attrNamesOf(this.right);
+        String[] names = Arrays.copyOf(leftNames, leftNames.length + rightNames.length);
+        HashSet<String> used = new HashSet<>(Arrays.asList(leftNames));
+        for(int j = 0; j < rightNames.length; j++) {
+            String name = rightNames[j];
+            for(int suffix = 2; used.contains(name); suffix++) {
+                name = rightNames[j] + "_" + suffix;
+            }
+            used.add(name);
+            names[leftNames.length + j] = name;
+        }
+        return names;
+    }
+    
+    /**
+     * This function executes the join and passes every pair of matching
+     * features to the listener.
+     * @param listener the JoinListener, which receives the results
+     */
+    public void run(JoinListener listener) {
+        FeatureShape[] rightShapes = shapesOf(this.right);
+        RTree<Integer> index = new RTree<>();
+        List<Rectangle2D> envelopes = new ArrayList<>();
+        List<Integer> items = new ArrayList<>();
+        for(int i = 0; i < rightShapes.length; i++) {
+            if(!rightShapes[i].isEmpty()) {
+                envelopes.add(rightShapes[i].getEnvelope());
+                items.add(i);
+            }
+        }
+        index.load(envelopes, items);
+        
+        int leftWidth = attrNamesOf(this.left).length;
+        int rightWidth = attrNamesOf(this.right).length;
+        int countOfFeatures = this.left.getCountOfFeatures();
+        int countOfChunks = (countOfFeatures + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, countOfChunks).parallel().mapToObj((chunk) -> {
+            int end = Math.min(countOfFeatures, (chunk + 1) * CHUNK_SIZE);
+            ArrayList<int[]> pairs = new ArrayList<>();
+            for(int i = chunk * CHUNK_SIZE; i < end; i++) {
+                this.joinFeature(i, rightShapes, index, pairs);
+            }
+            return pairs;
+        }).forEachOrdered((pairs) -> {
+            pairs.forEach((pair) -> {
+                String[] attrs = new String[leftWidth + rightWidth];
+                copyAttrs(this.left.getFeatureAttrs(pair[0]), attrs, 0, leftWidth);
+                copyAttrs(this.right.getFeatureAttrs(pair[1]), attrs, leftWidth, rightWidth);
+                listener.featuresJoined(pair[0], pair[1], attrs);
+            });
+        });
+    }
+    
+    /**
+     * This function executes the join and collects all results.
+     * @return an Attributes-object with one row for every pair of matching features
+     */
+    public Attributes join() {
+        ArrayList<String[]> rows = new ArrayList<>();
+        this.run((leftFeature, rightFeature, attrs) -> {
+            rows.add(attrs);
+        });
+        return new Attributes(this.getAttrNames(), rows);
+    }
+    
+    /**
+     * This function finds all features of the right layer, which match one
+     * feature of the left layer.
+     * @param i the index of the left feature
+     * @param rightShapes the shapes of all right features
+     * @param index the R-tree of the right features
+     * @param pairs the list, where the matching pairs will be stored
+     */
+    private void joinFeature(int i, FeatureShape[] rightShapes, RTree<Integer> index, ArrayList<int[]> pairs) {
+        FeatureShape shape = FeatureShape.of(this.left.getFeatureGeometries(i));
+        if(shape.isEmpty()) {
+            return;
+        }
+        Rectangle2D area = (Rectangle2D) shape.getEnvelope().clone();
+        if(this.predicate == Predicate.DISTANCE_WITHIN) {
+            area.setRect(area.getX() - this.distance, area.getY() - this.distance,
+                         area.getWidth() + 2 * this.distance, area.getHeight() + 2 * this.distance);
+        }
+        ArrayList<Integer> candidates = index.search(area);
+        Collections.sort(candidates);
+        for(int j : candidates) {
+            if(this.matches(shape, rightShapes[j])) {
+                pairs.add(new int[] {i, j});
+            }
+        }
+    }
+    
+    private boolean matches(FeatureShape leftShape, FeatureShape rightShape) {
+        switch(this.predicate) {
+            case INTERSECTS:
+                return leftShape.intersects(rightShape);
+            case CONTAINS:
+                return leftShape.contains(rightShape);
+            case WITHIN:
+                return rightShape.contains(leftShape);
+            default:
+                return leftShape.isWithinDistance(rightShape, this.distance);
+        }
+    }
+    
+    /**
+     * This function creates the shapes of all features of a layer in parallel.
+     * @param layer the Layer-object
+     * @return an array with one shape per feature
+     */
+    private static FeatureShape[] shapesOf(Layer layer) {
+        List<FeatureShape> shapes = IntStream.range(0, layer.getCountOfFeatures()).parallel()
+                .mapToObj((i) -> FeatureShape.of(layer.getFeatureGeometries(i)))
+                .collect(Collectors.toList());
+        return shapes.toArray(new FeatureShape[shapes.size()]);
+    }
+    
+    private static String[] attrNamesOf(Layer layer) {
+        Attributes attributes = layer.getAttributeTable();
+        return attributes == null || attributes.getAttrNames() == null ? new String[0] : attributes.getAttrNames();
+    }
+    
+    private static void copyAttrs(String[] source, String[] target, int offset, int width) {
+        if(source != null) {
+            System.arraycopy(source, 0, target, offset, Math.min(width, source.length));
+        }
+    }
+    
+}
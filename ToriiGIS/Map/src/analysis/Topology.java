@@ -0,0 +1,603 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package analysis;
+
+import io.ProgressListener;
+import java.awt.geom.Area;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import layer.Attributes;
+import layer.Circle;
+import layer.CoordinateDimension;
+import layer.Geometry;
+import layer.Layer;
+import layer.Line;
+import layer.PackedCoordinates;
+import layer.Point;
+import layer.Polygon;
+import layer.VertexCursor;
+import layer.VertexSequence;
+
+/**
+ * This class contains the validation and the repair of the geometries of
+ * a layer.
+ * <br>The validation finds coordinates, which are not finite, repeated
+ * vertices, polygons and lines with too few vertices, polygons whose
+ * closing vertice is stored explicitly and self-intersecting polygons. On
+ * request it also finds polygons, which are not ordered clockwise like the
+ * shapefiles and the results of the overlay operations; both orientations
+ * are valid by default, e.g. for GeoJSON with counter-clockwise rings.
+ * The intersecting edges are found by a sweep-line over the edges sorted by
+ * their smallest x-coordinate, i.e. only edges with overlapping x-ranges are
+ * compared. Crossing edges are always invalid. Edges, which only touch or
+ * overlap each other, are valid, if they belong to a bridge, i.e. to the
+ * two coincident edges connecting a hole with its outer ring, or meet in a
+ * vertex of a bridge. Other touching or overlapping edges, e.g. of a ring
+ * repeating a vertex like a figure-8, are invalid.
+ * <br>The repair removes invalid and repeated vertices, drops geometries
+ * with too few vertices and splits self-intersecting polygons into simple
+ * ones by the non-zero winding rule. On request it reverses
+ * counter-clockwise polygons. The dimension of the coordinates, i.e. the
+ * heights or measures, are kept, except for split polygons.
+ * <br>The features of a layer are processed in chunks in parallel.
+ * @author Christoph
+ */
+public final class Topology {
+    
+    private static final int CHUNK_SIZE = 256;
+
+    private Topology() {
+    }
+    
+    /**
+     * This function validates all features of a layer. Both orientations
+     * of polygons are valid.
+     * @param layer the Layer-object
+     * @param progress the listener, which will be informed about the number of validated features
+     * @return an ArrayList of the issues ordered by feature and part, empty if all features are valid
+     */
+    public static ArrayList<TopologyIssue> validate(Layer layer, ProgressListener progress) {
+        return validate(layer, progress, false);
+    }
+    
+    /**
+     * This function validates all features of a layer.
+     * @param layer the Layer-object
+     * @param progress the listener, which will be informed about the number of validated features
+     * @param clockwise TRUE if counter-clockwise polygons have to be reported, e.g. before writing shapefiles
+     * @return an ArrayList of the issues ordered by feature and part, empty if all features are valid
+     */
+    public static ArrayList<TopologyIssue> validate(Layer layer, ProgressListener progress, boolean clockwise) {
+        int countOfFeatures = layer.getCountOfFeatures();
+        int countOfChunks = (countOfFeatures + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        AtomicLong processed = new AtomicLong();
+        ArrayList<TopologyIssue> issues = new ArrayList<>();
+        IntStream.range(0, countOfChunks).parallel().mapToObj((chunk) -> {
+            int end = Math.min(countOfFeatures, (chunk + 1) * CHUNK_SIZE);
+            ArrayList<TopologyIssue> chunkIssues = new ArrayList<>();
+            for(int i = chunk * CHUNK_SIZE; i < end; i++) {
+                ArrayList<Geometry> parts = layer.getFeatureGeometries(i);
+                for(int p = 0; p < parts.size(); p++) {
+                    validate(parts.get(p), i, p, clockwise, chunkIssues);
+                }
+            }
+            progress.progressChanged(processed.addAndGet(end - chunk * CHUNK_SIZE), countOfFeatures);
+            return chunkIssues;
+        }).forEachOrdered(issues::addAll);
+        return issues;
+    }
+    
+    /**
+     * This function validates a single geometry. Both orientations of
+     * polygons are valid.
+     * @param geom the Geometry-object
+     * @return an ArrayList of the issues with feature and part index 0, empty if the geometry is valid
+     */
+    public static ArrayList<TopologyIssue> validate(Geometry geom) {
+        return validate(geom, false);
+    }
+    
+    /**
+     * This function validates a single geometry.
+     * @param geom the Geometry-object
+     * @param clockwise TRUE if a counter-clockwise polygon has to be reported
+     * @return an ArrayList of the issues with feature and part index 0, empty if the geometry is valid
+     */
+    public static ArrayList<TopologyIssue> validate(Geometry geom, boolean clockwise) {
+        ArrayList<TopologyIssue> issues = new ArrayList<>();
+        validate(geom, 0, 0, clockwise, issues);
+        return issues;
+    }
+    
+    /**
+     * This function repairs all features of a layer. The attributes of the
+     * features will be copied, features without any valid geometry will be
+     * dropped. Self-intersecting polygons may become multi-geometries. The
+     * orientation of the polygons is kept.
+     * @param layer the Layer-object
+     * @param progress the listener, which will be informed about the number of repaired features
+     * @return a new layer with the repaired features, valid geometries are taken over unchanged
+     */
+    public static Layer repair(Layer layer, ProgressListener progress) {
+        return repair(layer, progress, false);
+    }
+    
+    /**
+     * This function repairs all features of a layer. The attributes of the
+     * features will be copied, features without any valid geometry will be
+     * dropped. Self-intersecting polygons may become multi-geometries.
+     * @param layer the Layer-object
+     * @param progress the listener, which will be informed about the number of repaired features
+     * @param clockwise TRUE if counter-clockwise polygons have to be reversed
+     * @return a new layer with the repaired features, valid geometries are taken over unchanged
+     */
+    public static Layer repair(Layer layer, ProgressListener progress, boolean clockwise) {
+        int countOfFeatures = layer.getCountOfFeatures();
+        int countOfChunks = (countOfFeatures + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        AtomicLong processed = new AtomicLong();
+        List<ArrayList<Geometry>> repaired = IntStream.range(0, countOfChunks).parallel().mapToObj((chunk) -> {
+            int end = Math.min(countOfFeatures, (chunk + 1) * CHUNK_SIZE);
+            ArrayList<ArrayList<Geometry>> features = new ArrayList<>(end - chunk * CHUNK_SIZE);
+            for(int i = chunk * CHUNK_SIZE; i < end; i++) {
+                ArrayList<Geometry> parts = new ArrayList<>();
+                for(Geometry geom : layer.getFeatureGeometries(i)) {
+                    parts.addAll(repair(geom, clockwise));
+                }
+                features.add(parts);
+            }
+            progress.progressChanged(processed.addAndGet(end - chunk * CHUNK_SIZE), countOfFeatures);
+            return features;
+        }).flatMap(List::stream).collect(Collectors.toList());
+        
+        ArrayList<ArrayList<Geometry>> features = new ArrayList<>();
+        ArrayList<String[]> rows = new ArrayList<>();
+        for(int i = 0; i < repaired.size(); i++) {
+            if(!repaired.get(i).isEmpty()) {
+                features.add(repaired.get(i));
+                String[] attrs = layer.getFeatureAttrs(i);
+                rows.add(attrs == null ? new String[0] : attrs);
+            }
+        }
+        Attributes attributes = layer.getAttributeTable();
+        String[] attrNames = attributes == null || attributes.getAttrNames() == null ? new String[0] : attributes.getAttrNames();
+        return Overlay.createLayer(features, rows, attrNames, layer.getCrs());
+    }
+    
+    /**
+     * This function repairs a single geometry. The orientation of a polygon
+     * is kept.
+     * @param geom the Geometry-object
+     * @return an ArrayList with the geometry itself if it is valid, the repaired
+     * geometries, or an empty list if the geometry cannot be repaired
+     */
+    public static ArrayList<Geometry> repair(Geometry geom) {
+        return repair(geom, false);
+    }
+    
+    /**
+     * This function repairs a single geometry.
+     * @param geom the Geometry-object
+     * @param clockwise TRUE if a counter-clockwise polygon has to be reversed
+     * @return an ArrayList with the geometry itself if it is valid, the repaired
+     * geometries, or an empty list if the geometry cannot be repaired
+     */
+    public static ArrayList<Geometry> repair(Geometry geom, boolean clockwise) {
+        ArrayList<Geometry> result = new ArrayList<>(1);
+        if(geom instanceof Point) {
+            Point p = (Point) geom;
+            if(Double.isFinite(p.getXCoord()) && Double.isFinite(p.getYCoord())) {
+                result.add(geom);
+            }
+        } else if(geom instanceof Circle) {
+            Circle circle = (Circle) geom;
+            if(Double.isFinite(circle.getCentrePoint().getXCoord()) && Double.isFinite(circle.getCentrePoint().getYCoord())
+                    && Double.isFinite(circle.getRadius())) {
+                result.add(geom);
+            }
+        } else if(geom instanceof VertexSequence) {
+            boolean polygon = geom instanceof Polygon;
+            Vertices vertices = new Vertices((VertexSequence) geom, polygon);
+            if(vertices.countOfKept < (polygon ? 3 : 2)) {
+                return result;
+            }
+            if(!polygon) {
+                result.add(vertices.isUnchanged() ? geom : new Line(vertices.toPackedCoordinates(false)));
+                return result;
+            }
+            double[] ring = vertices.getRing();
+            if(!findCrossings(ring).isEmpty()) {
+                Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, ring.length / 2 + 1);
+                path.moveTo(ring[0], ring[1]);
+                for(int i = 2; i < ring.length; i += 2) {
+                    path.lineTo(ring[i], ring[i + 1]);
+                }
+                path.closePath();
+                result.addAll(Overlay.toPolygons(new Area(path)));
+            } else if(clockwise && Overlay.signedArea(ring) > 0) {
+                result.add(new Polygon(vertices.toPackedCoordinates(true)));
+            } else {
+                result.add(vertices.isUnchanged() ? geom : new Polygon(vertices.toPackedCoordinates(false)));
+            }
+        } else {
+            result.add(geom);
+        }
+        return result;
+    }
+    
+    /**
+     * This function validates one geometry of a feature.
+     * @param geom the Geometry-object
+     * @param featureIndex the index of the feature
+     * @param partIndex the index of the geometry in the feature
+     * @param clockwise TRUE if a counter-clockwise polygon has to be reported
+     * @param issues the list, where the issues will be stored
+     */
+    private static void validate(Geometry geom, int featureIndex, int partIndex, boolean clockwise,
+                                 List<TopologyIssue> issues) {
+        if(geom instanceof Point) {
+            Point p = (Point) geom;
+            if(!Double.isFinite(p.getXCoord()) || !Double.isFinite(p.getYCoord())) {
+                issues.add(new TopologyIssue(featureIndex, partIndex, TopologyIssue.Type.NOT_FINITE, 0,
+                                             p.getXCoord(), p.getYCoord()));
+            }
+        } else if(geom instanceof Circle) {
+            Circle circle = (Circle) geom;
+            double x = circle.getCentrePoint().getXCoord();
+            double y = circle.getCentrePoint().getYCoord();
+            if(!Double.isFinite(x) || !Double.isFinite(y) || !Double.isFinite(circle.getRadius())) {
+                issues.add(new TopologyIssue(featureIndex, partIndex, TopologyIssue.Type.NOT_FINITE, -1, x, y));
+            }
+        } else if(geom instanceof VertexSequence) {
+            boolean polygon = geom instanceof Polygon;
+            Vertices vertices = new Vertices((VertexSequence) geom, polygon);
+            vertices.addIssues(featureIndex, partIndex, issues);
+            if(vertices.countOfKept < (polygon ? 3 : 2)) {
+                issues.add(new TopologyIssue(featureIndex, partIndex, TopologyIssue.Type.TOO_FEW_VERTICES, -1,
+                                             Double.NaN, Double.NaN));
+                return;
+            }
+            if(!polygon) {
+                return;
+            }
+            double[] ring = vertices.getRing();
+            List<int[]> crossings = findCrossings(ring);
+            HashSet<Point2D> locations = new HashSet<>();
+            for(int[] crossing : crossings) {
+                //edges meeting in a repeated vertex are reported once
+                double[] location = intersection(ring, crossing[0], crossing[1]);
+                if(locations.add(new Point2D.Double(location[0], location[1]))) {
+                    issues.add(new TopologyIssue(featureIndex, partIndex, TopologyIssue.Type.SELF_INTERSECTION,
+                                                 vertices.kept[crossing[0]], location[0], location[1]));
+                }
+            }
+            if(clockwise && crossings.isEmpty() && Overlay.signedArea(ring) > 0) {
+                issues.add(new TopologyIssue(featureIndex, partIndex, TopologyIssue.Type.WRONG_ORIENTATION, -1,
+                                             Double.NaN, Double.NaN));
+            }
+        }
+    }
+    
+    /**
+     * This function finds all pairs of edges of a ring, which cross each
+     * other or touch or overlap each other outside of a bridge, e.g. the
+     * edges meeting in a repeated vertex of a figure-8 ring. The vertex
+     * shared by neighbouring edges does not count as intersection.
+     * The edges are sorted by their smallest x-coordinate and swept from left
+     * to right. Every edge is compared with the active edges, whose x-range
+     * has not ended yet. The bridges are only searched, if two edges touch.
+     * @param ring the interleaved x- and y-coordinates of the ring
+     * @return a List of the indices of the intersecting edges, the smaller index first
+     */
+    static List<int[]> findCrossings(double[] ring) {
+        FeatureShape.Component component = new FeatureShape.Component(FeatureShape.AREAL, ring);
+        int n = component.countOfSegments();
+        double[] minX = new double[n];
+        double[] maxX = new double[n];
+        for(int i = 0; i < n; i++) {
+            minX[i] = Math.min(component.x1(i), component.x2(i));
+            maxX[i] = Math.max(component.x1(i), component.x2(i));
+        }
+        int[] order = IntStream.range(0, n).boxed()
+                               .sorted(Comparator.comparingDouble((i) -> minX[i]))
+                               .mapToInt(Integer::intValue).toArray();
+        
+        ArrayList<int[]> crossings = new ArrayList<>();
+        Bridges bridges = null;
+        int[] active = new int[n];
+        int countOfActive = 0;
+        for(int edge : order) {
+            //remove the edges ending left of the current edge
+            int kept = 0;
+            for(int k = 0; k < countOfActive; k++) {
+                if(maxX[active[k]] >= minX[edge]) {
+                    active[kept++] = active[k];
+                }
+            }
+            countOfActive = kept;
+            double minY = Math.min(component.y1(edge), component.y2(edge));
+            double maxY = Math.max(component.y1(edge), component.y2(edge));
+            for(int k = 0; k < countOfActive; k++) {
+                int other = active[k];
+                if(Math.max(component.y1(other), component.y2(other)) < minY
+                        || Math.min(component.y1(other), component.y2(other)) > maxY) {
+                    continue;
+                }
+                int i = Math.min(edge, other);
+                int j = Math.max(edge, other);
+                if(!intersects(component, i, j, n)) {
+                    continue;
+                }
+                if(!FeatureShape.crossesProperly(component, i, component, j)) {
+                    if(bridges == null) {
+                        bridges = new Bridges(component);
+                    }
+                    if(bridges.explains(i, j)) {
+                        continue;
+                    }
+                }
+                crossings.add(new int[] {i, j});
+            }
+            active[countOfActive++] = edge;
+        }
+        crossings.sort(Comparator.comparingInt((int[] crossing) -> crossing[0]).thenComparingInt((crossing) -> crossing[1]));
+        return crossings;
+    }
+    
+    /**
+     * This function tests, whether two edges of a ring cross, touch or
+     * overlap each other. Neighbouring edges intersect only, if they overlap
+     * beyond their shared vertex, i.e. if the ring turns back on itself.
+     * @param ring the edges of the ring
+     * @param i the smaller index of the edges
+     * @param j the larger index of the edges
+     * @param n the number of edges
+     * @return TRUE if the edges intersect
+     */
+    private static boolean intersects(FeatureShape.Component ring, int i, int j, int n) {
+        if(j == i + 1) {
+            //the end of edge i is the start of edge j
+            return isOnEdge(ring, i, ring.x2(j), ring.y2(j)) || isOnEdge(ring, j, ring.x1(i), ring.y1(i));
+        }
+        if(i == 0 && j == n - 1) {
+            //the end of edge j is the start of edge i
+            return isOnEdge(ring, i, ring.x1(j), ring.y1(j)) || isOnEdge(ring, j, ring.x2(i), ring.y2(i));
+        }
+        return Line2D.linesIntersect(ring.x1(i), ring.y1(i), ring.x2(i), ring.y2(i),
+                                     ring.x1(j), ring.y1(j), ring.x2(j), ring.y2(j))
+                || isOnEdge(ring, i, ring.x1(j), ring.y1(j)) || isOnEdge(ring, i, ring.x2(j), ring.y2(j))
+                || isOnEdge(ring, j, ring.x1(i), ring.y1(i)) || isOnEdge(ring, j, ring.x2(i), ring.y2(i));
+    }
+    
+    private static boolean isOnEdge(FeatureShape.Component ring, int edge, double x, double y) {
+        return Line2D.ptSegDist(ring.x1(edge), ring.y1(edge), ring.x2(edge), ring.y2(edge), x, y)
+               <= FeatureShape.EPSILON;
+    }
+    
+    /**
+     * This function calculates a common point of two intersecting edges of a
+     * ring, i.e. the crossing point or, for parallel edges, a vertex of one
+     * edge lying on the other one. Vertices shared by both edges are only
+     * returned, if there is no other common vertex.
+     * @param ring the interleaved x- and y-coordinates of the ring
+     * @param i the index of the first edge
+     * @param j the index of the second edge
+     * @return an array with the x- and y-coordinate
+     */
+    private static double[] intersection(double[] ring, int i, int j) {
+        int n = ring.length / 2;
+        double x1 = ring[2 * i];
+        double y1 = ring[2 * i + 1];
+        double dx1 = ring[2 * ((i + 1) % n)] - x1;
+        double dy1 = ring[2 * ((i + 1) % n) + 1] - y1;
+        double x2 = ring[2 * j];
+        double y2 = ring[2 * j + 1];
+        double dx2 = ring[2 * ((j + 1) % n)] - x2;
+        double dy2 = ring[2 * ((j + 1) % n) + 1] - y2;
+        double denominator = dx1 * dy2 - dy1 * dx2;
+        if(denominator != 0.0) {
+            double t = ((x2 - x1) * dy2 - (y2 - y1) * dx2) / denominator;
+            return new double[] {x1 + t * dx1, y1 + t * dy1};
+        }
+        
+        //the edges overlap, i.e. at least one vertex lies on the other edge
+        double[][] vertices = {{x2, y2}, {x2 + dx2, y2 + dy2}, {x1, y1}, {x1 + dx1, y1 + dy1}};
+        double[] shared = null;
+        for(int k = 0; k < vertices.length; k++) {
+            double x = vertices[k][0];
+            double y = vertices[k][1];
+            double distance = k < 2 ? Line2D.ptSegDist(x1, y1, x1 + dx1, y1 + dy1, x, y)
+                                    : Line2D.ptSegDist(x2, y2, x2 + dx2, y2 + dy2, x, y);
+            if(distance > FeatureShape.EPSILON) {
+                continue;
+            }
+            boolean isShared = k < 2 ? (x == x1 && y == y1) || (x == x1 + dx1 && y == y1 + dy1)
+                                     : (x == x2 && y == y2) || (x == x2 + dx2 && y == y2 + dy2);
+            if(!isShared) {
+                return vertices[k];
+            }
+            shared = vertices[k];
+        }
+        return shared != null ? shared : new double[] {x1, y1};
+    }
+    
+    /**
+     * This class describes the bridges of a ring, i.e. the pairs of edges
+     * with the same vertices in opposite directions, which connect holes
+     * with the outer ring.
+     */
+    private static final class Bridges {
+        
+        private final FeatureShape.Component ring;
+        private final HashSet<List<Double>> vertices = new HashSet<>();
+        private final HashSet<List<Double>> edges = new HashSet<>();
+        
+        private Bridges(FeatureShape.Component ring) {
+            this.ring = ring;
+            HashSet<List<Double>> allEdges = new HashSet<>();
+            for(int i = 0; i < ring.countOfSegments(); i++) {
+                allEdges.add(Arrays.asList(ring.x1(i), ring.y1(i), ring.x2(i), ring.y2(i)));
+            }
+            for(int i = 0; i < ring.countOfSegments(); i++) {
+                if(allEdges.contains(Arrays.asList(ring.x2(i), ring.y2(i), ring.x1(i), ring.y1(i)))) {
+                    this.edges.add(Arrays.asList(ring.x1(i), ring.y1(i), ring.x2(i), ring.y2(i)));
+                    this.vertices.add(Arrays.asList(ring.x1(i), ring.y1(i)));
+                    this.vertices.add(Arrays.asList(ring.x2(i), ring.y2(i)));
+                }
+            }
+        }
+        
+        /**
+         * This function tests, whether two intersecting edges, which do not
+         * cross each other, are the two edges of a bridge or meet only in
+         * a vertex of a bridge.
+         * @param i the index of the first edge
+         * @param j the index of the second edge
+         * @return TRUE if the intersection is valid
+         */
+        private boolean explains(int i, int j) {
+            FeatureShape.Component r = this.ring;
+            if(r.x1(i) == r.x2(j) && r.y1(i) == r.y2(j) && r.x2(i) == r.x1(j) && r.y2(i) == r.y1(j)) {
+                return this.edges.contains(Arrays.asList(r.x1(i), r.y1(i), r.x2(i), r.y2(i)));
+            }
+            
+            //find the vertex shared by both edges and the other vertices
+            double[] first = {r.x1(i), r.y1(i), r.x2(i), r.y2(i)};
+            double[] second = {r.x1(j), r.y1(j), r.x2(j), r.y2(j)};
+            for(int a = 0; a < 4; a += 2) {
+                for(int b = 0; b < 4; b += 2) {
+                    if(first[a] == second[b] && first[a + 1] == second[b + 1]) {
+                        return this.vertices.contains(Arrays.asList(first[a], first[a + 1]))
+                               && !isOnEdge(r, i, second[2 - b], second[3 - b])
+                               && !isOnEdge(r, j, first[2 - a], first[3 - a]);
+                    }
+                }
+            }
+            return false;
+        }
+        
+    }
+    
+    /**
+     * This class reads the vertices of a line or polygon and marks the
+     * vertices, which are not finite, repeat the previous vertice or repeat
+     * the first vertice of a polygon at the end. The third value of every
+     * vertice is the height or the measure depending on the dimension.
+     */
+    private static final class Vertices {
+        
+        private final CoordinateDimension dimension;
+        private final double[] xyz;
+        private final int countOfVertices;
+        private final int[] kept;
+        private int countOfKept = 0;
+        private int firstNotFinite = -1;
+        private final ArrayList<Integer> duplicates = new ArrayList<>();
+        private boolean closingVertex = false;
+
+        private Vertices(VertexSequence sequence, boolean polygon) {
+            this.dimension = sequence.getDimension();
+            this.countOfVertices = sequence.getCountOfVertices();
+            this.xyz = new double[3 * this.countOfVertices];
+            VertexCursor cursor = new VertexCursor(sequence);
+            while(cursor.next()) {
+                int i = cursor.getIndex();
+                this.xyz[3 * i] = cursor.getX();
+                this.xyz[3 * i + 1] = cursor.getY();
+                this.xyz[3 * i + 2] = this.dimension == CoordinateDimension.XYM ? cursor.getM() : cursor.getZ();
+            }
+            
+            this.kept = new int[this.countOfVertices];
+            for(int i = 0; i < this.countOfVertices; i++) {
+                if(!Double.isFinite(this.xyz[3 * i]) || !Double.isFinite(this.xyz[3 * i + 1])) {
+                    if(this.firstNotFinite < 0) {
+                        this.firstNotFinite = i;
+                    }
+                } else if(this.countOfKept > 0 && this.equalsKept(i, this.countOfKept - 1)) {
+                    this.duplicates.add(i);
+                } else {
+                    this.kept[this.countOfKept++] = i;
+                }
+            }
+            if(polygon && this.countOfKept > 1 && this.equalsKept(this.kept[this.countOfKept - 1], 0)) {
+                this.closingVertex = true;
+                this.countOfKept--;
+            }
+        }
+        
+        private boolean equalsKept(int i, int k) {
+            int j = this.kept[k];
+            return this.xyz[3 * i] == this.xyz[3 * j] && this.xyz[3 * i + 1] == this.xyz[3 * j + 1];
+        }
+        
+        private boolean isUnchanged() {
+            return this.countOfKept == this.countOfVertices;
+        }
+        
+        private void addIssues(int featureIndex, int partIndex, List<TopologyIssue> issues) {
+            if(this.firstNotFinite >= 0) {
+                issues.add(new TopologyIssue(featureIndex, partIndex, TopologyIssue.Type.NOT_FINITE, this.firstNotFinite,
+                                             this.xyz[3 * this.firstNotFinite], this.xyz[3 * this.firstNotFinite + 1]));
+            }
+            this.duplicates.forEach((i) -> {
+                issues.add(new TopologyIssue(featureIndex, partIndex, TopologyIssue.Type.DUPLICATE_VERTEX, i,
+                                             this.xyz[3 * i], this.xyz[3 * i + 1]));
+            });
+            if(this.closingVertex) {
+                int i = this.kept[this.countOfKept];
+                issues.add(new TopologyIssue(featureIndex, partIndex, TopologyIssue.Type.CLOSING_VERTEX, i,
+                                             this.xyz[3 * i], this.xyz[3 * i + 1]));
+            }
+        }
+        
+        /**
+         * This function returns the x- and y-coordinates of the kept vertices.
+         */
+        private double[] getRing() {
+            double[] ring = new double[2 * this.countOfKept];
+            for(int k = 0; k < this.countOfKept; k++) {
+                ring[2 * k] = this.xyz[3 * this.kept[k]];
+                ring[2 * k + 1] = this.xyz[3 * this.kept[k] + 1];
+            }
+            return ring;
+        }
+        
+        /**
+         * This function copies the kept vertices with the dimension of the
+         * geometry, optionally in reversed order.
+         */
+        private PackedCoordinates toPackedCoordinates(boolean reversed) {
+            int stride = this.dimension.getCountOfValues();
+            double[] values = new double[stride * this.countOfKept];
+            for(int k = 0; k < this.countOfKept; k++) {
+                int i = this.kept[reversed ? this.countOfKept - 1 - k : k];
+                System.arraycopy(this.xyz, 3 * i, values, stride * k, stride);
+            }
+            return new PackedCoordinates(this.dimension, values, 0, this.countOfKept);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package analysis;
+
+/**
+ * This class describes one problem of the geometry of a feature, which was
+ * found by the validation of a layer.
+ * @author Christoph
+ */
+public final class TopologyIssue {
+    
+    /**
+     * The kinds of problems, which are detected by the validation.
+     */
+    public static enum Type {
+        /** a polygon with less than 3 or a line with less than 2 vertices */
+        TOO_FEW_VERTICES,
+        /** a coordinate or radius, which is NaN or infinite */
+        NOT_FINITE,
+        /** a vertice, which repeats the previous vertice */
+        DUPLICATE_VERTEX,
+        /** the last vertice of a polygon, which repeats the first one */
+        CLOSING_VERTEX,
+        /** two edges of a polygon, which cross each other */
+        SELF_INTERSECTION,
+        /** a polygon, whose vertices are ordered counter-clockwise, if clockwise polygons are requested */
+        WRONG_ORIENTATION
+    }
+    
+    private final int featureIndex;
+    private final int partIndex;
+    private final Type type;
+    private final int vertexIndex;
+    private final double x;
+    private final double y;
+
+    /**
+     * The constructor of this class.
+     * @param featureIndex the zero-based index of the feature in the layer
+     * @param partIndex the zero-based index of the geometry in the feature
+     * @param type the kind of the problem
+     * @param vertexIndex the zero-based index of the concerned vertice or edge, -1 for the whole geometry
+     * @param x the x-coordinate of the problem, NaN if it has no location
+     * @param y the y-coordinate of the problem, NaN if it has no location
+     */
+    public TopologyIssue(int featureIndex, int partIndex, Type type, int vertexIndex, double x, double y) {
+        this.featureIndex = featureIndex;
+        this.partIndex = partIndex;
+        this.type = type;
+        this.vertexIndex = vertexIndex;
+        this.x = x;
+        this.y = y;
+    }
+    
+    /**
+     * This function returns the index of the feature with the problem.
+     * @return the zero-based index of the feature in the layer
+     */
+    public int getFeatureIndex() {
+        return this.featureIndex;
+    }
+    
+    /**
+     * This function returns the index of the geometry with the problem.
+     * @return the zero-based index of the part, always 0 for features without multi-geometry
+     */
+    public int getPartIndex() {
+        return this.partIndex;
+    }
+    
+    /**
+     * This function returns the kind of the problem.
+     * @return the Type of the issue
+     */
+    public Type getType() {
+        return this.type;
+    }
+    
+    /**
+     * This function returns the index of the concerned vertice. For a self-intersection
+     * it is the index of the first vertice of the first crossing edge.
+     * @return the zero-based index of the vertice, -1 for the whole geometry
+     */
+    public int getVertexIndex() {
+        return this.vertexIndex;
+    }
+    
+    /**
+     * This function returns the x-coordinate of the problem, e.g. the crossing point.
+     * @return the x-coordinate in map units, NaN if the problem has no location
+     */
+    public double getX() {
+        return this.x;
+    }
+    
+    /**
+     * This function returns the y-coordinate of the problem, e.g. the crossing point.
+     * @return the y-coordinate in map units, NaN if the problem has no location
+     */
+    public double getY() {
+        return this.y;
+    }
+    
+    /**
+     * This function returns the issue as a String-object.
+     * @return a String containing the feature, the part, the type and the location
+     */
+    @Override
+    public String toString() {
+        return "TopologyIssue{feature=" + this.featureIndex + ", part=" + this.partIndex + ", type=" + this.type
+                + ", vertex=" + this.vertexIndex + ", x=" + this.x + ", y=" + this.y + "}";
+    }
+    
+}
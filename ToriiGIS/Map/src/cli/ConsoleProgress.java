@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cli;
+
+import io.ProgressListener;
+import java.io.PrintStream;
+
+/**
+ * This class prints the progress of a step of the command line pipeline.
+ * The line is only rewritten, when the percentage has changed, i.e. the
+ * listener can be called very often and by several threads.
+ * @author Christoph
+ */
+class ConsoleProgress implements ProgressListener {
+    
+    private final PrintStream out;
+    private final String task;
+    private final boolean quiet;
+    private final long start = System.nanoTime();
+    private final StringBuilder notes = new StringBuilder();
+    private long lastPercent = -1;
+
+    /**
+     * The constructor of this class.
+     * @param out the stream for the output, e.g. System.err
+     * @param task the description of the step
+     * @param quiet TRUE, if only the result but no progress should be printed
+     */
+    ConsoleProgress(PrintStream out, String task, boolean quiet) {
+        this.out = out;
+        this.task = task;
+        this.quiet = quiet;
+    }
+    
+    /**
+     * This function prints the new percentage of the step.
+     * @param processed the amount of work done so far
+     * @param total the total amount of work, zero or negative if unknown
+     */
+    @Override
+    public synchronized void progressChanged(long processed, long total) {
+        long percent = total > 0 ? Math.min(100, 100 * processed / total) : processed;
+        if(!this.quiet && percent > this.lastPercent) {
+            this.lastPercent = percent;
+            this.out.print("\r" + this.task + " " + percent + (total > 0 ? "%" : ""));
+            this.out.flush();
+        }
+    }
+    
+    /**
+     * This function adds a result of the step, which will be printed when it is finished.
+     * @param note a short description, e.g. the number of written tiles
+     */
+    synchronized void addNote(String note) {
+        this.notes.append(", ").append(note);
+    }
+    
+    /**
+     * This function finishes the line of the step with the elapsed time.
+     * @param result a short description of the result
+     */
+    synchronized void finish(String result) {
+        long millis = (System.nanoTime() - this.start) / 1000000;
+        this.out.println((this.quiet ? "" : "\r") + this.task + ": " + result + this.notes + " (" + millis + " ms)");
+    }
+    
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cli;
+
+import analysis.FeatureQuery;
+import analysis.FeatureStatistics;
+import analysis.Overlay;
+import analysis.Topology;
+import analysis.TopologyIssue;
+import io.FlatGeobufWriter;
+import io.GeoJsonWriter;
+import io.LayerReader;
+import io.LayerWriter;
+import io.WktWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import layer.Layer;
+import tiles.DirectoryTileStore;
+import tiles.MBTilesStore;
+import tiles.MvtEncoder;
+import tiles.TilePyramid;
+import tiles.TileStore;
+
+/**
+ * This class is the entry point for processing layers without the
+ * graphical user interface, e.g. in nightly jobs:
+ * <pre>
+ * java -cp Map.jar cli.Main --read parcels.shp --repair --where area '&gt;' 1000 --write parcels.fgb
+ * </pre>
+ * Operators like &gt; and &lt; have to be quoted, otherwise the shell
+ * interprets them as redirections.
+ * <br>The arguments are a pipeline of steps, which are executed in the given
+ * order. Every step takes the layer of the previous step and the analysis
+ * steps replace it by their result. The steps use the parallel implementations
+ * of the io- and analysis-packages, their progress and duration are printed
+ * to the standard error stream, the reports (validation, statistics) to the
+ * standard output stream.
+ * <br>Only the classes of the layer-, io-, analysis- and tiles-packages are
+ * loaded, i.e. neither the NetBeans platform nor a window is needed.
+ * @author Christoph
+ */
+public final class Main {
+    
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final String USAGE =
+            "usage: java -cp Map.jar cli.Main [--threads N] [--quiet] STEP...\n"
+            + "steps:\n"
+            + "  --read FILE               read a Shapefile (.shp) or GeoJSON (.geojson, .json)\n"
+            + "  --where ATTR OP VALUE     keep the features matching the comparison (=, <>, <, <=, >, >=),\n"
+            + "                            quote the operator in the shell, e.g. --where area '>' 1000\n"
+            + "  --buffer DISTANCE         replace the geometries by their buffers\n"
+            + "  --dissolve ATTR|-         merge the features with the same value, - merges all\n"
+            + "  --repair                  repair the geometries, drop features without valid geometry\n"
+            + "  --validate                print the topology issues of the features\n"
+            + "  --stats                   print the number, areas and lengths of the features\n"
+            + "  --write FILE              write GeoJSON (.geojson, .json), FlatGeobuf (.fgb) or WKT (.csv)\n"
+            + "  --tiles TARGET MIN MAX    write vector tiles into an MBTiles file (.mbtiles) or a directory\n";
+    
+    /**
+     * This interface describes one step of the pipeline.
+     */
+    private static interface Step {
+        
+        /**
+         * This function executes the step.
+         * @param layer the result of the previous step, null before the first read
+         * @param progress the listener for the progress of the step
+         * @return the layer for the next step
+         * @throws IOException if a file cannot be read or written
+         */
+        Layer apply(Layer layer, ConsoleProgress progress) throws IOException;
+        
+    }
+    
+    private final List<String> descriptions = new ArrayList<>();
+    private final List<Step> steps = new ArrayList<>();
+    private final PrintStream out;
+    private final PrintStream err;
+    private boolean quiet = false;
+    private boolean hasInput = false;
+
+    private Main(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+    
+    /**
+     * This function parses the arguments and executes the pipeline.
+     * The exit code is 0 on success, 1 if a step has failed and 2 for
+     * invalid arguments.
+     * @param args the options and steps
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Main main = new Main(System.out, System.err);
+        try {
+            main.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.print(USAGE);
+            System.exit(EXIT_USAGE);
+        }
+        try {
+            main.run();
+        } catch (IOException | RuntimeException ex) {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            System.err.println();
+            System.err.println("failed: " + cause);
+            System.exit(EXIT_FAILED);
+        }
+    }
+    
+    /**
+     * This function creates the steps from the arguments.
+     * @param args the options and steps
+     * @throws IllegalArgumentException if an argument is unknown or a value is missing
+     */
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch(arg) {
+                case "--threads":
+                    int threads = parseInt(value(args, ++i, arg));
+                    if(threads < 1) {
+                        throw new IllegalArgumentException("the number of threads must be positive");
+                    }
+                    //the parallel streams use the common pool, which is created on first use
+                    System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", Integer.toString(threads - 1));
+                    break;
+                case "--quiet":
+                    this.quiet = true;
+                    break;
+                case "--read":
+                    this.addRead(Paths.get(value(args, ++i, arg)));
+                    break;
+                case "--where":
+                    String attrName = value(args, ++i, arg);
+                    String operator = value(args, ++i, arg);
+                    String comparedValue = value(args, ++i, arg);
+                    this.add("where " + attrName + " " + operator + " " + comparedValue, (layer, progress) -> {
+                        return FeatureQuery.of(layer).where(attrName, operator, comparedValue).toLayer().join();
+                    });
+                    break;
+                case "--buffer":
+                    double distance = parseDouble(value(args, ++i, arg));
+                    this.add("buffer " + distance, (layer, progress) -> {
+                        return FeatureQuery.of(layer).buffer(distance).toLayer().join();
+                    });
+                    break;
+                case "--dissolve":
+                    String dissolveAttr = value(args, ++i, arg);
+                    this.add("dissolve " + dissolveAttr, (layer, progress) -> {
+                        return Overlay.dissolve(layer, dissolveAttr.equals("-") ? null : dissolveAttr);
+                    });
+                    break;
+                case "--repair":
+                    this.add("repair", (layer, progress) -> {
+                        return Topology.repair(layer, progress);
+                    });
+                    break;
+                case "--validate":
+                    this.add("validate", (layer, progress) -> {
+                        List<TopologyIssue> issues = Topology.validate(layer, progress);
+                        issues.forEach((issue) -> {
+                            this.out.println(issue.getFeatureIndex() + "\t" + issue.getPartIndex() + "\t" + issue.getType()
+                                             + "\t" + issue.getVertexIndex() + "\t" + issue.getX() + "\t" + issue.getY());
+                        });
+                        progress.addNote(issues.size() + " issues");
+                        return layer;
+                    });
+                    break;
+                case "--stats":
+                    this.add("statistics", (layer, progress) -> {
+                        FeatureStatistics statistics = FeatureQuery.of(layer).statistics().join();
+                        this.out.println(String.format(Locale.ROOT, "count\t%d%narea\t%f\t%f\t%f\t%f%nlength\t%f\t%f\t%f\t%f",
+                                                       statistics.getCount(),
+                                                       statistics.getSumOfAreas(), statistics.getMinArea(),
+                                                       statistics.getMaxArea(), statistics.getMeanArea(),
+                                                       statistics.getSumOfLengths(), statistics.getMinLength(),
+                                                       statistics.getMaxLength(), statistics.getMeanLength()));
+                        return layer;
+                    });
+                    break;
+                case "--write":
+                    this.addWrite(Paths.get(value(args, ++i, arg)));
+                    break;
+                case "--tiles":
+                    Path target = Paths.get(value(args, ++i, arg));
+                    int minZoom = parseInt(value(args, ++i, arg));
+                    int maxZoom = parseInt(value(args, ++i, arg));
+                    this.add("tiles " + target, (layer, progress) -> {
+                        String name = target.getFileName().toString().replaceFirst("\\.mbtiles$", "");
+                        try(TileStore store = target.toString().endsWith(".mbtiles")
+                                              ? new MBTilesStore(target) : new DirectoryTileStore(target)) {
+                            long count = TilePyramid.generate(new MvtEncoder(layer, name), minZoom, maxZoom, store, progress);
+                            progress.addNote(count + " tiles");
+                        }
+                        return layer;
+                    });
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown argument: " + arg);
+            }
+        }
+        if(this.steps.isEmpty()) {
+            throw new IllegalArgumentException("no steps given");
+        }
+    }
+    
+    /**
+     * This function executes all steps in the given order.
+     * @throws IOException if a file cannot be read or written
+     */
+    private void run() throws IOException {
+        Layer layer = null;
+        for(int i = 0; i < this.steps.size(); i++) {
+            ConsoleProgress progress = new ConsoleProgress(this.err, this.descriptions.get(i), this.quiet);
+            layer = this.steps.get(i).apply(layer, progress);
+            progress.finish(layer.getCountOfFeatures() + " features");
+        }
+    }
+    
+    private void addRead(Path file) {
+        LayerReader reader = LayerReader.forFile(file);
+        this.hasInput = true;
+        this.add("read " + file, (layer, progress) -> {
+            if(!Files.isRegularFile(file)) {
+                throw new IOException("the file does not exist: " + file);
+            }
+            return reader.read(file, progress);
+        });
+    }
+    
+    private void addWrite(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        LayerWriter writer;
+        if(name.endsWith(".geojson") || name.endsWith(".json")) {
+            writer = new GeoJsonWriter();
+        } else if(name.endsWith(".fgb")) {
+            writer = new FlatGeobufWriter();
+        } else if(name.endsWith(".csv")) {
+            writer = new WktWriter();
+        } else {
+            throw new IllegalArgumentException("unknown output format: " + file);
+        }
+        this.add("write " + file, (layer, progress) -> {
+            writer.write(layer, file);
+            return layer;
+        });
+    }
+    
+    private void add(String description, Step step) {
+        if(!this.hasInput) {
+            throw new IllegalArgumentException("the first step has to read a layer");
+        }
+        this.descriptions.add(description);
+        this.steps.add(step);
+    }
+    
+    private static String value(String[] args, int i, String option) {
+        if(i >= args.length) {
+            throw new IllegalArgumentException("missing value of " + option);
+        }
+        return args[i];
+    }
+    
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("not an integer: " + value);
+        }
+    }
+    
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("not a number: " + value);
+        }
+    }
+    
+}
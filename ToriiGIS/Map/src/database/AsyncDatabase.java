@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package database;
+
+import io.LayerBuilder;
+import io.Wkb;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import layer.Geometry;
+import layer.Layer;
+
+/**
+ * This class executes queries of a database without blocking the caller.
+ * <br>Every task is queued and the caller gets a CompletableFuture of its
+ * result. The tasks are executed by a bounded number of daemon threads, which
+ * is equal to the number of connections of the pool, i.e. a worker never
+ * waits for a connection and queued tasks occupy no thread. A task, whose
+ * future is cancelled before it has started, is skipped.
+ * <br>Results can be handed to the Swing components with
+ * <code>future.thenAcceptAsync(..., AsyncDatabase.EVENT_DISPATCH_THREAD)</code>.
+ * @author Christoph
+ */
+public class AsyncDatabase implements AutoCloseable {
+    
+    /**
+     * An executor, which runs the given actions on the event dispatch thread.
+     */
+    public static final Executor EVENT_DISPATCH_THREAD = SwingUtilities::invokeLater;
+    
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final int FETCH_SIZE = 1000;
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+    
+    private final ConnectionPool pool;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The constructor creates a new pool of connections to the given database.
+     * @param url the JDBC-URL of the database, e.g. jdbc:postgresql://host/name
+     * @param properties the properties of the connections, e.g. user and password
+     * @param maxConnections the maximum number of queries running at the same time
+     */
+    public AsyncDatabase(String url, Properties properties, int maxConnections) {
+        this(new ConnectionPool(url, properties, maxConnections));
+    }
+    
+    /**
+     * The constructor uses an existing pool of connections. The pool will be
+     * closed together with this object.
+     * @param pool the ConnectionPool-object
+     */
+    public AsyncDatabase(ConnectionPool pool) {
+        this.pool = pool;
+        this.executor = new ThreadPoolExecutor(pool.getMaxConnections(), pool.getMaxConnections(),
+                                               KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                               new LinkedBlockingQueue<>(), createThreadFactory()) {
+            @Override
+            protected void terminated() {
+                pool.close();
+            }
+        };
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * This function queues a task, which uses a connection of the pool.
+     * @param <T> the type of the result
+     * @param task the SqlFunction-object
+     * @return the future result of the task, which is completed exceptionally
+     *         if the task throws an exception or this object is closed
+     */
+    public <T> CompletableFuture<T> submit(SqlFunction<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            this.executor.execute(() -> {
+                if(future.isDone()) {
+                    return;
+                }
+                try {
+                    Connection connection = this.pool.acquire();
+                    try {
+                        future.complete(task.apply(connection));
+                    } finally {
+                        this.pool.release(connection);
+                    }
+                } catch (SQLException | RuntimeException ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+    
+    /**
+     * This function queues a query, whose result is converted into a layer.
+     * The first column of the result has to contain the geometry as WKB,
+     * e.g. <code>SELECT ST_AsBinary(geom), name FROM roads WHERE ...</code>,
+     * or as hexadecimal extended WKB, i.e. a geometry column of PostGIS.
+     * All other columns become attributes of the features. The query runs in
+     * a transaction, which is rolled back afterwards, and the rows are fetched
+     * in portions, i.e. the driver does not hold the whole result in memory.
+     * @param sql the SELECT-statement, which may contain question marks for the parameters
+     * @param parameters the values of the parameters
+     * @return the future layer
+     */
+    public CompletableFuture<Layer> queryLayer(String sql, Object... parameters) {
+        return this.submit((connection) -> {
+            //drivers like the one of PostgreSQL use cursors only within transactions
+            connection.setAutoCommit(false);
+            return readLayer(connection, sql, parameters);
+        });
+    }
+    
+    /**
+     * This function executes a query and converts its result into a layer.
+     * @param connection the connection of the database
+     * @param sql the SELECT-statement with the geometry in the first column
+     * @param parameters the values of the parameters
+     * @return the new Layer-object
+     * @throws SQLException if the query fails or a geometry is no valid WKB
+     */
+    static Layer readLayer(Connection connection, String sql, Object... parameters) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement(sql)) {
+            for(int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            statement.setFetchSize(FETCH_SIZE);
+            try(ResultSet result = statement.executeQuery()) {
+                ResultSetMetaData metaData = result.getMetaData();
+                String[] attrNames = new String[metaData.getColumnCount() - 1];
+                for(int i = 0; i < attrNames.length; i++) {
+                    attrNames[i] = metaData.getColumnLabel(i + 2);
+                }
+                
+                LayerBuilder builder = new LayerBuilder();
+                while(result.next()) {
+                    String[] attrs = new String[attrNames.length];
+                    for(int i = 0; i < attrs.length; i++) {
+                        attrs[i] = result.getString(i + 2);
+                    }
+                    byte[] wkb = readWkb(result.getObject(1));
+                    if(wkb == null) {
+                        continue;
+                    }
+                    try {
+                        ArrayList<Geometry> parts = Wkb.fromBytes(wkb);
+                        if(Wkb.isMulti(wkb)) {
+                            builder.addFeature(parts, attrs);
+                        } else if(!parts.isEmpty()) {
+                            builder.addFeature(parts.get(0), attrs);
+                        }
+                    } catch (IllegalArgumentException ex) {
+                        throw new SQLException("invalid geometry in row " + result.getRow(), ex);
+                    }
+                }
+                return builder.build(attrNames, null);
+            }
+        }
+    }
+    
+    /**
+     * This function converts the value of a geometry column into WKB.
+     * @param value the value of the column, e.g. an array of bytes or hexadecimal text
+     * @return the WKB or null if the value is null
+     */
+    static byte[] readWkb(Object value) {
+        if(value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        return Wkb.fromHex(value.toString());
+    }
+    
+    /**
+     * This function returns the pool of connections.
+     * @return the ConnectionPool-object
+     */
+    public ConnectionPool getConnectionPool() {
+        return this.pool;
+    }
+    
+    /**
+     * This function returns the number of tasks waiting for a free connection.
+     * @return the number of queued tasks
+     */
+    public int getCountOfQueuedTasks() {
+        return this.executor.getQueue().size();
+    }
+    
+    /**
+     * This function rejects all new tasks and closes the pool, after the
+     * queued tasks have been finished.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+    
+    private static ThreadFactory createThreadFactory() {
+        int poolNumber = POOL_NUMBER.incrementAndGet();
+        AtomicInteger threadNumber = new AtomicInteger();
+        return (runnable) -> {
+            Thread thread = new Thread(runnable, "database-" + poolNumber + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+}
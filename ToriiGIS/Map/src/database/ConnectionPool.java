@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class holds a bounded number of JDBC connections to one database.
+ * <br>Connections are opened on demand and reused after they have been
+ * released. If all connections are in use, acquire() waits until one of
+ * them is released. Idle connections are validated before they are reused.
+ * @author Christoph
+ */
+public class ConnectionPool implements AutoCloseable {
+    
+    private static final Logger LOG = Logger.getLogger(ConnectionPool.class.getName());
+    private static final int VALIDATION_TIMEOUT = 2;
+    
+    private final String url;
+    private final Properties properties;
+    private final int maxConnections;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<Connection> idleConnections = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed = false;
+
+    /**
+     * The constructor creates a pool without opening a connection.
+     * @param url the JDBC-URL of the database, e.g. jdbc:postgresql://host/name
+     * @param properties the properties of the connections, e.g. user and password
+     * @param maxConnections the maximum number of connections, greater than zero
+     */
+    public ConnectionPool(String url, Properties properties, int maxConnections) {
+        if(maxConnections < 1) {
+            throw new IllegalArgumentException("the pool needs at least one connection");
+        }
+        this.url = url;
+        this.properties = properties == null ? new Properties() : properties;
+        this.maxConnections = maxConnections;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+    
+    /**
+     * This function returns a connection, which has to be released after its usage.
+     * The caller waits, if all connections are in use.
+     * @return an open Connection-object
+     * @throws SQLException if the pool is closed, the caller is interrupted or no connection can be opened
+     */
+    public Connection acquire() throws SQLException {
+        if(this.closed) {
+            throw new SQLException("the connection pool is closed");
+        }
+        try {
+            this.permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("waiting for a connection was interrupted", ex);
+        }
+        try {
+            Connection connection;
+            while((connection = this.idleConnections.pollFirst()) != null) {
+                if(connection.isValid(VALIDATION_TIMEOUT)) {
+                    return connection;
+                }
+                closeQuietly(connection);
+            }
+            return DriverManager.getConnection(this.url, this.properties);
+        } catch (SQLException | RuntimeException ex) {
+            this.permits.release();
+            throw ex;
+        }
+    }
+    
+    /**
+     * This function gives a connection back to the pool.
+     * Open transactions are rolled back.
+     * @param connection the Connection-object returned by acquire()
+     */
+    public void release(Connection connection) {
+        try {
+            if(this.closed || connection.isClosed()) {
+                closeQuietly(connection);
+                return;
+            }
+            if(!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            this.idleConnections.addFirst(connection);
+        } catch (SQLException ex) {
+            LOG.log(Level.WARNING, "a connection could not be reset and was closed", ex);
+            closeQuietly(connection);
+        } finally {
+            this.permits.release();
+        }
+        if(this.closed) {
+            this.closeIdleConnections();
+        }
+    }
+    
+    /**
+     * This function returns the maximum number of connections.
+     * @return the number of connections, which can be used at the same time
+     */
+    public int getMaxConnections() {
+        return this.maxConnections;
+    }
+    
+    /**
+     * This function returns the JDBC-URL of the database.
+     * @return the URL as String
+     */
+    public String getUrl() {
+        return this.url;
+    }
+    
+    /**
+     * This function closes all idle connections. Connections in use are
+     * closed, when they are released.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.closeIdleConnections();
+    }
+    
+    private void closeIdleConnections() {
+        Connection connection;
+        while((connection = this.idleConnections.pollFirst()) != null) {
+            closeQuietly(connection);
+        }
+    }
+    
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            LOG.log(Level.FINE, "a connection could not be closed", ex);
+        }
+    }
+    
+}
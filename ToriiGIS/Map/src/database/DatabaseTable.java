@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package database;
+
+import io.LayerBuilder;
+import java.awt.geom.Rectangle2D;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import layer.Attributes;
+import layer.Layer;
+
+/**
+ * This class describes a table of a spatial database (PostGIS), whose
+ * features are loaded tile by tile.
+ * <br>A query of an area is split into the tiles of a regular grid. The
+ * result of every tile is taken from the QueryCache or queried in parallel
+ * from the database. Features intersecting several tiles are merged by their
+ * identifier. The names of the table and the columns and the filters are
+ * inserted into the SQL-statements as they are, i.e. they must not contain
+ * input of untrusted users.
+ * <br>Modifications of the table should be executed by executeUpdate(),
+ * which invalidates the cached tiles of the affected area. Results of queries,
+ * which ran during a modification, are not cached, because the cache rejects
+ * results of queries started before the invalidation.
+ * @author Christoph
+ */
+public class DatabaseTable {
+    
+    private final AsyncDatabase database;
+    private final String table;
+    private final String idColumn;
+    private final String geometryColumn;
+    private final String[] attrColumns;
+    private final int srid;
+    private final double tileSize;
+    private final QueryCache cache;
+
+    /**
+     * The constructor creates a new table description.
+     * @param database the AsyncDatabase-object for the queries
+     * @param table the qualified name of the table, e.g. public.roads
+     * @param idColumn the name of the column with the unique identifiers of the features
+     * @param geometryColumn the name of the geometry column
+     * @param attrColumns the names of further columns, which become attributes
+     * @param srid the spatial reference identifier of the geometry column
+     * @param tileSize the width and height of the tiles in map units
+     * @param cache the QueryCache-object or null if the results should not be cached
+     */
+    public DatabaseTable(AsyncDatabase database, String table, String idColumn, String geometryColumn,
+                         String[] attrColumns, int srid, double tileSize, QueryCache cache) {
+        if(!(tileSize > 0.0)) {
+            throw new IllegalArgumentException("the tile size must be greater than zero");
+        }
+        this.database = database;
+        this.table = table;
+        this.idColumn = idColumn;
+        this.geometryColumn = geometryColumn;
+        this.attrColumns = attrColumns.clone();
+        this.srid = srid;
+        this.tileSize = tileSize;
+        this.cache = cache;
+    }
+    
+    /**
+     * This function queries all features intersecting the given area.
+     * The result can contain further features of the tiles covering the area.
+     * Its geometries are shared with the cache and must not be modified.
+     * @param area the area of the query in the coordinates of the table
+     * @param filter a condition of the WHERE-clause, e.g. "type = 'road'", or null
+     * @return the future layer with the identifier as first attribute
+     */
+    public CompletableFuture<Layer> query(Rectangle2D area, String filter) {
+        List<CompletableFuture<Layer>> tiles = new ArrayList<>();
+        long firstColumn = (long) Math.floor(area.getMinX() / this.tileSize);
+        long lastColumn = (long) Math.floor(area.getMaxX() / this.tileSize);
+        long firstRow = (long) Math.floor(area.getMinY() / this.tileSize);
+        long lastRow = (long) Math.floor(area.getMaxY() / this.tileSize);
+        for(long row = firstRow; row <= lastRow; row++) {
+            for(long column = firstColumn; column <= lastColumn; column++) {
+                tiles.add(this.queryTile(new TileKey(this.table, this.tileSize, column, row, filter)));
+            }
+        }
+        return CompletableFuture.allOf(tiles.toArray(new CompletableFuture<?>[tiles.size()]))
+                                .thenApply((ignored) -> this.merge(tiles));
+    }
+    
+    /**
+     * This function queries the features of one tile.
+     * @param key the TileKey-object of the tile
+     * @return the future layer of the tile
+     */
+    public CompletableFuture<Layer> queryTile(TileKey key) {
+        if(this.cache == null) {
+            return this.load(key);
+        }
+        return CompletableFuture.supplyAsync(() -> this.cache.get(key))
+                                .thenCompose((layer) -> layer != null ? CompletableFuture.completedFuture(layer)
+                                                                       : this.load(key));
+    }
+    
+    /**
+     * This function executes an INSERT-, UPDATE- or DELETE-statement and
+     * invalidates the cached tiles of the affected area.
+     * @param affectedArea the envelope of all old and new geometries of the modified features, null for the whole table
+     * @param sql the statement, which may contain question marks for the parameters
+     * @param parameters the values of the parameters
+     * @return the future number of modified rows
+     */
+    public CompletableFuture<Integer> executeUpdate(Rectangle2D affectedArea, String sql, Object... parameters) {
+        return this.database.submit((connection) -> {
+            try(PreparedStatement statement = connection.prepareStatement(sql)) {
+                for(int i = 0; i < parameters.length; i++) {
+                    statement.setObject(i + 1, parameters[i]);
+                }
+                return statement.executeUpdate();
+            }
+        }).whenComplete((count, ex) -> {
+            this.invalidate(affectedArea);
+        });
+    }
+    
+    /**
+     * This function invalidates the cached tiles of an area, e.g. after the
+     * table has been modified by another application.
+     * @param area the modified area or null for the whole table
+     */
+    public void invalidate(Rectangle2D area) {
+        if(this.cache != null) {
+            this.cache.invalidate(this.table, area);
+        }
+    }
+    
+    /**
+     * This function returns the qualified name of the table.
+     * @return the name as String
+     */
+    public String getTable() {
+        return this.table;
+    }
+    
+    /**
+     * This function returns the name of the geometry column.
+     * @return the name as String
+     */
+    public String getGeometryColumn() {
+        return this.geometryColumn;
+    }
+    
+    /**
+     * This function returns the spatial reference identifier of the geometry column.
+     * @return the SRID
+     */
+    public int getSrid() {
+        return this.srid;
+    }
+    
+    /**
+     * This function returns the database of the table.
+     * @return the AsyncDatabase-object
+     */
+    public AsyncDatabase getDatabase() {
+        return this.database;
+    }
+    
+    /**
+     * This function returns the comma-separated list of the identifier and
+     * the attribute columns, e.g. for further queries of the table.
+     * @return the list as String
+     */
+    public String getColumnList() {
+        StringBuilder columns = new StringBuilder(this.idColumn);
+        for(String column : this.attrColumns) {
+            columns.append(", ").append(column);
+        }
+        return columns.toString();
+    }
+    
+    /**
+     * This function quotes the name of a column for an SQL-statement, e.g.
+     * for conditions on the attributes of the features. A quoted name is
+     * case-sensitive like the names of the attributes of a layer.
+     * @param name the name of the column
+     * @return the name in double quotes, with inner double quotes doubled
+     */
+    public String quoteIdentifier(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+    
+    private CompletableFuture<Layer> load(TileKey key) {
+        Rectangle2D envelope = key.getEnvelope();
+        String sql = "SELECT ST_AsBinary(" + this.geometryColumn + "), " + this.getColumnList()
+                     + " FROM " + this.table
+                     + " WHERE " + this.geometryColumn + " && ST_MakeEnvelope(?, ?, ?, ?, " + this.srid + ")"
+                     + (key.getFilter() == null ? "" : " AND (" + key.getFilter() + ")");
+        long stamp = this.cache == null ? 0 : this.cache.getStamp(this.table);
+        return this.database.queryLayer(sql, envelope.getMinX(), envelope.getMinY(),
+                                        envelope.getMaxX(), envelope.getMaxY())
+                            .thenApply((layer) -> {
+                                if(this.cache != null) {
+                                    this.cache.put(key, layer, stamp);
+                                }
+                                return layer;
+                            });
+    }
+    
+    private Layer merge(List<CompletableFuture<Layer>> tiles) {
+        LayerBuilder builder = new LayerBuilder();
+        HashSet<String> ids = new HashSet<>();
+        String[] attrNames = new String[0];
+        for(CompletableFuture<Layer> tile : tiles) {
+            Layer layer = tile.join();
+            Attributes attributes = layer.getAttributeTable();
+            if(attributes != null && attributes.getAttrNames().length > attrNames.length) {
+                attrNames = attributes.getAttrNames();
+            }
+            for(int i = 0; i < layer.getCountOfFeatures(); i++) {
+                String[] attrs = layer.getFeatureAttrs(i);
+                if(attrs != null && attrs.length > 0 && attrs[0] != null && !ids.add(attrs[0])) {
+                    continue;
+                }
+                if(layer.isMultiFeature(i)) {
+                    builder.addFeature(new ArrayList<>(layer.getFeatureGeometries(i)), attrs);
+                } else {
+                    builder.addFeature(layer.getFeatureGeometries(i).get(0), attrs);
+                }
+            }
+        }
+        return builder.build(attrNames, "EPSG:" + this.srid);
+    }
+    
+}
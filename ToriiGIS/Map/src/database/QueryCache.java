@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package database;
+
+import io.GeoJsonReader;
+import io.GeoJsonWriter;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import layer.Attributes;
+import layer.Layer;
+
+/**
+ * This class caches the results of tile queries in two levels.
+ * <br>The first level holds the layers in the heap. If its size limit is
+ * exceeded, the least recently used layers are written as GeoJSON files into
+ * a directory, which is the second level. If the size limit of the directory
+ * is exceeded too, the least recently used files are deleted. A layer read
+ * from a file is put into the first level again. The size of a layer in the
+ * heap is estimated from its coordinates and attribute values.
+ * <br>The cached layers are shared and must not be modified. All functions
+ * are thread-safe. The files are read, written and deleted outside of the
+ * lock of the cache, i.e. the disk does not block other threads. A layer,
+ * which is currently written, is still returned from the heap.
+ * <br>Every invalidation of a source changes its stamp. Results of queries,
+ * which started before an invalidation, can be rejected by put() with the
+ * stamp from the start of the query.
+ * @author Christoph
+ */
+public class QueryCache implements AutoCloseable {
+    
+    private static final Logger LOG = Logger.getLogger(QueryCache.class.getName());
+    private static final long FEATURE_OVERHEAD = 64;
+    
+    private final long maxHeapSize;
+    private final Path directory;
+    private final long maxDiskSize;
+    private final LinkedHashMap<TileKey, Layer> heapEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<TileKey, Long> heapSizes = new HashMap<>();
+    private final HashMap<TileKey, Layer> spillingEntries = new HashMap<>();
+    private final LinkedHashMap<TileKey, DiskEntry> diskEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<String, Long> countOfInvalidations = new HashMap<>();
+    private long countOfClears = 0;
+    private long heapSize = 0;
+    private long diskSize = 0;
+    private long countOfFiles = 0;
+    private long countOfHits = 0;
+    private long countOfMisses = 0;
+
+    /**
+     * The constructor creates a cache, which holds the layers only in the heap.
+     * @param maxHeapSize the maximum estimated size of all layers in bytes
+     */
+    public QueryCache(long maxHeapSize) {
+        this(maxHeapSize, null, 0);
+    }
+    
+    /**
+     * The constructor creates a cache with a second level on the disk.
+     * @param maxHeapSize the maximum estimated size of all layers in the heap in bytes
+     * @param directory the directory for the files of the second level, which will be created if necessary
+     * @param maxDiskSize the maximum size of all files in bytes
+     */
+    public QueryCache(long maxHeapSize, Path directory, long maxDiskSize) {
+        this.maxHeapSize = maxHeapSize;
+        this.directory = directory;
+        this.maxDiskSize = maxDiskSize;
+    }
+    
+    /**
+     * This function returns a cached layer. A file of the second level is
+     * read without holding the lock of the cache.
+     * @param key the TileKey-object of the query
+     * @return the Layer-object or null if the result of the query is not cached
+     */
+    public Layer get(TileKey key) {
+        DiskEntry entry;
+        long stamp;
+        synchronized(this) {
+            Layer layer = this.heapEntries.get(key);
+            if(layer == null) {
+                layer = this.spillingEntries.get(key);
+            }
+            if(layer != null) {
+                this.countOfHits++;
+                return layer;
+            }
+            entry = this.diskEntries.get(key);
+            if(entry == null) {
+                this.countOfMisses++;
+                return null;
+            }
+            stamp = this.getStamp(key.getSource());
+        }
+        
+        Layer layer;
+        try {
+            layer = new GeoJsonReader().read(entry.file);
+        } catch (IOException ex) {
+            boolean removed;
+            synchronized(this) {
+                this.countOfMisses++;
+                removed = this.diskEntries.remove(key, entry);
+                if(removed) {
+                    this.diskSize -= entry.size;
+                }
+            }
+            if(removed) {
+                LOG.log(Level.WARNING, "the cached tile " + entry.file + " cannot be read", ex);
+                this.deleteFile(entry.file);
+            }
+            return null;
+        }
+        
+        long size = estimateSize(layer);
+        DiskWork work = new DiskWork();
+        synchronized(this) {
+            this.countOfHits++;
+            if(this.getStamp(key.getSource()) == stamp && !this.heapEntries.containsKey(key)) {
+                this.putIntoHeap(key, layer, size, work);
+            }
+        }
+        this.complete(work);
+        return layer;
+    }
+    
+    /**
+     * This function adds the result of a query to the cache.
+     * @param key the TileKey-object of the query
+     * @param layer the Layer-object, which must not be modified afterwards
+     */
+    public void put(TileKey key, Layer layer) {
+        long size = estimateSize(layer);
+        DiskWork work = new DiskWork();
+        synchronized(this) {
+            this.store(key, layer, size, work);
+        }
+        this.complete(work);
+    }
+    
+    /**
+     * This function adds the result of a query to the cache, if the source
+     * has not been invalidated since the stamp was returned. The check and
+     * the insertion are atomic with respect to invalidate().
+     * @param key the TileKey-object of the query
+     * @param layer the Layer-object, which must not be modified afterwards
+     * @param stamp the result of getStamp() before the query has been started
+     * @return TRUE if the layer has been added
+     */
+    public boolean put(TileKey key, Layer layer, long stamp) {
+        long size = estimateSize(layer);
+        DiskWork work = new DiskWork();
+        synchronized(this) {
+            if(this.getStamp(key.getSource()) != stamp) {
+                return false;
+            }
+            this.store(key, layer, size, work);
+        }
+        this.complete(work);
+        return true;
+    }
+    
+    /**
+     * This function returns the current stamp of a source, which changes
+     * with every invalidation of the source and with clear().
+     * @param source the name of the source
+     * @return the stamp for put()
+     */
+    public synchronized long getStamp(String source) {
+        return this.countOfClears + this.countOfInvalidations.getOrDefault(source, 0L);
+    }
+    
+    /**
+     * This function removes all cached results of a source.
+     * @param source the name of the source
+     */
+    public void invalidate(String source) {
+        this.invalidate(source, null);
+    }
+    
+    /**
+     * This function removes all cached results of a source, whose tiles
+     * intersect or touch the given area, e.g. after the features of this area
+     * have been edited.
+     * @param source the name of the source
+     * @param area the edited area or null for the whole source
+     */
+    public void invalidate(String source, Rectangle2D area) {
+        DiskWork work = new DiskWork();
+        synchronized(this) {
+            this.countOfInvalidations.merge(source, 1L, Long::sum);
+            Iterator<TileKey> keys = this.heapEntries.keySet().iterator();
+            while(keys.hasNext()) {
+                TileKey key = keys.next();
+                if(isAffected(key, source, area)) {
+                    keys.remove();
+                    this.heapSize -= this.heapSizes.remove(key);
+                }
+            }
+            this.spillingEntries.keySet().removeIf((key) -> isAffected(key, source, area));
+            Iterator<Map.Entry<TileKey, DiskEntry>> files = this.diskEntries.entrySet().iterator();
+            while(files.hasNext()) {
+                Map.Entry<TileKey, DiskEntry> entry = files.next();
+                if(isAffected(entry.getKey(), source, area)) {
+                    files.remove();
+                    this.diskSize -= entry.getValue().size;
+                    work.obsoleteFiles.add(entry.getValue().file);
+                }
+            }
+        }
+        this.complete(work);
+    }
+    
+    /**
+     * This function removes all cached results and deletes the files.
+     */
+    public void clear() {
+        DiskWork work = new DiskWork();
+        synchronized(this) {
+            this.countOfClears++;
+            this.heapEntries.clear();
+            this.heapSizes.clear();
+            this.heapSize = 0;
+            this.spillingEntries.clear();
+            this.diskEntries.values().forEach((entry) -> {
+                work.obsoleteFiles.add(entry.file);
+            });
+            this.diskEntries.clear();
+            this.diskSize = 0;
+        }
+        this.complete(work);
+    }
+    
+    /**
+     * This function removes all cached results and deletes the files.
+     */
+    @Override
+    public void close() {
+        this.clear();
+    }
+    
+    /**
+     * This function returns the estimated size of the layers in the heap.
+     * @return the size in bytes
+     */
+    public synchronized long getHeapSize() {
+        return this.heapSize;
+    }
+    
+    /**
+     * This function returns the size of the files on the disk.
+     * @return the size in bytes
+     */
+    public synchronized long getDiskSize() {
+        return this.diskSize;
+    }
+    
+    /**
+     * This function returns the number of successful calls of get().
+     * @return the number of hits
+     */
+    public synchronized long getCountOfHits() {
+        return this.countOfHits;
+    }
+    
+    /**
+     * This function returns the number of calls of get() returning null.
+     * @return the number of misses
+     */
+    public synchronized long getCountOfMisses() {
+        return this.countOfMisses;
+    }
+    
+    /**
+     * This function estimates the size of a layer in the heap.
+     * @param layer the Layer-object
+     * @return the estimated size in bytes
+     */
+    static long estimateSize(Layer layer) {
+        long size = layer.getCoordinateStorageSize() + FEATURE_OVERHEAD * layer.getCountOfFeatures();
+        Attributes attributes = layer.getAttributeTable();
+        if(attributes != null) {
+            for(int i = 0; i < attributes.size(); i++) {
+                for(String value : attributes.getAttrs(i)) {
+                    size += value == null ? 8 : 40 + 2 * value.length();
+                }
+            }
+        }
+        return size;
+    }
+    
+    private void store(TileKey key, Layer layer, long size, DiskWork work) {
+        this.spillingEntries.remove(key);
+        DiskEntry entry = this.diskEntries.remove(key);
+        if(entry != null) {
+            this.diskSize -= entry.size;
+            work.obsoleteFiles.add(entry.file);
+        }
+        this.putIntoHeap(key, layer, size, work);
+    }
+    
+    private void putIntoHeap(TileKey key, Layer layer, long size, DiskWork work) {
+        Long oldSize = this.heapSizes.put(key, size);
+        this.heapSize += size - (oldSize == null ? 0 : oldSize);
+        this.heapEntries.put(key, layer);
+        
+        //move the least recently used layers to the disk after releasing the lock
+        Iterator<Map.Entry<TileKey, Layer>> entries = this.heapEntries.entrySet().iterator();
+        while(this.heapSize > this.maxHeapSize && entries.hasNext()) {
+            Map.Entry<TileKey, Layer> eldest = entries.next();
+            entries.remove();
+            this.heapSize -= this.heapSizes.remove(eldest.getKey());
+            if(this.directory != null && this.maxDiskSize > 0 && !this.diskEntries.containsKey(eldest.getKey())) {
+                Path file = this.directory.resolve("tile-" + (++this.countOfFiles) + ".geojson");
+                this.spillingEntries.put(eldest.getKey(), eldest.getValue());
+                work.spills.add(new Spill(eldest.getKey(), eldest.getValue(), file));
+            }
+        }
+    }
+    
+    /**
+     * This function executes the file operations collected under the lock.
+     */
+    private void complete(DiskWork work) {
+        work.obsoleteFiles.forEach((file) -> {
+            this.deleteFile(file);
+        });
+        work.spills.forEach((spill) -> {
+            this.spill(spill);
+        });
+    }
+    
+    private void spill(Spill spill) {
+        long size;
+        try {
+            Files.createDirectories(this.directory);
+            new GeoJsonWriter().write(spill.layer, spill.file);
+            size = Files.size(spill.file);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "the tile " + spill.key + " cannot be written to " + spill.file, ex);
+            synchronized(this) {
+                this.spillingEntries.remove(spill.key, spill.layer);
+            }
+            this.deleteFile(spill.file);
+            return;
+        }
+        
+        ArrayList<Path> obsoleteFiles = new ArrayList<>();
+        synchronized(this) {
+            if(!this.spillingEntries.remove(spill.key, spill.layer)) {
+                //the tile was replaced or invalidated during writing
+                obsoleteFiles.add(spill.file);
+            } else {
+                this.diskEntries.put(spill.key, new DiskEntry(spill.file, size));
+                this.diskSize += size;
+                Iterator<DiskEntry> entries = this.diskEntries.values().iterator();
+                while(this.diskSize > this.maxDiskSize && entries.hasNext()) {
+                    DiskEntry eldest = entries.next();
+                    entries.remove();
+                    this.diskSize -= eldest.size;
+                    obsoleteFiles.add(eldest.file);
+                }
+            }
+        }
+        obsoleteFiles.forEach((file) -> {
+            this.deleteFile(file);
+        });
+    }
+    
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "the cached tile " + file + " cannot be deleted", ex);
+        }
+    }
+    
+    private static boolean isAffected(TileKey key, String source, Rectangle2D area) {
+        if(!key.getSource().equals(source)) {
+            return false;
+        }
+        if(area == null) {
+            return true;
+        }
+        Rectangle2D tile = key.getEnvelope();
+        return tile.getMinX() <= area.getMaxX() && area.getMinX() <= tile.getMaxX()
+                && tile.getMinY() <= area.getMaxY() && area.getMinY() <= tile.getMaxY();
+    }
+    
+    /**
+     * This class describes a file of the second level with its size.
+     */
+    private static final class DiskEntry {
+        
+        private final Path file;
+        private final long size;
+        
+        private DiskEntry(Path file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+        
+    }
+    
+    /**
+     * This class describes a layer, which has to be written into a file.
+     */
+    private static final class Spill {
+        
+        private final TileKey key;
+        private final Layer layer;
+        private final Path file;
+        
+        private Spill(TileKey key, Layer layer, Path file) {
+            this.key = key;
+            this.layer = layer;
+            this.file = file;
+        }
+        
+    }
+    
+    /**
+     * This class collects the file operations, which are executed after
+     * releasing the lock of the cache.
+     */
+    private static final class DiskWork {
+        
+        private final ArrayList<Path> obsoleteFiles = new ArrayList<>();
+        private final ArrayList<Spill> spills = new ArrayList<>();
+        
+    }
+    
+}
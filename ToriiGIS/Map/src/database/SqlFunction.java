@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * This interface describes a task, which uses a connection of the database.
+ * @author Christoph
+ * @param <T> the type of the result
+ */
+@FunctionalInterface
+public interface SqlFunction<T> {
+    
+    /**
+     * This function performs the task.
+     * The connection must not be closed or stored by the task.
+     * @param connection the connection of the pool
+     * @return the result of the task
+     * @throws SQLException if an access of the database fails
+     */
+    public T apply(Connection connection) throws SQLException;
+    
+}
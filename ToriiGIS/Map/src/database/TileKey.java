@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package database;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Objects;
+
+/**
+ * This class identifies the result of a query for one tile of a regular
+ * grid, i.e. the features of a source, which intersect a square of the grid
+ * and match an optional filter.
+ * @author Christoph
+ */
+public final class TileKey {
+    
+    private final String source;
+    private final double tileSize;
+    private final long column;
+    private final long row;
+    private final String filter;
+
+    /**
+     * The constructor creates a new key.
+     * @param source the name of the source, e.g. the qualified name of a table
+     * @param tileSize the width and height of the tiles in map units
+     * @param column the column of the tile, counted from x = 0
+     * @param row the row of the tile, counted from y = 0
+     * @param filter the condition of the query or null
+     */
+    public TileKey(String source, double tileSize, long column, long row, String filter) {
+        this.source = source;
+        this.tileSize = tileSize;
+        this.column = column;
+        this.row = row;
+        this.filter = filter;
+    }
+    
+    /**
+     * This function returns the name of the source.
+     * @return the name as String
+     */
+    public String getSource() {
+        return this.source;
+    }
+    
+    /**
+     * This function returns the filter of the query.
+     * @return the condition as String or null
+     */
+    public String getFilter() {
+        return this.filter;
+    }
+    
+    /**
+     * This function returns the area covered by the tile.
+     * @return a new Rectangle2D-object
+     */
+    public Rectangle2D getEnvelope() {
+        return new Rectangle2D.Double(this.column * this.tileSize, this.row * this.tileSize,
+                                      this.tileSize, this.tileSize);
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj) {
+            return true;
+        }
+        if(!(obj instanceof TileKey)) {
+            return false;
+        }
+        TileKey other = (TileKey) obj;
+        return this.column == other.column && this.row == other.row
+                && Double.compare(this.tileSize, other.tileSize) == 0
+                && this.source.equals(other.source) && Objects.equals(this.filter, other.filter);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.source, this.tileSize, this.column, this.row, this.filter);
+    }
+    
+    @Override
+    public String toString() {
+        return "TileKey{source=" + this.source + ", tileSize=" + this.tileSize + ", column=" + this.column
+                + ", row=" + this.row + ", filter=" + this.filter + "}";
+    }
+    
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class buffers binary and textual output for a channel.
+ * <br>All values are collected in a direct ByteBuffer, which will be written
+ * to the channel, when it is full. This way, large layers can be written
+ * without holding the whole output in memory.
+ * @author Christoph
+ */
+public class ChannelOutput {
+    
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private long position;
+
+    /**
+     * The constructor of this class.
+     * @param channel the channel, where the output will be written to
+     * @param order the byte order for all numeric values
+     */
+    public ChannelOutput(WritableByteChannel channel, ByteOrder order) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(order);
+        this.position = 0;
+    }
+    
+    /**
+     * This function makes sure, that the buffer has space for the given number of bytes.
+     * @param count the number of bytes
+     * @throws IOException if the buffer cannot be written to the channel
+     */
+    private void ensureCapacity(int count) throws IOException {
+        if(this.buffer.remaining() < count) {
+            this.flush();
+        }
+    }
+    
+    /**
+     * This function writes one byte.
+     * @param value the byte as int value
+     * @throws IOException if the buffer cannot be written to the channel
+     */
+    public void writeByte(int value) throws IOException {
+        this.ensureCapacity(1);
+        this.buffer.put((byte) value);
+        this.position += 1;
+    }
+    
+    /**
+     * This function writes a 16 bit integer.
+     * @param value the value as int
+     * @throws IOException if the buffer cannot be written to the channel
+     */
+    public void writeShort(int value) throws IOException {
+        this.ensureCapacity(2);
+        this.buffer.putShort((short) value);
+        this.position += 2;
+    }
+    
+    /**
+     * This function writes a 32 bit integer.
+     * @param value the value as int
+     * @throws IOException if the buffer cannot be written to the channel
+     */
+    public void writeInt(int value) throws IOException {
+        this.ensureCapacity(4);
+        this.buffer.putInt(value);
+        this.position += 4;
+    }
+    
+    /**
+     * This function writes a 64 bit integer.
+     * @param value the value as long
+     * @throws IOException if the buffer cannot be written to the channel
+     */
+    public void writeLong(long value) throws IOException {
+        this.ensureCapacity(8);
+        this.buffer.putLong(value);
+        this.position += 8;
+    }
+    
+    /**
+     * This function writes a double value.
+     * @param value the value as double
+     * @throws IOException if the buffer cannot be written to the channel
+     */
+    public void writeDouble(double value) throws IOException {
+        this.ensureCapacity(8);
+        this.buffer.putDouble(value);
+        this.position += 8;
+    }
+    
+    /**
+     * This function writes an array of bytes.
+     * Arrays larger than the buffer are written directly to the channel.
+     * @param bytes the bytes to write
+     * @throws IOException if the bytes cannot be written to the channel
+     */
+    public void writeBytes(byte[] bytes) throws IOException {
+        if(bytes.length > this.buffer.capacity()) {
+            this.flush();
+            ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+            while(wrapped.hasRemaining()) {
+                this.channel.write(wrapped);
+            }
+        } else {
+            this.ensureCapacity(bytes.length);
+            this.buffer.put(bytes);
+        }
+        this.position += bytes.length;
+    }
+    
+    /**
+     * This function writes a String encoded as UTF-8 (without a length prefix).
+     * @param text the String to write
+     * @throws IOException if the text cannot be written to the channel
+     */
+    public void writeString(String text) throws IOException {
+        this.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * This function returns the number of bytes written since the creation
+     * of this object.
+     * @return the number of bytes as long value
+     */
+    public long getPosition() {
+        return this.position;
+    }
+    
+    /**
+     * This function writes the content of the buffer to the channel.
+     * The channel itself will not be closed.
+     * @throws IOException if the buffer cannot be written to the channel
+     */
+    public void flush() throws IOException {
+        this.buffer.flip();
+        while(this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+    
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.util.List;
+import layer.Circle;
+import layer.CoordinateDimension;
+import layer.Geometry;
+import layer.Layer;
+import layer.Line;
+import layer.Point;
+import layer.Polygon;
+import layer.VertexSequence;
+
+/**
+ * This class contains helper functions for reading and writing the features
+ * of a layer. The type codes correspond to the geometry types of the
+ * Simple Features specification, which are used by WKB and FlatGeobuf.
+ * @author Christoph
+ */
+final class Features {
+    
+    static final int UNKNOWN = 0;
+    static final int POINT = 1;
+    static final int LINESTRING = 2;
+    static final int POLYGON = 3;
+    static final int MULTIPOINT = 4;
+    static final int MULTILINESTRING = 5;
+    static final int MULTIPOLYGON = 6;
+    static final int GEOMETRYCOLLECTION = 7;
+    
+    /**
+     * The number of vertices used to approximate circles, which are not
+     * supported by the Simple Features specification.
+     */
+    static final int CIRCLE_SEGMENTS = 64;
+
+    private Features() {
+    }
+    
+    /**
+     * This function converts a geometry into a geometry of the Simple Features
+     * specification, i.e. circles will be approximated by polygons.
+     * @param geom the Geometry-object
+     * @return the given geometry or its approximation
+     */
+    static Geometry toSimpleGeometry(Geometry geom) {
+        if(geom instanceof Circle) {
+            return ((Circle) geom).toPolygon(CIRCLE_SEGMENTS);
+        }
+        return geom;
+    }
+    
+    /**
+     * This function returns the type code of a single geometry.
+     * @param geom the Geometry-object
+     * @return POINT, LINESTRING, POLYGON or UNKNOWN
+     */
+    static int typeOf(Geometry geom) {
+        if(geom instanceof Point) {
+            return POINT;
+        }
+        if(geom instanceof Line) {
+            return LINESTRING;
+        }
+        if(geom instanceof Polygon || geom instanceof Circle) {
+            return POLYGON;
+        }
+        return UNKNOWN;
+    }
+    
+    /**
+     * This function returns the type code of a feature.
+     * @param parts the geometries of the feature
+     * @param multi TRUE, if the feature is a multi-geometry
+     * @return the type code of the feature
+     */
+    static int typeOf(List<Geometry> parts, boolean multi) {
+        if(!multi) {
+            return typeOf(parts.get(0));
+        }
+        int partType = parts.isEmpty() ? UNKNOWN : typeOf(parts.get(0));
+        for(Geometry part : parts) {
+            if(typeOf(part) != partType) {
+                return GEOMETRYCOLLECTION;
+            }
+        }
+        return partType == UNKNOWN ? GEOMETRYCOLLECTION : partType + 3;
+    }
+    
+    /**
+     * This function returns the information, wether at least one vertice
+     * of the layer has a Z-coordinate other than zero.
+     * @param layer the Layer-object
+     * @return TRUE if the layer is three-dimensional, otherwise FALSE
+     */
+    static boolean hasZ(Layer layer) {
+        for(int i = 0; i < layer.getCountOfFeatures(); i++) {
+            for(Geometry geom : layer.getFeatureGeometries(i)) {
+                if(hasZ(geom)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * This function returns the information, wether at least one vertice
+     * of the geometry has a Z-coordinate other than zero.
+     * @param geom the Geometry-object
+     * @return TRUE if the geometry is three-dimensional, otherwise FALSE
+     */
+    private static boolean hasZ(Geometry geom) {
+        if(geom instanceof Point) {
+            return ((Point) geom).getZCoord() != 0.0;
+        }
+        if(geom instanceof Circle) {
+            return ((Circle) geom).getCentrePoint().getZCoord() != 0.0;
+        }
+        if(geom instanceof VertexSequence && ((VertexSequence) geom).getDimension() == CoordinateDimension.XYZ) {
+            VertexSequence vertices = (VertexSequence) geom;
+            for(int i = 0; i < vertices.getCountOfVertices(); i++) {
+                if(vertices.getVerticeZ(i) != 0.0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * This function returns the number of coordinates, which are written for
+     * a geometry. Rings of polygons are closed, i.e. the first vertice is repeated.
+     * @param geom a Point-, Line- or Polygon-object
+     * @return the number of coordinates
+     */
+    static int countOfCoordinates(Geometry geom) {
+        if(geom instanceof VertexSequence) {
+            VertexSequence vertices = (VertexSequence) geom;
+            int count = vertices.getCountOfVertices();
+            return (vertices.isClosed() && count > 0) ? count + 1 : count;
+        }
+        return 1;
+    }
+    
+}
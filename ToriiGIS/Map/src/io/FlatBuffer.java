@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class encodes tables into the FlatBuffers format, which is used
+ * by FlatGeobuf for the header and the features.
+ * <br>The buffer is written from front to back: every table is preceded by
+ * its vtable, and all strings, vectors and sub-tables follow the table, which
+ * references them. Only the field types needed by FlatGeobuf are supported.
+ * @author Christoph
+ */
+final class FlatBuffer {
+    
+    private static final int UBYTE = 0;
+    private static final int USHORT = 1;
+    private static final int INT = 2;
+    private static final int ULONG = 3;
+    private static final int STRING = 4;
+    private static final int DOUBLES = 5;
+    private static final int UINTS = 6;
+    private static final int UBYTES = 7;
+    private static final int TABLE = 8;
+    private static final int TABLES = 9;
+    
+    private ByteBuffer buffer;
+
+    private FlatBuffer() {
+        this.buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * This function encodes a table as root of a new buffer.
+     * @param root the Table-object
+     * @return an array of bytes containing the FlatBuffer
+     */
+    static byte[] encode(Table root) {
+        FlatBuffer flatBuffer = new FlatBuffer();
+        flatBuffer.putInt(0);
+        int rootPosition = flatBuffer.writeTable(root);
+        flatBuffer.buffer.putInt(0, rootPosition);
+        flatBuffer.align(8);
+        return Arrays.copyOf(flatBuffer.buffer.array(), flatBuffer.buffer.position());
+    }
+    
+    /**
+     * This function writes a table and all objects referenced by it.
+     * @param table the Table-object
+     * @return the position of the table in the buffer
+     */
+    private int writeTable(Table table) {
+        int countOfSlots = 0;
+        for(Field field : table.fields) {
+            countOfSlots = Math.max(countOfSlots, field.id + 1);
+        }
+        
+        this.align(2);
+        int vtablePosition = this.buffer.position();
+        for(int i = 0; i < 2 + countOfSlots; i++) {
+            this.putShort(0);
+        }
+        
+        this.align(4);
+        int tablePosition = this.buffer.position();
+        this.putInt(tablePosition - vtablePosition);
+        int[] fieldPositions = new int[table.fields.size()];
+        for(int i = 0; i < table.fields.size(); i++) {
+            Field field = table.fields.get(i);
+            int size = inlineSize(field.kind);
+            this.align(size);
+            fieldPositions[i] = this.buffer.position();
+            this.buffer.putShort(vtablePosition + 4 + 2 * field.id, (short) (fieldPositions[i] - tablePosition));
+            switch(field.kind) {
+                case UBYTE: this.putByte(((Number) field.value).intValue()); break;
+                case USHORT: this.putShort(((Number) field.value).intValue()); break;
+                case INT: this.putInt(((Number) field.value).intValue()); break;
+                case ULONG: this.putLong(((Number) field.value).longValue()); break;
+                default: this.putInt(0); break;
+            }
+        }
+        this.buffer.putShort(vtablePosition, (short) (4 + 2 * countOfSlots));
+        this.buffer.putShort(vtablePosition + 2, (short) (this.buffer.position() - tablePosition));
+        
+        for(int i = 0; i < table.fields.size(); i++) {
+            Field field = table.fields.get(i);
+            if(field.kind >= STRING) {
+                int childPosition = this.writeChild(field);
+                this.buffer.putInt(fieldPositions[i], childPosition - fieldPositions[i]);
+            }
+        }
+        return tablePosition;
+    }
+    
+    /**
+     * This function writes a string, a vector or a sub-table.
+     * @param field the field referencing the object
+     * @return the position of the object in the buffer
+     */
+    private int writeChild(Field field) {
+        int position;
+        switch(field.kind) {
+            case STRING: {
+                byte[] bytes = (byte[]) field.value;
+                this.align(4);
+                position = this.buffer.position();
+                this.putInt(bytes.length);
+                this.putBytes(bytes, bytes.length);
+                this.putByte(0);
+                return position;
+            }
+            case DOUBLES: {
+                double[] values = (double[]) field.value;
+                this.align(4);
+                if(this.buffer.position() % 8 != 4) {
+                    this.putInt(0);
+                }
+                position = this.buffer.position();
+                this.putInt(field.count);
+                this.ensureCapacity(8 * field.count);
+                for(int i = 0; i < field.count; i++) {
+                    this.buffer.putDouble(values[i]);
+                }
+                return position;
+            }
+            case UINTS: {
+                int[] values = (int[]) field.value;
+                this.align(4);
+                position = this.buffer.position();
+                this.putInt(field.count);
+                this.ensureCapacity(4 * field.count);
+                for(int i = 0; i < field.count; i++) {
+                    this.buffer.putInt(values[i]);
+                }
+                return position;
+            }
+            case UBYTES: {
+                this.align(4);
+                position = this.buffer.position();
+                this.putInt(field.count);
+                this.putBytes((byte[]) field.value, field.count);
+                return position;
+            }
+            case TABLE:
+                return this.writeTable((Table) field.value);
+            default: {
+                @SuppressWarnings("unchecked")
+                List<Table> tables = (List<Table>) field.value;
+                this.align(4);
+                position = this.buffer.position();
+                this.putInt(tables.size());
+                int offsetsPosition = this.buffer.position();
+                for(int i = 0; i < tables.size(); i++) {
+                    this.putInt(0);
+                }
+                for(int i = 0; i < tables.size(); i++) {
+                    int slot = offsetsPosition + 4 * i;
+                    this.buffer.putInt(slot, this.writeTable(tables.get(i)) - slot);
+                }
+                return position;
+            }
+        }
+    }
+    
+    /**
+     * This function returns the number of bytes, which a field occupies inside a table.
+     * @param kind the kind of the field
+     * @return the size in bytes
+     */
+    private static int inlineSize(int kind) {
+        switch(kind) {
+            case UBYTE: return 1;
+            case USHORT: return 2;
+            case ULONG: return 8;
+            default: return 4;
+        }
+    }
+    
+    private void ensureCapacity(int count) {
+        if(this.buffer.remaining() < count) {
+            int capacity = Math.max(this.buffer.capacity() * 2, this.buffer.position() + count);
+            ByteBuffer larger = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            this.buffer.flip();
+            larger.put(this.buffer);
+            this.buffer = larger;
+        }
+    }
+    
+    private void align(int size) {
+        while(this.buffer.position() % size != 0) {
+            this.putByte(0);
+        }
+    }
+    
+    private void putByte(int value) {
+        this.ensureCapacity(1);
+        this.buffer.put((byte) value);
+    }
+    
+    private void putShort(int value) {
+        this.ensureCapacity(2);
+        this.buffer.putShort((short) value);
+    }
+    
+    private void putInt(int value) {
+        this.ensureCapacity(4);
+        this.buffer.putInt(value);
+    }
+    
+    private void putLong(long value) {
+        this.ensureCapacity(8);
+        this.buffer.putLong(value);
+    }
+    
+    private void putBytes(byte[] bytes, int count) {
+        this.ensureCapacity(count);
+        this.buffer.put(bytes, 0, count);
+    }
+    
+    /**
+     * This class describes one field of a table.
+     */
+    private static final class Field {
+        
+        final int id;
+        final int kind;
+        final Object value;
+        final int count;
+
+        Field(int id, int kind, Object value, int count) {
+            this.id = id;
+            this.kind = kind;
+            this.value = value;
+            this.count = count;
+        }
+        
+    }
+    
+    /**
+     * This class describes a table, which will be encoded. The fields are
+     * identified by their zero-based id in the FlatBuffers schema.
+     */
+    static final class Table {
+        
+        private final ArrayList<Field> fields = new ArrayList<>();
+        
+        Table addUByte(int id, int value) {
+            this.fields.add(new Field(id, UBYTE, value, 0));
+            return this;
+        }
+        
+        Table addBool(int id, boolean value) {
+            return this.addUByte(id, value ? 1 : 0);
+        }
+        
+        Table addUShort(int id, int value) {
+            this.fields.add(new Field(id, USHORT, value, 0));
+            return this;
+        }
+        
+        Table addInt(int id, int value) {
+            this.fields.add(new Field(id, INT, value, 0));
+            return this;
+        }
+        
+        Table addULong(int id, long value) {
+            this.fields.add(new Field(id, ULONG, value, 0));
+            return this;
+        }
+        
+        Table addString(int id, String value) {
+            if(value != null) {
+                this.fields.add(new Field(id, STRING, value.getBytes(StandardCharsets.UTF_8), 0));
+            }
+            return this;
+        }
+        
+        Table addDoubles(int id, double[] values, int count) {
+            this.fields.add(new Field(id, DOUBLES, values, count));
+            return this;
+        }
+        
+        Table addUInts(int id, int[] values, int count) {
+            this.fields.add(new Field(id, UINTS, values, count));
+            return this;
+        }
+        
+        Table addUBytes(int id, byte[] values, int count) {
+            this.fields.add(new Field(id, UBYTES, values, count));
+            return this;
+        }
+        
+        Table addTable(int id, Table value) {
+            this.fields.add(new Field(id, TABLE, value, 0));
+            return this;
+        }
+        
+        Table addTables(int id, List<Table> values) {
+            this.fields.add(new Field(id, TABLES, values, 0));
+            return this;
+        }
+        
+    }
+    
+}
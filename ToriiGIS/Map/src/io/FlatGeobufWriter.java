@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import layer.Attributes;
+import layer.Geometry;
+import layer.Layer;
+import layer.Point;
+import layer.VertexCursor;
+import layer.VertexSequence;
+
+/**
+ * This class exports a layer as FlatGeobuf file with a packed Hilbert R-tree.
+ * <br>The features are sorted by the Hilbert value of the centres of their
+ * envelopes and streamed into a temporary file first. Afterwards the header
+ * and the spatial index, which needs the offsets of the features, are written
+ * to the channel and the features are transferred from the temporary file.
+ * All attributes are written as String columns.
+ * @author Christoph
+ */
+public class FlatGeobufWriter implements LayerWriter {
+    
+    private static final byte[] MAGIC_BYTES = {0x66, 0x67, 0x62, 0x03, 0x66, 0x67, 0x62, 0x00};
+    private static final int NODE_SIZE = 16;
+    private static final int COLUMN_TYPE_STRING = 11;
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+    
+    private final VertexCursor cursor = new VertexCursor();
+
+    /**
+     * This function writes the layer as FlatGeobuf to the channel.
+     * @param layer the Layer-object to export
+     * @param channel the channel for the output
+     * @throws IOException if the layer cannot be written
+     */
+    @Override
+    public void write(Layer layer, WritableByteChannel channel) throws IOException {
+        int countOfFeatures = layer.getCountOfFeatures();
+        boolean hasZ = Features.hasZ(layer);
+        Attributes attributes = layer.getAttributeTable();
+        String[] attrNames = attributes == null ? new String[0] : attributes.getAttrNames();
+        
+        //sort the features along the Hilbert curve
+        Rectangle2D[] envelopes = new Rectangle2D[countOfFeatures];
+        Rectangle2D extent = null;
+        for(int i = 0; i < countOfFeatures; i++) {
+            envelopes[i] = this.envelopeOf(layer.getFeatureGeometries(i));
+            if(extent == null) {
+                extent = (Rectangle2D) envelopes[i].clone();
+            } else {
+                extent.add(envelopes[i]);
+            }
+        }
+        long[] order = new long[countOfFeatures];
+        for(int i = 0; i < countOfFeatures; i++) {
+            order[i] = (this.hilbertValue(envelopes[i], extent) << 32) | i;
+        }
+        Arrays.sort(order);
+        
+        //stream the sorted features into a temporary file
+        long[] offsets = new long[countOfFeatures];
+        Path featureFile = Files.createTempFile("fujigis", ".fgb");
+        try {
+            try(FileChannel featureChannel = FileChannel.open(featureFile, StandardOpenOption.WRITE)) {
+                ChannelOutput featureOut = new ChannelOutput(featureChannel, ByteOrder.LITTLE_ENDIAN);
+                for(int i = 0; i < countOfFeatures; i++) {
+                    int featureIndex = (int) order[i];
+                    offsets[i] = featureOut.getPosition();
+                    byte[] feature = FlatBuffer.encode(this.createFeature(layer, featureIndex, attrNames.length, hasZ));
+                    featureOut.writeInt(feature.length);
+                    featureOut.writeBytes(feature);
+                }
+                featureOut.flush();
+            }
+            
+            //write header and index, then append the features
+            ChannelOutput out = new ChannelOutput(channel, ByteOrder.LITTLE_ENDIAN);
+            out.writeBytes(MAGIC_BYTES);
+            byte[] header = FlatBuffer.encode(this.createHeader(layer, extent, attrNames, countOfFeatures, hasZ));
+            out.writeInt(header.length);
+            out.writeBytes(header);
+            if(countOfFeatures > 0) {
+                this.writeIndex(envelopes, order, offsets, out);
+            }
+            out.flush();
+            try(FileChannel featureChannel = FileChannel.open(featureFile, StandardOpenOption.READ)) {
+                long position = 0;
+                long size = featureChannel.size();
+                while(position < size) {
+                    position += featureChannel.transferTo(position, size - position, channel);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(featureFile);
+        }
+    }
+    
+    /**
+     * This function returns the envelope of all geometries of a feature.
+     * @param parts the geometries of the feature
+     * @return a Rectangle2D-object
+     */
+    private Rectangle2D envelopeOf(List<Geometry> parts) {
+        Rectangle2D envelope = null;
+        for(Geometry part : parts) {
+            if(envelope == null) {
+                envelope = part.getEnvelope();
+            } else {
+                envelope.add(part.getEnvelope());
+            }
+        }
+        return envelope == null ? new Rectangle2D.Double() : envelope;
+    }
+    
+    /**
+     * This function calculates the position of the centre of an envelope
+     * on a Hilbert curve covering the extent of the layer.
+     * @param envelope the envelope of a feature
+     * @param extent the envelope of the whole layer
+     * @return the Hilbert value as unsigned 32 bit integer
+     */
+    private long hilbertValue(Rectangle2D envelope, Rectangle2D extent) {
+        double width = extent.getWidth() > 0.0 ? extent.getWidth() : 1.0;
+        double height = extent.getHeight() > 0.0 ? extent.getHeight() : 1.0;
+        int x = (int) Math.floor(HILBERT_MAX * (envelope.getCenterX() - extent.getMinX()) / width);
+        int y = (int) Math.floor(HILBERT_MAX * (envelope.getCenterY() - extent.getMinY()) / height);
+        return hilbert(x, y) & 0xFFFFFFFFL;
+    }
+    
+    /**
+     * This function calculates the Hilbert value of a position in a grid
+     * of 2^16 x 2^16 cells (algorithm by rawrunprotected, as used by FlatGeobuf).
+     * @param x the column of the cell
+     * @param y the row of the cell
+     * @return the Hilbert value as 32 bit integer
+     */
+    static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int aa = a | (b >> 1);
+        int bb = (a >> 1) ^ a;
+        int cc = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+        int dd = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+        a = aa; b = bb; c = cc; d = dd;
+        aa = (a & (a >> 2)) ^ (b & (b >> 2));
+        bb = (a & (b >> 2)) ^ (b & ((a ^ b) >> 2));
+        cc ^= (a & (c >> 2)) ^ (b & (d >> 2));
+        dd ^= (b & (c >> 2)) ^ ((a ^ b) & (d >> 2));
+
+        a = aa; b = bb; c = cc; d = dd;
+        aa = (a & (a >> 4)) ^ (b & (b >> 4));
+        bb = (a & (b >> 4)) ^ (b & ((a ^ b) >> 4));
+        cc ^= (a & (c >> 4)) ^ (b & (d >> 4));
+        dd ^= (b & (c >> 4)) ^ ((a ^ b) & (d >> 4));
+
+        a = aa; b = bb; c = cc; d = dd;
+        cc ^= (a & (c >> 8)) ^ (b & (d >> 8));
+        dd ^= (b & (c >> 8)) ^ ((a ^ b) & (d >> 8));
+
+        a = cc ^ (cc >> 1);
+        b = dd ^ (dd >> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return (i1 << 1) | i0;
+    }
+    
+    /**
+     * This function creates the header of the file.
+     * @param layer the exported layer
+     * @param extent the envelope of all features
+     * @param attrNames the names of the attributes
+     * @param countOfFeatures the number of features
+     * @param hasZ TRUE, if the Z-coordinates are written
+     * @return the header as Table-object
+     */
+    private FlatBuffer.Table createHeader(Layer layer, Rectangle2D extent, String[] attrNames,
+                                          int countOfFeatures, boolean hasZ) {
+        FlatBuffer.Table header = new FlatBuffer.Table();
+        if(extent != null) {
+            double[] bounds = {extent.getMinX(), extent.getMinY(), extent.getMaxX(), extent.getMaxY()};
+            header.addDoubles(1, bounds, bounds.length);
+        }
+        header.addUByte(2, this.layerType(layer));
+        header.addBool(3, hasZ);
+        
+        List<FlatBuffer.Table> columns = new ArrayList<>();
+        for(String attrName : attrNames) {
+            columns.add(new FlatBuffer.Table().addString(0, attrName).addUByte(1, COLUMN_TYPE_STRING));
+        }
+        header.addTables(7, columns);
+        header.addULong(8, countOfFeatures);
+        header.addUShort(9, countOfFeatures > 0 ? NODE_SIZE : 0);
+        
+        if(layer.getCrs() != null) {
+            FlatBuffer.Table crs = new FlatBuffer.Table();
+            String code = layer.getCrs().replaceFirst("(?i)^EPSG:", "");
+            try {
+                crs.addString(0, "EPSG").addInt(1, Integer.parseInt(code));
+            } catch (NumberFormatException ex) {
+                crs.addString(5, layer.getCrs());
+            }
+            header.addTable(10, crs);
+        }
+        return header;
+    }
+    
+    /**
+     * This function returns the geometry type of the whole layer.
+     * @param layer the Layer-object
+     * @return the type code, or UNKNOWN if the features have different types
+     */
+    private int layerType(Layer layer) {
+        int type = Features.UNKNOWN;
+        for(int i = 0; i < layer.getCountOfFeatures(); i++) {
+            int featureType = Features.typeOf(layer.getFeatureGeometries(i), layer.isMultiFeature(i));
+            if(i == 0) {
+                type = featureType;
+            } else if(type != featureType) {
+                return Features.UNKNOWN;
+            }
+        }
+        return type;
+    }
+    
+    /**
+     * This function creates one feature with its geometry and its properties.
+     * @param layer the exported layer
+     * @param featureIndex the zero-based index of the feature
+     * @param countOfColumns the number of attribute columns
+     * @param hasZ TRUE, if the Z-coordinates are written
+     * @return the feature as Table-object
+     */
+    private FlatBuffer.Table createFeature(Layer layer, int featureIndex, int countOfColumns, boolean hasZ) {
+        FlatBuffer.Table feature = new FlatBuffer.Table();
+        feature.addTable(0, this.createGeometry(layer.getFeatureGeometries(featureIndex),
+                                                layer.isMultiFeature(featureIndex), hasZ));
+        
+        String[] attrs = layer.getFeatureAttrs(featureIndex);
+        if(attrs != null) {
+            ByteArrayOutputStream properties = new ByteArrayOutputStream();
+            for(int j = 0; j < countOfColumns && j < attrs.length; j++) {
+                if(attrs[j] != null) {
+                    byte[] value = attrs[j].getBytes(StandardCharsets.UTF_8);
+                    properties.write(j & 0xFF);
+                    properties.write((j >> 8) & 0xFF);
+                    for(int shift = 0; shift < 32; shift += 8) {
+                        properties.write((value.length >> shift) & 0xFF);
+                    }
+                    properties.write(value, 0, value.length);
+                }
+            }
+            feature.addUBytes(1, properties.toByteArray(), properties.size());
+        }
+        return feature;
+    }
+    
+    /**
+     * This function creates the geometry of one feature.
+     * Multi-polygons and geometry collections are stored as parts,
+     * all other types as coordinate arrays with the ends of the parts.
+     * @param parts the geometries of the feature
+     * @param multi TRUE, if the feature is a multi-geometry
+     * @param hasZ TRUE, if the Z-coordinates are written
+     * @return the geometry as Table-object
+     */
+    private FlatBuffer.Table createGeometry(List<Geometry> parts, boolean multi, boolean hasZ) {
+        int type = Features.typeOf(parts, multi);
+        FlatBuffer.Table geometry = new FlatBuffer.Table();
+        if(type == Features.MULTIPOLYGON || type == Features.GEOMETRYCOLLECTION) {
+            List<FlatBuffer.Table> partTables = new ArrayList<>();
+            for(int i = 0; i < parts.size(); i++) {
+                partTables.add(this.createGeometry(parts.subList(i, i + 1), false, hasZ));
+            }
+            return geometry.addUByte(6, type).addTables(7, partTables);
+        }
+        
+        int countOfCoordinates = 0;
+        for(Geometry part : parts) {
+            countOfCoordinates += Features.countOfCoordinates(Features.toSimpleGeometry(part));
+        }
+        double[] xy = new double[2 * countOfCoordinates];
+        double[] z = new double[countOfCoordinates];
+        int[] ends = new int[parts.size()];
+        int index = 0;
+        for(int i = 0; i < parts.size(); i++) {
+            Geometry part = Features.toSimpleGeometry(parts.get(i));
+            if(part instanceof Point) {
+                Point p = (Point) part;
+                xy[2 * index] = p.getXCoord();
+                xy[2 * index + 1] = p.getYCoord();
+                z[index] = p.getZCoord();
+                index++;
+            } else {
+                this.cursor.reset((VertexSequence) part, true);
+                while(this.cursor.next()) {
+                    xy[2 * index] = this.cursor.getX();
+                    xy[2 * index + 1] = this.cursor.getY();
+                    z[index] = this.cursor.getZ();
+                    index++;
+                }
+            }
+            ends[i] = index;
+        }
+        
+        if(type == Features.MULTILINESTRING) {
+            geometry.addUInts(0, ends, ends.length);
+        }
+        geometry.addDoubles(1, xy, xy.length);
+        if(hasZ) {
+            geometry.addDoubles(2, z, z.length);
+        }
+        return geometry.addUByte(6, type);
+    }
+    
+    /**
+     * This function writes the packed Hilbert R-tree.
+     * <br>The leaves contain the envelopes of the features in the order of the
+     * file and their byte offsets, the upper levels contain the envelopes of
+     * their children and the index of their first child. The root is written first.
+     * @param envelopes the envelopes of all features in the original order
+     * @param order the sorted Hilbert values, with the original feature index in the lower 32 bits
+     * @param offsets the byte offsets of the sorted features
+     * @param out the output
+     * @throws IOException if the index cannot be written
+     */
+    private void writeIndex(Rectangle2D[] envelopes, long[] order, long[] offsets, ChannelOutput out) throws IOException {
+        //calculate the number of nodes on every level, beginning with the leaves
+        ArrayList<Integer> levelSizes = new ArrayList<>();
+        int countOfNodes = order.length;
+        int levelSize = order.length;
+        levelSizes.add(levelSize);
+        do {
+            levelSize = (levelSize + NODE_SIZE - 1) / NODE_SIZE;
+            countOfNodes += levelSize;
+            levelSizes.add(levelSize);
+        } while(levelSize != 1);
+        int[] levelStarts = new int[levelSizes.size()];
+        int start = countOfNodes;
+        for(int level = 0; level < levelSizes.size(); level++) {
+            start -= levelSizes.get(level);
+            levelStarts[level] = start;
+        }
+        
+        //fill the leaves and build the upper levels from them
+        double[] bounds = new double[4 * countOfNodes];
+        long[] nodeOffsets = new long[countOfNodes];
+        for(int i = 0; i < order.length; i++) {
+            Rectangle2D envelope = envelopes[(int) order[i]];
+            int node = levelStarts[0] + i;
+            bounds[4 * node] = envelope.getMinX();
+            bounds[4 * node + 1] = envelope.getMinY();
+            bounds[4 * node + 2] = envelope.getMaxX();
+            bounds[4 * node + 3] = envelope.getMaxY();
+            nodeOffsets[node] = offsets[i];
+        }
+        for(int level = 0; level + 1 < levelSizes.size(); level++) {
+            int childStart = levelStarts[level];
+            int childEnd = childStart + levelSizes.get(level);
+            int parent = levelStarts[level + 1];
+            for(int child = childStart; child < childEnd; child += NODE_SIZE, parent++) {
+                nodeOffsets[parent] = child;
+                bounds[4 * parent] = Double.POSITIVE_INFINITY;
+                bounds[4 * parent + 1] = Double.POSITIVE_INFINITY;
+                bounds[4 * parent + 2] = Double.NEGATIVE_INFINITY;
+                bounds[4 * parent + 3] = Double.NEGATIVE_INFINITY;
+                for(int i = child; i < Math.min(child + NODE_SIZE, childEnd); i++) {
+                    bounds[4 * parent] = Math.min(bounds[4 * parent], bounds[4 * i]);
+                    bounds[4 * parent + 1] = Math.min(bounds[4 * parent + 1], bounds[4 * i + 1]);
+                    bounds[4 * parent + 2] = Math.max(bounds[4 * parent + 2], bounds[4 * i + 2]);
+                    bounds[4 * parent + 3] = Math.max(bounds[4 * parent + 3], bounds[4 * i + 3]);
+                }
+            }
+        }
+        
+        for(int node = 0; node < countOfNodes; node++) {
+            out.writeDouble(bounds[4 * node]);
+            out.writeDouble(bounds[4 * node + 1]);
+            out.writeDouble(bounds[4 * node + 2]);
+            out.writeDouble(bounds[4 * node + 3]);
+            out.writeLong(nodeOffsets[node]);
+        }
+    }
+    
+}
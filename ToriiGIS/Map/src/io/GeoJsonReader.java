@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.logging.Logger;
+import layer.Geometry;
+import layer.Layer;
+import layer.Line;
+import layer.PackedCoordinates;
+import layer.Point;
+import layer.Polygon;
+
+/**
+ * This class imports a GeoJSON FeatureCollection into a layer.
+ * <br>The file is parsed token by token, i.e. no document tree is created.
+ * The coordinates of a geometry are collected in one reusable array and
+ * copied directly into the packed coordinates of the new geometries.
+ * All properties are stored as Strings, objects and arrays as compact JSON.
+ * Holes of polygons are not supported by the layer and will be dropped.
+ * @author Christoph
+ */
+public class GeoJsonReader implements LayerReader {
+    
+    private static final Logger LOG = Logger.getLogger(GeoJsonReader.class.getName());
+    private static final int PROGRESS_INTERVAL = 1000;
+    private static final int MAX_DEPTH = 4;
+
+    /**
+     * This function reads the GeoJSON file into a new layer.
+     * @param file the path of the GeoJSON file
+     * @param progress the listener, which will be informed about the number of bytes read
+     * @return the new Layer-object
+     * @throws IOException if the file cannot be read or is no valid GeoJSON
+     */
+    @Override
+    public Layer read(Path file, ProgressListener progress) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Parser(new JsonTokenizer(channel), channel.size(), progress).parse();
+        }
+    }
+    
+    /**
+     * This class holds the state of one import.
+     */
+    private static final class Parser {
+        
+        private final JsonTokenizer json;
+        private final long total;
+        private final ProgressListener progress;
+        private final LayerBuilder builder = new LayerBuilder();
+        private final HashMap<String, Integer> columnIndices = new HashMap<>();
+        private final ArrayList<String> attrNames = new ArrayList<>();
+        private String crs = null;
+        private int countOfHoles = 0;
+        
+        //the coordinates of the current geometry and the ends of every nesting level
+        private double[] coordinates = new double[3 * 1024];
+        private int countOfVertices = 0;
+        private final int[][] ends = new int[MAX_DEPTH][16];
+        private final int[] countOfEnds = new int[MAX_DEPTH];
+        
+        private Parser(JsonTokenizer json, long total, ProgressListener progress) {
+            this.json = json;
+            this.total = total;
+            this.progress = progress;
+        }
+        
+        /**
+         * This function parses the whole document.
+         * @return the new Layer-object
+         * @throws IOException if the document is no valid GeoJSON
+         */
+        private Layer parse() throws IOException {
+            String type = null;
+            if(this.json.begin('{')) {
+                do {
+                    String name = this.json.readName();
+                    switch(name) {
+                        case "type":
+                            type = this.json.readString();
+                            break;
+                        case "crs":
+                            this.parseCrs();
+                            break;
+                        case "features":
+                            this.parseFeatures();
+                            break;
+                        default:
+                            this.json.skipValue();
+                    }
+                } while(this.json.hasNext('}'));
+            }
+            if(!"FeatureCollection".equals(type)) {
+                throw new IOException("the GeoJSON document is no FeatureCollection");
+            }
+            if(this.countOfHoles > 0) {
+                LOG.warning(this.countOfHoles + " holes of polygons were dropped during the import");
+            }
+            this.progress.progressChanged(this.total, this.total);
+            return this.builder.build(this.attrNames.toArray(new String[this.attrNames.size()]), this.crs);
+        }
+        
+        /**
+         * This function reads the name of a named CRS.
+         * @throws IOException if the document is no valid JSON
+         */
+        private void parseCrs() throws IOException {
+            if(this.json.peek() != '{' || !this.json.begin('{')) {
+                this.json.skipValue();
+                return;
+            }
+            do {
+                if("properties".equals(this.json.readName()) && this.json.peek() == '{') {
+                    if(this.json.begin('{')) {
+                        do {
+                            if("name".equals(this.json.readName())) {
+                                this.crs = this.json.readValueAsString();
+                            } else {
+                                this.json.skipValue();
+                            }
+                        } while(this.json.hasNext('}'));
+                    }
+                } else {
+                    this.json.skipValue();
+                }
+            } while(this.json.hasNext('}'));
+        }
+        
+        /**
+         * This function reads the array of features.
+         * @throws IOException if the document is no valid GeoJSON
+         */
+        private void parseFeatures() throws IOException {
+            if(!this.json.begin('[')) {
+                return;
+            }
+            int count = 0;
+            do {
+                this.parseFeature();
+                count++;
+                if(count % PROGRESS_INTERVAL == 0) {
+                    this.progress.progressChanged(this.json.getPosition(), this.total);
+                }
+            } while(this.json.hasNext(']'));
+        }
+        
+        /**
+         * This function reads one feature and adds it to the builder.
+         * Features without geometry will be skipped.
+         * @throws IOException if the document is no valid GeoJSON
+         */
+        private void parseFeature() throws IOException {
+            ArrayList<Geometry> parts = null;
+            boolean multi = false;
+            String[] attrs = null;
+            if(this.json.begin('{')) {
+                do {
+                    String name = this.json.readName();
+                    if("geometry".equals(name) && this.json.peek() == '{') {
+                        parts = new ArrayList<>();
+                        multi = this.parseGeometry(parts);
+                    } else if("properties".equals(name) && this.json.peek() == '{') {
+                        attrs = this.parseProperties();
+                    } else {
+                        this.json.skipValue();
+                    }
+                } while(this.json.hasNext('}'));
+            }
+            if(parts == null || parts.isEmpty()) {
+                return;
+            }
+            if(multi) {
+                this.builder.addFeature(parts, attrs);
+            } else {
+                this.builder.addFeature(parts.get(0), attrs);
+            }
+        }
+        
+        /**
+         * This function reads the properties of a feature.
+         * New property names will be added as new columns.
+         * @return the values ordered by the columns
+         * @throws IOException if the document is no valid JSON
+         */
+        private String[] parseProperties() throws IOException {
+            String[] attrs = new String[this.attrNames.size()];
+            if(this.json.begin('{')) {
+                do {
+                    String name = this.json.readName();
+                    Integer column = this.columnIndices.get(name);
+                    if(column == null) {
+                        column = this.attrNames.size();
+                        this.columnIndices.put(name, column);
+                        this.attrNames.add(name);
+                    }
+                    if(column >= attrs.length) {
+                        attrs = Arrays.copyOf(attrs, this.attrNames.size());
+                    }
+                    attrs[column] = this.json.readValueAsString();
+                } while(this.json.hasNext('}'));
+            }
+            return attrs;
+        }
+        
+        /**
+         * This function reads a geometry object and adds the resulting geometries
+         * to the list. The coordinates will be interpreted after the whole object
+         * has been read, because the members of an object can have any order.
+         * @param parts the list for the new geometries
+         * @return TRUE if the geometry is a multi-geometry or a collection, otherwise FALSE
+         * @throws IOException if the document is no valid GeoJSON
+         */
+        private boolean parseGeometry(ArrayList<Geometry> parts) throws IOException {
+            String type = null;
+            int depth = -1;
+            this.countOfVertices = 0;
+            Arrays.fill(this.countOfEnds, 0);
+            if(this.json.begin('{')) {
+                do {
+                    String name = this.json.readName();
+                    if("type".equals(name)) {
+                        type = this.json.readString();
+                    } else if("coordinates".equals(name) && this.json.peek() == '[') {
+                        depth = this.parseCoordinates();
+                    } else if("geometries".equals(name) && this.json.peek() == '[') {
+                        if(this.json.begin('[')) {
+                            do {
+                                this.parseGeometry(parts);
+                            } while(this.json.hasNext(']'));
+                        }
+                    } else {
+                        this.json.skipValue();
+                    }
+                } while(this.json.hasNext('}'));
+            }
+            if(type == null) {
+                throw new IOException("geometry without type at byte " + this.json.getPosition());
+            }
+            
+            switch(type) {
+                case "Point":
+                    this.checkDepth(type, depth, 0);
+                    parts.add(this.createPoint(0));
+                    return false;
+                case "LineString":
+                    this.checkDepth(type, depth, 1);
+                    parts.add(new Line(this.createCoordinates(0, this.countOfVertices, false)));
+                    return false;
+                case "Polygon":
+                    this.checkDepth(type, depth, 2);
+                    parts.add(this.createPolygon(0, this.countOfEnds[1]));
+                    return false;
+                case "MultiPoint":
+                    this.checkDepth(type, depth, 1);
+                    for(int i = 0; i < this.countOfVertices; i++) {
+                        parts.add(this.createPoint(i));
+                    }
+                    return true;
+                case "MultiLineString":
+                    this.checkDepth(type, depth, 2);
+                    for(int i = 0; i < this.countOfEnds[1]; i++) {
+                        int start = i == 0 ? 0 : this.ends[1][i - 1];
+                        parts.add(new Line(this.createCoordinates(start, this.ends[1][i] - start, false)));
+                    }
+                    return true;
+                case "MultiPolygon":
+                    this.checkDepth(type, depth, 3);
+                    for(int i = 0; i < this.countOfEnds[2]; i++) {
+                        parts.add(this.createPolygon(i == 0 ? 0 : this.ends[2][i - 1], this.ends[2][i]));
+                    }
+                    return true;
+                case "GeometryCollection":
+                    return true;
+                default:
+                    throw new IOException("unknown geometry type " + type + " at byte " + this.json.getPosition());
+            }
+        }
+        
+        /**
+         * This function reads nested arrays of positions into the coordinate buffer.
+         * The end of every array will be stored for its nesting level, i.e. the
+         * vertex count for arrays of positions and the count of ends of the next
+         * lower level for all other arrays.
+         * @return the nesting level of the array, 0 for a position
+         * @throws IOException if the document is no valid GeoJSON
+         */
+        private int parseCoordinates() throws IOException {
+            this.json.expect('[');
+            int next = this.json.peek();
+            if(next != '[' && next != ']') {
+                this.parsePosition();
+                return 0;
+            }
+            int depth = 1;
+            if(next == ']') {
+                this.json.expect(']');
+            } else {
+                do {
+                    depth = this.parseCoordinates() + 1;
+                } while(this.json.hasNext(']'));
+            }
+            if(depth >= MAX_DEPTH) {
+                throw new IOException("coordinates are nested too deep at byte " + this.json.getPosition());
+            }
+            int end = depth == 1 ? this.countOfVertices : this.countOfEnds[depth - 1];
+            if(this.countOfEnds[depth] == this.ends[depth].length) {
+                this.ends[depth] = Arrays.copyOf(this.ends[depth], 2 * this.ends[depth].length);
+            }
+            this.ends[depth][this.countOfEnds[depth]++] = end;
+            return depth;
+        }
+        
+        /**
+         * This function reads the numbers of a position after the opening bracket.
+         * Missing Z-coordinates are set to zero, further numbers are ignored.
+         * @throws IOException if the document is no valid GeoJSON
+         */
+        private void parsePosition() throws IOException {
+            if(3 * (this.countOfVertices + 1) > this.coordinates.length) {
+                this.coordinates = Arrays.copyOf(this.coordinates, 2 * this.coordinates.length);
+            }
+            int offset = 3 * this.countOfVertices;
+            this.coordinates[offset + 2] = 0.0;
+            int i = 0;
+            do {
+                double value = this.json.readNumber();
+                if(i < 3) {
+                    this.coordinates[offset + i] = value;
+                }
+                i++;
+            } while(this.json.hasNext(']'));
+            if(i < 2) {
+                throw new IOException("position with less than two coordinates at byte " + this.json.getPosition());
+            }
+            this.countOfVertices++;
+        }
+        
+        private void checkDepth(String type, int depth, int expected) throws IOException {
+            if(depth != expected) {
+                throw new IOException("invalid coordinates of " + type + " at byte " + this.json.getPosition());
+            }
+        }
+        
+        private Point createPoint(int i) {
+            return new Point(this.coordinates[3 * i], this.coordinates[3 * i + 1], this.coordinates[3 * i + 2]);
+        }
+        
+        /**
+         * This function copies a range of the coordinate buffer.
+         * @param start the index of the first vertice
+         * @param count the number of vertices
+         * @param ring TRUE if the closing vertice should be dropped
+         * @return the new PackedCoordinates-object
+         */
+        private PackedCoordinates createCoordinates(int start, int count, boolean ring) {
+            if(ring && count > 1) {
+                int first = 3 * start;
+                int last = 3 * (start + count - 1);
+                if(this.coordinates[first] == this.coordinates[last]
+                        && this.coordinates[first + 1] == this.coordinates[last + 1]
+                        && this.coordinates[first + 2] == this.coordinates[last + 2]) {
+                    count--;
+                }
+            }
+            return new PackedCoordinates(this.coordinates, start, count);
+        }
+        
+        /**
+         * This function creates a polygon from its outer ring.
+         * @param firstRing the index of the first ring of the polygon
+         * @param endRing the index after the last ring of the polygon
+         * @return the new Polygon-object
+         */
+        private Polygon createPolygon(int firstRing, int endRing) {
+            if(firstRing == endRing) {
+                return new Polygon();
+            }
+            this.countOfHoles += endRing - firstRing - 1;
+            int start = firstRing == 0 ? 0 : this.ends[1][firstRing - 1];
+            return new Polygon(this.createCoordinates(start, this.ends[1][firstRing] - start, true));
+        }
+        
+    }
+    
+}
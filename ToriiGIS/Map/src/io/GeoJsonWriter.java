@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import layer.Attributes;
+import layer.Geometry;
+import layer.Layer;
+import layer.Point;
+import layer.VertexCursor;
+import layer.VertexSequence;
+
+/**
+ * This class exports a layer as GeoJSON FeatureCollection.
+ * <br>The features are written one after another into a buffered channel,
+ * i.e. the document is never held in memory as a whole. All attributes are
+ * written as String properties.
+ * @author Christoph
+ */
+public class GeoJsonWriter implements LayerWriter {
+    
+    private static final String[] TYPE_NAMES = {"GeometryCollection", "Point", "LineString", "Polygon",
+                                                "MultiPoint", "MultiLineString", "MultiPolygon",
+                                                "GeometryCollection"};
+    
+    private final VertexCursor cursor = new VertexCursor();
+
+    /**
+     * This function writes the layer as GeoJSON to the channel.
+     * @param layer the Layer-object to export
+     * @param channel the channel for the output
+     * @throws IOException if the layer cannot be written
+     */
+    @Override
+    public void write(Layer layer, WritableByteChannel channel) throws IOException {
+        ChannelOutput out = new ChannelOutput(channel, ByteOrder.BIG_ENDIAN);
+        boolean hasZ = Features.hasZ(layer);
+        Attributes attributes = layer.getAttributeTable();
+        String[] attrNames = attributes == null ? new String[0] : attributes.getAttrNames();
+        
+        out.writeString("{\"type\":\"FeatureCollection\",");
+        if(layer.getCrs() != null) {
+            out.writeString("\"crs\":{\"type\":\"name\",\"properties\":{\"name\":");
+            this.writeText(layer.getCrs(), out);
+            out.writeString("}},");
+        }
+        out.writeString("\"features\":[\n");
+        for(int i = 0; i < layer.getCountOfFeatures(); i++) {
+            if(i > 0) {
+                out.writeString(",\n");
+            }
+            out.writeString("{\"type\":\"Feature\",\"geometry\":");
+            this.writeFeatureGeometry(layer.getFeatureGeometries(i), layer.isMultiFeature(i), hasZ, out);
+            out.writeString(",\"properties\":{");
+            String[] attrs = layer.getFeatureAttrs(i);
+            for(int j = 0; attrs != null && j < attrNames.length && j < attrs.length; j++) {
+                if(j > 0) {
+                    out.writeByte(',');
+                }
+                this.writeText(attrNames[j], out);
+                out.writeByte(':');
+                if(attrs[j] == null) {
+                    out.writeString("null");
+                } else {
+                    this.writeText(attrs[j], out);
+                }
+            }
+            out.writeString("}}");
+        }
+        out.writeString("\n]}\n");
+        out.flush();
+    }
+    
+    /**
+     * This function writes the geometry object of one feature.
+     * @param parts the geometries of the feature
+     * @param multi TRUE, if the feature is a multi-geometry
+     * @param hasZ TRUE, if the Z-coordinates have to be written
+     * @param out the output
+     * @throws IOException if the geometry cannot be written
+     */
+    private void writeFeatureGeometry(List<Geometry> parts, boolean multi, boolean hasZ, ChannelOutput out) throws IOException {
+        int type = Features.typeOf(parts, multi);
+        out.writeString("{\"type\":\"" + TYPE_NAMES[type] + "\",");
+        if(type == Features.GEOMETRYCOLLECTION) {
+            out.writeString("\"geometries\":[");
+            for(int i = 0; i < parts.size(); i++) {
+                if(i > 0) {
+                    out.writeByte(',');
+                }
+                this.writeFeatureGeometry(parts.subList(i, i + 1), false, hasZ, out);
+            }
+            out.writeString("]}");
+            return;
+        }
+        
+        out.writeString("\"coordinates\":");
+        if(multi) {
+            out.writeByte('[');
+        }
+        for(int i = 0; i < parts.size(); i++) {
+            if(i > 0) {
+                out.writeByte(',');
+            }
+            this.writeCoordinates(Features.toSimpleGeometry(parts.get(i)), hasZ, out);
+        }
+        if(multi) {
+            out.writeByte(']');
+        }
+        out.writeByte('}');
+    }
+    
+    /**
+     * This function writes the coordinates of a single geometry.
+     * @param geom a Point-, Line- or Polygon-object
+     * @param hasZ TRUE, if the Z-coordinates have to be written
+     * @param out the output
+     * @throws IOException if the coordinates cannot be written
+     */
+    private void writeCoordinates(Geometry geom, boolean hasZ, ChannelOutput out) throws IOException {
+        int type = Features.typeOf(geom);
+        if(type == Features.POINT) {
+            Point p = (Point) geom;
+            this.writePosition(p.getXCoord(), p.getYCoord(), p.getZCoord(), hasZ, out);
+            return;
+        }
+        if(type == Features.POLYGON) {
+            out.writeByte('[');
+        }
+        out.writeByte('[');
+        this.cursor.reset((VertexSequence) geom, true);
+        while(this.cursor.next()) {
+            if(this.cursor.getIndex() > 0) {
+                out.writeByte(',');
+            }
+            this.writePosition(this.cursor.getX(), this.cursor.getY(), this.cursor.getZ(), hasZ, out);
+        }
+        out.writeByte(']');
+        if(type == Features.POLYGON) {
+            out.writeByte(']');
+        }
+    }
+    
+    /**
+     * This function writes one position as array of numbers.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param z the z-coordinate
+     * @param hasZ TRUE, if the Z-coordinate has to be written
+     * @param out the output
+     * @throws IOException if the position cannot be written
+     */
+    private void writePosition(double x, double y, double z, boolean hasZ, ChannelOutput out) throws IOException {
+        out.writeByte('[');
+        out.writeString(Double.toString(x));
+        out.writeByte(',');
+        out.writeString(Double.toString(y));
+        if(hasZ) {
+            out.writeByte(',');
+            out.writeString(Double.toString(z));
+        }
+        out.writeByte(']');
+    }
+    
+    /**
+     * This function writes a String as JSON string with all necessary escapes.
+     * @param text the String to write
+     * @param out the output
+     * @throws IOException if the text cannot be written
+     */
+    private void writeText(String text, ChannelOutput out) throws IOException {
+        StringBuilder escaped = new StringBuilder(text.length() + 2);
+        escaped.append('"');
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch(c) {
+                case '"': escaped.append("\\\""); break;
+                case '\\': escaped.append("\\\\"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                case '\t': escaped.append("\\t"); break;
+                default:
+                    if(c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        escaped.append('"');
+        out.writeString(escaped.toString());
+    }
+    
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class reads JSON token by token from a channel.
+ * <br>The input is read in blocks into a direct ByteBuffer, i.e. files of any
+ * size can be parsed with constant memory. Numbers are parsed directly from
+ * the bytes without creating Strings, if they are simple decimals.
+ * @author Christoph
+ */
+final class JsonTokenizer {
+    
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private long position;
+    private byte[] scratch = new byte[64];
+    
+    /**
+     * The constructor of this class.
+     * @param channel the channel containing the JSON
+     */
+    JsonTokenizer(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.limit(0);
+        this.position = 0;
+    }
+    
+    /**
+     * This function returns the number of bytes consumed so far.
+     * @return the number of bytes
+     */
+    long getPosition() {
+        return this.position;
+    }
+    
+    /**
+     * This function returns the next byte without consuming it.
+     * @return the byte as int value or -1 at the end of the input
+     * @throws IOException if the channel cannot be read
+     */
+    private int peekByte() throws IOException {
+        if(!this.buffer.hasRemaining()) {
+            this.buffer.clear();
+            int count = 0;
+            while(count == 0) {
+                count = this.channel.read(this.buffer);
+            }
+            this.buffer.flip();
+            if(count < 0) {
+                return -1;
+            }
+        }
+        return this.buffer.get(this.buffer.position()) & 0xFF;
+    }
+    
+    /**
+     * This function consumes the next byte.
+     * @return the byte as int value
+     * @throws IOException if the channel cannot be read or the input ends
+     */
+    private int nextByte() throws IOException {
+        int b = this.peekByte();
+        if(b < 0) {
+            throw new IOException("unexpected end of JSON at byte " + this.position);
+        }
+        this.buffer.get();
+        this.position++;
+        return b;
+    }
+    
+    /**
+     * This function returns the next character, which is not a whitespace,
+     * without consuming it.
+     * @return the character as int value or -1 at the end of the input
+     * @throws IOException if the channel cannot be read
+     */
+    int peek() throws IOException {
+        int b = this.peekByte();
+        while(b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+            this.buffer.get();
+            this.position++;
+            b = this.peekByte();
+        }
+        return b;
+    }
+    
+    /**
+     * This function consumes the given character.
+     * @param expected the expected character
+     * @throws IOException if another character follows
+     */
+    void expect(char expected) throws IOException {
+        int b = this.peek();
+        if(b != expected) {
+            throw this.error("expected '" + expected + "'");
+        }
+        this.nextByte();
+    }
+    
+    /**
+     * This function consumes a comma, if there is one, or the closing bracket.
+     * @param closing the closing bracket of the current array or object
+     * @return TRUE if another element follows, FALSE if the closing bracket was consumed
+     * @throws IOException if something else follows
+     */
+    boolean hasNext(char closing) throws IOException {
+        int b = this.peek();
+        if(b == ',') {
+            this.nextByte();
+            return true;
+        }
+        if(b == closing) {
+            this.nextByte();
+            return false;
+        }
+        throw this.error("expected ',' or '" + closing + "'");
+    }
+    
+    /**
+     * This function consumes the opening bracket of an object or an array
+     * and checks, wether it is empty.
+     * @param opening the opening bracket
+     * @return TRUE if the object or array contains elements, otherwise FALSE
+     * @throws IOException if the bracket is missing
+     */
+    boolean begin(char opening) throws IOException {
+        this.expect(opening);
+        int b = this.peek();
+        if(b == (opening == '{' ? '}' : ']')) {
+            this.nextByte();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * This function reads the name of a member of an object including the colon.
+     * @return the name as String
+     * @throws IOException if the input is not a member name
+     */
+    String readName() throws IOException {
+        String name = this.readString();
+        this.expect(':');
+        return name;
+    }
+    
+    /**
+     * This function reads a JSON string.
+     * @return the decoded String
+     * @throws IOException if the input is not a string
+     */
+    String readString() throws IOException {
+        this.expect('"');
+        int length = 0;
+        while(true) {
+            int b = this.nextByte();
+            if(b == '"') {
+                break;
+            }
+            if(b == '\\') {
+                int escaped = this.nextByte();
+                switch(escaped) {
+                    case 'n': b = '\n'; break;
+                    case 'r': b = '\r'; break;
+                    case 't': b = '\t'; break;
+                    case 'b': b = '\b'; break;
+                    case 'f': b = '\f'; break;
+                    case 'u': {
+                        int codePoint = this.readHex();
+                        if(Character.isHighSurrogate((char) codePoint) && this.peekByte() == '\\') {
+                            this.nextByte();
+                            this.expectRaw('u');
+                            codePoint = Character.toCodePoint((char) codePoint, (char) this.readHex());
+                        }
+                        byte[] encoded = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+                        for(byte e : encoded) {
+                            length = this.appendScratch(length, e);
+                        }
+                        continue;
+                    }
+                    default: b = escaped; break;
+                }
+            }
+            length = this.appendScratch(length, b);
+        }
+        return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    private void expectRaw(char expected) throws IOException {
+        if(this.nextByte() != expected) {
+            throw this.error("expected '" + expected + "'");
+        }
+    }
+    
+    private int readHex() throws IOException {
+        int value = 0;
+        for(int i = 0; i < 4; i++) {
+            value = (value << 4) | Character.digit(this.nextByte(), 16);
+        }
+        return value;
+    }
+    
+    private int appendScratch(int length, int b) {
+        if(length == this.scratch.length) {
+            this.scratch = Arrays.copyOf(this.scratch, 2 * length);
+        }
+        this.scratch[length] = (byte) b;
+        return length + 1;
+    }
+    
+    /**
+     * This function reads a JSON number.
+     * <br>Decimals with up to 15 digits and no exponent are converted exactly
+     * by a division by a power of ten, all other numbers by Double.parseDouble.
+     * @return the number as double value
+     * @throws IOException if the input is not a number
+     */
+    double readNumber() throws IOException {
+        int length = this.readNumberBytes();
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        boolean negative = false;
+        for(int i = 0; i < length; i++) {
+            int b = this.scratch[i];
+            if(b >= '0' && b <= '9') {
+                mantissa = 10 * mantissa + (b - '0');
+                if(mantissa != 0) {
+                    digits++;
+                }
+                if(fraction) {
+                    fractionDigits++;
+                }
+            } else if(b == '.' && !fraction) {
+                fraction = true;
+            } else if(b == '-' && i == 0) {
+                negative = true;
+            } else {
+                digits = Integer.MAX_VALUE;
+                break;
+            }
+        }
+        if(digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(this.scratch, 0, length, StandardCharsets.US_ASCII));
+    }
+    
+    /**
+     * This function reads the characters of a number into the scratch buffer.
+     * @return the number of characters
+     * @throws IOException if the input is not a number
+     */
+    private int readNumberBytes() throws IOException {
+        int length = 0;
+        int b = this.peek();
+        while(b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E' || (b >= '0' && b <= '9')) {
+            length = this.appendScratch(length, this.nextByte());
+            b = this.peekByte();
+        }
+        if(length == 0) {
+            throw this.error("expected a number");
+        }
+        return length;
+    }
+    
+    /**
+     * This function reads any value and returns it as String.
+     * <br>Strings are decoded, numbers and literals are returned as written,
+     * null is returned as null. Objects and arrays are returned as compact JSON.
+     * @return the value as String or null
+     * @throws IOException if the input is no valid JSON value
+     */
+    String readValueAsString() throws IOException {
+        int b = this.peek();
+        if(b == '"') {
+            return this.readString();
+        }
+        if(b == '{' || b == '[') {
+            StringBuilder json = new StringBuilder();
+            this.copyValue(json);
+            return json.toString();
+        }
+        if(b == '-' || (b >= '0' && b <= '9')) {
+            return new String(this.scratch, 0, this.readNumberBytes(), StandardCharsets.US_ASCII);
+        }
+        String literal = this.readLiteral();
+        return "null".equals(literal) ? null : literal;
+    }
+    
+    /**
+     * This function skips any value.
+     * @throws IOException if the input is no valid JSON value
+     */
+    void skipValue() throws IOException {
+        this.copyValue(null);
+    }
+    
+    /**
+     * This function reads any value and appends it as compact JSON.
+     * @param json the StringBuilder for the output, or null for skipping the value
+     * @throws IOException if the input is no valid JSON value
+     */
+    private void copyValue(StringBuilder json) throws IOException {
+        int b = this.peek();
+        if(b == '{' || b == '[') {
+            char closing = b == '{' ? '}' : ']';
+            if(json != null) {
+                json.append((char) b);
+            }
+            if(this.begin((char) b)) {
+                boolean first = true;
+                do {
+                    if(json != null && !first) {
+                        json.append(',');
+                    }
+                    first = false;
+                    if(closing == '}') {
+                        String name = this.readName();
+                        if(json != null) {
+                            appendQuoted(name, json);
+                            json.append(':');
+                        }
+                    }
+                    this.copyValue(json);
+                } while(this.hasNext(closing));
+            }
+            if(json != null) {
+                json.append(closing);
+            }
+        } else if(b == '"') {
+            String text = this.readString();
+            if(json != null) {
+                appendQuoted(text, json);
+            }
+        } else if(b == '-' || (b >= '0' && b <= '9')) {
+            int length = this.readNumberBytes();
+            if(json != null) {
+                json.append(new String(this.scratch, 0, length, StandardCharsets.US_ASCII));
+            }
+        } else {
+            String literal = this.readLiteral();
+            if(json != null) {
+                json.append(literal);
+            }
+        }
+    }
+    
+    /**
+     * This function reads one of the literals true, false and null.
+     * @return the literal as String
+     * @throws IOException if the input is no literal
+     */
+    private String readLiteral() throws IOException {
+        int b = this.peek();
+        String literal = b == 't' ? "true" : b == 'f' ? "false" : b == 'n' ? "null" : null;
+        if(literal == null) {
+            throw this.error("unexpected character '" + (char) b + "'");
+        }
+        for(int i = 0; i < literal.length(); i++) {
+            this.expectRaw(literal.charAt(i));
+        }
+        return literal;
+    }
+    
+    private static void appendQuoted(String text, StringBuilder json) {
+        json.append('"');
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if(c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+    
+    private IOException error(String message) {
+        return new IOException(message + " at byte " + this.position);
+    }
+    
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import layer.Attributes;
+import layer.Geometry;
+import layer.Layer;
+
+/**
+ * This class collects the features of an import and creates the layer.
+ * <br>The attribute values are collected column by column. Because a layer
+ * counts its geometries before its multi-geometries, the values of both kinds
+ * of features are collected separately and joined in this order at the end.
+ * Builders of parallel chunks can be appended to each other.
+ * <br>The class is used by the readers of this package and by other sources
+ * of features, e.g. database queries.
+ * @author Christoph
+ */
+public final class LayerBuilder {
+    
+    private final ArrayList<Geometry> geometries = new ArrayList<>();
+    private final ArrayList<ArrayList<Geometry>> multiGeometries = new ArrayList<>();
+    private final ArrayList<ArrayList<String>> geometryColumns = new ArrayList<>();
+    private final ArrayList<ArrayList<String>> multiGeometryColumns = new ArrayList<>();
+    
+    /**
+     * This function adds a feature with a single geometry.
+     * @param geom the Geometry-object
+     * @param attrs the attribute values of the feature, may be null
+     */
+    public void addFeature(Geometry geom, String[] attrs) {
+        addValues(this.geometryColumns, this.geometries.size(), attrs);
+        this.geometries.add(geom);
+    }
+    
+    /**
+     * This function adds a feature with a multi-geometry.
+     * @param parts the geometries of the feature
+     * @param attrs the attribute values of the feature, may be null
+     */
+    public void addFeature(ArrayList<Geometry> parts, String[] attrs) {
+        addValues(this.multiGeometryColumns, this.multiGeometries.size(), attrs);
+        this.multiGeometries.add(parts);
+    }
+    
+    /**
+     * This function appends all features of another builder.
+     * @param other the LayerBuilder-object of the following chunk
+     */
+    public void append(LayerBuilder other) {
+        appendColumns(this.geometryColumns, this.geometries.size(), other.geometryColumns, other.geometries.size());
+        appendColumns(this.multiGeometryColumns, this.multiGeometries.size(),
+                      other.multiGeometryColumns, other.multiGeometries.size());
+        this.geometries.addAll(other.geometries);
+        this.multiGeometries.addAll(other.multiGeometries);
+    }
+    
+    /**
+     * This function creates the layer from all collected features.
+     * @param attrNames the names of the attributes
+     * @param crs the coordinate reference system or null
+     * @return the new Layer-object
+     */
+    public Layer build(String[] attrNames, String crs) {
+        int countOfColumns = Math.max(attrNames.length,
+                                      Math.max(this.geometryColumns.size(), this.multiGeometryColumns.size()));
+        ArrayList<ArrayList<String>> columns = new ArrayList<>(countOfColumns);
+        for(int j = 0; j < countOfColumns; j++) {
+            ArrayList<String> column = new ArrayList<>(this.geometries.size() + this.multiGeometries.size());
+            appendColumn(column, this.geometryColumns, j, this.geometries.size());
+            appendColumn(column, this.multiGeometryColumns, j, this.multiGeometries.size());
+            columns.add(column);
+        }
+        
+        ArrayList<Attributes> attributeList = new ArrayList<>();
+        attributeList.add(Attributes.fromColumns(attrNames, columns));
+        Layer layer = new Layer(this.geometries, attributeList, this.multiGeometries);
+        layer.setCrs(crs);
+        return layer;
+    }
+    
+    /**
+     * This function adds the values of one feature to the columns.
+     * Missing columns will be created and filled with null for all previous features.
+     * @param columns the columns
+     * @param count the number of features before the new one
+     * @param attrs the values of the new feature, may be null
+     */
+    private static void addValues(ArrayList<ArrayList<String>> columns, int count, String[] attrs) {
+        int countOfValues = attrs == null ? 0 : attrs.length;
+        while(columns.size() < countOfValues) {
+            columns.add(new ArrayList<>(Collections.nCopies(count, (String) null)));
+        }
+        for(int j = 0; j < columns.size(); j++) {
+            columns.get(j).add(j < countOfValues ? attrs[j] : null);
+        }
+    }
+    
+    /**
+     * This function appends the columns of the following chunk.
+     * @param columns the own columns
+     * @param count the own number of features
+     * @param otherColumns the columns of the following chunk
+     * @param otherCount the number of features of the following chunk
+     */
+    private static void appendColumns(ArrayList<ArrayList<String>> columns, int count,
+                                      ArrayList<ArrayList<String>> otherColumns, int otherCount) {
+        while(columns.size() < otherColumns.size()) {
+            columns.add(new ArrayList<>(Collections.nCopies(count, (String) null)));
+        }
+        for(int j = 0; j < columns.size(); j++) {
+            appendColumn(columns.get(j), otherColumns, j, otherCount);
+        }
+    }
+    
+    /**
+     * This function appends one column, or null values if the column does not exist.
+     * @param target the column to append to
+     * @param columns the columns to read from
+     * @param j the zero-based index of the column
+     * @param count the number of values
+     */
+    private static void appendColumn(ArrayList<String> target, ArrayList<ArrayList<String>> columns, int j, int count) {
+        if(j < columns.size()) {
+            target.addAll(columns.get(j));
+        } else {
+            target.addAll(Collections.nCopies(count, (String) null));
+        }
+    }
+    
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import layer.Layer;
+
+/**
+ * This interface has to be implemented by all classes, which import
+ * a file format into a layer.
+ * @author Christoph
+ */
+public interface LayerReader {
+    
+    /**
+     * This function reads all features of a file into a new layer.
+     * @param file the path of the file
+     * @param progress the listener, which will be informed about the progress
+     * @return the new Layer-object
+     * @throws IOException if the file cannot be read
+     */
+    public Layer read(Path file, ProgressListener progress) throws IOException;
+    
+    /**
+     * This function reads all features of a file into a new layer
+     * without reporting the progress.
+     * @param file the path of the file
+     * @return the new Layer-object
+     * @throws IOException if the file cannot be read
+     */
+    public default Layer read(Path file) throws IOException {
+        return this.read(file, ProgressListener.NONE);
+    }
+    
+    /**
+     * This function returns the reader for a file by its extension.
+     * @param file the path of the file
+     * @return a ShapefileReader for .shp, a GeoJsonReader for .geojson and .json
+     * @throws IllegalArgumentException if the format of the file is unknown
+     */
+    public static LayerReader forFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if(name.endsWith(".shp")) {
+            return new ShapefileReader();
+        }
+        if(name.endsWith(".geojson") || name.endsWith(".json")) {
+            return new GeoJsonReader();
+        }
+        throw new IllegalArgumentException("unknown input format: " + file);
+    }
+    
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import layer.Layer;
+
+/**
+ * This interface has to be implemented by all classes, which export
+ * a layer into a file format.
+ * @author Christoph
+ */
+public interface LayerWriter {
+    
+    /**
+     * This function writes the geometries and attributes of a layer to a channel.
+     * The channel will not be closed.
+     * @param layer the Layer-object to export
+     * @param channel the channel for the output
+     * @throws IOException if the layer cannot be written
+     */
+    public void write(Layer layer, WritableByteChannel channel) throws IOException;
+    
+    /**
+     * This function writes the geometries and attributes of a layer into a file.
+     * An existing file will be overwritten.
+     * @param layer the Layer-object to export
+     * @param file the path of the new file
+     * @throws IOException if the file cannot be written
+     */
+    public default void write(Layer layer, Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file,
+                                                   StandardOpenOption.CREATE,
+                                                   StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.write(layer, channel);
+        }
+    }
+    
+}
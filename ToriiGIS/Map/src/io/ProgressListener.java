@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+/**
+ * This interface has to be implemented by all classes, which want to be
+ * informed about the progress of a long running import or export.
+ * <br>The function can be called from several threads at the same time.
+ * @author Christoph
+ */
+public interface ProgressListener {
+    
+    /**
+     * A listener, which ignores all progress.
+     */
+    public static final ProgressListener NONE = (processed, total) -> { };
+    
+    /**
+     * This function is called, when a part of the work is done.
+     * @param processed the amount of work done so far (e.g. bytes or features)
+     * @param total the total amount of work
+     */
+    public void progressChanged(long processed, long total);
+    
+}
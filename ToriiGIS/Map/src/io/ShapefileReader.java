@@ -0,0 +1,526 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import layer.CoordinateDimension;
+import layer.Geometry;
+import layer.Layer;
+import layer.Line;
+import layer.PackedCoordinates;
+import layer.Point;
+import layer.Polygon;
+
+/**
+ * This class imports an ESRI Shapefile into a layer.
+ * <br>The .shp, .shx and .dbf files are mapped into memory. The records are
+ * split into chunks by the offsets of the .shx file and read in parallel,
+ * every chunk into its own LayerBuilder. The chunks are joined in their
+ * original order afterwards. Points, multipoints, polylines and polygons
+ * are supported in all variants (plain, M and Z). Lines and polygons are
+ * stored with the dimension of their shape type. Holes of polygons are not
+ * supported by the layer and will be dropped, M-values are ignored.
+ * <br>The progress is reported in records and may be reported by worker threads.
+ * @author Christoph
+ */
+public class ShapefileReader implements LayerReader {
+    
+    private static final Logger LOG = Logger.getLogger(ShapefileReader.class.getName());
+    private static final int FILE_CODE = 9994;
+    private static final int HEADER_LENGTH = 100;
+    private static final int MIN_CHUNK_SIZE = 4096;
+    private static final int PROGRESS_INTERVAL = 1000;
+    private static final Pattern AUTHORITY = Pattern.compile("AUTHORITY\\[\"(\\w+)\",\"?(\\w+)\"?\\]");
+    private static final Pattern CRS_NAME = Pattern.compile("^\\s*\\w+\\[\"([^\"]*)\"");
+    
+    private static final int NULL_SHAPE = 0;
+    private static final int POINT = 1;
+    private static final int POLYLINE = 3;
+    private static final int POLYGON = 5;
+    private static final int MULTIPOINT = 8;
+    private static final CoordinateDimension[] DIMENSIONS = {
+        CoordinateDimension.XY, CoordinateDimension.XYZ, CoordinateDimension.XYM
+    };
+    
+    /**
+     * The supported shape types: the types above in their plain, Z- (+10)
+     * and M-variant (+20). MultiPatch (31) is not supported.
+     */
+    private static final List<Integer> SHAPE_TYPES = Arrays.asList(0, 1, 3, 5, 8, 11, 13, 15, 18, 21, 23, 25, 28);
+    
+    /**
+     * Measures below this value mean "no data".
+     */
+    private static final double NO_DATA = -1e38;
+
+    /**
+     * This function reads the shapefile into a new layer.
+     * @param file the path of the .shp file, the other files must have the same name
+     * @param progress the listener, which will be informed about the number of records read
+     * @return the new Layer-object
+     * @throws IOException if the files cannot be read or are no valid shapefile
+     */
+    @Override
+    public Layer read(Path file, ProgressListener progress) throws IOException {
+        ByteBuffer shp = map(file);
+        if(shp.order(ByteOrder.BIG_ENDIAN).getInt(0) != FILE_CODE) {
+            throw new IOException(file + " is no shapefile");
+        }
+        Path shx = sibling(file, ".shx");
+        Path dbfFile = sibling(file, ".dbf");
+        int[] offsets = shx == null ? scanOffsets(shp) : readOffsets(map(shx));
+        DbfTable dbf = dbfFile == null ? null : new DbfTable(map(dbfFile), readCharset(file));
+        if(dbf != null && dbf.countOfRecords != offsets.length) {
+            throw new IOException("the .dbf file contains " + dbf.countOfRecords
+                                  + " records, but the shapefile " + offsets.length);
+        }
+        
+        int countOfChunks = Math.max(1, Math.min(4 * Runtime.getRuntime().availableProcessors(),
+                                                 offsets.length / MIN_CHUNK_SIZE));
+        AtomicLong processed = new AtomicLong();
+        AtomicInteger countOfHoles = new AtomicInteger();
+        List<LayerBuilder> chunks;
+        try {
+            chunks = IntStream.range(0, countOfChunks).parallel().mapToObj((chunk) -> {
+                int start = (int) ((long) offsets.length * chunk / countOfChunks);
+                int end = (int) ((long) offsets.length * (chunk + 1) / countOfChunks);
+                Chunk reader = new Chunk(shp, dbf, offsets, start, end, progress, processed);
+                try {
+                    reader.read();
+                } catch(IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                countOfHoles.addAndGet(reader.countOfHoles);
+                return reader.builder;
+            }).collect(Collectors.toList());
+        } catch(UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        
+        LayerBuilder builder = chunks.get(0);
+        for(int i = 1; i < chunks.size(); i++) {
+            builder.append(chunks.get(i));
+        }
+        if(countOfHoles.get() > 0) {
+            LOG.warning(countOfHoles.get() + " holes of polygons were dropped during the import");
+        }
+        progress.progressChanged(offsets.length, offsets.length);
+        return builder.build(dbf == null ? new String[0] : dbf.names, readCrs(file));
+    }
+    
+    /**
+     * This function maps a whole file read-only into memory.
+     * @param file the path of the file
+     * @return the mapped buffer
+     * @throws IOException if the file cannot be mapped
+     */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GB");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+    
+    /**
+     * This function returns a file with the same name and another extension.
+     * @param file the path of the .shp file
+     * @param extension the other extension including the dot
+     * @return the path of the other file or null, if it does not exist
+     */
+    private static Path sibling(Path file, String extension) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        for(String candidate : new String[] {base + extension, base + extension.toUpperCase()}) {
+            Path sibling = file.resolveSibling(candidate);
+            if(Files.isRegularFile(sibling)) {
+                return sibling;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * This function reads the byte offsets of all records from the .shx file.
+     * @param shx the mapped .shx file
+     * @return the offsets of the records in the .shp file
+     */
+    private static int[] readOffsets(ByteBuffer shx) {
+        shx.order(ByteOrder.BIG_ENDIAN);
+        int[] offsets = new int[(shx.limit() - HEADER_LENGTH) / 8];
+        for(int i = 0; i < offsets.length; i++) {
+            offsets[i] = 2 * shx.getInt(HEADER_LENGTH + 8 * i);
+        }
+        return offsets;
+    }
+    
+    /**
+     * This function collects the byte offsets of all records by skipping
+     * through the .shp file, if there is no .shx file.
+     * @param shp the mapped .shp file
+     * @return the offsets of the records
+     */
+    private static int[] scanOffsets(ByteBuffer shp) {
+        int[] offsets = new int[1024];
+        int count = 0;
+        int offset = HEADER_LENGTH;
+        while(offset + 8 <= shp.limit()) {
+            if(count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * count);
+            }
+            offsets[count++] = offset;
+            offset += 8 + 2 * shp.order(ByteOrder.BIG_ENDIAN).getInt(offset + 4);
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+    
+    /**
+     * This function returns the charset of the .dbf file from the .cpg file.
+     * @param file the path of the .shp file
+     * @return the charset, ISO-8859-1 if there is no valid .cpg file
+     * @throws IOException if the .cpg file cannot be read
+     */
+    private static Charset readCharset(Path file) throws IOException {
+        Path cpg = sibling(file, ".cpg");
+        if(cpg != null) {
+            String name = new String(Files.readAllBytes(cpg), StandardCharsets.US_ASCII).trim();
+            if(name.matches("\\d+")) {
+                name = "windows-" + name;
+            }
+            if(Charset.isSupported(name)) {
+                return Charset.forName(name);
+            }
+            LOG.warning("unknown charset " + name + " in " + cpg + ", ISO-8859-1 will be used");
+        }
+        return StandardCharsets.ISO_8859_1;
+    }
+    
+    /**
+     * This function returns the coordinate reference system from the .prj file.
+     * @param file the path of the .shp file
+     * @return the authority code (e.g. EPSG:4326) or the name of the system, null if there is no .prj file
+     * @throws IOException if the .prj file cannot be read
+     */
+    private static String readCrs(Path file) throws IOException {
+        Path prj = sibling(file, ".prj");
+        if(prj == null) {
+            return null;
+        }
+        String wkt = new String(Files.readAllBytes(prj), StandardCharsets.ISO_8859_1).trim();
+        //only the last authority at the end of the text belongs to the whole system
+        Matcher authority = AUTHORITY.matcher(wkt);
+        String crs = null;
+        int end = -1;
+        while(authority.find()) {
+            crs = authority.group(1) + ":" + authority.group(2);
+            end = authority.end();
+        }
+        if(crs != null && wkt.substring(end).trim().equals("]")) {
+            return crs;
+        }
+        Matcher name = CRS_NAME.matcher(wkt);
+        return name.find() ? name.group(1) : null;
+    }
+    
+    /**
+     * This class reads a range of records.
+     */
+    private static final class Chunk {
+        
+        private final ByteBuffer shp;
+        private final DbfTable dbf;
+        private final int[] offsets;
+        private final int start;
+        private final int end;
+        private final ProgressListener progress;
+        private final AtomicLong processed;
+        private final LayerBuilder builder = new LayerBuilder();
+        private int countOfHoles = 0;
+        
+        private Chunk(ByteBuffer shp, DbfTable dbf, int[] offsets, int start, int end,
+                      ProgressListener progress, AtomicLong processed) {
+            this.shp = shp.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            this.dbf = dbf == null ? null : dbf.duplicate();
+            this.offsets = offsets;
+            this.start = start;
+            this.end = end;
+            this.progress = progress;
+            this.processed = processed;
+        }
+        
+        /**
+         * This function reads all records of the chunk into the builder.
+         * Null shapes and deleted records will be skipped.
+         * @throws IOException if a record is invalid
+         */
+        private void read() throws IOException {
+            ArrayList<Geometry> parts = new ArrayList<>();
+            for(int i = this.start; i < this.end; i++) {
+                if((i - this.start + 1) % PROGRESS_INTERVAL == 0) {
+                    this.progress.progressChanged(this.processed.addAndGet(PROGRESS_INTERVAL), this.offsets.length);
+                }
+                if(this.dbf != null && this.dbf.isDeleted(i)) {
+                    continue;
+                }
+                parts.clear();
+                int offset = this.offsets[i] + 8;
+                if(offset + 4 > this.shp.limit()) {
+                    throw new IOException("record " + (i + 1) + " is outside of the .shp file");
+                }
+                int code = this.shp.getInt(offset);
+                if(!SHAPE_TYPES.contains(code)) {
+                    throw new IOException("unsupported shape type " + code + " in record " + (i + 1));
+                }
+                int shapeType = code % 10;
+                int variant = code / 10;
+                switch(shapeType) {
+                    case NULL_SHAPE:
+                        continue;
+                    case POINT:
+                        this.shp.position(offset + 4);
+                        parts.add(new Point(this.shp.getDouble(), this.shp.getDouble(),
+                                            variant == 1 ? this.shp.getDouble() : 0.0));
+                        break;
+                    case MULTIPOINT:
+                        this.readMultiPoint(offset + 4, variant == 1, parts);
+                        break;
+                    case POLYLINE:
+                    case POLYGON:
+                        this.readParts(offset + 4, DIMENSIONS[variant], shapeType == POLYGON, parts);
+                        break;
+                    default:
+                        throw new IOException("unsupported shape type " + code + " in record " + (i + 1));
+                }
+                String[] attrs = this.dbf == null ? null : this.dbf.readRecord(i);
+                if(parts.size() == 1 && shapeType != MULTIPOINT) {
+                    this.builder.addFeature(parts.get(0), attrs);
+                } else if(!parts.isEmpty()) {
+                    this.builder.addFeature(new ArrayList<>(parts), attrs);
+                }
+            }
+            this.processed.addAndGet((this.end - this.start) % PROGRESS_INTERVAL);
+        }
+        
+        /**
+         * This function reads the points of a multipoint record.
+         * @param offset the offset behind the shape type
+         * @param hasZ TRUE if the record contains Z-coordinates
+         * @param parts the list for the new points
+         */
+        private void readMultiPoint(int offset, boolean hasZ, ArrayList<Geometry> parts) {
+            int countOfPoints = this.shp.getInt(offset + 32);
+            int xy = offset + 36;
+            int z = xy + 16 * countOfPoints + 16;
+            for(int i = 0; i < countOfPoints; i++) {
+                parts.add(new Point(this.shp.getDouble(xy + 16 * i), this.shp.getDouble(xy + 16 * i + 8),
+                                    hasZ ? this.shp.getDouble(z + 8 * i) : 0.0));
+            }
+        }
+        
+        /**
+         * This function reads the parts of a polyline or polygon record.
+         * Every part of a polyline becomes a line, every clockwise ring of
+         * a polygon becomes a polygon. Counter-clockwise rings are holes.
+         * @param offset the offset behind the shape type
+         * @param dimension XY for plain records, XYZ for Z-records (measures are ignored) and XYM for M-records
+         * @param polygon TRUE for polygons, FALSE for polylines
+         * @param parts the list for the new geometries
+         */
+        private void readParts(int offset, CoordinateDimension dimension, boolean polygon, ArrayList<Geometry> parts) {
+            int countOfParts = this.shp.getInt(offset + 32);
+            int countOfPoints = this.shp.getInt(offset + 36);
+            int partIndices = offset + 40;
+            int xy = partIndices + 4 * countOfParts;
+            int third = xy + 16 * countOfPoints + 16;
+            int stride = dimension.getCountOfValues();
+            
+            double[] coordinates = new double[stride * countOfPoints];
+            for(int i = 0; i < countOfPoints; i++) {
+                coordinates[stride * i] = this.shp.getDouble(xy + 16 * i);
+                coordinates[stride * i + 1] = this.shp.getDouble(xy + 16 * i + 8);
+                if(stride == 3) {
+                    double value = third + 8 * i + 8 <= this.shp.limit() ? this.shp.getDouble(third + 8 * i) : Double.NaN;
+                    if(dimension == CoordinateDimension.XYZ && Double.isNaN(value)) {
+                        value = 0.0;
+                    }
+                    coordinates[3 * i + 2] = value < NO_DATA ? Double.NaN : value;
+                }
+            }
+            for(int p = 0; p < countOfParts; p++) {
+                int first = this.shp.getInt(partIndices + 4 * p);
+                int last = p + 1 < countOfParts ? this.shp.getInt(partIndices + 4 * (p + 1)) : countOfPoints;
+                if(!polygon) {
+                    parts.add(new Line(new PackedCoordinates(dimension, coordinates, first, last - first)));
+                } else if(p == 0 || signedArea(coordinates, stride, first, last) < 0) {
+                    //the closing vertice is implicit in a polygon
+                    parts.add(new Polygon(new PackedCoordinates(dimension, coordinates, first, Math.max(0, last - first - 1))));
+                } else {
+                    this.countOfHoles++;
+                }
+            }
+        }
+        
+        /**
+         * This function calculates the signed area of a ring.
+         * @param coordinates the interleaved coordinates
+         * @param stride the number of values per vertice
+         * @param first the index of the first vertice
+         * @param end the index after the last vertice
+         * @return the area, negative for clockwise rings
+         */
+        private static double signedArea(double[] coordinates, int stride, int first, int end) {
+            double area = 0.0;
+            for(int i = first; i < end; i++) {
+                int j = i + 1 < end ? i + 1 : first;
+                area += coordinates[stride * i] * coordinates[stride * j + 1] - coordinates[stride * j] * coordinates[stride * i + 1];
+            }
+            return 0.5 * area;
+        }
+        
+    }
+    
+    /**
+     * This class reads the records of a dBASE table.
+     */
+    private static final class DbfTable {
+        
+        private final ByteBuffer buffer;
+        private final Charset charset;
+        private final int countOfRecords;
+        private final int headerLength;
+        private final int recordLength;
+        private final String[] names;
+        private final char[] types;
+        private final int[] fieldOffsets;
+        private final int[] fieldLengths;
+        private final byte[] record;
+        
+        /**
+         * The constructor of this class, which reads the field descriptors.
+         * @param buffer the mapped .dbf file
+         * @param charset the charset of the text values
+         * @throws IOException if the file is no valid dBASE table
+         */
+        private DbfTable(ByteBuffer buffer, Charset charset) throws IOException {
+            this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.charset = charset;
+            this.countOfRecords = buffer.getInt(4);
+            this.headerLength = buffer.getShort(8) & 0xFFFF;
+            this.recordLength = buffer.getShort(10) & 0xFFFF;
+            
+            ArrayList<String> fieldNames = new ArrayList<>();
+            ArrayList<Character> fieldTypes = new ArrayList<>();
+            ArrayList<Integer> lengths = new ArrayList<>();
+            for(int descriptor = 32; descriptor + 32 <= this.headerLength && buffer.get(descriptor) != 0x0D; descriptor += 32) {
+                int nameLength = 0;
+                while(nameLength < 11 && buffer.get(descriptor + nameLength) != 0) {
+                    nameLength++;
+                }
+                byte[] name = new byte[nameLength];
+                for(int k = 0; k < nameLength; k++) {
+                    name[k] = buffer.get(descriptor + k);
+                }
+                fieldNames.add(new String(name, charset).trim());
+                fieldTypes.add((char) buffer.get(descriptor + 11));
+                lengths.add(buffer.get(descriptor + 16) & 0xFF);
+            }
+            
+            this.names = fieldNames.toArray(new String[fieldNames.size()]);
+            this.types = new char[this.names.length];
+            this.fieldOffsets = new int[this.names.length];
+            this.fieldLengths = new int[this.names.length];
+            int fieldOffset = 1;
+            for(int j = 0; j < this.names.length; j++) {
+                this.types[j] = fieldTypes.get(j);
+                this.fieldOffsets[j] = fieldOffset;
+                this.fieldLengths[j] = lengths.get(j);
+                fieldOffset += lengths.get(j);
+            }
+            if(fieldOffset > this.recordLength
+                    || (long) this.headerLength + (long) this.countOfRecords * this.recordLength > buffer.limit()) {
+                throw new IOException("the .dbf file is corrupt");
+            }
+            this.record = new byte[this.recordLength];
+        }
+        
+        private DbfTable(DbfTable table) {
+            this.buffer = table.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            this.charset = table.charset;
+            this.countOfRecords = table.countOfRecords;
+            this.headerLength = table.headerLength;
+            this.recordLength = table.recordLength;
+            this.names = table.names;
+            this.types = table.types;
+            this.fieldOffsets = table.fieldOffsets;
+            this.fieldLengths = table.fieldLengths;
+            this.record = new byte[this.recordLength];
+        }
+        
+        /**
+         * This function returns a copy for another thread.
+         * @return a new DbfTable-object with its own buffer position
+         */
+        private DbfTable duplicate() {
+            return new DbfTable(this);
+        }
+        
+        private boolean isDeleted(int i) {
+            return this.buffer.get(this.headerLength + i * this.recordLength) == '*';
+        }
+        
+        /**
+         * This function reads the values of a record.
+         * Values are trimmed, empty values of non-character fields are null.
+         * @param i the zero-based index of the record
+         * @return the values of the record
+         */
+        private String[] readRecord(int i) {
+            this.buffer.position(this.headerLength + i * this.recordLength);
+            this.buffer.get(this.record);
+            String[] values = new String[this.names.length];
+            for(int j = 0; j < values.length; j++) {
+                String value = new String(this.record, this.fieldOffsets[j], this.fieldLengths[j], this.charset).trim();
+                values[j] = value.isEmpty() && this.types[j] != 'C' ? null : value;
+            }
+            return values;
+        }
+        
+    }
+    
+}
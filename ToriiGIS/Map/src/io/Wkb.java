@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import layer.Geometry;
+import layer.Line;
+import layer.PackedCoordinates;
+import layer.Point;
+import layer.Polygon;
+import layer.VertexCursor;
+import layer.VertexSequence;
+
+/**
+ * This class encodes and decodes geometries as Well-Known Binary (WKB).
+ * <br>The ISO variant of WKB is written, i.e. three-dimensional geometries
+ * get a type code increased by 1000. The output is always little endian.
+ * <br>The decoder accepts ISO WKB and the extended WKB of PostGIS in both
+ * byte orders. Measures and holes of polygons are dropped.
+ * @author Christoph
+ */
+public final class Wkb {
+    
+    private static final int LITTLE_ENDIAN = 1;
+    private static final int Z_OFFSET = 1000;
+    private static final int EWKB_Z = 0x80000000;
+    private static final int EWKB_M = 0x40000000;
+    private static final int EWKB_SRID = 0x20000000;
+
+    private Wkb() {
+    }
+    
+    /**
+     * This function encodes one geometry as WKB.
+     * @param geom the Geometry-object
+     * @param hasZ TRUE, if the Z-coordinates have to be written
+     * @return an array of bytes containing the WKB
+     */
+    public static byte[] toBytes(Geometry geom, boolean hasZ) {
+        return toBytes(Collections.singletonList(geom), false, hasZ);
+    }
+    
+    /**
+     * This function encodes one feature, i.e. a single geometry or a
+     * multi-geometry, as WKB.
+     * @param parts the geometries of the feature
+     * @param multi TRUE, if the feature is a multi-geometry
+     * @param hasZ TRUE, if the Z-coordinates have to be written
+     * @return an array of bytes containing the WKB
+     */
+    public static byte[] toBytes(List<Geometry> parts, boolean multi, boolean hasZ) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ChannelOutput out = new ChannelOutput(Channels.newChannel(bytes), ByteOrder.LITTLE_ENDIAN);
+            write(parts, multi, hasZ, out);
+            out.flush();
+        } catch (IOException ex) {
+            throw new IllegalStateException("writing into memory failed", ex);
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * This function writes one feature as WKB into an output.
+     * The byte order of the output has to be little endian.
+     * @param parts the geometries of the feature
+     * @param multi TRUE, if the feature is a multi-geometry
+     * @param hasZ TRUE, if the Z-coordinates have to be written
+     * @param out the output
+     * @throws IOException if the geometry cannot be written
+     */
+    public static void write(List<Geometry> parts, boolean multi, boolean hasZ, ChannelOutput out) throws IOException {
+        if(!multi) {
+            writeGeometry(Features.toSimpleGeometry(parts.get(0)), hasZ, out);
+            return;
+        }
+        out.writeByte(LITTLE_ENDIAN);
+        out.writeInt(Features.typeOf(parts, true) + (hasZ ? Z_OFFSET : 0));
+        out.writeInt(parts.size());
+        for(Geometry part : parts) {
+            writeGeometry(Features.toSimpleGeometry(part), hasZ, out);
+        }
+    }
+    
+    /**
+     * This function writes a single geometry as WKB.
+     * @param geom a Point-, Line- or Polygon-object
+     * @param hasZ TRUE, if the Z-coordinates have to be written
+     * @param out the output
+     * @throws IOException if the geometry cannot be written
+     */
+    private static void writeGeometry(Geometry geom, boolean hasZ, ChannelOutput out) throws IOException {
+        int type = Features.typeOf(geom);
+        out.writeByte(LITTLE_ENDIAN);
+        out.writeInt(type + (hasZ ? Z_OFFSET : 0));
+        if(type == Features.POINT) {
+            Point p = (Point) geom;
+            writePosition(p.getXCoord(), p.getYCoord(), p.getZCoord(), hasZ, out);
+            return;
+        }
+        if(type == Features.POLYGON) {
+            out.writeInt(1);
+        }
+        int count = Features.countOfCoordinates(geom);
+        out.writeInt(count);
+        VertexCursor cursor = new VertexCursor().reset((VertexSequence) geom, true);
+        while(cursor.next()) {
+            writePosition(cursor.getX(), cursor.getY(), cursor.getZ(), hasZ, out);
+        }
+    }
+    
+    /**
+     * This function writes the coordinates of one position.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param z the z-coordinate
+     * @param hasZ TRUE, if the Z-coordinate has to be written
+     * @param out the output
+     * @throws IOException if the position cannot be written
+     */
+    private static void writePosition(double x, double y, double z, boolean hasZ, ChannelOutput out) throws IOException {
+        out.writeDouble(x);
+        out.writeDouble(y);
+        if(hasZ) {
+            out.writeDouble(z);
+        }
+    }
+    
+    /**
+     * This function decodes one feature from WKB.
+     * @param wkb the WKB or extended WKB
+     * @return the geometries of the feature, one for single geometries
+     * @throws IllegalArgumentException if the bytes are no valid WKB
+     */
+    public static ArrayList<Geometry> fromBytes(byte[] wkb) {
+        ArrayList<Geometry> parts = new ArrayList<>();
+        try {
+            readGeometry(ByteBuffer.wrap(wkb), parts);
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("the WKB ends unexpectedly", ex);
+        }
+        return parts;
+    }
+    
+    /**
+     * This function returns the information, whether WKB contains a multi-geometry.
+     * @param wkb the WKB or extended WKB
+     * @return TRUE if the type is a multi-geometry or a geometry collection
+     */
+    public static boolean isMulti(byte[] wkb) {
+        if(wkb.length < 5) {
+            return false;
+        }
+        ByteBuffer in = ByteBuffer.wrap(wkb);
+        in.order(in.get() == LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        return (in.getInt() & 0x0FFFFFFF) % Z_OFFSET >= Features.MULTIPOINT;
+    }
+    
+    /**
+     * This function decodes a hexadecimal string, e.g. the text representation
+     * of a PostGIS geometry.
+     * @param hex the hexadecimal digits
+     * @return the array of bytes
+     * @throws IllegalArgumentException if the string contains other characters
+     */
+    public static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for(int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if(high < 0 || low < 0) {
+                throw new IllegalArgumentException("invalid hexadecimal digit at position " + 2 * i);
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+    
+    /**
+     * This function decodes a geometry and adds its parts to the list.
+     * Empty points are skipped.
+     * @param in the buffer positioned at the byte order of the geometry
+     * @param parts the list for the decoded geometries
+     */
+    private static void readGeometry(ByteBuffer in, ArrayList<Geometry> parts) {
+        in.order(in.get() == LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int code = in.getInt();
+        boolean hasZ = (code & EWKB_Z) != 0;
+        boolean hasM = (code & EWKB_M) != 0;
+        if((code & EWKB_SRID) != 0) {
+            in.getInt();
+        }
+        int type = code & 0x0FFFFFFF;
+        hasZ |= type / Z_OFFSET == 1 || type / Z_OFFSET == 3;
+        hasM |= type / Z_OFFSET == 2 || type / Z_OFFSET == 3;
+        type %= Z_OFFSET;
+        int countOfValues = 2 + (hasZ ? 1 : 0) + (hasM ? 1 : 0);
+        
+        switch(type) {
+            case Features.POINT:
+                double x = in.getDouble();
+                double y = in.getDouble();
+                double z = hasZ ? in.getDouble() : 0.0;
+                if(hasM) {
+                    in.getDouble();
+                }
+                if(!Double.isNaN(x) && !Double.isNaN(y)) {
+                    parts.add(new Point(x, y, z));
+                }
+                break;
+            case Features.LINESTRING:
+                parts.add(new Line(readCoordinates(in, countOfValues, hasZ, false)));
+                break;
+            case Features.POLYGON:
+                int countOfRings = in.getInt();
+                if(countOfRings == 0) {
+                    parts.add(new Polygon());
+                    break;
+                }
+                parts.add(new Polygon(readCoordinates(in, countOfValues, hasZ, true)));
+                for(int i = 1; i < countOfRings; i++) {
+                    int count = in.getInt();
+                    in.position(in.position() + 8 * countOfValues * count);
+                }
+                break;
+            case Features.MULTIPOINT:
+            case Features.MULTILINESTRING:
+            case Features.MULTIPOLYGON:
+            case Features.GEOMETRYCOLLECTION:
+                int countOfParts = in.getInt();
+                for(int i = 0; i < countOfParts; i++) {
+                    readGeometry(in, parts);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported WKB geometry type " + type);
+        }
+    }
+    
+    /**
+     * This function decodes the vertices of a line string or a ring.
+     * @param in the buffer positioned at the number of vertices
+     * @param countOfValues the number of values per vertice
+     * @param hasZ TRUE, if the third value is the z-coordinate
+     * @param ring TRUE if the closing vertice should be dropped
+     * @return the new PackedCoordinates-object
+     */
+    private static PackedCoordinates readCoordinates(ByteBuffer in, int countOfValues, boolean hasZ, boolean ring) {
+        int count = in.getInt();
+        if(count < 0 || (long) 8 * countOfValues * count > in.remaining()) {
+            throw new IllegalArgumentException("invalid number of vertices: " + count);
+        }
+        double[] xyz = new double[3 * count];
+        for(int i = 0; i < count; i++) {
+            xyz[3 * i] = in.getDouble();
+            xyz[3 * i + 1] = in.getDouble();
+            if(hasZ) {
+                xyz[3 * i + 2] = in.getDouble();
+            }
+            if(countOfValues == (hasZ ? 4 : 3)) {
+                in.getDouble();
+            }
+        }
+        if(ring && count > 1 && xyz[0] == xyz[3 * count - 3] && xyz[1] == xyz[3 * count - 2]
+                && xyz[2] == xyz[3 * count - 1]) {
+            count--;
+        }
+        return new PackedCoordinates(xyz, 0, count);
+    }
+    
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import layer.Attributes;
+import layer.Geometry;
+import layer.Layer;
+import layer.Point;
+import layer.VertexCursor;
+import layer.VertexSequence;
+
+/**
+ * This class exports a layer as delimited text with the geometry as
+ * Well-Known Text (WKT) in the first column.
+ * <br>The file can be read by most GIS and databases. Every value is
+ * quoted and the columns are separated by semicolons.
+ * @author Christoph
+ */
+public class WktWriter implements LayerWriter {
+    
+    private static final String[] TYPE_NAMES = {"GEOMETRYCOLLECTION", "POINT", "LINESTRING", "POLYGON",
+                                                "MULTIPOINT", "MULTILINESTRING", "MULTIPOLYGON",
+                                                "GEOMETRYCOLLECTION"};
+    private static final char SEPARATOR = ';';
+
+    /**
+     * This function writes the layer as delimited text to the channel.
+     * @param layer the Layer-object to export
+     * @param channel the channel for the output
+     * @throws IOException if the layer cannot be written
+     */
+    @Override
+    public void write(Layer layer, WritableByteChannel channel) throws IOException {
+        ChannelOutput out = new ChannelOutput(channel, ByteOrder.BIG_ENDIAN);
+        boolean hasZ = Features.hasZ(layer);
+        Attributes attributes = layer.getAttributeTable();
+        String[] attrNames = attributes == null ? new String[0] : attributes.getAttrNames();
+        
+        StringBuilder line = new StringBuilder();
+        line.append(quote("WKT"));
+        for(String attrName : attrNames) {
+            line.append(SEPARATOR).append(quote(attrName));
+        }
+        out.writeString(line.append('\n').toString());
+        
+        for(int i = 0; i < layer.getCountOfFeatures(); i++) {
+            line.setLength(0);
+            line.append(quote(toWkt(layer.getFeatureGeometries(i), layer.isMultiFeature(i), hasZ)));
+            String[] attrs = layer.getFeatureAttrs(i);
+            for(int j = 0; j < attrNames.length; j++) {
+                line.append(SEPARATOR);
+                if(attrs != null && j < attrs.length && attrs[j] != null) {
+                    line.append(quote(attrs[j]));
+                }
+            }
+            out.writeString(line.append('\n').toString());
+        }
+        out.flush();
+    }
+    
+    /**
+     * This function returns the WKT of one feature.
+     * @param parts the geometries of the feature
+     * @param multi TRUE, if the feature is a multi-geometry
+     * @param hasZ TRUE, if the Z-coordinates have to be written
+     * @return the feature as WKT
+     */
+    public static String toWkt(List<Geometry> parts, boolean multi, boolean hasZ) {
+        StringBuilder wkt = new StringBuilder();
+        appendFeature(parts, multi, hasZ, wkt);
+        return wkt.toString();
+    }
+    
+    /**
+     * This function appends the WKT of one feature to a StringBuilder.
+     * @param parts the geometries of the feature
+     * @param multi TRUE, if the feature is a multi-geometry
+     * @param hasZ TRUE, if the Z-coordinates have to be written
+     * @param wkt the StringBuilder for the output
+     */
+    private static void appendFeature(List<Geometry> parts, boolean multi, boolean hasZ, StringBuilder wkt) {
+        int type = Features.typeOf(parts, multi);
+        wkt.append(TYPE_NAMES[type]).append(hasZ ? " Z " : " ");
+        if(!multi) {
+            appendCoordinates(Features.toSimpleGeometry(parts.get(0)), hasZ, wkt);
+            return;
+        }
+        wkt.append('(');
+        for(int i = 0; i < parts.size(); i++) {
+            if(i > 0) {
+                wkt.append(", ");
+            }
+            if(type == Features.GEOMETRYCOLLECTION) {
+                appendFeature(parts.subList(i, i + 1), false, hasZ, wkt);
+            } else {
+                appendCoordinates(Features.toSimpleGeometry(parts.get(i)), hasZ, wkt);
+            }
+        }
+        wkt.append(')');
+    }
+    
+    /**
+     * This function appends the coordinate list of a single geometry.
+     * @param geom a Point-, Line- or Polygon-object
+     * @param hasZ TRUE, if the Z-coordinates have to be written
+     * @param wkt the StringBuilder for the output
+     */
+    private static void appendCoordinates(Geometry geom, boolean hasZ, StringBuilder wkt) {
+        boolean polygon = Features.typeOf(geom) == Features.POLYGON;
+        wkt.append(polygon ? "((" : "(");
+        if(geom instanceof Point) {
+            Point p = (Point) geom;
+            appendPosition(p.getXCoord(), p.getYCoord(), p.getZCoord(), hasZ, wkt);
+        } else {
+            VertexCursor cursor = new VertexCursor().reset((VertexSequence) geom, true);
+            while(cursor.next()) {
+                if(cursor.getIndex() > 0) {
+                    wkt.append(", ");
+                }
+                appendPosition(cursor.getX(), cursor.getY(), cursor.getZ(), hasZ, wkt);
+            }
+        }
+        wkt.append(polygon ? "))" : ")");
+    }
+    
+    /**
+     * This function appends the coordinates of one position.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param z the z-coordinate
+     * @param hasZ TRUE, if the Z-coordinate has to be written
+     * @param wkt the StringBuilder for the output
+     */
+    private static void appendPosition(double x, double y, double z, boolean hasZ, StringBuilder wkt) {
+        wkt.append(x).append(' ').append(y);
+        if(hasZ) {
+            wkt.append(' ').append(z);
+        }
+    }
+    
+    /**
+     * This function quotes a value for the delimited text.
+     * @param value the value
+     * @return the value in double quotes, with inner double quotes doubled
+     */
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+    
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package label;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class detects collisions between labels in screen space.
+ * <br>The boxes of the placed labels are registered in all cells of a
+ * uniform grid, which they overlap. A new box has to be compared only with
+ * the boxes of its own cells, i.e. placing n labels needs linear instead of
+ * quadratic time. Only the occupied cells are stored.
+ * @author Christoph
+ */
+final class LabelGrid {
+    
+    private final double cellSize;
+    private final HashMap<Long, ArrayList<Rectangle2D>> cells = new HashMap<>();
+
+    /**
+     * The constructor of this class.
+     * @param cellSize the width and height of a cell in pixel
+     */
+    LabelGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+    
+    /**
+     * This function checks, whether a box does not overlap any registered box.
+     * @param box the box in pixel
+     * @return TRUE if the box is free
+     */
+    boolean isFree(Rectangle2D box) {
+        for(long column = this.toCell(box.getMinX()); column <= this.toCell(box.getMaxX()); column++) {
+            for(long row = this.toCell(box.getMinY()); row <= this.toCell(box.getMaxY()); row++) {
+                ArrayList<Rectangle2D> boxes = this.cells.get(toKey(column, row));
+                if(boxes == null) {
+                    continue;
+                }
+                for(Rectangle2D other : boxes) {
+                    if(other.intersects(box)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * This function registers a box.
+     * @param box the box in pixel
+     */
+    void add(Rectangle2D box) {
+        for(long column = this.toCell(box.getMinX()); column <= this.toCell(box.getMaxX()); column++) {
+            for(long row = this.toCell(box.getMinY()); row <= this.toCell(box.getMaxY()); row++) {
+                this.cells.computeIfAbsent(toKey(column, row), (key) -> new ArrayList<>(4)).add(box);
+            }
+        }
+    }
+    
+    private long toCell(double position) {
+        return (long) Math.floor(position / this.cellSize);
+    }
+    
+    private static long toKey(long column, long row) {
+        return column << 32 ^ (row & 0xFFFFFFFFL);
+    }
+    
+}
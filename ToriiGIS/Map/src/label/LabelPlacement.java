@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package label;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * This class describes one placed label.
+ * <br>The label is anchored at a position in map coordinates, e.g. a point
+ * or the middle of a line. Its centre is shifted by an offset in pixels and
+ * the text is rotated around the centre, i.e. the label keeps its size on the
+ * screen while panning. The outline of the text is created during the
+ * placement, so that drawing does not need to lay out the text again.
+ * @author Christoph
+ */
+final class LabelPlacement {
+    
+    private final double x;
+    private final double y;
+    private final double offsetX;
+    private final double offsetY;
+    private final double angle;
+    private final Shape outline;
+    private final Rectangle2D envelope;
+
+    /**
+     * The constructor of this class.
+     * @param x the x-coordinate of the anchor in map units
+     * @param y the y-coordinate of the anchor in map units
+     * @param offsetX the horizontal distance between the anchor and the centre in pixel
+     * @param offsetY the vertical distance between the anchor and the centre in pixel
+     * @param angle the rotation of the text in radians
+     * @param outline the outline of the text centred at the origin
+     * @param envelope the area covered by the label in map units
+     */
+    LabelPlacement(double x, double y, double offsetX, double offsetY, double angle,
+                   Shape outline, Rectangle2D envelope) {
+        this.x = x;
+        this.y = y;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.angle = angle;
+        this.outline = outline;
+        this.envelope = envelope;
+    }
+    
+    double getX() {
+        return this.x;
+    }
+    
+    double getY() {
+        return this.y;
+    }
+    
+    double getOffsetX() {
+        return this.offsetX;
+    }
+    
+    double getOffsetY() {
+        return this.offsetY;
+    }
+    
+    double getAngle() {
+        return this.angle;
+    }
+    
+    Shape getOutline() {
+        return this.outline;
+    }
+    
+    Rectangle2D getEnvelope() {
+        return this.envelope;
+    }
+    
+}
@@ -0,0 +1,602 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package label;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.EventListenerList;
+import layer.Attributes;
+import layer.Circle;
+import layer.Geometry;
+import layer.Layer;
+import layer.LayerEvent;
+import layer.LayerListener;
+import layer.Line;
+import layer.Point;
+import layer.Polygon;
+import layer.RTree;
+import layer.VertexSequence;
+
+/**
+ * This class places the values of an attribute as labels of the features
+ * of a layer.
+ * <br>Points are labelled at one of the four diagonal positions around them,
+ * lines along the segment in the middle of their length and polygons at an
+ * inner point on the horizontal line through the centre of their envelope.
+ * Multi-geometries are labelled at their largest part. Large polygons and
+ * long lines are placed first, labels overlapping an already placed label are
+ * dropped. The collisions are detected with a grid in screen space.
+ * <br>The placement depends only on the scale and the rotation of the map,
+ * not on its translation, i.e. it is computed once per zoom level and reused
+ * while panning. The texts and the coordinates of the features are copied on
+ * the calling thread, the computation runs on a background thread and uses
+ * only these copies. The listeners
+ * are informed when new placements are available. Until then no labels are
+ * drawn at the new zoom level. The placements are discarded, when the
+ * geometries of the layer or the settings of the labels change.
+ * @author Christoph
+ */
+public class Labeler {
+    
+    private static final double CELL_SIZE = 64.0;
+    private static final double PADDING = 2.0;
+    private static final double POINT_DISTANCE = 4.0;
+    private static final int MAX_CACHED_ZOOM_LEVELS = 8;
+    private static final FontRenderContext FONT_CONTEXT = new FontRenderContext(null, true, true);
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "labeler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final Layer layer;
+    private final String attrName;
+    private final EventListenerList listenerList = new EventListenerList();
+    private final LayerListener layerListener = (e) -> {
+        if(e.getType() != LayerEvent.STYLE_CHANGED) {
+            this.invalidate();
+        }
+    };
+    private final LinkedHashMap<List<Double>, RTree<LabelPlacement>> placements;
+    private Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+    private Color colour = Color.BLACK;
+    private Color haloColour = Color.WHITE;
+    private List<Double> requestedZoomLevel = null;
+    private int generation = 0;
+
+    /**
+     * The constructor of this class. The labeler listens to the changes
+     * of the layer until it will be disposed.
+     * @param layer the layer, whose features have to be labelled
+     * @param attrName the name of the attribute with the text of the labels
+     */
+    public Labeler(Layer layer, String attrName) {
+        this.layer = layer;
+        this.attrName = attrName;
+        this.placements = new LinkedHashMap<List<Double>, RTree<LabelPlacement>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Double>, RTree<LabelPlacement>> eldest) {
+                return this.size() > MAX_CACHED_ZOOM_LEVELS;
+            }
+        };
+        layer.addLayerListener(this.layerListener);
+    }
+    
+    /**
+     * This function draws all labels within the visible area. If the labels
+     * of the current zoom level are not placed yet, their placement will be
+     * started in the background.
+     * @param g2 a Graphics2D-object in screen coordinates
+     * @param mapTransform the transformation from map into screen coordinates
+     * @param visibleArea the area in map units, that has to be drawn
+     */
+    public void draw(Graphics2D g2, AffineTransform mapTransform, Rectangle2D visibleArea) {
+        List<Double> zoomLevel = Arrays.asList(mapTransform.getScaleX(), mapTransform.getShearY(),
+                                               mapTransform.getShearX(), mapTransform.getScaleY());
+        RTree<LabelPlacement> index;
+        Color textColour;
+        Color halo;
+        synchronized(this) {
+            index = this.placements.get(zoomLevel);
+            if(index == null) {
+                this.requestPlacement(zoomLevel);
+                return;
+            }
+            textColour = this.colour;
+            halo = this.haloColour;
+        }
+        
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setStroke(new BasicStroke(3.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        Point2D.Double anchor = new Point2D.Double();
+        for(LabelPlacement label : index.search(visibleArea)) {
+            anchor.setLocation(label.getX(), label.getY());
+            mapTransform.transform(anchor, anchor);
+            AffineTransform labelTransform = AffineTransform.getTranslateInstance(anchor.getX() + label.getOffsetX(),
+                                                                                  anchor.getY() + label.getOffsetY());
+            labelTransform.rotate(label.getAngle());
+            Shape outline = labelTransform.createTransformedShape(label.getOutline());
+            if(halo != null) {
+                g2.setColor(halo);
+                g2.draw(outline);
+            }
+            g2.setColor(textColour);
+            g2.fill(outline);
+        }
+    }
+    
+    /**
+     * This function sets the font of the labels.
+     * @param font the new Font-object
+     */
+    public void setFont(Font font) {
+        synchronized(this) {
+            this.font = font;
+        }
+        this.invalidate();
+    }
+    
+    /**
+     * This function sets the colours of the labels.
+     * @param colour the colour of the text
+     * @param haloColour the colour of the outline around the text or null for no outline
+     */
+    public void setColours(Color colour, Color haloColour) {
+        synchronized(this) {
+            this.colour = colour;
+            this.haloColour = haloColour;
+        }
+        this.fireStateChanged();
+    }
+    
+    /**
+     * @return the font of the labels
+     */
+    public synchronized Font getFont() {
+        return this.font;
+    }
+    
+    /**
+     * @return the colour of the text
+     */
+    public synchronized Color getColour() {
+        return this.colour;
+    }
+    
+    /**
+     * @return the colour of the outline around the text or null
+     */
+    public synchronized Color getHaloColour() {
+        return this.haloColour;
+    }
+    
+    /**
+     * @return the labelled layer
+     */
+    public Layer getLayer() {
+        return this.layer;
+    }
+    
+    /**
+     * @return the name of the attribute with the text of the labels
+     */
+    public String getAttrName() {
+        return this.attrName;
+    }
+    
+    /**
+     * This function registers a listener, which will be informed, when new
+     * placements are available or the settings have changed. The listener
+     * may be called on a background thread.
+     * @param listener the new ChangeListener-object
+     */
+    public void addChangeListener(ChangeListener listener) {
+        this.listenerList.add(ChangeListener.class, listener);
+    }
+    
+    /**
+     * This function removes a registered listener.
+     * @param listener the ChangeListener-object, that has to be removed
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        this.listenerList.remove(ChangeListener.class, listener);
+    }
+    
+    /**
+     * This function discards all placements, e.g. after the attributes
+     * of the layer have been changed.
+     */
+    public void invalidate() {
+        synchronized(this) {
+            this.placements.clear();
+            this.requestedZoomLevel = null;
+            this.generation++;
+        }
+        this.fireStateChanged();
+    }
+    
+    /**
+     * This function stops listening to the changes of the layer.
+     */
+    public void dispose() {
+        this.layer.removeLayerListener(this.layerListener);
+        synchronized(this) {
+            this.placements.clear();
+            this.generation++;
+        }
+    }
+    
+    /**
+     * This function informs all registered listeners about new placements.
+     */
+    protected void fireStateChanged() {
+        ChangeEvent e = new ChangeEvent(this);
+        for(ChangeListener listener : this.listenerList.getListeners(ChangeListener.class)) {
+            listener.stateChanged(e);
+        }
+    }
+    
+    /**
+     * This function starts the placement of the labels for a zoom level.
+     * The texts and the coordinates of the labelled parts are copied on the
+     * calling thread, all other work is done in the background without
+     * reading the geometries of the layer.
+     */
+    private void requestPlacement(List<Double> zoomLevel) {
+        if(zoomLevel.equals(this.requestedZoomLevel)) {
+            return;
+        }
+        this.requestedZoomLevel = zoomLevel;
+        int currentGeneration = this.generation;
+        Font currentFont = this.font;
+        ArrayList<Candidate> candidates = this.createCandidates();
+        
+        EXECUTOR.execute(() -> {
+            synchronized(this) {
+                if(currentGeneration != this.generation || !zoomLevel.equals(this.requestedZoomLevel)) {
+                    return;
+                }
+            }
+            RTree<LabelPlacement> index = place(candidates, currentFont, zoomLevel);
+            synchronized(this) {
+                if(currentGeneration != this.generation) {
+                    return;
+                }
+                if(zoomLevel.equals(this.requestedZoomLevel)) {
+                    this.requestedZoomLevel = null;
+                }
+                this.placements.put(zoomLevel, index);
+            }
+            this.fireStateChanged();
+        });
+    }
+    
+    /**
+     * This function copies the texts and the coordinates of the features,
+     * which have to be labelled.
+     * @return an ArrayList with one candidate per feature with a text
+     */
+    private ArrayList<Candidate> createCandidates() {
+        Attributes attributes = this.layer.getAttributeTable();
+        int column = attributes == null ? -1 : attributes.indexOf(this.attrName);
+        ArrayList<Candidate> candidates = new ArrayList<>();
+        if(column < 0) {
+            return candidates;
+        }
+        List<String> texts = attributes.getColumn(column);
+        int featureIndex = 0;
+        for(Geometry geom : this.layer.getGeometryList()) {
+            addCandidate(candidates, texts, featureIndex++, Collections.singletonList(geom));
+        }
+        for(List<Geometry> multiGeom : this.layer.getMultiGeometryList()) {
+            addCandidate(candidates, texts, featureIndex++, multiGeom);
+        }
+        return candidates;
+    }
+    
+    private static void addCandidate(List<Candidate> candidates, List<String> texts, int featureIndex,
+                                     List<Geometry> parts) {
+        String text = featureIndex < texts.size() ? texts.get(featureIndex) : null;
+        if(text == null || text.trim().isEmpty()) {
+            return;
+        }
+        Candidate candidate = new Candidate(text.trim(), parts);
+        if(candidate.vertices != null) {
+            candidates.add(candidate);
+        }
+    }
+    
+    /**
+     * This function places the labels of all features for one zoom level.
+     * The positions are computed in pixels of the whole map at this zoom level.
+     */
+    private static RTree<LabelPlacement> place(List<Candidate> candidates, Font font, List<Double> zoomLevel) {
+        AffineTransform transform = new AffineTransform(zoomLevel.get(0), zoomLevel.get(1),
+                                                        zoomLevel.get(2), zoomLevel.get(3), 0.0, 0.0);
+        AffineTransform inverse;
+        try {
+            inverse = transform.createInverse();
+        } catch (NoninvertibleTransformException ex) {
+            return new RTree<>();
+        }
+        
+        //label large features first
+        ArrayList<Candidate> sorted = new ArrayList<>(candidates);
+        Collections.sort(sorted, (c1, c2) -> Double.compare(c2.priority, c1.priority));
+        
+        LabelGrid grid = new LabelGrid(CELL_SIZE);
+        ArrayList<LabelPlacement> labels = new ArrayList<>();
+        ArrayList<Rectangle2D> envelopes = new ArrayList<>();
+        for(Candidate candidate : sorted) {
+            Shape outline = font.createGlyphVector(FONT_CONTEXT, candidate.text).getOutline();
+            Rectangle2D textBounds = outline.getBounds2D();
+            outline = AffineTransform.getTranslateInstance(-textBounds.getCenterX(), -textBounds.getCenterY())
+                                     .createTransformedShape(outline);
+            double width = textBounds.getWidth() + 2 * PADDING;
+            double height = textBounds.getHeight() + 2 * PADDING;
+            double[] vertices = candidate.vertices;
+            LabelPlacement label;
+            if(candidate.kind == Candidate.LINE) {
+                label = placeAlongLine(vertices, outline, width, height, transform, grid);
+            } else if(candidate.kind == Candidate.POLYGON) {
+                label = placeInPolygon(vertices, outline, width, height, transform, grid);
+            } else if(candidate.kind == Candidate.CENTRE) {
+                label = placeAt(vertices[0], vertices[1], 0.0, 0.0, outline, width, height, transform, grid);
+            } else {
+                label = placeAroundPoint(vertices[0], vertices[1], outline, width, height, transform, grid);
+            }
+            if(label != null) {
+                labels.add(label);
+                envelopes.add(label.getEnvelope());
+            }
+        }
+        
+        //convert the envelopes of the labels into map units
+        for(int i = 0; i < envelopes.size(); i++) {
+            envelopes.set(i, inverse.createTransformedShape(envelopes.get(i)).getBounds2D());
+        }
+        RTree<LabelPlacement> index = new RTree<>();
+        index.load(envelopes, labels);
+        return index;
+    }
+    
+    private static LabelPlacement placeAroundPoint(double x, double y, Shape outline, double width, double height,
+                                                   AffineTransform transform, LabelGrid grid) {
+        double dx = width / 2 + POINT_DISTANCE;
+        double dy = height / 2 + POINT_DISTANCE;
+        double[] offsets = {dx, -dy, -dx, -dy, dx, dy, -dx, dy};
+        for(int i = 0; i < offsets.length; i += 2) {
+            LabelPlacement label = placeAt(x, y, offsets[i], offsets[i + 1], outline, width, height, transform, grid);
+            if(label != null) {
+                return label;
+            }
+        }
+        return null;
+    }
+    
+    private static LabelPlacement placeInPolygon(double[] vertices, Shape outline, double width, double height,
+                                                 AffineTransform transform, LabelGrid grid) {
+        Rectangle2D bounds = new Rectangle2D.Double(vertices[0], vertices[1], 0.0, 0.0);
+        for(int i = 2; i < vertices.length; i += 2) {
+            bounds.add(vertices[i], vertices[i + 1]);
+        }
+        Rectangle2D envelope = transform.createTransformedShape(bounds).getBounds2D();
+        if(envelope.getWidth() < height && envelope.getHeight() < height) {
+            return null;
+        }
+        double centreY = bounds.getCenterY();
+        
+        //find the widest part of the horizontal line through the centre inside the polygon
+        ArrayList<Double> crossings = new ArrayList<>();
+        int count = vertices.length / 2;
+        for(int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            double y1 = vertices[2 * i + 1];
+            double y2 = vertices[2 * j + 1];
+            if((y1 > centreY) != (y2 > centreY)) {
+                double x1 = vertices[2 * i];
+                double x2 = vertices[2 * j];
+                crossings.add(x1 + (centreY - y1) * (x2 - x1) / (y2 - y1));
+            }
+        }
+        Collections.sort(crossings);
+        double bestX = Double.NaN;
+        double bestWidth = -1.0;
+        for(int i = 0; i + 1 < crossings.size(); i += 2) {
+            double spanWidth = crossings.get(i + 1) - crossings.get(i);
+            if(spanWidth > bestWidth) {
+                bestWidth = spanWidth;
+                bestX = (crossings.get(i) + crossings.get(i + 1)) / 2;
+            }
+        }
+        if(Double.isNaN(bestX)) {
+            return null;
+        }
+        return placeAt(bestX, centreY, 0.0, 0.0, outline, width, height, transform, grid);
+    }
+    
+    private static LabelPlacement placeAlongLine(double[] coordinates, Shape outline, double width, double height,
+                                                 AffineTransform transform, LabelGrid grid) {
+        double[] vertices = new double[coordinates.length];
+        transform.transform(coordinates, 0, vertices, 0, vertices.length / 2);
+        double length = 0.0;
+        for(int i = 2; i < vertices.length; i += 2) {
+            length += Math.hypot(vertices[i] - vertices[i - 2], vertices[i + 1] - vertices[i - 1]);
+        }
+        if(length < width) {
+            return null;
+        }
+        
+        //find the segment in the middle of the line
+        double remaining = length / 2;
+        for(int i = 2; i < vertices.length; i += 2) {
+            double dx = vertices[i] - vertices[i - 2];
+            double dy = vertices[i + 1] - vertices[i - 1];
+            double segmentLength = Math.hypot(dx, dy);
+            if(segmentLength < remaining) {
+                remaining -= segmentLength;
+                continue;
+            }
+            double centreX = vertices[i - 2] + dx * remaining / segmentLength;
+            double centreY = vertices[i - 1] + dy * remaining / segmentLength;
+            double angle = Math.atan2(dy, dx);
+            if(angle > Math.PI / 2) {
+                angle -= Math.PI;
+            } else if(angle <= -Math.PI / 2) {
+                angle += Math.PI;
+            }
+            
+            //approximate the rotated label by squares along the text
+            int countOfBoxes = (int) Math.ceil(width / height);
+            ArrayList<Rectangle2D> boxes = new ArrayList<>(countOfBoxes);
+            double step = (width - height) / Math.max(1, countOfBoxes - 1);
+            double extent = height * (Math.abs(Math.cos(angle)) + Math.abs(Math.sin(angle)));
+            for(int j = 0; j < countOfBoxes; j++) {
+                double distance = countOfBoxes == 1 ? 0.0 : -(width - height) / 2 + j * step;
+                Rectangle2D box = new Rectangle2D.Double(centreX + distance * Math.cos(angle) - extent / 2,
+                                                         centreY + distance * Math.sin(angle) - extent / 2,
+                                                         extent, extent);
+                if(!grid.isFree(box)) {
+                    return null;
+                }
+                boxes.add(box);
+            }
+            Rectangle2D envelope = new Rectangle2D.Double(centreX, centreY, 0.0, 0.0);
+            boxes.forEach((box) -> {
+                grid.add(box);
+                envelope.add(box);
+            });
+            Point2D anchor = inverseTransform(transform, centreX, centreY);
+            return anchor == null ? null : new LabelPlacement(anchor.getX(), anchor.getY(), 0.0, 0.0, angle,
+                                                              outline, envelope);
+        }
+        return null;
+    }
+    
+    /**
+     * This function places a horizontal label, if its box is free.
+     * @return the LabelPlacement-object or null, if the label collides with another one
+     */
+    private static LabelPlacement placeAt(double x, double y, double offsetX, double offsetY, Shape outline,
+                                          double width, double height, AffineTransform transform, LabelGrid grid) {
+        Point2D position = transform.transform(new Point2D.Double(x, y), null);
+        Rectangle2D box = new Rectangle2D.Double(position.getX() + offsetX - width / 2,
+                                                 position.getY() + offsetY - height / 2, width, height);
+        if(!grid.isFree(box)) {
+            return null;
+        }
+        grid.add(box);
+        return new LabelPlacement(x, y, offsetX, offsetY, 0.0, outline, box);
+    }
+    
+    private static Point2D inverseTransform(AffineTransform transform, double x, double y) {
+        try {
+            return transform.inverseTransform(new Point2D.Double(x, y), null);
+        } catch (NoninvertibleTransformException ex) {
+            return null;
+        }
+    }
+    
+    private static double[] getVertices(VertexSequence sequence) {
+        double[][] vertices = {new double[2 * Math.max(1, sequence.getCountOfVertices())]};
+        int[] size = {0};
+        sequence.forEachVertex((x, y, z) -> {
+            if(size[0] + 2 > vertices[0].length) {
+                vertices[0] = Arrays.copyOf(vertices[0], 2 * vertices[0].length);
+            }
+            vertices[0][size[0]++] = x;
+            vertices[0][size[0]++] = y;
+        });
+        return Arrays.copyOf(vertices[0], size[0]);
+    }
+    
+    /**
+     * This class describes a feature, which has to be labelled, by a copy
+     * of the coordinates of its largest part.
+     */
+    private static final class Candidate {
+        
+        private static final int POINT = 0;
+        private static final int CENTRE = 1;
+        private static final int LINE = 2;
+        private static final int POLYGON = 3;
+        
+        private final String text;
+        private double priority = -1.0;
+        private int kind = POINT;
+        private double[] vertices = null;
+
+        private Candidate(String text, List<Geometry> parts) {
+            this.text = text;
+            Geometry geom = null;
+            for(Geometry part : parts) {
+                double size;
+                if(part instanceof Polygon) {
+                    size = Math.abs(((Polygon) part).getArea());
+                } else if(part instanceof Circle) {
+                    size = ((Circle) part).getArea();
+                } else if(part instanceof Line) {
+                    size = ((Line) part).getLength();
+                } else {
+                    size = 0.0;
+                }
+                if(size > this.priority) {
+                    geom = part;
+                    this.priority = size;
+                }
+            }
+            
+            if(geom instanceof Line) {
+                this.kind = LINE;
+                this.vertices = getVertices((Line) geom);
+            } else if(geom instanceof Polygon) {
+                this.kind = POLYGON;
+                this.vertices = getVertices((Polygon) geom);
+            } else if(geom instanceof Circle) {
+                Point centre = ((Circle) geom).getCentrePoint();
+                this.kind = CENTRE;
+                this.vertices = new double[] {centre.getXCoord(), centre.getYCoord()};
+            } else if(geom instanceof Point) {
+                this.vertices = new double[] {((Point) geom).getXCoord(), ((Point) geom).getYCoord()};
+            }
+            if(this.vertices != null && this.vertices.length < 2) {
+                this.vertices = null;
+            }
+        }
+        
+    }
+    
+}
@@ -17,24 +17,30 @@
 package layer;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This class provides the attributes of a layer.
  * <br>Attributes can be described by their names, stored in an array of Strings,
- * and their values, stored in an ArrayList of String-arrays.
+ * and their values. The values are stored column by column, i.e. one
+ * ArrayList of Strings per attribute. Datasets (rows) are assembled on demand.
  * @author Christoph
  */
 public class Attributes {
     
     private String[] attrNames;
-    private ArrayList<String[]> attrs; 
+    private final ArrayList<ArrayList<String>> columns;
+    private int size;
+    private int modificationCount = 0;
     
     /**
      * The empty constructor of this class.
      */
     public Attributes() {
         this.attrNames = new String[0];
-        this.attrs = new ArrayList<>();
+        this.columns = new ArrayList<>();
+        this.size = 0;
     }
 
     /**
@@ -44,7 +50,27 @@ public class Attributes {
      */
     public Attributes(String[] attrNames, ArrayList<String[]> attrs) {
         this.attrNames = attrNames;
-        this.attrs = attrs;
+        this.columns = new ArrayList<>();
+        this.size = 0;
+        attrs.forEach((dataset) -> {
+            this.addAttrs(dataset);
+        });
+    }
+    
+    /**
+     * This function creates a new object, which takes over complete columns
+     * (e.g. from an import) without creating datasets.
+     * @param attrNames an array of Strings containing the names of the columns
+     * @param columns a List with one ArrayList of values per column,
+     * all columns have to be of the same size
+     * @return the new Attributes-object
+     */
+    public static Attributes fromColumns(String[] attrNames, List<ArrayList<String>> columns) {
+        Attributes attributes = new Attributes();
+        attributes.attrNames = attrNames;
+        attributes.columns.addAll(columns);
+        attributes.size = columns.isEmpty() ? 0 : columns.get(0).size();
+        return attributes;
     }
 
     /**
@@ -62,15 +88,74 @@ public class Attributes {
      */
     public void setAttrNames(String[] attrNames) {
         this.attrNames = attrNames;
+        this.modificationCount++;
     }
 
     /**
-     * This function returns the name of one attribute given by its index.
-     * @param i the zero-based index of the attribute
-     * @return a String representing the attribute name
+     * This function returns one dataset of attributes given by its index.
+     * @param i the zero-based index of the dataset
+     * @return an array of Strings containing the values of all columns
      */
     public String[] getAttrs(int i) {
-        return this.attrs.get(i);
+        if(i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+        }
+        String[] dataset = new String[this.columns.size()];
+        for(int j = 0; j < dataset.length; j++) {
+            dataset[j] = this.columns.get(j).get(i);
+        }
+        return dataset;
+    }
+    
+    /**
+     * This function returns a single value.
+     * @param i the zero-based index of the dataset
+     * @param column the zero-based index of the column
+     * @return the value as String, or null if the dataset has no value for the column
+     */
+    public String getAttr(int i, int column) {
+        return column < this.columns.size() ? this.columns.get(column).get(i) : null;
+    }
+    
+    /**
+     * This function replaces a single value.
+     * @param i the zero-based index of the dataset
+     * @param column the zero-based index of the column
+     * @param value the new value as String or null
+     */
+    public void setAttr(int i, int column, String value) {
+        if(i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+        }
+        while(this.columns.size() <= column) {
+            this.columns.add(new ArrayList<>(Collections.nCopies(this.size, (String) null)));
+        }
+        this.columns.get(column).set(i, value);
+        this.modificationCount++;
+    }
+    
+    /**
+     * This function returns all values of one column.
+     * The returned list must not be modified.
+     * @param column the zero-based index of the column
+     * @return a List of Strings with one value per dataset
+     */
+    public List<String> getColumn(int column) {
+        return Collections.unmodifiableList(this.columns.get(column));
+    }
+    
+    /**
+     * This function returns the index of a column given by its name.
+     * @param attrName the name of the column
+     * @return the zero-based index of the column, or -1 if there is no column with this name
+     */
+    public int indexOf(String attrName) {
+        for(int j = 0; j < this.attrNames.length; j++) {
+            if(this.attrNames[j].equals(attrName)) {
+                return j;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -79,7 +164,7 @@ public class Attributes {
      * @param attrs an array of Strings containing the data of the new dataset
      */
     public void addAttrs(String[] attrs) {
-        this.attrs.add(attrs);
+        this.addAttrs(attrs, this.size);
     }
     
     /**
@@ -90,15 +175,68 @@ public class Attributes {
      * dataset has to be interted
      */
     public void addAttrs(String[] attrs, int i) {
-        this.attrs.add(i, attrs);
+        if(i < 0 || i > this.size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+        }
+        while(this.columns.size() < attrs.length) {
+            this.columns.add(new ArrayList<>(Collections.nCopies(this.size, (String) null)));
+        }
+        for(int j = 0; j < this.columns.size(); j++) {
+            this.columns.get(j).add(i, j < attrs.length ? attrs[j] : null);
+        }
+        this.size++;
+        this.modificationCount++;
+    }
+    
+    /**
+     * This function removes the dataset of attributes at the given position.
+     * @param i the zero-based index of the dataset, that has to be deleted
+     * @return an array of Strings containing the data of the removed dataset
+     */
+    public String[] removeAttrs(int i) {
+        String[] dataset = this.getAttrs(i);
+        this.columns.forEach((column) -> {
+            column.remove(i);
+        });
+        this.size--;
+        this.modificationCount++;
+        return dataset;
     }
     
     /**
      * This function returns the count of the datasets of attributes.
-     * @return 
+     * @return the number of datasets
      */
     public int size() {
-        return this.attrs.size();
+        return this.size;
+    }
+    
+    /**
+     * This function returns the count of modifications of the names and the
+     * values so far. Caches of derived data can compare it for detecting changes.
+     * @return the count as int value
+     */
+    public int getModificationCount() {
+        return this.modificationCount;
+    }
+    
+    /**
+     * This function estimates the number of bytes used by the values on the heap.
+     * Every value is counted with the overhead of a String-object and two bytes
+     * per character, also if the same String-object is used several times.
+     * @return the estimated size in bytes
+     */
+    public long getStorageSize() {
+        long storageSize = 0;
+        for(ArrayList<String> column : this.columns) {
+            storageSize += 8L * column.size();
+            for(String value : column) {
+                if(value != null) {
+                    storageSize += 40 + 2L * value.length();
+                }
+            }
+        }
+        return storageSize;
     }
     
 }
@@ -16,11 +16,11 @@
  */
 package layer;
 
-import java.awt.Color;
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
 
 /**
  * This class represents a geometric circle.
@@ -114,25 +114,93 @@ public class Circle extends Surface {
     }
     
     /**
-     * This function paints the geometry to a JPanel.
+     * This function returns the envelope of the circle.
+     * @return a Rectangle2D-object enclosing the circle
+     */
+    @Override
+    public Rectangle2D getEnvelope() {
+        return new Rectangle2D.Double(this.centrePoint.getXCoord() - this.radius,
+                                      this.centrePoint.getYCoord() - this.radius,
+                                      2 * this.radius,
+                                      2 * this.radius);
+    }
+    
+    /**
+     * This function checks, wether the given position lies inside the circle
+     * or within the tolerance around it.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @param tolerance the maximum distance in map units
+     * @return TRUE if the circle is hit, otherwise FALSE
+     */
+    @Override
+    public boolean hits(double x, double y, double tolerance) {
+        double deltaX = x - this.centrePoint.getXCoord();
+        double deltaY = y - this.centrePoint.getYCoord();
+        double maxDistance = this.radius + tolerance;
+        return (deltaX * deltaX) + (deltaY * deltaY) <= maxDistance * maxDistance;
+    }
+    
+    /**
+     * This function calculates the distance between the circle and the given position.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @return the distance in map units, zero if the position lies inside the circle
+     */
+    @Override
+    public double distance(double x, double y) {
+        double distance = Math.hypot(x - this.centrePoint.getXCoord(), y - this.centrePoint.getYCoord());
+        return Math.max(0.0, distance - this.radius);
+    }
+    
+    /**
+     * This function draws the geometry.
      * <br>Antialiasing is activated.
      * <br>The colour of the geometry is defined as
      * attributes of the parent class.
-     * @param g a Graphics-object for drawing the geometry
+     * @param g2 a Graphics2D-object for drawing the geometry
+     * @param symbol the Symbol-object with the colour and the filling
      */
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
+    public void draw(Graphics2D g2, Symbol symbol) {
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.setColor(new Color(super.getRed(), super.getGreen(), super.getBlue(), super.getOpacity()));
-        super.graphicObject = new Ellipse2D.Double(this.centrePoint.getXCoord(),
-                                                   this.centrePoint.getYCoord(),
-                                                   this.radius,
-                                                   this.radius);
+        
+        //the ellipse is defined by its bounding box
+        super.graphicObject = new Ellipse2D.Double(this.centrePoint.getXCoord() - this.radius,
+                                                   this.centrePoint.getYCoord() - this.radius,
+                                                   2 * this.radius,
+                                                   2 * this.radius);
+        
+        //draw the boundary of the circle
+        g2.setColor(symbol.getColour());
+        g2.setStroke(symbol.getStroke(getPixelSize(g2)));
         g2.draw(super.graphicObject);
+        
+        //draw the inner of the circle
+        if(symbol.getFillColour() != null) {
+            g2.setColor(symbol.getFillColour());
+            g2.fill(super.graphicObject);
+        }
     }
 
+    /**
+     * This function approximates the circle by a regular polygon,
+     * e.g. for formats and algorithms without support for circles.
+     * @param countOfSegments the number of vertices of the polygon, at minimum 3
+     * @return a Polygon-object with all vertices on the circle
+     */
+    public Polygon toPolygon(int countOfSegments) {
+        int count = Math.max(3, countOfSegments);
+        ArrayList<Point> vertices = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            double angle = 2 * Math.PI * i / count;
+            vertices.add(new Point(this.centrePoint.getXCoord() + this.radius * Math.cos(angle),
+                                   this.centrePoint.getYCoord() + this.radius * Math.sin(angle),
+                                   this.centrePoint.getZCoord()));
+        }
+        return new Polygon(vertices);
+    }
+    
     /**
      * This function returns all coordinates of the centre point and the radius as a String.
      * @return a String containing the type of the geometry and its components
@@ -152,11 +220,15 @@ public class Circle extends Surface {
 
     /**
      * This function sets a new centre point of the circle.
-     * The old one will be replaced.
+     * The old one will be replaced and the observing layers will be informed
+     * about the moved envelope. Later changes of the given point are not
+     * observed, i.e. a moved centre has to be set again.
      * @param centrePoint the new centre as Point-object
      */
     public void setCentrePoint(Point centrePoint) {
+        Rectangle2D oldEnvelope = this.getEnvelope();
         this.centrePoint = centrePoint;
+        super.fireGeometryChanged(oldEnvelope);
     }
 
     /**
@@ -173,7 +245,11 @@ public class Circle extends Surface {
      * @param radius the new radius as double value
      */
     public void setRadius(double radius) {
-        this.radius = radius;
+        if(this.radius != radius) {
+            Rectangle2D oldEnvelope = this.getEnvelope();
+            this.radius = radius;
+            super.fireGeometryChanged(oldEnvelope);
+        }
     }
     
 }
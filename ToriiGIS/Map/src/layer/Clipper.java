@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * This class clips geometries against a rectangle (e.g. the visible area of the map)
+ * before they are drawn.
+ * <br>Lines are clipped with the Cohen-Sutherland algorithm, polygons with
+ * the Sutherland-Hodgman algorithm. Java2D has to transform and rasterize only
+ * the visible part of a geometry afterwards.
+ * @author Christoph
+ */
+public final class Clipper {
+    
+    private static final int INSIDE = 0;
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int BOTTOM = 4;
+    private static final int TOP = 8;
+
+    private Clipper() {
+    }
+    
+    /**
+     * This function computes the Cohen-Sutherland outcode of a position,
+     * i.e. the position relative to the clipping rectangle.
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @param clip the clipping rectangle
+     * @return an int-value, which is INSIDE or a combination of LEFT, RIGHT, BOTTOM and TOP
+     */
+    private static int outcode(double x, double y, Rectangle2D clip) {
+        int code = INSIDE;
+        if(x < clip.getMinX()) {
+            code |= LEFT;
+        } else if(x > clip.getMaxX()) {
+            code |= RIGHT;
+        }
+        if(y < clip.getMinY()) {
+            code |= BOTTOM;
+        } else if(y > clip.getMaxY()) {
+            code |= TOP;
+        }
+        return code;
+    }
+    
+    /**
+     * This function clips a line against the given rectangle.
+     * <br>The result can consist of several parts, if the line leaves the
+     * rectangle and enters it again.
+     * @param line the vertices of the line
+     * @param clip the clipping rectangle
+     * @return a Path2D-object containing only the visible parts of the line
+     */
+    public static Path2D clipLine(VertexSequence line, Rectangle2D clip) {
+        Path2D path = new Path2D.Double();
+        int count = line.getCountOfVertices();
+        if(count < 2) {
+            return path;
+        }
+        
+        double[] segment = new double[4];
+        boolean penDown = false;
+        VertexCursor cursor = new VertexCursor(line);
+        cursor.next();
+        double startX = cursor.getX();
+        double startY = cursor.getY();
+        int startCode = outcode(startX, startY, clip);
+        while(cursor.next()) {
+            double endX = cursor.getX();
+            double endY = cursor.getY();
+            int endCode = outcode(endX, endY, clip);
+            
+            if((startCode & endCode) != 0) {
+                //both vertices are on the same outer side, the segment is invisible
+                penDown = false;
+            } else if((startCode | endCode) == 0) {
+                //the segment lies completely inside
+                if(!penDown) {
+                    path.moveTo(startX, startY);
+                }
+                path.lineTo(endX, endY);
+                penDown = true;
+            } else {
+                segment[0] = startX;
+                segment[1] = startY;
+                segment[2] = endX;
+                segment[3] = endY;
+                if(clipSegment(segment, startCode, endCode, clip)) {
+                    if(!penDown || startCode != INSIDE) {
+                        path.moveTo(segment[0], segment[1]);
+                    }
+                    path.lineTo(segment[2], segment[3]);
+                    penDown = (endCode == INSIDE);
+                } else {
+                    penDown = false;
+                }
+            }
+            
+            startX = endX;
+            startY = endY;
+            startCode = endCode;
+        }
+        return path;
+    }
+    
+    /**
+     * This function clips one segment with the Cohen-Sutherland algorithm.
+     * @param segment an array with the coordinates x1, y1, x2, y2, which will be
+     * replaced by the clipped coordinates
+     * @param startCode the outcode of the start of the segment
+     * @param endCode the outcode of the end of the segment
+     * @param clip the clipping rectangle
+     * @return TRUE if a part of the segment is visible, otherwise FALSE
+     */
+    private static boolean clipSegment(double[] segment, int startCode, int endCode, Rectangle2D clip) {
+        while(true) {
+            if((startCode | endCode) == 0) {
+                return true;
+            }
+            if((startCode & endCode) != 0) {
+                return false;
+            }
+            
+            int outsideCode = startCode != 0 ? startCode : endCode;
+            double x1 = segment[0];
+            double y1 = segment[1];
+            double x2 = segment[2];
+            double y2 = segment[3];
+            double x;
+            double y;
+            if((outsideCode & TOP) != 0) {
+                x = x1 + (x2 - x1) * (clip.getMaxY() - y1) / (y2 - y1);
+                y = clip.getMaxY();
+            } else if((outsideCode & BOTTOM) != 0) {
+                x = x1 + (x2 - x1) * (clip.getMinY() - y1) / (y2 - y1);
+                y = clip.getMinY();
+            } else if((outsideCode & RIGHT) != 0) {
+                y = y1 + (y2 - y1) * (clip.getMaxX() - x1) / (x2 - x1);
+                x = clip.getMaxX();
+            } else {
+                y = y1 + (y2 - y1) * (clip.getMinX() - x1) / (x2 - x1);
+                x = clip.getMinX();
+            }
+            
+            if(outsideCode == startCode) {
+                segment[0] = x;
+                segment[1] = y;
+                startCode = outcode(x, y, clip);
+            } else {
+                segment[2] = x;
+                segment[3] = y;
+                endCode = outcode(x, y, clip);
+            }
+        }
+    }
+    
+    /**
+     * This function clips a polygon against the given rectangle
+     * with the Sutherland-Hodgman algorithm.
+     * <br>Parts of the result can run along the border of the rectangle, i.e.
+     * the rectangle should be a bit larger than the visible area.
+     * @param polygon the vertices of the polygon
+     * @param clip the clipping rectangle
+     * @return a closed Path2D-object containing only the visible part of the polygon
+     */
+    public static Path2D clipPolygon(VertexSequence polygon, Rectangle2D clip) {
+        int count = polygon.getCountOfVertices();
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        VertexCursor cursor = new VertexCursor(polygon);
+        while(cursor.next()) {
+            xs[cursor.getIndex()] = cursor.getX();
+            ys[cursor.getIndex()] = cursor.getY();
+        }
+        
+        double[][] ring = {xs, ys};
+        int size = count;
+        for(int edge = 0; edge < 4 && size > 0; edge++) {
+            double[][] clipped = new double[2][size * 2];
+            size = clipRing(ring[0], ring[1], size, clipped[0], clipped[1], edge, clip);
+            ring = clipped;
+        }
+        
+        Path2D path = new Path2D.Double();
+        if(size >= 3) {
+            path.moveTo(ring[0][0], ring[1][0]);
+            for(int i = 1; i < size; i++) {
+                path.lineTo(ring[0][i], ring[1][i]);
+            }
+            path.closePath();
+        }
+        return path;
+    }
+    
+    /**
+     * This function clips a ring against one edge of the clipping rectangle.
+     * @param xs the x-coordinates of the ring
+     * @param ys the y-coordinates of the ring
+     * @param size the number of vertices of the ring
+     * @param outXs the array for the x-coordinates of the clipped ring
+     * @param outYs the array for the y-coordinates of the clipped ring
+     * @param edge the edge: 0 = left, 1 = right, 2 = bottom, 3 = top
+     * @param clip the clipping rectangle
+     * @return the number of vertices of the clipped ring
+     */
+    private static int clipRing(double[] xs, double[] ys, int size,
+                                double[] outXs, double[] outYs,
+                                int edge, Rectangle2D clip) {
+        int outSize = 0;
+        double prevX = xs[size - 1];
+        double prevY = ys[size - 1];
+        boolean prevInside = isInside(prevX, prevY, edge, clip);
+        for(int i = 0; i < size; i++) {
+            double x = xs[i];
+            double y = ys[i];
+            boolean inside = isInside(x, y, edge, clip);
+            if(inside != prevInside) {
+                double t;
+                double border;
+                switch(edge) {
+                    case 0: border = clip.getMinX(); t = (border - prevX) / (x - prevX); break;
+                    case 1: border = clip.getMaxX(); t = (border - prevX) / (x - prevX); break;
+                    case 2: border = clip.getMinY(); t = (border - prevY) / (y - prevY); break;
+                    default: border = clip.getMaxY(); t = (border - prevY) / (y - prevY); break;
+                }
+                outXs[outSize] = edge < 2 ? border : prevX + t * (x - prevX);
+                outYs[outSize] = edge < 2 ? prevY + t * (y - prevY) : border;
+                outSize++;
+            }
+            if(inside) {
+                outXs[outSize] = x;
+                outYs[outSize] = y;
+                outSize++;
+            }
+            prevX = x;
+            prevY = y;
+            prevInside = inside;
+        }
+        return outSize;
+    }
+    
+    /**
+     * This function checks, wether a position lies on the inner side of one
+     * edge of the clipping rectangle.
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @param edge the edge: 0 = left, 1 = right, 2 = bottom, 3 = top
+     * @param clip the clipping rectangle
+     * @return TRUE if the position lies on the inner side, otherwise FALSE
+     */
+    private static boolean isInside(double x, double y, int edge, Rectangle2D clip) {
+        switch(edge) {
+            case 0: return x >= clip.getMinX();
+            case 1: return x <= clip.getMaxX();
+            case 2: return y >= clip.getMinY();
+            default: return y <= clip.getMaxY();
+        }
+    }
+    
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+/**
+ * This enumeration contains the dimensions of the coordinates, which can be
+ * stored for the vertices of lines and polygons.
+ * @author Christoph
+ */
+public enum CoordinateDimension {
+    
+    /**
+     * Planar coordinates with x and y.
+     */
+    XY(2),
+    
+    /**
+     * Coordinates with x, y and a height z.
+     */
+    XYZ(3),
+    
+    /**
+     * Planar coordinates with x, y and a measure m (e.g. a station along a road).
+     */
+    XYM(3);
+    
+    private final int countOfValues;
+    
+    private CoordinateDimension(int countOfValues) {
+        this.countOfValues = countOfValues;
+    }
+    
+    /**
+     * This function returns the number of values stored per vertice.
+     * @return 2 or 3
+     */
+    public int getCountOfValues() {
+        return this.countOfValues;
+    }
+    
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
+
+/**
+ * This class records all modifications of the geometries of one layer.
+ * <br>Every modification is stored as a fine-grained edit in an UndoManager,
+ * so it can be undone and redone. After each modification (and after each
+ * undo and redo) the layer will be informed about the changed geometry, i.e.
+ * only the affected entries of the spatial index and the affected parts of the
+ * map have to be updated.
+ * @author Christoph
+ */
+public class EditSession {
+    
+    private final Layer layer;
+    private final UndoManager undoManager;
+
+    /**
+     * The constructor of this class.
+     * @param layer the Layer-object, which will be edited
+     */
+    public EditSession(Layer layer) {
+        this.layer = layer;
+        this.undoManager = new UndoManager();
+    }
+    
+    /**
+     * This function adds a new vertice to a line or a polygon of the layer.
+     * @param geom the Line- or Polygon-object
+     * @param vertice the new vertice as Point-object
+     * @param position the zero-based position for inserting
+     */
+    public <G extends Geometry & VertexSequence> void addVertice(G geom, Point vertice, int position) {
+        double[] newVertice = {vertice.getXCoord(), vertice.getYCoord(), vertice.getZCoord(), Double.NaN};
+        this.perform(new VerticeEdit<>(geom, position, null, newVertice));
+    }
+    
+    /**
+     * This function removes a vertice from a line or a polygon of the layer.
+     * @param geom the Line- or Polygon-object
+     * @param position the zero-based index of the vertice, that has to be deleted
+     */
+    public <G extends Geometry & VertexSequence> void removeVertice(G geom, int position) {
+        this.perform(new VerticeEdit<>(geom, position, valuesOf(geom, position), null));
+    }
+    
+    /**
+     * This function moves a vertice of a line or a polygon to a new position.
+     * The height and the measure of the vertice are kept.
+     * @param geom the Line- or Polygon-object
+     * @param position the zero-based index of the vertice
+     * @param x the new x-coordinate of the vertice
+     * @param y the new y-coordinate of the vertice
+     */
+    public <G extends Geometry & VertexSequence> void moveVertice(G geom, int position, double x, double y) {
+        double[] oldVertice = valuesOf(geom, position);
+        double[] newVertice = {x, y, oldVertice[2], oldVertice[3]};
+        this.perform(new VerticeEdit<>(geom, position, oldVertice, newVertice));
+    }
+    
+    /**
+     * This function adds a new geometry behind the other geometries of the
+     * layer, i.e. in front of the multi-geometries. The attribute table gets
+     * an empty dataset at the same feature index, so the multi-geometries
+     * keep their attributes.
+     * @param geom the new Geometry-object
+     */
+    public void addGeometry(Geometry geom) {
+        int position = this.layer.getGeometryList().size();
+        Attributes attributes = this.layer.getAttributeTable();
+        String[] attrs = (attributes != null && position <= attributes.size()) ? new String[0] : null;
+        this.perform(new GeometryEdit(geom, position, attrs, true));
+    }
+    
+    /**
+     * This function removes a geometry and its attributes from the layer.
+     * If the geometry is a part of a multi-geometry, the whole multi-geometry
+     * is removed, because the attributes belong to all of its parts.
+     * @param geom the Geometry-object, that has to be deleted
+     */
+    public void removeGeometry(Geometry geom) {
+        Attributes attributes = this.layer.getAttributeTable();
+        int position = this.layer.getGeometryList().indexOf(geom);
+        if(position >= 0) {
+            String[] attrs = (attributes != null && position < attributes.size()) ? attributes.getAttrs(position) : null;
+            this.perform(new GeometryEdit(geom, position, attrs, false));
+            return;
+        }
+        ArrayList<ArrayList<Geometry>> multiGeometries = this.layer.getMultiGeometryList();
+        for(int i = 0; i < multiGeometries.size(); i++) {
+            if(multiGeometries.get(i).contains(geom)) {
+                int featureIndex = this.layer.getGeometryList().size() + i;
+                String[] attrs = (attributes != null && featureIndex < attributes.size())
+                        ? attributes.getAttrs(featureIndex) : null;
+                this.perform(new MultiGeometryEdit(multiGeometries.get(i), i, attrs));
+                return;
+            }
+        }
+    }
+    
+    /**
+     * This function returns the information, wether there is an edit to undo.
+     * @return TRUE if an edit can be undone, otherwise FALSE
+     */
+    public boolean canUndo() {
+        return this.undoManager.canUndo();
+    }
+    
+    /**
+     * This function returns the information, wether there is an edit to redo.
+     * @return TRUE if an edit can be redone, otherwise FALSE
+     */
+    public boolean canRedo() {
+        return this.undoManager.canRedo();
+    }
+    
+    /**
+     * This function undoes the last edit.
+     * @throws CannotUndoException if there is no edit to undo
+     */
+    public void undo() {
+        this.undoManager.undo();
+    }
+    
+    /**
+     * This function redoes the last undone edit.
+     * @throws CannotRedoException if there is no edit to redo
+     */
+    public void redo() {
+        this.undoManager.redo();
+    }
+    
+    /**
+     * This function returns the UndoManager of the session, e.g. for connecting
+     * it with the undo and redo actions of the application.
+     * @return the UndoManager-object containing all edits
+     */
+    public UndoManager getUndoManager() {
+        return this.undoManager;
+    }
+
+    /**
+     * This function returns the layer, which is edited by this session.
+     * @return a Layer-object
+     */
+    public Layer getLayer() {
+        return this.layer;
+    }
+    
+    /**
+     * This function executes an edit and stores it for undoing.
+     * @param edit the new edit
+     */
+    private void perform(LayerEdit edit) {
+        edit.apply();
+        this.undoManager.addEdit(edit);
+    }
+    
+    /**
+     * This function reads all values of a vertice.
+     * @param geom the Line- or Polygon-object
+     * @param position the zero-based index of the vertice
+     * @return an array with x, y, z and m of the vertice
+     */
+    private static double[] valuesOf(VertexSequence geom, int position) {
+        return new double[] {geom.getVerticeX(position), geom.getVerticeY(position),
+                             geom.getVerticeZ(position), geom.getVerticeM(position)};
+    }
+    
+    /**
+     * This class is the base of all edits of a session.
+     */
+    private abstract class LayerEdit extends AbstractUndoableEdit {
+        
+        /**
+         * This function executes the edit.
+         */
+        abstract void apply();
+        
+        /**
+         * This function reverts the edit.
+         */
+        abstract void revert();
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            this.revert();
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            this.apply();
+        }
+        
+    }
+    
+    /**
+     * This class represents adding, removing or replacing one vertice.
+     * The vertices are stored as arrays of x, y, z and m, i.e. the measures
+     * are restored as well. An old vertice of null means adding, a new
+     * vertice of null means removing.
+     */
+    private class VerticeEdit<G extends Geometry & VertexSequence> extends LayerEdit {
+        
+        private final G geom;
+        private final int position;
+        private final double[] oldVertice;
+        private final double[] newVertice;
+
+        VerticeEdit(G geom, int position, double[] oldVertice, double[] newVertice) {
+            this.geom = geom;
+            this.position = position;
+            this.oldVertice = oldVertice;
+            this.newVertice = newVertice;
+        }
+
+        @Override
+        void apply() {
+            this.replace(this.oldVertice, this.newVertice);
+        }
+
+        @Override
+        void revert() {
+            this.replace(this.newVertice, this.oldVertice);
+        }
+        
+        private void replace(double[] removed, double[] added) {
+            Rectangle2D oldEnvelope = this.geom.getEnvelope();
+            if(removed != null && added != null) {
+                this.geom.setVertice(this.position, added[0], added[1], added[2], added[3]);
+            } else if(removed != null) {
+                this.geom.removeVertice(this.position);
+            } else if(added != null) {
+                this.geom.addVertice(this.position, added[0], added[1], added[2], added[3]);
+            }
+            layer.geometryChanged(this.geom, oldEnvelope);
+        }
+        
+    }
+    
+    /**
+     * This class represents adding or removing a whole geometry
+     * together with its attributes.
+     */
+    private class GeometryEdit extends LayerEdit {
+        
+        private final Geometry geom;
+        private final int position;
+        private final String[] attrs;
+        private final boolean adding;
+
+        GeometryEdit(Geometry geom, int position, String[] attrs, boolean adding) {
+            this.geom = geom;
+            this.position = position;
+            this.attrs = attrs;
+            this.adding = adding;
+        }
+
+        @Override
+        void apply() {
+            if(this.adding) {
+                this.add();
+            } else {
+                this.remove();
+            }
+        }
+
+        @Override
+        void revert() {
+            if(this.adding) {
+                this.remove();
+            } else {
+                this.add();
+            }
+        }
+        
+        private void add() {
+            Attributes attributes = layer.getAttributeTable();
+            if(attributes != null && this.attrs != null) {
+                attributes.addAttrs(this.attrs, this.position);
+            }
+            layer.addGeometry(this.geom, this.position);
+        }
+        
+        private void remove() {
+            //the layer removes the dataset of the geometry itself
+            layer.removeGeometry(this.geom);
+        }
+        
+    }
+    
+    /**
+     * This class represents removing a multi-geometry together with its attributes.
+     */
+    private class MultiGeometryEdit extends LayerEdit {
+        
+        private final ArrayList<Geometry> multiGeom;
+        private final int position;
+        private final String[] attrs;
+
+        MultiGeometryEdit(ArrayList<Geometry> multiGeom, int position, String[] attrs) {
+            this.multiGeom = multiGeom;
+            this.position = position;
+            this.attrs = attrs;
+        }
+
+        @Override
+        void apply() {
+            Attributes attributes = layer.getAttributeTable();
+            if(attributes != null && this.attrs != null) {
+                attributes.removeAttrs(layer.getGeometryList().size() + this.position);
+            }
+            layer.removeMultiGeometry(this.multiGeom);
+        }
+
+        @Override
+        void revert() {
+            Attributes attributes = layer.getAttributeTable();
+            if(attributes != null && this.attrs != null) {
+                attributes.addAttrs(this.attrs, layer.getGeometryList().size() + this.position);
+            }
+            layer.addMultiGeometry(this.multiGeom, this.position);
+        }
+        
+    }
+    
+}
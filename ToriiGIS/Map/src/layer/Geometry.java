@@ -16,8 +16,14 @@
  */
 package layer;
 
+import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
 import java.util.logging.Logger;
 import javax.swing.JPanel;
 //import javafx.scene.shape.Shape;
@@ -26,6 +32,9 @@ import javax.swing.JPanel;
  * This class is an abstract implementation of a geometry.
  * All other geometry-classes extends this class and will succeed some variables 
  * (e.g. colour, logger and a Shape-object).
+ * <br>Changes of the style are reported to the layers containing the geometry,
+ * as long as these layers have listeners, so that e.g. the map view repaints
+ * only the area of the geometry. Layers without listeners are not informed.
  * @author Christoph
  */
 public abstract class Geometry extends JPanel {
@@ -34,6 +43,8 @@ public abstract class Geometry extends JPanel {
     private static final Logger LOG = Logger.getLogger(Geometry.class.getName());
     private int[] rgb = new int[3];
     private int opacity = 0;
+    private volatile Layer[] observingLayers = null;
+    private volatile Symbol symbol = null;
     
     /**
      * This function sets a new colour in RGB-format.
@@ -42,9 +53,13 @@ public abstract class Geometry extends JPanel {
      * @param blue the blue value between 0 and 255
      */
     public void setRgb(int red, int green, int blue) {
+        if(this.rgb[0] == red && this.rgb[1] == green && this.rgb[2] == blue) {
+            return;
+        }
         this.rgb[0] = red;
         this.rgb[1] = green;
         this.rgb[2] = blue;
+        this.fireStyleChanged(this.getDrawingMargin());
     }
     
     /**
@@ -84,7 +99,218 @@ public abstract class Geometry extends JPanel {
      * @param opacity an int value between 0 and 255
      */
     public void setOpacity(int opacity) {
-        this.opacity = opacity;
+        if(this.opacity != opacity) {
+            this.opacity = opacity;
+            this.fireStyleChanged(this.getDrawingMargin());
+        }
+    }
+    
+    /**
+     * This function returns the distance, by which the drawing of the
+     * geometry may exceed its envelope, e.g. half of the line width.
+     * @return the distance in pixels, 0.0 by default
+     */
+    public double getDrawingMargin() {
+        return 0.0;
+    }
+    
+    /**
+     * This function returns the area covered by the drawing of the geometry,
+     * i.e. the envelope extended by the drawing margin.
+     * @param pixelSize the size of one pixel in map units
+     * @return a Rectangle2D-object in map coordinates
+     */
+    public Rectangle2D getDrawnArea(double pixelSize) {
+        Rectangle2D envelope = this.getEnvelope();
+        double margin = this.getDrawingMargin() * pixelSize;
+        return new Rectangle2D.Double(envelope.getX() - margin,
+                                      envelope.getY() - margin,
+                                      envelope.getWidth() + 2 * margin,
+                                      envelope.getHeight() + 2 * margin);
+    }
+    
+    /**
+     * This function informs the observing layers about a change of the style,
+     * which does not change the envelope. The cached symbol of the geometry
+     * is discarded.
+     * @param oldMargin the drawing margin before the change
+     */
+    protected void fireStyleChanged(double oldMargin) {
+        this.symbol = null;
+        Layer[] layers = this.observingLayers;
+        if(layers != null) {
+            for(Layer layer : layers) {
+                layer.styleChanged(this, oldMargin);
+            }
+        }
+    }
+    
+    /**
+     * This function informs the observing layers about a change of the
+     * envelope, so that they can update their spatial index.
+     * @param oldEnvelope the envelope before the change
+     */
+    protected void fireGeometryChanged(Rectangle2D oldEnvelope) {
+        Layer[] layers = this.observingLayers;
+        if(layers != null) {
+            for(Layer layer : layers) {
+                layer.geometryChanged(this, oldEnvelope);
+            }
+        }
+    }
+    
+    /**
+     * This function registers a layer, which will be informed about changes.
+     * @param layer the Layer-object containing the geometry
+     */
+    synchronized void addObservingLayer(Layer layer) {
+        Layer[] layers = this.observingLayers;
+        if(layers == null) {
+            this.observingLayers = new Layer[] {layer};
+        } else if(!Arrays.asList(layers).contains(layer)) {
+            layers = Arrays.copyOf(layers, layers.length + 1);
+            layers[layers.length - 1] = layer;
+            this.observingLayers = layers;
+        }
+    }
+    
+    /**
+     * This function removes a registered layer.
+     * @param layer the Layer-object, that has to be removed
+     */
+    synchronized void removeObservingLayer(Layer layer) {
+        Layer[] layers = this.observingLayers;
+        if(layers == null) {
+            return;
+        }
+        int index = Arrays.asList(layers).indexOf(layer);
+        if(index >= 0 && layers.length == 1) {
+            this.observingLayers = null;
+        } else if(index >= 0) {
+            Layer[] remaining = new Layer[layers.length - 1];
+            System.arraycopy(layers, 0, remaining, 0, index);
+            System.arraycopy(layers, index + 1, remaining, index, remaining.length - index);
+            this.observingLayers = remaining;
+        }
+    }
+    
+    /**
+     * This function returns the envelope (minimum bounding rectangle) of the geometry
+     * in map coordinates.
+     * @return a Rectangle2D-object enclosing the whole geometry
+     */
+    public abstract Rectangle2D getEnvelope();
+    
+    /**
+     * This function checks, wether the geometry is hit by the given map position.
+     * <br>The check is exact, i.e. it is done against the shape of the geometry
+     * and not against its envelope.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @param tolerance the maximum distance in map units between the position and the geometry
+     * @return TRUE if the geometry is hit, otherwise FALSE
+     */
+    public abstract boolean hits(double x, double y, double tolerance);
+    
+    /**
+     * This function calculates the shortest distance between the given map
+     * position and the geometry. The distance to a position inside a polygon
+     * or circle is zero.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @return the distance in map units as double value
+     */
+    public abstract double distance(double x, double y);
+    
+    /**
+     * This function calculates the euklidian distance in the plane between
+     * a position and a line segment.
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @param x1 the x-coordinate of the start of the segment
+     * @param y1 the y-coordinate of the start of the segment
+     * @param x2 the x-coordinate of the end of the segment
+     * @param y2 the y-coordinate of the end of the segment
+     * @return the distance as double value
+     */
+    protected static double distanceToSegment(double x, double y,
+                                              double x1, double y1,
+                                              double x2, double y2) {
+        return Math.sqrt(Line2D.ptSegDistSq(x1, y1, x2, y2, x, y));
+    }
+    
+    /**
+     * This function draws the geometry with the given Graphics2D-object and
+     * its own style.
+     * The current transformation of the Graphics2D-object has to convert
+     * map coordinates into screen coordinates.
+     * @param g2 a Graphics2D-object for drawing the geometry
+     */
+    public void draw(Graphics2D g2) {
+        this.draw(g2, this.getSymbol());
+    }
+    
+    /**
+     * This function draws the geometry with the given Graphics2D-object and
+     * a given style, e.g. the style of a thematic map. The own style of the
+     * geometry is ignored.
+     * @param g2 a Graphics2D-object for drawing the geometry
+     * @param symbol the Symbol-object describing the style
+     */
+    public abstract void draw(Graphics2D g2, Symbol symbol);
+    
+    /**
+     * This function returns the own style of the geometry as symbol.
+     * The symbol is created once and kept until the style changes.
+     * @return a Symbol-object, which may be shared by further calls
+     */
+    public Symbol getSymbol() {
+        Symbol current = this.symbol;
+        if(current == null) {
+            current = this.createSymbol();
+            this.symbol = current;
+        }
+        return current;
+    }
+    
+    /**
+     * This function creates the own style of the geometry from its colour,
+     * opacity and size. It is called only after a change of the style.
+     * @return a new Symbol-object
+     */
+    protected Symbol createSymbol() {
+        return new Symbol(new Color(this.rgb[0], this.rgb[1], this.rgb[2], this.opacity), null, 1.0f, 0.0);
+    }
+    
+    /**
+     * This function returns the size of one pixel in map units, i.e. the
+     * inverse scale of the transformation of a Graphics2D-object.
+     * @param g2 the Graphics2D-object used for drawing
+     * @return the size of a pixel in map units, 1.0 without scaling
+     */
+    protected static double getPixelSize(Graphics2D g2) {
+        AffineTransform transform = g2.getTransform();
+        double scale = Math.hypot(transform.getScaleX(), transform.getShearY());
+        return scale > 0.0 ? 1.0 / scale : 1.0;
+    }
+    
+    /**
+     * This function returns the current clipping area of a Graphics2D-object
+     * in map units, extended by the given margin.
+     * @param g2 the Graphics2D-object used for drawing
+     * @param margin the margin in map units, e.g. the width of a line
+     * @return a Rectangle2D-object or null, if no clipping area is set
+     */
+    protected static Rectangle2D getClipArea(Graphics2D g2, double margin) {
+        Shape clip = g2.getClip();
+        if(clip == null) {
+            return null;
+        }
+        Rectangle2D bounds = clip.getBounds2D();
+        return new Rectangle2D.Double(bounds.getX() - margin,
+                                      bounds.getY() - margin,
+                                      bounds.getWidth() + 2 * margin,
+                                      bounds.getHeight() + 2 * margin);
     }
     
     /**
@@ -94,6 +320,7 @@ public abstract class Geometry extends JPanel {
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
+        this.draw((Graphics2D) g);
     }
     
 }
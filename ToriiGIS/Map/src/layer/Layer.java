@@ -16,8 +16,14 @@
  */
 package layer;
 
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.swing.event.EventListenerList;
 
 /**
  * This class contains all geometries, which are connected to one layer.
@@ -29,11 +35,23 @@ public class Layer {
     private ArrayList<ArrayList<Geometry>> multiGeometryList;
     private ArrayList<Attributes> attributeList;
     private Polygon boundingBox;
+    private Rectangle2D envelope;
+    private RTree<Geometry> spatialIndex;
+    private final EventListenerList listenerList = new EventListenerList();
     private boolean point;
     private boolean line;
     private boolean circle;
     private boolean polygon;
     private String crs;
+    private double compressionResolution = 0.0;
+    private CoordinateDimension dimension = null;
+    private volatile long lastAccess = System.nanoTime();
+    private volatile Rectangle2D lastQueriedArea = null;
+    private String startTimeAttribute = null;
+    private String endTimeAttribute = null;
+    private boolean timeFromMeasures = false;
+    private TimeIndex timeIndex = null;
+    private int timeIndexModifications = 0;
     private static final Logger LOG = Logger.getLogger(Layer.class.getName());
 
     /**
@@ -67,8 +85,167 @@ public class Layer {
      * @param geom an object of type Geometry
      */
     public void addGeometry(Geometry geom) {
-        this.geometryList.add(geom);
-        this.calculateBoundingBox();
+        this.addGeometry(geom, this.geometryList.size());
+    }
+    
+    /**
+     * This function adds a new geometry at the given position of the layer.
+     * The bounding box of the layer will be updated. The attribute table is
+     * not changed, i.e. the caller has to insert a dataset at the same
+     * position, if the following features should keep their attributes.
+     * @param geom an object of type Geometry
+     * @param position the zero-based position for inserting
+     */
+    public void addGeometry(Geometry geom, int position) {
+        this.geometryList.add(position, geom);
+        this.addToBoundingBox(geom);
+        this.timeIndex = null;
+        if(this.isObserving()) {
+            geom.addObservingLayer(this);
+        }
+        this.fireLayerChanged(new LayerEvent(this, LayerEvent.GEOMETRY_ADDED, geom, null, geom.getEnvelope()));
+    }
+    
+    /**
+     * This function removes a geometry from the layer.
+     * The bounding box and the spatial index of the layer will be updated.
+     * The dataset of the geometry is removed from the attribute table as
+     * well, so the following features (e.g. the multi-geometries) keep their
+     * attributes.
+     * @param geom the Geometry-object, that has to be deleted
+     * @return the former zero-based position of the geometry, or -1 if the
+     * geometry is not part of the layer
+     */
+    public int removeGeometry(Geometry geom) {
+        int position = this.geometryList.indexOf(geom);
+        if(position >= 0) {
+            Attributes attributes = this.getAttributeTable();
+            if(attributes != null && position < attributes.size()) {
+                attributes.removeAttrs(position);
+            }
+            this.geometryList.remove(position);
+            geom.removeObservingLayer(this);
+            this.timeIndex = null;
+            Rectangle2D oldEnvelope = geom.getEnvelope();
+            this.removeFromIndex(geom, oldEnvelope);
+            this.refreshEnvelope();
+            this.fireLayerChanged(new LayerEvent(this, LayerEvent.GEOMETRY_REMOVED, geom, oldEnvelope, null));
+        }
+        return position;
+    }
+    
+    /**
+     * This function has to be called after a geometry of the layer was modified,
+     * e.g. after moving, adding or removing a vertice.
+     * <br>Only the entry of the geometry in the spatial index and the bounding box
+     * will be updated, and all listeners will be informed about the change.
+     * @param geom the modified Geometry-object
+     * @param oldEnvelope the envelope of the geometry before the modification
+     */
+    public void geometryChanged(Geometry geom, Rectangle2D oldEnvelope) {
+        Rectangle2D newEnvelope = geom.getEnvelope();
+        if(this.spatialIndex != null) {
+            this.removeFromIndex(geom, oldEnvelope);
+            if(this.spatialIndex != null) {
+                this.spatialIndex.insert(newEnvelope, geom);
+            }
+        }
+        this.refreshEnvelope();
+        this.timeIndex = null;
+        this.fireLayerChanged(new LayerEvent(this, LayerEvent.GEOMETRY_CHANGED, geom, oldEnvelope, newEnvelope));
+    }
+    
+    /**
+     * This function is called by a geometry of the layer after its style was
+     * changed, e.g. its colour or line width. The spatial index is not affected,
+     * only the listeners will be informed.
+     * @param geom the modified Geometry-object
+     * @param oldMargin the drawing margin of the geometry before the modification
+     */
+    void styleChanged(Geometry geom, double oldMargin) {
+        Rectangle2D envelope = geom.getEnvelope();
+        this.fireLayerChanged(new LayerEvent(this, LayerEvent.STYLE_CHANGED, geom, envelope, envelope,
+                                             Math.max(oldMargin, geom.getDrawingMargin())));
+    }
+    
+    /**
+     * This function removes a geometry from the spatial index.
+     * If the geometry cannot be found with the given envelope (i.e. the geometry
+     * was modified without calling <code>geometryChanged</code>), the index
+     * will be dropped and rebuilt on the next access.
+     * @param geom the Geometry-object, that has to be removed
+     * @param envelope the envelope of the geometry in the index
+     */
+    private void removeFromIndex(Geometry geom, Rectangle2D envelope) {
+        if(this.spatialIndex != null && !this.spatialIndex.remove(envelope, geom)) {
+            LOG.fine("geometry not found in the spatial index, the index will be rebuilt");
+            this.spatialIndex = null;
+        }
+    }
+    
+    /**
+     * This function recalculates the envelope of the layer from the bounds
+     * of the spatial index.
+     */
+    private void refreshEnvelope() {
+        Rectangle2D bounds = this.getSpatialIndex().getBounds();
+        this.envelope = bounds == null ? null : (Rectangle2D) bounds.clone();
+        this.boundingBox = null;
+    }
+    
+    /**
+     * This function registers a listener, which will be informed about all
+     * changes of the geometries of the layer.
+     * <br>With the first listener the layer starts to observe the style and the
+     * envelopes of its geometries, with the last one removed it stops, unless
+     * the spatial index has been built, i.e. layers without listeners and
+     * index can be garbage collected independently of their geometries.
+     * @param listener the new LayerListener-object
+     */
+    public void addLayerListener(LayerListener listener) {
+        if(!this.isObserving()) {
+            this.getAllGeometries().forEach((geom) -> {
+                geom.addObservingLayer(this);
+            });
+        }
+        this.listenerList.add(LayerListener.class, listener);
+    }
+    
+    /**
+     * This function removes a registered listener.
+     * @param listener the LayerListener-object, that has to be removed
+     */
+    public void removeLayerListener(LayerListener listener) {
+        this.listenerList.remove(LayerListener.class, listener);
+        if(!this.isObserving()) {
+            this.getAllGeometries().forEach((geom) -> {
+                geom.removeObservingLayer(this);
+            });
+        }
+    }
+    
+    private boolean hasListeners() {
+        return this.listenerList.getListenerCount(LayerListener.class) > 0;
+    }
+    
+    /**
+     * This function returns the information, wether the geometries inform
+     * the layer about their changes, i.e. wether the layer has listeners or
+     * a spatial index, which has to be updated.
+     * @return TRUE if the layer observes its geometries, otherwise FALSE
+     */
+    private boolean isObserving() {
+        return this.hasListeners() || this.spatialIndex != null;
+    }
+    
+    /**
+     * This function informs all registered listeners about a change.
+     * @param e the LayerEvent-object describing the change
+     */
+    protected void fireLayerChanged(LayerEvent e) {
+        for(LayerListener listener : this.listenerList.getListeners(LayerListener.class)) {
+            listener.layerChanged(e);
+        }
     }
     
     /**
@@ -78,7 +255,68 @@ public class Layer {
      */
     public void addMultiGeometry(ArrayList<Geometry> multiGeom) {
         this.multiGeometryList.add(multiGeom);
-        this.calculateBoundingBox();
+        this.timeIndex = null;
+        boolean observed = this.isObserving();
+        multiGeom.forEach((geom) -> {
+            this.addToBoundingBox(geom);
+            if(observed) {
+                geom.addObservingLayer(this);
+            }
+        });
+    }
+    
+    /**
+     * This function inserts a multi-geometry at the given position of the
+     * multi-geometries. The bounding box of the layer will be updated and all
+     * listeners will be informed about every part.
+     * @param multiGeom an ArrayList of Geometries
+     * @param position the zero-based position within the multi-geometries
+     */
+    public void addMultiGeometry(ArrayList<Geometry> multiGeom, int position) {
+        this.multiGeometryList.add(position, multiGeom);
+        this.timeIndex = null;
+        boolean observed = this.isObserving();
+        multiGeom.forEach((geom) -> {
+            this.addToBoundingBox(geom);
+            if(observed) {
+                geom.addObservingLayer(this);
+            }
+            this.fireLayerChanged(new LayerEvent(this, LayerEvent.GEOMETRY_ADDED, geom, null, geom.getEnvelope()));
+        });
+    }
+    
+    /**
+     * This function removes a multi-geometry from the layer.
+     * The bounding box and the spatial index of the layer will be updated.
+     * @param multiGeom the multi-geometry, that has to be deleted
+     * @return the former zero-based position within the multi-geometries,
+     * or -1 if the multi-geometry is not part of the layer
+     */
+    public int removeMultiGeometry(ArrayList<Geometry> multiGeom) {
+        int position = -1;
+        for(int i = 0; i < this.multiGeometryList.size() && position < 0; i++) {
+            if(this.multiGeometryList.get(i) == multiGeom) {
+                position = i;
+            }
+        }
+        if(position < 0) {
+            return position;
+        }
+        this.multiGeometryList.remove(position);
+        this.timeIndex = null;
+        ArrayList<Rectangle2D> oldEnvelopes = new ArrayList<>(multiGeom.size());
+        multiGeom.forEach((geom) -> {
+            geom.removeObservingLayer(this);
+            Rectangle2D oldEnvelope = geom.getEnvelope();
+            this.removeFromIndex(geom, oldEnvelope);
+            oldEnvelopes.add(oldEnvelope);
+        });
+        this.refreshEnvelope();
+        for(int i = 0; i < multiGeom.size(); i++) {
+            this.fireLayerChanged(new LayerEvent(this, LayerEvent.GEOMETRY_REMOVED, multiGeom.get(i),
+                                                 oldEnvelopes.get(i), null));
+        }
+        return position;
     }
     
     /**
@@ -88,16 +326,46 @@ public class Layer {
      */
     public void addAttribute(Attributes attributes) {
         this.attributeList.add(attributes);
+        this.timeIndex = null;
     }
     
     /**
      * This function calculates the bounding box of all geometries in the current object.
      */
     private void calculateBoundingBox() {
-        if(this.geometryList.size() > 0) {
-            
-        } else if(this.multiGeometryList.size() > 0) {
-            
+        this.envelope = null;
+        this.boundingBox = null;
+        this.spatialIndex = null;
+        this.timeIndex = null;
+        this.geometryList.forEach((geom) -> {
+            this.addToBoundingBox(geom);
+        });
+        this.multiGeometryList.forEach((multiGeom) -> {
+            multiGeom.forEach((geom) -> {
+                this.addToBoundingBox(geom);
+            });
+        });
+    }
+    
+    /**
+     * This function extends the bounding box of the layer by the envelope
+     * of the given geometry. If the spatial index is already built, the
+     * geometry will be inserted into the index too.
+     * @param geom the new geometry of the layer
+     */
+    private void addToBoundingBox(Geometry geom) {
+        Rectangle2D geomEnvelope = geom.getEnvelope();
+        if(this.envelope == null) {
+            this.envelope = new Rectangle2D.Double(geomEnvelope.getX(),
+                                                   geomEnvelope.getY(),
+                                                   geomEnvelope.getWidth(),
+                                                   geomEnvelope.getHeight());
+        } else {
+            this.envelope.add(geomEnvelope);
+        }
+        this.boundingBox = null;
+        if(this.spatialIndex != null) {
+            this.spatialIndex.insert(geomEnvelope, geom);
         }
     }
     
@@ -105,17 +373,523 @@ public class Layer {
      * This function removes all geometries of the current layer.
      */
     public void clearLayer() {
+        this.getAllGeometries().forEach((geom) -> {
+            geom.removeObservingLayer(this);
+        });
         this.geometryList.clear();
         this.multiGeometryList.clear();
         this.attributeList.clear();
+        this.envelope = null;
+        this.boundingBox = null;
+        this.spatialIndex = null;
+        this.timeIndex = null;
     }
 
     /**
      * This function returns the bounding box of the current layer.
-     * @return 
+     * @return a Polygon-object with the four corners of the bounding box,
+     * or null if the layer has no geometries
      */
     public Polygon getBoundingBox() {
-        return boundingBox;
+        if(this.boundingBox == null && this.envelope != null) {
+            ArrayList<Point> corners = new ArrayList<>();
+            corners.add(new Point(this.envelope.getMinX(), this.envelope.getMinY(), 0.0));
+            corners.add(new Point(this.envelope.getMaxX(), this.envelope.getMinY(), 0.0));
+            corners.add(new Point(this.envelope.getMaxX(), this.envelope.getMaxY(), 0.0));
+            corners.add(new Point(this.envelope.getMinX(), this.envelope.getMaxY(), 0.0));
+            this.boundingBox = new Polygon(corners);
+        }
+        return this.boundingBox;
+    }
+    
+    /**
+     * This function returns the envelope of all geometries of the current layer.
+     * @return a Rectangle2D-object or null if the layer has no geometries
+     */
+    public Rectangle2D getEnvelope() {
+        return this.envelope;
+    }
+    
+    /**
+     * This function returns the spatial index of the current layer.
+     * <br>The index contains all geometries and all parts of the multi-geometries.
+     * It will be built on the first call and is kept up to date, when
+     * new geometries are added to the layer or geometries are modified.
+     * @return an RTree-object containing the geometries of the layer
+     */
+    public RTree<Geometry> getSpatialIndex() {
+        if(this.spatialIndex == null) {
+            ArrayList<Geometry> geometries = this.getAllGeometries();
+            ArrayList<Rectangle2D> envelopes = new ArrayList<>(geometries.size());
+            geometries.forEach((geom) -> {
+                envelopes.add(geom.getEnvelope());
+                geom.addObservingLayer(this);
+            });
+            this.spatialIndex = new RTree<>();
+            this.spatialIndex.load(envelopes, geometries);
+        }
+        return this.spatialIndex;
+    }
+    
+    /**
+     * This function returns all geometries and all parts of the multi-geometries.
+     * @return a new ArrayList of Geometry-objects
+     */
+    ArrayList<Geometry> getAllGeometries() {
+        ArrayList<Geometry> geometries = new ArrayList<>(this.geometryList);
+        this.multiGeometryList.forEach((multiGeom) -> {
+            geometries.addAll(multiGeom);
+        });
+        return geometries;
+    }
+    
+    /**
+     * This function compresses the vertices of all lines and polygons of the layer.
+     * <br>The coordinates are rounded to multiples of the resolution relative to
+     * the lower left corner of the layer envelope and stored as differences
+     * between successive vertices. Depending on the resolution, this needs
+     * a fifth to a third of the memory of uncompressed coordinates. Geometries
+     * added later and geometries being edited are not compressed.
+     * @param resolution the precision of the coordinates in map units, e.g. 0.001 for millimetres
+     */
+    public void compress(double resolution) {
+        if(!(resolution > 0.0)) {
+            throw new IllegalArgumentException("the resolution must be greater than zero");
+        }
+        if(this.envelope == null) {
+            return;
+        }
+        double originX = this.envelope.getMinX();
+        double originY = this.envelope.getMinY();
+        this.getAllGeometries().parallelStream().forEach((geom) -> {
+            PackedCoordinates vertices = packedCoordinatesOf(geom);
+            if(vertices != null) {
+                vertices.compress(originX, originY, resolution);
+            }
+        });
+        this.compressionResolution = resolution;
+        //the envelopes may have changed by rounding
+        this.calculateBoundingBox();
+        this.fireLayerChanged(new LayerEvent(this, LayerEvent.GEOMETRY_CHANGED, null, this.envelope, this.envelope));
+    }
+    
+    /**
+     * This function restores uncompressed coordinates for all lines and polygons.
+     * The rounding of the compression is not reverted.
+     */
+    public void decompress() {
+        this.getAllGeometries().parallelStream().forEach((geom) -> {
+            PackedCoordinates vertices = packedCoordinatesOf(geom);
+            if(vertices != null) {
+                vertices.decompress();
+            }
+        });
+        this.compressionResolution = 0.0;
+    }
+    
+    /**
+     * This function sets the dimension of the coordinates of all lines and
+     * polygons. Z-coordinates or measures, which do not exist in the new
+     * dimension, get lost. Planar layers need a third less memory for their
+     * vertices and calculate lengths in the plane.
+     * @param dimension XY, XYZ or XYM
+     */
+    public void setDimension(CoordinateDimension dimension) {
+        this.getAllGeometries().parallelStream().forEach((geom) -> {
+            PackedCoordinates vertices = packedCoordinatesOf(geom);
+            if(vertices != null) {
+                vertices.setDimension(dimension);
+            }
+        });
+        this.dimension = dimension;
+    }
+    
+    /**
+     * This function returns the dimension of the coordinates of the layer.
+     * If no dimension was set explicitly, the dimension is derived from the
+     * lines and polygons: XYZ if one of them has heights, XYM if one of them
+     * has measures, otherwise XY.
+     * @return XY, XYZ or XYM
+     */
+    public CoordinateDimension getDimension() {
+        if(this.dimension != null) {
+            return this.dimension;
+        }
+        CoordinateDimension result = CoordinateDimension.XY;
+        for(Geometry geom : this.getAllGeometries()) {
+            if(geom instanceof VertexSequence) {
+                CoordinateDimension geomDimension = ((VertexSequence) geom).getDimension();
+                if(geomDimension == CoordinateDimension.XYZ) {
+                    return geomDimension;
+                }
+                if(geomDimension == CoordinateDimension.XYM) {
+                    result = geomDimension;
+                }
+            } else if(geom instanceof Point && ((Point) geom).getZCoord() != 0.0) {
+                return CoordinateDimension.XYZ;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * This function returns the resolution of the compressed coordinates.
+     * @return the resolution in map units, or zero if the layer is not compressed
+     */
+    public double getCompressionResolution() {
+        return this.compressionResolution;
+    }
+    
+    /**
+     * This function returns the number of bytes used for the vertices of all
+     * lines and polygons (without the overhead of the objects).
+     * @return the size in bytes
+     */
+    public long getCoordinateStorageSize() {
+        long storageSize = 0;
+        for(Geometry geom : this.getAllGeometries()) {
+            PackedCoordinates vertices = packedCoordinatesOf(geom);
+            if(vertices != null) {
+                storageSize += vertices.getStorageSize();
+            }
+        }
+        return storageSize;
+    }
+    
+    static PackedCoordinates packedCoordinatesOf(Geometry geom) {
+        if(geom instanceof Line) {
+            return ((Line) geom).getPackedCoordinates();
+        }
+        if(geom instanceof Polygon) {
+            return ((Polygon) geom).getPackedCoordinates();
+        }
+        return null;
+    }
+    
+    /**
+     * This function returns all geometries, whose envelopes intersect the given area.
+     * The geometries itself are not tested against the area. The time and the
+     * area of the query are remembered for the MemoryManager.
+     * @param area the search area in map units
+     * @return an ArrayList of candidate geometries
+     */
+    public ArrayList<Geometry> queryGeometries(Rectangle2D area) {
+        this.lastAccess = System.nanoTime();
+        this.lastQueriedArea = area;
+        return this.getSpatialIndex().search(area);
+    }
+    
+    /**
+     * This function returns the time of the last query of the geometries.
+     * @return the value of System.nanoTime() at the last query or at the creation of the layer
+     */
+    long getLastAccess() {
+        return this.lastAccess;
+    }
+    
+    /**
+     * This function returns the area of the last query of the geometries.
+     * @return a Rectangle2D-object in map units or null, if the layer was not queried yet
+     */
+    Rectangle2D getLastQueriedArea() {
+        return this.lastQueriedArea;
+    }
+    
+    /**
+     * This function makes the layer temporal, the time interval of every
+     * feature is read from its attributes. The values are converted by
+     * <code>TimeIndex.parseTime</code> into milliseconds since 1970-01-01T00:00:00Z.
+     * Features without a valid start time are not part of temporal queries.
+     * @param startAttribute the name of the attribute with the start time or the timestamp
+     * @param endAttribute the name of the attribute with the end time, or null if
+     * the features have timestamps only
+     */
+    public void setTimeAttributes(String startAttribute, String endAttribute) {
+        if(startAttribute == null) {
+            throw new IllegalArgumentException("the attribute of the start time is missing");
+        }
+        this.startTimeAttribute = startAttribute;
+        this.endTimeAttribute = endAttribute;
+        this.timeFromMeasures = false;
+        this.timeIndex = null;
+    }
+    
+    /**
+     * This function makes the layer temporal, the time interval of every line
+     * and polygon ranges from the smallest to the largest measure (M value)
+     * of its vertices, e.g. the timestamps of a GPS track. The parts of a
+     * multi-geometry have intervals of their own. Points and geometries
+     * without measures are not part of temporal queries.
+     */
+    public void setTimeFromMeasures() {
+        this.startTimeAttribute = null;
+        this.endTimeAttribute = null;
+        this.timeFromMeasures = true;
+        this.timeIndex = null;
+    }
+    
+    /**
+     * This function removes the time dimension of the layer.
+     */
+    public void clearTime() {
+        this.startTimeAttribute = null;
+        this.endTimeAttribute = null;
+        this.timeFromMeasures = false;
+        this.timeIndex = null;
+    }
+    
+    /**
+     * This function returns the information, wether the features of the layer
+     * have time intervals.
+     * @return TRUE if the layer is temporal, otherwise FALSE
+     */
+    public boolean isTemporal() {
+        return this.timeFromMeasures || this.startTimeAttribute != null;
+    }
+    
+    /**
+     * This function returns the information, wether the time intervals are
+     * taken from the measures of the vertices.
+     * @return TRUE for measures, FALSE for attributes or a layer without time
+     */
+    public boolean isTimeFromMeasures() {
+        return this.timeFromMeasures;
+    }
+    
+    /**
+     * This function returns the name of the attribute with the start time.
+     * @return the attribute name or null, if the time is not read from attributes
+     */
+    public String getStartTimeAttribute() {
+        return this.startTimeAttribute;
+    }
+    
+    /**
+     * This function returns the name of the attribute with the end time.
+     * @return the attribute name or null
+     */
+    public String getEndTimeAttribute() {
+        return this.endTimeAttribute;
+    }
+    
+    /**
+     * This function returns the spatio-temporal index of the layer.
+     * <br>The index is built on the first call and after every modification
+     * of the geometries or the attributes, i.e. editing a temporal layer
+     * rebuilds the index with the next temporal query.
+     * @return a TimeIndex-object or null, if the layer is not temporal
+     */
+    public TimeIndex getTimeIndex() {
+        if(!this.isTemporal()) {
+            return null;
+        }
+        Attributes attributes = this.getAttributeTable();
+        int modifications = attributes == null ? 0 : attributes.getModificationCount();
+        if(this.timeIndex == null || this.timeIndexModifications != modifications) {
+            this.timeIndex = this.timeFromMeasures ? this.createMeasureIndex() : this.createAttributeIndex(attributes);
+            this.timeIndexModifications = modifications;
+        }
+        return this.timeIndex;
+    }
+    
+    /**
+     * This function creates the time index from the attributes of the features.
+     * @param attributes the attribute table of the layer or null
+     * @return the new TimeIndex-object
+     */
+    private TimeIndex createAttributeIndex(Attributes attributes) {
+        int startColumn = attributes == null ? -1 : attributes.indexOf(this.startTimeAttribute);
+        int endColumn = attributes == null || this.endTimeAttribute == null
+                ? -1 : attributes.indexOf(this.endTimeAttribute);
+        if(startColumn < 0) {
+            LOG.log(Level.WARNING, "the layer has no attribute {0}", this.startTimeAttribute);
+        }
+        ArrayList<Geometry> geometries = new ArrayList<>();
+        ArrayList<double[]> intervals = new ArrayList<>();
+        for(int i = 0; i < this.getCountOfFeatures(); i++) {
+            double start = Double.NaN;
+            double end = Double.NaN;
+            if(startColumn >= 0 && i < attributes.size()) {
+                start = TimeIndex.parseTime(attributes.getAttr(i, startColumn));
+                end = endColumn >= 0 ? TimeIndex.parseTime(attributes.getAttr(i, endColumn)) : Double.NaN;
+            }
+            for(Geometry geom : this.getFeatureGeometries(i)) {
+                geometries.add(geom);
+                intervals.add(new double[] {start, end});
+            }
+        }
+        return createTimeIndex(geometries, intervals);
+    }
+    
+    /**
+     * This function creates the time index from the measures of the vertices.
+     * @return the new TimeIndex-object
+     */
+    private TimeIndex createMeasureIndex() {
+        ArrayList<Geometry> geometries = this.getAllGeometries();
+        ArrayList<double[]> intervals = new ArrayList<>(geometries.size());
+        VertexCursor cursor = new VertexCursor();
+        for(Geometry geom : geometries) {
+            double start = Double.POSITIVE_INFINITY;
+            double end = Double.NEGATIVE_INFINITY;
+            if(geom instanceof VertexSequence) {
+                cursor.reset((VertexSequence) geom);
+                while(cursor.next()) {
+                    double m = cursor.getM();
+                    if(!Double.isNaN(m)) {
+                        start = Math.min(start, m);
+                        end = Math.max(end, m);
+                    }
+                }
+            }
+            intervals.add(start <= end ? new double[] {start, end} : new double[] {Double.NaN, Double.NaN});
+        }
+        return createTimeIndex(geometries, intervals);
+    }
+    
+    /**
+     * This function creates a time index from geometries and their intervals.
+     * @param geometries the geometries
+     * @param intervals the start and end time of every geometry
+     * @return the new TimeIndex-object
+     */
+    private static TimeIndex createTimeIndex(ArrayList<Geometry> geometries, ArrayList<double[]> intervals) {
+        double[] starts = new double[intervals.size()];
+        double[] ends = new double[intervals.size()];
+        for(int i = 0; i < starts.length; i++) {
+            starts[i] = intervals.get(i)[0];
+            ends[i] = intervals.get(i)[1];
+        }
+        return new TimeIndex(geometries, starts, ends);
+    }
+    
+    /**
+     * This function returns all geometries, whose envelopes intersect the given
+     * area and whose time intervals overlap the given time window. Only the
+     * slices of the spatio-temporal index within the window are searched.
+     * A layer without time returns all geometries of the area.
+     * @param area the search area in map units
+     * @param startTime the start of the time window
+     * @param endTime the end of the time window
+     * @return an ArrayList of candidate geometries
+     */
+    public ArrayList<Geometry> queryGeometries(Rectangle2D area, double startTime, double endTime) {
+        TimeIndex index = this.getTimeIndex();
+        if(index == null) {
+            return this.queryGeometries(area);
+        }
+        this.lastAccess = System.nanoTime();
+        this.lastQueriedArea = area;
+        return index.search(area, startTime, endTime);
+    }
+    
+    /**
+     * This function returns the k geometries nearest to the given position.
+     * The distances are measured exactly to the segments of lines and polygons.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @param k the maximum number of geometries
+     * @param maxDistance the maximum distance in map units, may be infinite
+     * @return an ArrayList of at most k geometries, the nearest one first
+     */
+    public ArrayList<Geometry> nearestGeometries(double x, double y, int k, double maxDistance) {
+        return this.getSpatialIndex().nearest(x, y, k, maxDistance, (geom) -> geom.distance(x, y));
+    }
+    
+    /**
+     * This function returns the k nearest geometries for every given position.
+     * The positions are processed in parallel.
+     * @param positions the positions in map units
+     * @param k the maximum number of geometries per position
+     * @return a List with one ArrayList of geometries per position, the nearest one first
+     */
+    public List<ArrayList<Geometry>> nearestGeometries(List<? extends Point2D> positions, int k) {
+        RTree<Geometry> index = this.getSpatialIndex();
+        return positions.parallelStream()
+                .map((p) -> index.nearest(p.getX(), p.getY(), k, Double.POSITIVE_INFINITY,
+                                          (geom) -> geom.distance(p.getX(), p.getY())))
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * This function returns the geometries of the current layer
+     * (without the multi-geometries).
+     * @return an ArrayList of Geometry-objects
+     */
+    public ArrayList<Geometry> getGeometryList() {
+        return this.geometryList;
+    }
+    
+    /**
+     * This function returns the multi-geometries of the current layer.
+     * @return an ArrayList of multi-geometries
+     */
+    public ArrayList<ArrayList<Geometry>> getMultiGeometryList() {
+        return this.multiGeometryList;
+    }
+    
+    /**
+     * This function returns the attributes of the current layer.
+     * @return an ArrayList of Attributes-objects
+     */
+    public ArrayList<Attributes> getAttributeList() {
+        return this.attributeList;
+    }
+    
+    /**
+     * This function returns the attribute table of the current layer, i.e.
+     * the first Attributes-object. The datasets of the table belong to the
+     * features of the layer in the same order.
+     * @return an Attributes-object or null, if the layer has no attributes
+     */
+    public Attributes getAttributeTable() {
+        return this.attributeList.isEmpty() ? null : this.attributeList.get(0);
+    }
+    
+    /**
+     * This function returns the number of features of the current layer.
+     * A feature is either a geometry or a multi-geometry, the geometries are
+     * counted first.
+     * @return the number of geometries and multi-geometries
+     */
+    public int getCountOfFeatures() {
+        return this.geometryList.size() + this.multiGeometryList.size();
+    }
+    
+    /**
+     * This function returns the geometries of one feature.
+     * @param featureIndex the zero-based index of the feature
+     * @return an ArrayList with one geometry, or all parts of a multi-geometry
+     */
+    public ArrayList<Geometry> getFeatureGeometries(int featureIndex) {
+        if(featureIndex < this.geometryList.size()) {
+            ArrayList<Geometry> geometries = new ArrayList<>(1);
+            geometries.add(this.geometryList.get(featureIndex));
+            return geometries;
+        }
+        return this.multiGeometryList.get(featureIndex - this.geometryList.size());
+    }
+    
+    /**
+     * This function returns the information, wether a feature is a multi-geometry.
+     * @param featureIndex the zero-based index of the feature
+     * @return TRUE for a multi-geometry, otherwise FALSE
+     */
+    public boolean isMultiFeature(int featureIndex) {
+        return featureIndex >= this.geometryList.size();
+    }
+    
+    /**
+     * This function returns the attribute data of one feature.
+     * @param featureIndex the zero-based index of the feature
+     * @return an array of Strings, or null if there are no attributes for the feature
+     */
+    public String[] getFeatureAttrs(int featureIndex) {
+        Attributes attributes = this.getAttributeTable();
+        if(attributes == null || featureIndex >= attributes.size()) {
+            return null;
+        }
+        return attributes.getAttrs(featureIndex);
     }
     
     /**
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+import java.awt.geom.Rectangle2D;
+import java.util.EventObject;
+
+/**
+ * This class describes one change of the geometries of a layer.
+ * <br>Besides the type of the change and the geometry concerned, the event
+ * contains the envelopes of the geometry before and after the change. Listeners
+ * can use them for updating only the affected parts of caches and of the map.
+ * A change of the style (e.g. colour or line width) does not change the
+ * envelope, but may change the drawing margin around it.
+ * @author Christoph
+ */
+public class LayerEvent extends EventObject {
+    
+    public static final int GEOMETRY_ADDED = 0;
+    public static final int GEOMETRY_REMOVED = 1;
+    public static final int GEOMETRY_CHANGED = 2;
+    public static final int STYLE_CHANGED = 3;
+    
+    private final int type;
+    private final Geometry geometry;
+    private final Rectangle2D oldEnvelope;
+    private final Rectangle2D newEnvelope;
+    private final double drawingMargin;
+
+    /**
+     * The constructor of this class.
+     * @param source the Layer-object, which was changed
+     * @param type the type of the change, e.g. GEOMETRY_ADDED
+     * @param geometry the geometry, which was added, removed or changed
+     * @param oldEnvelope the envelope of the geometry before the change, null for added geometries
+     * @param newEnvelope the envelope of the geometry after the change, null for removed geometries
+     */
+    public LayerEvent(Layer source, int type, Geometry geometry,
+                      Rectangle2D oldEnvelope, Rectangle2D newEnvelope) {
+        this(source, type, geometry, oldEnvelope, newEnvelope,
+             geometry == null ? 0.0 : geometry.getDrawingMargin());
+    }
+    
+    /**
+     * The constructor of this class with an explicit drawing margin.
+     * @param source the Layer-object, which was changed
+     * @param type the type of the change, e.g. STYLE_CHANGED
+     * @param geometry the geometry, which was added, removed or changed
+     * @param oldEnvelope the envelope of the geometry before the change, null for added geometries
+     * @param newEnvelope the envelope of the geometry after the change, null for removed geometries
+     * @param drawingMargin the maximum drawing margin of the geometry before and after the change
+     */
+    public LayerEvent(Layer source, int type, Geometry geometry,
+                      Rectangle2D oldEnvelope, Rectangle2D newEnvelope, double drawingMargin) {
+        super(source);
+        this.type = type;
+        this.geometry = geometry;
+        this.oldEnvelope = oldEnvelope;
+        this.newEnvelope = newEnvelope;
+        this.drawingMargin = drawingMargin;
+    }
+
+    /**
+     * This function returns the layer, which was changed.
+     * @return a Layer-object
+     */
+    public Layer getLayer() {
+        return (Layer) super.getSource();
+    }
+
+    /**
+     * This function returns the type of the change.
+     * @return GEOMETRY_ADDED, GEOMETRY_REMOVED, GEOMETRY_CHANGED or STYLE_CHANGED
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * This function returns the geometry concerned by the change.
+     * @return a Geometry-object
+     */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * This function returns the envelope of the geometry before the change.
+     * @return a Rectangle2D-object or null, if the geometry was added
+     */
+    public Rectangle2D getOldEnvelope() {
+        return oldEnvelope;
+    }
+
+    /**
+     * This function returns the envelope of the geometry after the change.
+     * @return a Rectangle2D-object or null, if the geometry was removed
+     */
+    public Rectangle2D getNewEnvelope() {
+        return newEnvelope;
+    }
+    
+    /**
+     * This function returns the distance, by which the drawing of the geometry
+     * exceeds its envelope before or after the change.
+     * @return the margin in pixels
+     */
+    public double getDrawingMargin() {
+        return drawingMargin;
+    }
+    
+    /**
+     * This function returns the area of the map, which is affected by the change,
+     * i.e. the union of the old and the new envelope.
+     * @return a Rectangle2D-object in map units
+     */
+    public Rectangle2D getAffectedArea() {
+        if(this.oldEnvelope == null) {
+            return this.newEnvelope;
+        }
+        if(this.newEnvelope == null) {
+            return this.oldEnvelope;
+        }
+        return this.oldEnvelope.createUnion(this.newEnvelope);
+    }
+    
+    /**
+     * This function returns the area of the map, whose drawing is affected
+     * by the change, i.e. the affected area extended by the drawing margin.
+     * @param pixelSize the size of one pixel in map units at the scale of the map
+     * @return a Rectangle2D-object in map units or null, if no area is affected
+     */
+    public Rectangle2D getDrawnArea(double pixelSize) {
+        Rectangle2D area = this.getAffectedArea();
+        if(area == null || this.drawingMargin <= 0.0) {
+            return area;
+        }
+        double margin = this.drawingMargin * pixelSize;
+        return new Rectangle2D.Double(area.getX() - margin,
+                                      area.getY() - margin,
+                                      area.getWidth() + 2 * margin,
+                                      area.getHeight() + 2 * margin);
+    }
+    
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+import java.util.EventListener;
+
+/**
+ * This interface has to be implemented by all classes, which want to be
+ * informed about changes of the geometries of a layer.
+ * @author Christoph
+ */
+public interface LayerListener extends EventListener {
+    
+    /**
+     * This function is called after a geometry of the layer was added,
+     * removed or modified.
+     * @param e the LayerEvent-object describing the change
+     */
+    public void layerChanged(LayerEvent e);
+    
+}
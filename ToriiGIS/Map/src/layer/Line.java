@@ -16,12 +16,11 @@
  */
 package layer;
 
-import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 
 /**
@@ -30,16 +29,16 @@ import java.util.ArrayList;
  * The order of the vertices corresponds to the direction of the line.
  * @author Christoph
  */
-public class Line extends Geometry {
+public class Line extends Geometry implements VertexSequence {
     
-    private ArrayList<Point> vertices;
+    private PackedCoordinates vertices;
     private float lineWidth;
 
     /**
      * The empty constructor of the class.
      */
     public Line() {
-        this.vertices = new ArrayList<>();
+        this.vertices = new PackedCoordinates();
         super.setRgb(0, 0, 0);
     }
 
@@ -50,33 +49,36 @@ public class Line extends Geometry {
      * @param vertices an ArrayList of points representing the vertices of the line
      */
     public Line(ArrayList<Point> vertices) {
+        this.vertices = new PackedCoordinates();
         if(vertices.size() >= 2) {
-            this.vertices = vertices;
-        } else {
-            this.vertices = new ArrayList<>();
+            vertices.forEach((vertice) -> {
+                this.vertices.add(vertice.getXCoord(), vertice.getYCoord(), vertice.getZCoord());
+            });
         }
         this.lineWidth = 2.0f;
         super.setRgb(0, 0, 0);
     }
     
+    /**
+     * The constructor of this class, which takes over already packed vertices
+     * (e.g. from an import) without creating Point-objects.
+     * The number of vertices has to be 2 or more, otherwise an empty line will be constructed.
+     * @param vertices a PackedCoordinates-object containing the vertices of the line
+     */
+    public Line(PackedCoordinates vertices) {
+        this.vertices = vertices.size() >= 2 ? vertices : new PackedCoordinates();
+        this.lineWidth = 2.0f;
+        super.setRgb(0, 0, 0);
+    }
+    
     /**
      * This function calculates the length of the whole line of the current object.<br>
      * The function calculates the euklidian distance between 2 following vertices
-     * and adds the result to the given parametre <code>length</code>.
-     * The function is self-calling for calculating the length of the whole line.
-     * @param i an int-value for iterating over the ArrayList of vertices
-     * @param length variable where the result (and the temporary results) will be stored
-     * @return the length of the current and all previous parts of the line
-     */
-    private double calculateLength(int i, double length) {
-        if ((i + 1) < vertices.size()) {
-            double deltaX = vertices.get(i + 1).getXCoord()- vertices.get(i).getXCoord();
-            double deltaY = vertices.get(i + 1).getYCoord()- vertices.get(i).getYCoord();
-            double deltaZ = vertices.get(i + 1).getZCoord()- vertices.get(i).getZCoord();
-            length += Math.sqrt((deltaX * deltaX) + (deltaY * deltaY) + (deltaZ * deltaZ));
-            length = this.calculateLength(i + 1, length);
-        }
-        return length;
+     * and sums up the results. Heights are only considered for XYZ coordinates.
+     * @return the length of the whole line
+     */
+    private double calculateLength() {
+        return this.vertices.getLength(false);
     }
     
     /**
@@ -87,7 +89,7 @@ public class Line extends Geometry {
      * @return the length as double value
      */
     public double getLength() {
-        double length = this.calculateLength(0, 0.0);
+        double length = this.calculateLength();
         return length;
     }
 
@@ -99,7 +101,7 @@ public class Line extends Geometry {
     public String toString() {
         String lineAsString = "Line{vertices=";
         for(int i = 0; i < vertices.size(); i++) {
-            lineAsString += vertices.get(i).toString();
+            lineAsString += vertices.getPoint(i).toString();
             if(i != (vertices.size() - 1)) {
                 lineAsString += ", ";
             }
@@ -113,8 +115,9 @@ public class Line extends Geometry {
      * @param p the new vertice as Point-object
      * @param position the zero-based position for inserting
      */
+    @Override
     public void addVertice(Point p, int position) {
-        this.vertices.add(position, p);
+        this.vertices.add(position, p.getXCoord(), p.getYCoord(), p.getZCoord());
     }
     
     /**
@@ -122,13 +125,40 @@ public class Line extends Geometry {
      * @param p the new vertice as Point-object
      */
     public void addVertice(Point p) {
-        this.vertices.add(p);
+        this.vertices.add(p.getXCoord(), p.getYCoord(), p.getZCoord());
+    }
+    
+    /**
+     * This function adds a new vertice with all of its values at the given position.
+     * @param position the zero-based position for inserting
+     * @param x the x-coordinate of the new vertice
+     * @param y the y-coordinate of the new vertice
+     * @param z the z-coordinate of the new vertice, which is ignored for XYM
+     * @param m the measure of the new vertice, which is ignored without measures
+     */
+    @Override
+    public void addVertice(int position, double x, double y, double z, double m) {
+        this.vertices.add(position, x, y, z, m);
+    }
+    
+    /**
+     * This function replaces all values of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @param x the new x-coordinate
+     * @param y the new y-coordinate
+     * @param z the new z-coordinate, which is ignored for XYM
+     * @param m the new measure, which is ignored without measures
+     */
+    @Override
+    public void setVertice(int position, double x, double y, double z, double m) {
+        this.vertices.set(position, x, y, z, m);
     }
     
     /**
      * This function removes a vertice from the line at the given position.
      * @param position the zero-based index of the vertice, that has to be deleted
      */
+    @Override
     public void removeVertice(int position) {
         this.vertices.remove(position);
     }
@@ -137,43 +167,199 @@ public class Line extends Geometry {
      * This function returns the number of vertices of the current line.
      * @return the number of vertices
      */
+    @Override
     public int getCountOfVertices() {
         return this.vertices.size();
     }
     
     /**
-     * This function paints the geometry to a JPanel.
+     * This function returns the vertice at the given position.
+     * The Point-object is created on demand, i.e. changing it does not change the line.
+     * @param position the zero-based index of the vertice
+     * @return the vertice as new Point-object
+     */
+    @Override
+    public Point getVertice(int position) {
+        return this.vertices.getPoint(position);
+    }
+    
+    /**
+     * This function returns the x-coordinate of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the x-coordinate as double value
+     */
+    @Override
+    public double getVerticeX(int position) {
+        return this.vertices.getX(position);
+    }
+    
+    /**
+     * This function returns the y-coordinate of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the y-coordinate as double value
+     */
+    @Override
+    public double getVerticeY(int position) {
+        return this.vertices.getY(position);
+    }
+    
+    /**
+     * This function returns the z-coordinate of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the z-coordinate as double value
+     */
+    @Override
+    public double getVerticeZ(int position) {
+        return this.vertices.getZ(position);
+    }
+    
+    /**
+     * This function returns the measure of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the measure as double value, NaN if the vertices have no measures
+     */
+    @Override
+    public double getVerticeM(int position) {
+        return this.vertices.getM(position);
+    }
+    
+    /**
+     * This function returns the dimension of the stored coordinates.
+     * @return XY, XYZ or XYM
+     */
+    @Override
+    public CoordinateDimension getDimension() {
+        return this.vertices.getDimension();
+    }
+    
+    /**
+     * This function passes the coordinates of all vertices to the given consumer.
+     * @param consumer the operation for every vertice
+     */
+    @Override
+    public void forEachVertex(VertexConsumer consumer) {
+        this.vertices.forEach(consumer);
+    }
+    
+    /**
+     * This function returns the storage of the vertices, e.g. for compressing them.
+     * @return the PackedCoordinates-object of the line
+     */
+    PackedCoordinates getPackedCoordinates() {
+        return this.vertices;
+    }
+    
+    /**
+     * This function returns the information, wether the line is closed.
+     * @return FALSE, because a line is never closed
+     */
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+    
+    /**
+     * This function returns the envelope of the line.
+     * @return a Rectangle2D-object enclosing all vertices, or an empty
+     * rectangle if the line has no vertices
+     */
+    @Override
+    public Rectangle2D getEnvelope() {
+        return this.vertices.getEnvelope();
+    }
+    
+    /**
+     * This function checks, wether one of the segments of the line lies
+     * within the tolerance around the given position.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @param tolerance the maximum distance in map units
+     * @return TRUE if the line is hit, otherwise FALSE
+     */
+    @Override
+    public boolean hits(double x, double y, double tolerance) {
+        for(int i = 0; (i + 1) < this.vertices.size(); i++) {
+            if(distanceToSegment(x, y,
+                                 this.vertices.getX(i), this.vertices.getY(i),
+                                 this.vertices.getX(i + 1), this.vertices.getY(i + 1)) <= tolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * This function calculates the distance between the nearest segment
+     * of the line and the given position.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @return the distance in map units, or infinity if the line has no vertices
+     */
+    @Override
+    public double distance(double x, double y) {
+        if(this.vertices.size() == 1) {
+            return Math.hypot(x - this.vertices.getX(0), y - this.vertices.getY(0));
+        }
+        double distance = Double.POSITIVE_INFINITY;
+        for(int i = 0; (i + 1) < this.vertices.size(); i++) {
+            distance = Math.min(distance, distanceToSegment(x, y,
+                                                            this.vertices.getX(i), this.vertices.getY(i),
+                                                            this.vertices.getX(i + 1), this.vertices.getY(i + 1)));
+        }
+        return distance;
+    }
+    
+    /**
+     * This function creates the path of the line from its vertices.
+     * @return a Path2D-object containing all vertices of the line
+     */
+    private Path2D createPath() {
+        return this.vertices.toPath(false);
+    }
+    
+    /**
+     * This function draws the geometry.
+     * <br>Only the part of the line inside the clipping area of the Graphics2D-object
+     * will be handed over to Java2D.
      * <br>Antialiasing is activated.
      * <br>The colour of the geometry is defined as
      * attributes of the parent class.
      * <br>The line end is CAP_BUTT and the joins are round.
-     * @param g a Graphics-object for drawing the geometry
+     * @param g2 a Graphics2D-object for drawing the geometry
+     * @param symbol the Symbol-object with the colour and the line width
      */
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
+    public void draw(Graphics2D g2, Symbol symbol) {
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.setColor(new Color(super.getRed(), super.getGreen(), super.getBlue(), super.getOpacity()));
-        g2.setStroke(new BasicStroke(this.lineWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
+        g2.setColor(symbol.getColour());
+        double pixelSize = getPixelSize(g2);
+        g2.setStroke(symbol.getStroke(pixelSize));
         
-        Path2D line = new Path2D.Double();
-        boolean isNotFirst = false;
-        for(Point vertice : this.vertices) {
-            if (isNotFirst) {
-                line.lineTo(vertice.getXCoord(), vertice.getYCoord());
-            } else {
-                line.moveTo(vertice.getXCoord(), vertice.getYCoord());
-            }
+        Rectangle2D clip = getClipArea(g2, symbol.getLineWidth() * pixelSize);
+        Rectangle2D envelope = this.getEnvelope();
+        if(clip == null || RTree.contains(clip, envelope)) {
+            super.graphicObject = this.createPath();
+        } else if(RTree.intersects(clip, envelope)) {
+            super.graphicObject = Clipper.clipLine(this, clip);
+        } else {
+            return;
         }
-        
-        super.graphicObject = line;
         g2.draw(super.graphicObject);
     }
 
+    /**
+     * This function creates the own style of the line.
+     * @return a new Symbol-object with the colour and the width of the line
+     */
+    @Override
+    protected Symbol createSymbol() {
+        return new Symbol(new Color(super.getRed(), super.getGreen(), super.getBlue(), super.getOpacity()),
+                          null, this.lineWidth, 0.0);
+    }
+
     /**
      * This function returns the width of the line.
-     * @return the width as float value
+     * @return the width in pixels as float value
      */
     public float getLineWidth() {
         return lineWidth;
@@ -181,10 +367,24 @@ public class Line extends Geometry {
 
     /**
      * This function sets the width of the current line.
-     * @param lineWidth the new width of the line as float value
+     * @param lineWidth the new width of the line in pixels as float value
      */
     public void setLineWidth(float lineWidth) {
-        this.lineWidth = lineWidth;
+        if(this.lineWidth != lineWidth) {
+            double oldMargin = this.getDrawingMargin();
+            this.lineWidth = lineWidth;
+            super.fireStyleChanged(oldMargin);
+        }
+    }
+    
+    /**
+     * This function returns half of the line width, by which the drawn
+     * boundary exceeds the envelope.
+     * @return the margin in pixels
+     */
+    @Override
+    public double getDrawingMargin() {
+        return this.lineWidth / 2.0;
     }
     
 }
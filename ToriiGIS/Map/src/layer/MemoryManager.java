@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class limits the memory used by the registered layers.
+ * <br>The memory of a layer is estimated from the number of its geometries,
+ * the coordinates stored on the heap and the values of its attributes. If
+ * all layers together exceed the budget, the coordinates of the layers, which
+ * were queried least recently, are spilled into memory-mapped temporary files
+ * until the budget is kept. The layer queried last keeps the coordinates of
+ * the geometries within its last queried area, i.e. the visible part of the
+ * map, and spills only the remaining ones.
+ * <br>Spilled coordinates are read transparently from the mapped file, the
+ * operating system loads them on access. They return to the heap, when the
+ * geometry is modified or the layer is reloaded. Compressed coordinates, the
+ * geometry objects and the attributes stay on the heap.
+ * <br>The coordinates to spill are selected by the thread, which modifies the
+ * layers, e.g. the event dispatch thread for the layers of the map. Writing
+ * the temporary file and replacing the coordinates can be done by another
+ * thread. Meanwhile the layers can be read by any thread and edited by
+ * their own thread, modified coordinates are not replaced.
+ * @author Christoph
+ */
+public class MemoryManager {
+    
+    /**
+     * The estimated size of a geometry object without its coordinates.
+     * Geometries are Swing components, whose fields need several hundred bytes.
+     */
+    private static final long GEOMETRY_SIZE = 512;
+    private static final Logger LOG = Logger.getLogger(MemoryManager.class.getName());
+    private static MemoryManager defaultManager = null;
+    
+    private final long budget;
+    private final Path spillDirectory;
+    private final IdentityHashMap<Layer, Long> sizes = new IdentityHashMap<>();
+    private CompletableFuture<Long> running = null;
+
+    /**
+     * The constructor of this class.
+     * @param budget the maximum number of bytes for all registered layers
+     * @param spillDirectory the directory for the temporary files
+     */
+    public MemoryManager(long budget, Path spillDirectory) {
+        if(budget <= 0) {
+            throw new IllegalArgumentException("the budget must be greater than zero");
+        }
+        this.budget = budget;
+        this.spillDirectory = spillDirectory;
+    }
+    
+    /**
+     * This function returns the manager for the layers of the application.
+     * Its budget is taken from the system property toriigis.memory.budget
+     * in bytes, otherwise it is half of the maximum heap size. The temporary
+     * files are created in the directory of java.io.tmpdir.
+     * @return the MemoryManager-object
+     */
+    public static synchronized MemoryManager getDefault() {
+        if(defaultManager == null) {
+            long budget = Long.getLong("toriigis.memory.budget", Runtime.getRuntime().maxMemory() / 2);
+            defaultManager = new MemoryManager(budget, Paths.get(System.getProperty("java.io.tmpdir")));
+        }
+        return defaultManager;
+    }
+    
+    /**
+     * This function adds a layer to the layers, whose memory is limited.
+     * @param layer the Layer-object
+     */
+    public synchronized void register(Layer layer) {
+        this.sizes.put(layer, estimateSize(layer));
+    }
+    
+    /**
+     * This function removes a layer from the managed layers. Its spilled
+     * coordinates stay in the temporary file.
+     * @param layer the Layer-object
+     */
+    public synchronized void unregister(Layer layer) {
+        this.sizes.remove(layer);
+    }
+    
+    /**
+     * This function returns the budget of the manager.
+     * @return the maximum number of bytes for all registered layers
+     */
+    public long getBudget() {
+        return this.budget;
+    }
+    
+    /**
+     * This function returns the estimated memory of all registered layers,
+     * as it was calculated at their registration or the last enforcement.
+     * @return the number of bytes
+     */
+    public synchronized long getUsage() {
+        long usage = 0;
+        for(long size : this.sizes.values()) {
+            usage += size;
+        }
+        return usage;
+    }
+    
+    /**
+     * This function estimates the memory used by a layer on the heap.
+     * @param layer the Layer-object
+     * @return the estimated number of bytes of the geometries, the coordinates and the attributes
+     */
+    public static long estimateSize(Layer layer) {
+        long size = 0;
+        for(Geometry geom : layer.getAllGeometries()) {
+            size += GEOMETRY_SIZE;
+            PackedCoordinates vertices = Layer.packedCoordinatesOf(geom);
+            if(vertices != null) {
+                size += vertices.getStorageSize();
+            }
+        }
+        for(Attributes attributes : layer.getAttributeList()) {
+            size += attributes.getStorageSize();
+        }
+        return size;
+    }
+    
+    /**
+     * This function spills the coordinates of the coldest layers, until the
+     * estimated memory of all layers is within the budget or nothing is left
+     * to spill. The temporary file is written by the calling thread.
+     * @return the number of bytes, which were released from the heap
+     * @throws IOException if a temporary file cannot be written
+     */
+    public long enforce() throws IOException {
+        return this.spill(this.selectCandidates());
+    }
+    
+    /**
+     * This function spills the coordinates of the coldest layers like
+     * <code>enforce()</code>, but only the selection of the coordinates is done
+     * by the calling thread. The temporary file is written and the coordinates
+     * are replaced by the given executor. An enforcement requested, while
+     * the previous one is still running, is skipped.
+     * @param executor the Executor-object for writing the temporary file
+     * @return a CompletableFuture-object with the number of released bytes,
+     * which is completed exceptionally with an UncheckedIOException, if the file
+     * cannot be written
+     */
+    public CompletableFuture<Long> enforce(Executor executor) {
+        synchronized(this) {
+            if(this.running != null && !this.running.isDone()) {
+                return this.running;
+            }
+        }
+        Candidates candidates = this.selectCandidates();
+        if(candidates.coordinates.isEmpty()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        CompletableFuture<Long> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.spill(candidates);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor);
+        synchronized(this) {
+            this.running = future;
+        }
+        return future;
+    }
+    
+    /**
+     * This function estimates the memory of all registered layers and selects
+     * the coordinates, which have to be spilled.
+     * @return the selected coordinates
+     */
+    private synchronized Candidates selectCandidates() {
+        Candidates candidates = new Candidates();
+        List<Layer> layers = new ArrayList<>(this.sizes.keySet());
+        long usage = 0;
+        for(Layer layer : layers) {
+            long size = estimateSize(layer);
+            this.sizes.put(layer, size);
+            usage += size;
+        }
+        if(usage <= this.budget) {
+            return candidates;
+        }
+        
+        layers.sort(Comparator.comparingLong(Layer::getLastAccess));
+        for(int i = 0; i < layers.size() && usage > this.budget; i++) {
+            Layer layer = layers.get(i);
+            Rectangle2D keptArea = i == layers.size() - 1 ? layer.getLastQueriedArea() : null;
+            for(Geometry geom : layer.getAllGeometries()) {
+                PackedCoordinates vertices = Layer.packedCoordinatesOf(geom);
+                if(vertices == null || (keptArea != null && geom.getEnvelope().intersects(keptArea))) {
+                    continue;
+                }
+                PackedCoordinates.SpillCandidate candidate = vertices.getSpillCandidate();
+                if(candidate != null && candidate.getCountOfValues() > 0) {
+                    candidates.coordinates.add(candidate);
+                    candidates.layers.add(layer);
+                    usage -= candidate.getStorageSize();
+                }
+            }
+        }
+        candidates.remainingUsage = usage;
+        return candidates;
+    }
+    
+    /**
+     * This function writes the selected coordinates into a new temporary
+     * file and replaces the coordinates, which were not modified meanwhile.
+     * @param candidates the selected coordinates
+     * @return the number of bytes released from the heap
+     * @throws IOException if the temporary file cannot be written
+     */
+    private long spill(Candidates candidates) throws IOException {
+        int count = candidates.coordinates.size();
+        if(count == 0) {
+            return 0;
+        }
+        ArrayList<double[]> arrays = new ArrayList<>(count);
+        int[] lengths = new int[count];
+        for(int k = 0; k < count; k++) {
+            arrays.add(candidates.coordinates.get(k).getValues());
+            lengths[k] = candidates.coordinates.get(k).getCountOfValues();
+        }
+        long[] indices = new long[count];
+        SpillFile file = SpillFile.write(this.spillDirectory, arrays, lengths, indices);
+        
+        IdentityHashMap<Layer, Long> released = new IdentityHashMap<>();
+        long releasedTotal = 0;
+        for(int k = 0; k < count; k++) {
+            PackedCoordinates.SpillCandidate candidate = candidates.coordinates.get(k);
+            if(indices[k] >= 0 && candidate.spill(file, indices[k])) {
+                released.merge(candidates.layers.get(k), (long) candidate.getStorageSize(), Long::sum);
+                releasedTotal += candidate.getStorageSize();
+            }
+        }
+        synchronized(this) {
+            released.forEach((layer, bytes) -> {
+                this.sizes.computeIfPresent(layer, (key, size) -> size - bytes);
+            });
+        }
+        long usage = this.getUsage();
+        LOG.log(candidates.remainingUsage > this.budget ? Level.WARNING : Level.INFO,
+                "{0} bytes of coordinates were spilled, {1} of {2} bytes are used",
+                new Object[] {releasedTotal, usage, this.budget});
+        return releasedTotal;
+    }
+    
+    /**
+     * This function moves all spilled coordinates of a layer back to the heap.
+     * The budget is not checked.
+     * @param layer the Layer-object
+     */
+    public synchronized void reload(Layer layer) {
+        for(Geometry geom : layer.getAllGeometries()) {
+            PackedCoordinates vertices = Layer.packedCoordinatesOf(geom);
+            if(vertices != null && vertices.isSpilled()) {
+                vertices.decompress();
+            }
+        }
+        if(this.sizes.containsKey(layer)) {
+            this.sizes.put(layer, estimateSize(layer));
+        }
+    }
+    
+    /**
+     * This class contains the coordinates selected for spilling.
+     */
+    private static class Candidates {
+        
+        private final ArrayList<PackedCoordinates.SpillCandidate> coordinates = new ArrayList<>();
+        private final ArrayList<Layer> layers = new ArrayList<>();
+        private long remainingUsage = 0;
+        
+    }
+    
+}
@@ -0,0 +1,833 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * This class stores the vertices of a line or a polygon in one array of doubles.
+ * <br>The coordinates are stored interleaved (x, y, x, y, ... or x, y, z, x, y, z, ...),
+ * i.e. a vertice does not need an object of its own. Point-objects are only
+ * created on demand. Only the dimensions given by the CoordinateDimension are
+ * stored: vertices without heights need two doubles, and a planar object is
+ * changed to XYZ automatically, when a vertice with a height other than zero
+ * is added. Length, area and path are calculated by separate loops for planar
+ * and three-dimensional coordinates.
+ * <br>The coordinates can be compressed: they are rounded to integer multiples
+ * of a resolution relative to an origin, and the differences between
+ * successive vertices are stored as variable-length integers. The third value
+ * is only stored, if at least one of them is not zero. Compressed coordinates
+ * are decoded on demand into a buffer, which is reused by every thread for
+ * the last geometry it read, i.e. iterating over the vertices of one geometry
+ * decodes them only once. Every modification decompresses the coordinates.
+ * <br>Uncompressed coordinates can be spilled into a memory-mapped temporary
+ * file by the MemoryManager. Spilled coordinates are read from the file like
+ * compressed ones and return to the heap on the first modification.
+ * <br>The storage of the coordinates (uncompressed, compressed or spilled)
+ * is replaced as a whole together with the dimension and the number of
+ * vertices, i.e. other threads can read the vertices, while the coordinates
+ * are compressed, spilled or restored. Modifications are synchronized, but
+ * the geometry should be edited by one thread only.
+ * @author Christoph
+ */
+public class PackedCoordinates {
+    
+    private static final ThreadLocal<DecodedCoordinates> DECODED = ThreadLocal.withInitial(DecodedCoordinates::new);
+    
+    private volatile Storage storage;
+    private int modifications = 0;
+
+    /**
+     * The empty constructor of this class.
+     * The coordinates are planar until a vertice with a height is added.
+     */
+    public PackedCoordinates() {
+        this(CoordinateDimension.XY);
+    }
+    
+    /**
+     * The constructor of this class for an empty object with the given dimension.
+     * @param dimension the dimension of the coordinates
+     */
+    public PackedCoordinates(CoordinateDimension dimension) {
+        this.storage = Storage.uncompressed(dimension, 0, new double[0]);
+    }
+    
+    /**
+     * The constructor of this class, which copies a part of an array of
+     * interleaved coordinates with x, y and z. If all z-coordinates are zero,
+     * only x and y will be stored.
+     * @param coordinates an array of doubles with x, y and z of every vertice
+     * @param offset the index of the first vertice in the array
+     * @param countOfVertices the number of vertices to copy
+     */
+    public PackedCoordinates(double[] coordinates, int offset, int countOfVertices) {
+        this(CoordinateDimension.XYZ, coordinates, offset, countOfVertices);
+        boolean planar = true;
+        for(int i = 0; i < countOfVertices && planar; i++) {
+            planar = this.storage.coordinates[3 * i + 2] == 0.0;
+        }
+        if(planar) {
+            this.setDimension(CoordinateDimension.XY);
+        }
+    }
+    
+    /**
+     * The constructor of this class, which copies a part of an array of
+     * interleaved coordinates of the given dimension.
+     * @param dimension the dimension of the coordinates, which defines the number of values per vertice
+     * @param coordinates an array of doubles with all values of every vertice
+     * @param offset the index of the first vertice in the array
+     * @param countOfVertices the number of vertices to copy
+     */
+    public PackedCoordinates(CoordinateDimension dimension, double[] coordinates, int offset, int countOfVertices) {
+        int stride = dimension.getCountOfValues();
+        this.storage = Storage.uncompressed(dimension, countOfVertices,
+                                            Arrays.copyOfRange(coordinates,
+                                                               stride * offset,
+                                                               stride * (offset + countOfVertices)));
+    }
+    
+    /**
+     * This function returns the number of vertices.
+     * @return the number of vertices
+     */
+    public int size() {
+        return this.storage.size;
+    }
+    
+    /**
+     * This function returns the dimension of the stored coordinates.
+     * @return XY, XYZ or XYM
+     */
+    public CoordinateDimension getDimension() {
+        return this.storage.dimension;
+    }
+    
+    /**
+     * This function changes the dimension of the stored coordinates.
+     * Values, which do not exist in the new dimension, get lost. Values,
+     * which do not exist in the old dimension, are set to zero for z
+     * and NaN for m.
+     * @param dimension the new dimension
+     */
+    public synchronized void setDimension(CoordinateDimension dimension) {
+        if(dimension == this.storage.dimension) {
+            return;
+        }
+        this.decompress();
+        Storage current = this.storage;
+        double[] values = current.coordinates;
+        int newStride = dimension.getCountOfValues();
+        double[] converted = new double[newStride * current.size];
+        for(int i = 0; i < current.size; i++) {
+            converted[newStride * i] = values[current.stride * i];
+            converted[newStride * i + 1] = values[current.stride * i + 1];
+            if(dimension == CoordinateDimension.XYM) {
+                converted[newStride * i + 2] = Double.NaN;
+            }
+        }
+        this.storage = Storage.uncompressed(dimension, current.size, converted);
+        this.modifications++;
+    }
+    
+    /**
+     * This function returns the x-coordinate of a vertice.
+     * @param i the zero-based index of the vertice
+     * @return the x-coordinate as double value
+     */
+    public double getX(int i) {
+        Storage current = this.storage;
+        return this.coordinates(current)[current.stride * i];
+    }
+    
+    /**
+     * This function returns the y-coordinate of a vertice.
+     * @param i the zero-based index of the vertice
+     * @return the y-coordinate as double value
+     */
+    public double getY(int i) {
+        Storage current = this.storage;
+        return this.coordinates(current)[current.stride * i + 1];
+    }
+    
+    /**
+     * This function returns the z-coordinate of a vertice.
+     * @param i the zero-based index of the vertice
+     * @return the z-coordinate as double value, zero if the coordinates have no heights
+     */
+    public double getZ(int i) {
+        Storage current = this.storage;
+        return current.dimension == CoordinateDimension.XYZ ? this.coordinates(current)[3 * i + 2] : 0.0;
+    }
+    
+    /**
+     * This function returns the measure of a vertice.
+     * @param i the zero-based index of the vertice
+     * @return the measure as double value, NaN if the coordinates have no measures
+     */
+    public double getM(int i) {
+        Storage current = this.storage;
+        return current.dimension == CoordinateDimension.XYM ? this.coordinates(current)[3 * i + 2] : Double.NaN;
+    }
+    
+    /**
+     * This function returns a vertice as new Point-object.
+     * @param i the zero-based index of the vertice
+     * @return a Point-object with the coordinates of the vertice
+     */
+    public Point getPoint(int i) {
+        Storage current = this.storage;
+        double[] values = this.coordinates(current);
+        return new Point(values[current.stride * i], values[current.stride * i + 1],
+                         current.dimension == CoordinateDimension.XYZ ? values[3 * i + 2] : 0.0);
+    }
+    
+    /**
+     * This function passes all vertices to the given consumer. Compressed
+     * coordinates are decoded step by step without the buffer of the thread,
+     * i.e. the consumer may read other geometries.
+     * @param consumer the operation for every vertice
+     */
+    public void forEach(VertexConsumer consumer) {
+        Storage current = this.storage;
+        boolean withHeights = current.dimension == CoordinateDimension.XYZ;
+        if(current.spill != null) {
+            for(int i = 0; i < current.size; i++) {
+                long index = current.spillIndex + current.stride * i;
+                consumer.accept(current.spill.get(index), current.spill.get(index + 1),
+                                withHeights ? current.spill.get(index + 2) : 0.0);
+            }
+            return;
+        }
+        if(current.encoded == null) {
+            double[] values = current.coordinates;
+            if(withHeights) {
+                for(int i = 0; i < 3 * current.size; i += 3) {
+                    consumer.accept(values[i], values[i + 1], values[i + 2]);
+                }
+            } else {
+                for(int i = 0; i < current.size; i++) {
+                    consumer.accept(values[current.stride * i], values[current.stride * i + 1], 0.0);
+                }
+            }
+            return;
+        }
+        int[] position = {0};
+        long x = 0;
+        long y = 0;
+        long z = 0;
+        for(int i = 0; i < current.size; i++) {
+            x += readVarLong(current.encoded, position);
+            y += readVarLong(current.encoded, position);
+            if(current.hasThirdValue) {
+                z += readVarLong(current.encoded, position);
+            }
+            consumer.accept(current.originX + x * current.resolution, current.originY + y * current.resolution,
+                    withHeights ? z * current.resolution : 0.0);
+        }
+    }
+    
+    /**
+     * This function moves a cursor to its next vertice, i.e. the index of
+     * the cursor must already be incremented. The vertices have to be read in
+     * ascending order, because compressed coordinates are decoded step by step.
+     * @param cursor the VertexCursor-object
+     */
+    void read(VertexCursor cursor) {
+        int i = cursor.getIndex();
+        Storage current = this.storage;
+        boolean withHeights = current.dimension == CoordinateDimension.XYZ;
+        boolean withMeasures = current.dimension == CoordinateDimension.XYM;
+        if(current.spill != null) {
+            long index = current.spillIndex + current.stride * i;
+            cursor.x = current.spill.get(index);
+            cursor.y = current.spill.get(index + 1);
+            cursor.z = withHeights ? current.spill.get(index + 2) : 0.0;
+            cursor.m = withMeasures ? current.spill.get(index + 2) : Double.NaN;
+            return;
+        }
+        if(current.encoded == null) {
+            double[] values = current.coordinates;
+            cursor.x = values[current.stride * i];
+            cursor.y = values[current.stride * i + 1];
+            cursor.z = withHeights ? values[3 * i + 2] : 0.0;
+            cursor.m = withMeasures ? values[3 * i + 2] : Double.NaN;
+            return;
+        }
+        cursor.quantizedX += readVarLong(current.encoded, cursor.position);
+        cursor.quantizedY += readVarLong(current.encoded, cursor.position);
+        if(current.hasThirdValue) {
+            cursor.quantizedZ += readVarLong(current.encoded, cursor.position);
+        }
+        cursor.x = current.originX + cursor.quantizedX * current.resolution;
+        cursor.y = current.originY + cursor.quantizedY * current.resolution;
+        cursor.z = withHeights ? cursor.quantizedZ * current.resolution : 0.0;
+        cursor.m = withMeasures ? 0.0 : Double.NaN;
+    }
+    
+    /**
+     * This function inserts a new vertice at the given position.
+     * @param i the zero-based position for inserting
+     * @param x the x-coordinate of the new vertice
+     * @param y the y-coordinate of the new vertice
+     * @param z the z-coordinate of the new vertice, which is ignored for XYM
+     */
+    public synchronized void add(int i, double x, double y, double z) {
+        if(i < 0 || i > this.storage.size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.storage.size);
+        }
+        this.decompress();
+        Storage current = this.storage;
+        double[] values = current.coordinates;
+        if(current.stride * (current.size + 1) > values.length) {
+            values = Arrays.copyOf(values, Math.max(current.stride * 4, 2 * values.length));
+        }
+        System.arraycopy(values, current.stride * i,
+                         values, current.stride * (i + 1),
+                         current.stride * (current.size - i));
+        if(current.dimension == CoordinateDimension.XYM) {
+            values[3 * i + 2] = Double.NaN;
+        }
+        this.storage = Storage.uncompressed(current.dimension, current.size + 1, values);
+        this.set(i, x, y, z);
+    }
+    
+    /**
+     * This function appends a new vertice.
+     * @param x the x-coordinate of the new vertice
+     * @param y the y-coordinate of the new vertice
+     * @param z the z-coordinate of the new vertice, which is ignored for XYM
+     */
+    public void add(double x, double y, double z) {
+        this.add(this.storage.size, x, y, z);
+    }
+    
+    /**
+     * This function replaces the coordinates of a vertice.
+     * @param i the zero-based index of the vertice
+     * @param x the new x-coordinate
+     * @param y the new y-coordinate
+     * @param z the new z-coordinate, which is ignored for XYM
+     */
+    public synchronized void set(int i, double x, double y, double z) {
+        this.decompress();
+        if(z != 0.0 && this.storage.dimension == CoordinateDimension.XY) {
+            this.setDimension(CoordinateDimension.XYZ);
+        }
+        Storage current = this.storage;
+        double[] values = current.coordinates;
+        values[current.stride * i] = x;
+        values[current.stride * i + 1] = y;
+        if(current.dimension == CoordinateDimension.XYZ) {
+            values[3 * i + 2] = z;
+        }
+        this.modifications++;
+    }
+    
+    /**
+     * This function inserts a new vertice with all of its values at the given
+     * position. The dimension is kept, i.e. the measure is only stored for XYM.
+     * @param i the zero-based position for inserting
+     * @param x the x-coordinate of the new vertice
+     * @param y the y-coordinate of the new vertice
+     * @param z the z-coordinate of the new vertice, which is ignored for XYM
+     * @param m the measure of the new vertice, which is ignored without measures
+     */
+    public synchronized void add(int i, double x, double y, double z, double m) {
+        this.add(i, x, y, z);
+        if(this.storage.dimension == CoordinateDimension.XYM) {
+            this.storage.coordinates[3 * i + 2] = m;
+        }
+    }
+    
+    /**
+     * This function replaces all values of a vertice. The dimension is kept,
+     * i.e. the measure is only stored for XYM.
+     * @param i the zero-based index of the vertice
+     * @param x the new x-coordinate
+     * @param y the new y-coordinate
+     * @param z the new z-coordinate, which is ignored for XYM
+     * @param m the new measure, which is ignored without measures
+     */
+    public synchronized void set(int i, double x, double y, double z, double m) {
+        this.set(i, x, y, z);
+        if(this.storage.dimension == CoordinateDimension.XYM) {
+            this.storage.coordinates[3 * i + 2] = m;
+        }
+    }
+    
+    /**
+     * This function replaces the measure of a vertice.
+     * @param i the zero-based index of the vertice
+     * @param m the new measure
+     * @throws IllegalStateException if the coordinates have no measures
+     */
+    public synchronized void setM(int i, double m) {
+        if(this.storage.dimension != CoordinateDimension.XYM) {
+            throw new IllegalStateException("the coordinates have no measures");
+        }
+        this.decompress();
+        this.storage.coordinates[3 * i + 2] = m;
+        this.modifications++;
+    }
+    
+    /**
+     * This function removes a vertice.
+     * @param i the zero-based index of the vertice, that has to be deleted
+     */
+    public synchronized void remove(int i) {
+        if(i < 0 || i >= this.storage.size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.storage.size);
+        }
+        this.decompress();
+        Storage current = this.storage;
+        double[] values = current.coordinates;
+        System.arraycopy(values, current.stride * (i + 1),
+                         values, current.stride * i,
+                         current.stride * (current.size - i - 1));
+        this.storage = Storage.uncompressed(current.dimension, current.size - 1, values);
+        this.modifications++;
+    }
+    
+    /**
+     * This function returns the envelope of all vertices.
+     * @return a Rectangle2D-object, which is empty if there are no vertices
+     */
+    public Rectangle2D getEnvelope() {
+        Storage current = this.storage;
+        if(current.size == 0) {
+            return new Rectangle2D.Double();
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double[] values = this.coordinates(current);
+        for(int i = 0; i < current.stride * current.size; i += current.stride) {
+            minX = Math.min(minX, values[i]);
+            minY = Math.min(minY, values[i + 1]);
+            maxX = Math.max(maxX, values[i]);
+            maxY = Math.max(maxY, values[i + 1]);
+        }
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+    }
+    
+    /**
+     * This function calculates the length of the path through all vertices.
+     * Heights are considered for XYZ coordinates only.
+     * @param closed TRUE if the edge from the last vertice back to the first one should be added
+     * @return the length as double value
+     */
+    public double getLength(boolean closed) {
+        Storage current = this.storage;
+        double[] values = this.coordinates(current);
+        int size = current.size;
+        int count = closed && size > 2 ? size + 1 : size;
+        double length = 0.0;
+        if(current.dimension == CoordinateDimension.XYZ) {
+            for(int i = 1; i < count; i++) {
+                int next = 3 * (i % size);
+                int previous = 3 * (i - 1);
+                double deltaX = values[next] - values[previous];
+                double deltaY = values[next + 1] - values[previous + 1];
+                double deltaZ = values[next + 2] - values[previous + 2];
+                length += Math.sqrt((deltaX * deltaX) + (deltaY * deltaY) + (deltaZ * deltaZ));
+            }
+        } else {
+            for(int i = 1; i < count; i++) {
+                int next = current.stride * (i % size);
+                int previous = current.stride * (i - 1);
+                double deltaX = values[next] - values[previous];
+                double deltaY = values[next + 1] - values[previous + 1];
+                length += Math.sqrt((deltaX * deltaX) + (deltaY * deltaY));
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * This function calculates the area of the ring through all vertices
+     * with the shoelace formula in the plane.
+     * @return the area as positive double value
+     */
+    public double getArea() {
+        Storage current = this.storage;
+        double[] values = this.coordinates(current);
+        double area = 0.0;
+        for(int i = 0; i < current.size; i++) {
+            int vertice = current.stride * i;
+            int next = current.stride * ((i + 1) % current.size);
+            area += (values[vertice] + values[next]) * (values[vertice + 1] - values[next + 1]);
+        }
+        return Math.abs(0.5 * area);
+    }
+    
+    /**
+     * This function creates a path through all vertices in the plane.
+     * @param closed TRUE if the path should be closed
+     * @return a new Path2D-object
+     */
+    public Path2D toPath(boolean closed) {
+        Storage current = this.storage;
+        double[] values = this.coordinates(current);
+        Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, current.size + 1);
+        for(int i = 0; i < current.stride * current.size; i += current.stride) {
+            if(i > 0) {
+                path.lineTo(values[i], values[i + 1]);
+            } else {
+                path.moveTo(values[i], values[i + 1]);
+            }
+        }
+        if(closed && current.size > 0) {
+            path.closePath();
+        }
+        return path;
+    }
+    
+    /**
+     * This function compresses the coordinates. Every coordinate will be
+     * rounded to the nearest multiple of the resolution.
+     * @param originX the x-coordinate of the origin, e.g. the minimum x-coordinate of the layer
+     * @param originY the y-coordinate of the origin, e.g. the minimum y-coordinate of the layer
+     * @param resolution the distance between two representable coordinates, greater than zero
+     */
+    public synchronized void compress(double originX, double originY, double resolution) {
+        if(!(resolution > 0.0)) {
+            throw new IllegalArgumentException("the resolution must be greater than zero");
+        }
+        Storage current = this.storage;
+        double[] values = this.coordinates(current);
+        boolean withThirdValue = false;
+        for(int i = 0; current.stride == 3 && i < current.size && !withThirdValue; i++) {
+            withThirdValue = values[3 * i + 2] != 0.0;
+        }
+        if(current.dimension == CoordinateDimension.XYM && withThirdValue) {
+            //measures are no lengths and may be NaN, so they are not compressed
+            return;
+        }
+        
+        byte[] buffer = new byte[(withThirdValue ? 3 : 2) * 10 * current.size];
+        int length = 0;
+        long lastX = 0;
+        long lastY = 0;
+        long lastZ = 0;
+        for(int i = 0; i < current.size; i++) {
+            long x = Math.round((values[current.stride * i] - originX) / resolution);
+            long y = Math.round((values[current.stride * i + 1] - originY) / resolution);
+            length = writeVarLong(buffer, length, x - lastX);
+            length = writeVarLong(buffer, length, y - lastY);
+            lastX = x;
+            lastY = y;
+            if(withThirdValue) {
+                long z = Math.round(values[3 * i + 2] / resolution);
+                length = writeVarLong(buffer, length, z - lastZ);
+                lastZ = z;
+            }
+        }
+        
+        this.storage = Storage.compressed(current.dimension, current.size, Arrays.copyOf(buffer, length),
+                                          originX, originY, resolution, withThirdValue);
+    }
+    
+    /**
+     * This function replaces compressed or spilled coordinates by doubles
+     * on the heap again. The rounding of the compression is not reverted.
+     */
+    public synchronized void decompress() {
+        Storage current = this.storage;
+        int countOfValues = current.stride * current.size;
+        if(current.spill != null) {
+            double[] values = current.spill.read(current.spillIndex, new double[countOfValues], countOfValues);
+            this.storage = Storage.uncompressed(current.dimension, current.size, values);
+        } else if(current.encoded != null) {
+            this.storage = Storage.uncompressed(current.dimension, current.size,
+                                                this.decode(current, new double[countOfValues]));
+        }
+    }
+    
+    /**
+     * This function returns the information, wether the coordinates are compressed.
+     * @return TRUE if the coordinates are compressed, otherwise FALSE
+     */
+    public boolean isCompressed() {
+        return this.storage.encoded != null;
+    }
+    
+    /**
+     * This function returns the information, wether the coordinates are
+     * spilled into a temporary file.
+     * @return TRUE if the coordinates are spilled, otherwise FALSE
+     */
+    public boolean isSpilled() {
+        return this.storage.spill != null;
+    }
+    
+    /**
+     * This function returns the number of bytes used for the coordinates
+     * on the heap (without the overhead of the object itself).
+     * @return the size of the stored coordinates in bytes, zero for spilled coordinates
+     */
+    public int getStorageSize() {
+        Storage current = this.storage;
+        if(current.spill != null) {
+            return 0;
+        }
+        return current.encoded != null ? current.encoded.length : 8 * current.coordinates.length;
+    }
+    
+    /**
+     * This function returns the uncompressed coordinates, which can be spilled,
+     * e.g. by another thread. The coordinates are not copied, but they are
+     * not spilled, if they are modified before spilling.
+     * @return a SpillCandidate-object, or null if the coordinates are compressed or already spilled
+     */
+    synchronized SpillCandidate getSpillCandidate() {
+        Storage current = this.storage;
+        if(current.encoded != null || current.spill != null) {
+            return null;
+        }
+        return new SpillCandidate(this, current.coordinates, current.stride * current.size, this.modifications);
+    }
+    
+    /**
+     * This function replaces the coordinates on the heap by the spilled ones.
+     * Nothing is changed, if the coordinates were modified, compressed or
+     * spilled after the candidate was taken.
+     * @param candidate the SpillCandidate-object of these coordinates
+     * @param file the SpillFile-object containing the coordinates
+     * @param index the index of the first value within the file
+     * @return TRUE if the coordinates were replaced, otherwise FALSE
+     */
+    synchronized boolean spill(SpillCandidate candidate, SpillFile file, long index) {
+        Storage current = this.storage;
+        if(current.coordinates != candidate.values || this.modifications != candidate.modifications) {
+            return false;
+        }
+        this.storage = Storage.spilled(current.dimension, current.size, file, index);
+        return true;
+    }
+    
+    /**
+     * This function returns the coordinates as interleaved doubles.
+     * Compressed or spilled coordinates are decoded into the buffer of the
+     * current thread, unless the buffer already contains them.
+     * @param current the storage, which was read by the caller
+     * @return the array of coordinates, which must not be modified
+     */
+    private double[] coordinates(Storage current) {
+        if(current.encoded == null && current.spill == null) {
+            return current.coordinates;
+        }
+        DecodedCoordinates decoded = DECODED.get();
+        if(decoded.storage != current) {
+            int countOfValues = current.stride * current.size;
+            if(decoded.buffer.length < countOfValues) {
+                decoded.buffer = new double[Math.max(countOfValues, 2 * decoded.buffer.length)];
+            }
+            if(current.spill != null) {
+                current.spill.read(current.spillIndex, decoded.buffer, countOfValues);
+            } else {
+                this.decode(current, decoded.buffer);
+            }
+            decoded.storage = current;
+        }
+        return decoded.buffer;
+    }
+    
+    /**
+     * This function decodes compressed coordinates.
+     * @param compressed the storage with the compressed coordinates
+     * @param target the array for the interleaved coordinates
+     * @return the given array
+     */
+    private double[] decode(Storage compressed, double[] target) {
+        int[] position = {0};
+        long x = 0;
+        long y = 0;
+        long z = 0;
+        for(int i = 0; i < compressed.size; i++) {
+            x += readVarLong(compressed.encoded, position);
+            y += readVarLong(compressed.encoded, position);
+            target[compressed.stride * i] = compressed.originX + x * compressed.resolution;
+            target[compressed.stride * i + 1] = compressed.originY + y * compressed.resolution;
+            if(compressed.hasThirdValue) {
+                z += readVarLong(compressed.encoded, position);
+            }
+            if(compressed.stride == 3) {
+                target[3 * i + 2] = z * compressed.resolution;
+            }
+        }
+        return target;
+    }
+    
+    /**
+     * This function writes a signed value as zigzag-encoded variable-length integer,
+     * i.e. small absolute values need few bytes.
+     * @param buffer the target array
+     * @param position the index of the first byte
+     * @return the index after the last byte
+     */
+    private static int writeVarLong(byte[] buffer, int position, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while((zigzag & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        buffer[position++] = (byte) zigzag;
+        return position;
+    }
+    
+    /**
+     * This function reads a zigzag-encoded variable-length integer.
+     * @param buffer the source array
+     * @param position an array with the index of the first byte, which will be moved behind the value
+     * @return the signed value
+     */
+    private static long readVarLong(byte[] buffer, int[] position) {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[position[0]++];
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while(b < 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+    
+    /**
+     * This class holds the decoded coordinates of one geometry per thread.
+     */
+    private static final class DecodedCoordinates {
+        
+        private Storage storage;
+        private double[] buffer = new double[3 * 64];
+        
+    }
+    
+    /**
+     * This class is the storage of the coordinates: either uncompressed
+     * doubles, compressed bytes or a part of a spill file, together with the
+     * dimension and the number of vertices. A new object is created for every
+     * change of the storage or the number of vertices, i.e. a reader gets a
+     * consistent state by one volatile read. Only the array of uncompressed
+     * coordinates is modified in place by editing.
+     */
+    private static final class Storage {
+        
+        private final CoordinateDimension dimension;
+        private final int stride;
+        private final int size;
+        private final double[] coordinates;
+        private final byte[] encoded;
+        private final double originX;
+        private final double originY;
+        private final double resolution;
+        private final boolean hasThirdValue;
+        private final SpillFile spill;
+        private final long spillIndex;
+        
+        private Storage(CoordinateDimension dimension, int size, double[] coordinates, byte[] encoded,
+                        double originX, double originY, double resolution, boolean hasThirdValue,
+                        SpillFile spill, long spillIndex) {
+            this.dimension = dimension;
+            this.stride = dimension.getCountOfValues();
+            this.size = size;
+            this.coordinates = coordinates;
+            this.encoded = encoded;
+            this.originX = originX;
+            this.originY = originY;
+            this.resolution = resolution;
+            this.hasThirdValue = hasThirdValue;
+            this.spill = spill;
+            this.spillIndex = spillIndex;
+        }
+        
+        private static Storage uncompressed(CoordinateDimension dimension, int size, double[] coordinates) {
+            return new Storage(dimension, size, coordinates, null, 0.0, 0.0, 0.0, false, null, 0);
+        }
+        
+        private static Storage compressed(CoordinateDimension dimension, int size, byte[] encoded,
+                                          double originX, double originY, double resolution,
+                                          boolean hasThirdValue) {
+            return new Storage(dimension, size, null, encoded, originX, originY, resolution, hasThirdValue, null, 0);
+        }
+        
+        private static Storage spilled(CoordinateDimension dimension, int size, SpillFile spill, long spillIndex) {
+            return new Storage(dimension, size, null, null, 0.0, 0.0, 0.0, false, spill, spillIndex);
+        }
+        
+    }
+    
+    /**
+     * This class describes uncompressed coordinates, which are written into
+     * a spill file without holding the lock of the coordinates.
+     */
+    static final class SpillCandidate {
+        
+        private final PackedCoordinates owner;
+        private final double[] values;
+        private final int countOfValues;
+        private final int modifications;
+        
+        private SpillCandidate(PackedCoordinates owner, double[] values, int countOfValues, int modifications) {
+            this.owner = owner;
+            this.values = values;
+            this.countOfValues = countOfValues;
+            this.modifications = modifications;
+        }
+        
+        /**
+         * This function returns the array of the coordinates.
+         * @return the interleaved coordinates, the array may be longer than the used values
+         */
+        double[] getValues() {
+            return this.values;
+        }
+        
+        /**
+         * This function returns the number of used values.
+         * @return the number of doubles, which are used by the vertices
+         */
+        int getCountOfValues() {
+            return this.countOfValues;
+        }
+        
+        /**
+         * This function returns the number of bytes, which are released by spilling.
+         * @return the size of the array in bytes
+         */
+        int getStorageSize() {
+            return 8 * this.values.length;
+        }
+        
+        /**
+         * This function replaces the coordinates by the spilled ones.
+         * @param file the SpillFile-object containing the coordinates
+         * @param index the index of the first value within the file
+         * @return TRUE if the coordinates were replaced, FALSE if they were changed in the meantime
+         */
+        boolean spill(SpillFile file, long index) {
+            return this.owner.spill(this, file, index);
+        }
+        
+    }
+    
+}
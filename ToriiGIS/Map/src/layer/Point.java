@@ -17,10 +17,10 @@
 package layer;
 
 import java.awt.Color;
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
 
 /**
  * This class stores the information about one geometric Point.
@@ -57,24 +57,74 @@ public class Point extends Geometry {
     }
     
     /**
-     * This function paints the geometry to a JPanel.
+     * This function draws the geometry.
      * <br>Antialiasing is activated.
      * <br>The colour of the geometry is defined as
      * attributes of the parent class.
-     * @param g a Graphics-object for drawing the geometry
+     * <br>The point is drawn as circle around its position, whose radius
+     * is given in pixels.
+     * @param g2 a Graphics2D-object for drawing the geometry
+     * @param symbol the Symbol-object with the colour and the radius
      */
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
+    public void draw(Graphics2D g2, Symbol symbol) {
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.setColor(new Color(super.getRed(), super.getGreen(), super.getBlue(), super.getOpacity()));
-        super.graphicObject = new Ellipse2D.Double(this.x,
-                                                   this.y,
-                                                   this.radius,
-                                                   this.radius);
+        g2.setColor(symbol.getColour());
+        double pixelSize = getPixelSize(g2);
+        double radius = symbol.getRadius() * pixelSize;
+        g2.setStroke(symbol.getStroke(pixelSize));
+        super.graphicObject = new Ellipse2D.Double(this.x - radius,
+                                                   this.y - radius,
+                                                   2 * radius,
+                                                   2 * radius);
         g2.draw(super.graphicObject);
     }
+    
+    /**
+     * This function creates the own style of the point.
+     * @return a new Symbol-object with the colour and the radius of the point
+     */
+    @Override
+    protected Symbol createSymbol() {
+        return new Symbol(new Color(super.getRed(), super.getGreen(), super.getBlue(), super.getOpacity()),
+                          null, 1.0f, this.radius);
+    }
+
+    /**
+     * This function returns the envelope of the point.
+     * The envelope of a point has no extent.
+     * @return a Rectangle2D-object with width and height of zero
+     */
+    @Override
+    public Rectangle2D getEnvelope() {
+        return new Rectangle2D.Double(this.x, this.y, 0.0, 0.0);
+    }
+    
+    /**
+     * This function checks, wether the point lies within the tolerance
+     * around the given position.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @param tolerance the maximum distance in map units
+     * @return TRUE if the point is hit, otherwise FALSE
+     */
+    @Override
+    public boolean hits(double x, double y, double tolerance) {
+        double deltaX = x - this.x;
+        double deltaY = y - this.y;
+        return (deltaX * deltaX) + (deltaY * deltaY) <= tolerance * tolerance;
+    }
+    
+    /**
+     * This function calculates the distance between the point and the given position.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @return the distance in map units as double value
+     */
+    @Override
+    public double distance(double x, double y) {
+        return Math.hypot(x - this.x, y - this.y);
+    }
 
     /**
      * This functions returns the X-coordinate of the current point.
@@ -86,10 +136,15 @@ public class Point extends Geometry {
 
     /**
      * This function sets the X-coordinate of the current point.
+     * The observing layers will be informed about the moved envelope.
      * @param x the new x-coordinate as double value
      */
     public void setXCoord(double x) {
-        this.x = x;
+        if(this.x != x) {
+            Rectangle2D oldEnvelope = this.getEnvelope();
+            this.x = x;
+            super.fireGeometryChanged(oldEnvelope);
+        }
     }
 
     /**
@@ -102,10 +157,15 @@ public class Point extends Geometry {
 
     /**
      * This function sets the Y-coordinate of the current point.
+     * The observing layers will be informed about the moved envelope.
      * @param y the new y-coordinate as double value
      */
     public void setYCoord(double y) {
-        this.y = y;
+        if(this.y != y) {
+            Rectangle2D oldEnvelope = this.getEnvelope();
+            this.y = y;
+            super.fireGeometryChanged(oldEnvelope);
+        }
     }
 
     /**
@@ -127,7 +187,7 @@ public class Point extends Geometry {
     /**
      * This functions returns the radius of the current point.
      * The radius is necessary to define the size of the point in the map.
-     * @return the radius as double value
+     * @return the radius in pixels as double value
      */
     public double getRadius() {
         return radius;
@@ -136,10 +196,24 @@ public class Point extends Geometry {
     /**
      * This function sets the radius of the current point.
      * The radius is necessary to define the size of the point in the map.
-     * @param x the new radius as double value
+     * @param x the new radius in pixels as double value
      */
     public void setRadius(double radius) {
-        this.radius = radius;
+        if(this.radius != radius) {
+            double oldMargin = this.getDrawingMargin();
+            this.radius = radius;
+            super.fireStyleChanged(oldMargin);
+        }
+    }
+    
+    /**
+     * This function returns the radius and half of the outline, by which
+     * the drawn point exceeds its envelope.
+     * @return the margin in pixels
+     */
+    @Override
+    public double getDrawingMargin() {
+        return Math.abs(this.radius) + 0.5;
     }
 
     /**
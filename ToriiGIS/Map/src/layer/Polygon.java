@@ -16,12 +16,11 @@
  */
 package layer;
 
-import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 
 /**
@@ -30,16 +29,16 @@ import java.util.ArrayList;
  * The vertices have to be ordered, but the direction (clock-wise or not) is not important.
  * @author Christoph
  */
-public class Polygon extends Surface {
+public class Polygon extends Surface implements VertexSequence {
 
-    private ArrayList<Point> vertices;
+    private PackedCoordinates vertices;
     private float lineWidth;
 
     /**
      * The empty constructor of this class.
      */
     public Polygon() {
-        this.vertices = new ArrayList<>();
+        this.vertices = new PackedCoordinates();
         super.setRgb(0, 0, 0);
     }
 
@@ -50,21 +49,35 @@ public class Polygon extends Surface {
      * @param vertices an ArrayList of Point-objects with size >= 3
      */
     public Polygon(ArrayList<Point> vertices) {
+        this.vertices = new PackedCoordinates();
         if(vertices.size() >= 3) {
-            this.vertices = vertices;
-        } else {
-            this.vertices = new ArrayList<>();
+            vertices.forEach((vertice) -> {
+                this.vertices.add(vertice.getXCoord(), vertice.getYCoord(), vertice.getZCoord());
+            });
         }
         this.lineWidth = 2.0f;
         super.setRgb(0, 0, 0);
     }
     
+    /**
+     * The constructor of this class, which takes over already packed vertices
+     * (e.g. from an import) without creating Point-objects.
+     * <br>If the number of vertices is smaller than 3, an empty object
+     * will be created. The first vertice must not be repeated at the end.
+     * @param vertices a PackedCoordinates-object containing the vertices of the polygon
+     */
+    public Polygon(PackedCoordinates vertices) {
+        this.vertices = vertices.size() >= 3 ? vertices : new PackedCoordinates();
+        this.lineWidth = 2.0f;
+        super.setRgb(0, 0, 0);
+    }
+    
     /**
      * This function inserts a new vertice at the end of the current polygon.
      * @param p the new vertice as Point-object
      */
     public void addVertice(Point vertice) {
-        this.vertices.add(vertice);
+        this.vertices.add(vertice.getXCoord(), vertice.getYCoord(), vertice.getZCoord());
     }
     
     /**
@@ -72,14 +85,42 @@ public class Polygon extends Surface {
      * @param p the new vertice as Point-object
      * @param position the zero-based position for inserting
      */
+    @Override
     public void addVertice(Point vertice, int position) {
-        this.vertices.add(position, vertice);
+        this.vertices.add(position, vertice.getXCoord(), vertice.getYCoord(), vertice.getZCoord());
+    }
+    
+    /**
+     * This function adds a new vertice with all of its values at the given position.
+     * @param position the zero-based position for inserting
+     * @param x the x-coordinate of the new vertice
+     * @param y the y-coordinate of the new vertice
+     * @param z the z-coordinate of the new vertice, which is ignored for XYM
+     * @param m the measure of the new vertice, which is ignored without measures
+     */
+    @Override
+    public void addVertice(int position, double x, double y, double z, double m) {
+        this.vertices.add(position, x, y, z, m);
+    }
+    
+    /**
+     * This function replaces all values of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @param x the new x-coordinate
+     * @param y the new y-coordinate
+     * @param z the new z-coordinate, which is ignored for XYM
+     * @param m the new measure, which is ignored without measures
+     */
+    @Override
+    public void setVertice(int position, double x, double y, double z, double m) {
+        this.vertices.set(position, x, y, z, m);
     }
     
     /**
      * This function removes a vertice from the polygon at the given position.
      * @param position the zero-based index of the vertice, that has to be deleted
      */
+    @Override
     public void removeVertice(int position) {
         this.vertices.remove(position);
     }
@@ -88,10 +129,168 @@ public class Polygon extends Surface {
      * This function returns the number of vertices of the current line.
      * @return the number of vertices
      */
+    @Override
     public int getCountOfVertices() {
         return this.vertices.size();
     }
     
+    /**
+     * This function returns the vertice at the given position.
+     * The Point-object is created on demand, i.e. changing it does not change the polygon.
+     * @param position the zero-based index of the vertice
+     * @return the vertice as new Point-object
+     */
+    @Override
+    public Point getVertice(int position) {
+        return this.vertices.getPoint(position);
+    }
+    
+    /**
+     * This function returns the x-coordinate of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the x-coordinate as double value
+     */
+    @Override
+    public double getVerticeX(int position) {
+        return this.vertices.getX(position);
+    }
+    
+    /**
+     * This function returns the y-coordinate of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the y-coordinate as double value
+     */
+    @Override
+    public double getVerticeY(int position) {
+        return this.vertices.getY(position);
+    }
+    
+    /**
+     * This function returns the z-coordinate of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the z-coordinate as double value
+     */
+    @Override
+    public double getVerticeZ(int position) {
+        return this.vertices.getZ(position);
+    }
+    
+    /**
+     * This function returns the measure of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the measure as double value, NaN if the vertices have no measures
+     */
+    @Override
+    public double getVerticeM(int position) {
+        return this.vertices.getM(position);
+    }
+    
+    /**
+     * This function returns the dimension of the stored coordinates.
+     * @return XY, XYZ or XYM
+     */
+    @Override
+    public CoordinateDimension getDimension() {
+        return this.vertices.getDimension();
+    }
+    
+    /**
+     * This function passes the coordinates of all vertices to the given consumer.
+     * @param consumer the operation for every vertice
+     */
+    @Override
+    public void forEachVertex(VertexConsumer consumer) {
+        this.vertices.forEach(consumer);
+    }
+    
+    /**
+     * This function returns the storage of the vertices, e.g. for compressing them.
+     * @return the PackedCoordinates-object of the polygon
+     */
+    PackedCoordinates getPackedCoordinates() {
+        return this.vertices;
+    }
+    
+    /**
+     * This function returns the information, wether the polygon is closed.
+     * @return TRUE, because the boundary of a polygon is always closed
+     */
+    @Override
+    public boolean isClosed() {
+        return true;
+    }
+    
+    /**
+     * This function returns the envelope of the polygon.
+     * @return a Rectangle2D-object enclosing all vertices, or an empty
+     * rectangle if the polygon has no vertices
+     */
+    @Override
+    public Rectangle2D getEnvelope() {
+        return this.vertices.getEnvelope();
+    }
+    
+    /**
+     * This function checks, wether the given position lies inside the polygon
+     * or within the tolerance around its boundary.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @param tolerance the maximum distance in map units
+     * @return TRUE if the polygon is hit, otherwise FALSE
+     */
+    @Override
+    public boolean hits(double x, double y, double tolerance) {
+        if(this.vertices.size() < 3) {
+            return false;
+        }
+        if(this.createPath().contains(x, y)) {
+            return true;
+        }
+        for(int i = 0; i < this.vertices.size(); i++) {
+            int next = (i + 1) % this.vertices.size();
+            if(distanceToSegment(x, y,
+                                 this.vertices.getX(i), this.vertices.getY(i),
+                                 this.vertices.getX(next), this.vertices.getY(next)) <= tolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * This function calculates the distance between the boundary of the
+     * polygon and the given position.
+     * @param x the x-coordinate of the position in map units
+     * @param y the y-coordinate of the position in map units
+     * @return the distance in map units, zero if the position lies inside the polygon,
+     * or infinity if the polygon has no vertices
+     */
+    @Override
+    public double distance(double x, double y) {
+        if(this.vertices.size() >= 3 && this.createPath().contains(x, y)) {
+            return 0.0;
+        }
+        if(this.vertices.size() == 1) {
+            return Math.hypot(x - this.vertices.getX(0), y - this.vertices.getY(0));
+        }
+        double distance = Double.POSITIVE_INFINITY;
+        for(int i = 0; i < this.vertices.size(); i++) {
+            int next = (i + 1) % this.vertices.size();
+            distance = Math.min(distance, distanceToSegment(x, y,
+                                                            this.vertices.getX(i), this.vertices.getY(i),
+                                                            this.vertices.getX(next), this.vertices.getY(next)));
+        }
+        return distance;
+    }
+    
+    /**
+     * This function creates the closed boundary of the polygon from its vertices.
+     * @return a Path2D-object containing all vertices of the polygon
+     */
+    private Path2D createPath() {
+        return this.vertices.toPath(true);
+    }
+    
     /**
      * This function returns all the vertices of the polygon as a String-object.
      * @return a String containing the type of the geometry and the vertices with their coordinates
@@ -100,7 +299,7 @@ public class Polygon extends Surface {
     public String toString() {
         String polygonAsString = "Polygon{vertices=";
         for(int i = 0; i < vertices.size(); i++) {
-            polygonAsString += vertices.get(i).toString();
+            polygonAsString += vertices.getPoint(i).toString();
             if(i != (vertices.size() - 1)) {
                 polygonAsString += ", ";
             }
@@ -118,7 +317,7 @@ public class Polygon extends Surface {
      */
     @Override
     public double getArea() {
-        double area = this.calculateArea(0, 0.0);
+        double area = this.calculateArea();
         return area;
     }
     
@@ -136,78 +335,81 @@ public class Polygon extends Surface {
     }
     
     /**
-     * This function calculates the area of a polygon with a functional
-     * implementation of the Gauss's area formula/shoelace formula.
-     * The area between a vertice (given by its index) and the following vertice
-     * will be calculated. After this, the function is calling itself again
-     * to loop over the whole list of vertices.
-     * @param index an int-value for iterating over the ArrayList of vertices
-     * @param area variable where the result (and the temporary results) will be stored
-     * @return the area of the current and all previous parts of the polygon
+     * This function calculates the area of a polygon with the
+     * Gauss's area formula/shoelace formula.
+     * The area between every vertice and the following vertice (including the
+     * edge from the last vertice back to the first one) will be summed up.
+     * @return the area of the polygon
      */
-    protected double calculateArea(int index, double area) {
-        if((index + 1) < this.vertices.size()) {
-            Point pointA = this.vertices.get(index);
-            Point pointB = this.vertices.get((index + 1) % this.vertices.size());
-            area += (pointA.getXCoord()+ pointB.getXCoord()) * (pointA.getYCoord()- pointB.getYCoord());
-            area = this.calculateArea(index + 1, area);
-        }
-        return Math.abs(0.5 * area);
+    protected double calculateArea() {
+        return this.vertices.getArea();
     }
     
     /**
-     * This function calculates the perimeter of a polygon.
-     * With the vertices of the polygon a line will be created and
-     * the length of the line will be returned.
+     * This function calculates the perimeter of a polygon, i.e. the length
+     * of the closed boundary including the edge from the last vertice back
+     * to the first one.
      * @return the perimeter as double value
      */
     @Override
     protected double calculatePerimeter() {
-        Line circularRing = new Line(vertices);
-        return circularRing.getLength();
+        return this.vertices.getLength(true);
     }
     
     /**
-     * This function paints the geometry to a JPanel.
+     * This function draws the geometry.
+     * <br>Only the part of the polygon inside the clipping area of the Graphics2D-object
+     * will be handed over to Java2D.
      * <br>Antialiasing is activated.
      * <br>The colour of the geometry is defined as
      * attributes of the parent class.
      * <br>he joins of the boundary line are round.
      * <br>The filling of the polygon has a bigger value of opacity then the boundary line.
-     * @param g a Graphics-object for drawing the geometry
+     * @param g2 a Graphics2D-object for drawing the geometry
+     * @param symbol the Symbol-object with the colours and the line width
      */
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
+    public void draw(Graphics2D g2, Symbol symbol) {
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         
-        //create a polygon by defining its boundary
-        Path2D boundary = new Path2D.Double();
-        boolean isNotFirst = false;
-        for(Point vertice : this.vertices) {
-            if (isNotFirst) {
-                boundary.lineTo(vertice.getXCoord(), vertice.getYCoord());
-            } else {
-                boundary.moveTo(vertice.getXCoord(), vertice.getYCoord());
-            }
+        //create a polygon by defining its visible boundary
+        double pixelSize = getPixelSize(g2);
+        Rectangle2D clip = getClipArea(g2, symbol.getLineWidth() * pixelSize);
+        Rectangle2D envelope = this.getEnvelope();
+        if(clip == null || RTree.contains(clip, envelope)) {
+            super.graphicObject = this.createPath();
+        } else if(RTree.intersects(clip, envelope)) {
+            super.graphicObject = Clipper.clipPolygon(this, clip);
+        } else {
+            return;
         }
-        boundary.closePath();
-        super.graphicObject = boundary;
         
         //draw the boundary of the polygon
-        g2.setColor(new Color(super.getRed(), super.getGreen(), super.getBlue(), super.getOpacity()));
-        g2.setStroke(new BasicStroke(this.lineWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
+        g2.setColor(symbol.getColour());
+        g2.setStroke(symbol.getStroke(pixelSize));
         g2.draw(super.graphicObject);
         
         //draw the inner of the polygon
-        g2.setColor(new Color(super.getRed(), super.getGreen(), super.getBlue(), (int) 0.5 * super.getOpacity()));
-        g2.fill(super.graphicObject);
+        if(symbol.getFillColour() != null) {
+            g2.setColor(symbol.getFillColour());
+            g2.fill(super.graphicObject);
+        }
+    }
+    
+    /**
+     * This function creates the own style of the polygon.
+     * @return a new Symbol-object with the colour, the filling and the width of the boundary
+     */
+    @Override
+    protected Symbol createSymbol() {
+        return new Symbol(new Color(super.getRed(), super.getGreen(), super.getBlue(), super.getOpacity()),
+                          new Color(super.getRed(), super.getGreen(), super.getBlue(), (int) 0.5 * super.getOpacity()),
+                          this.lineWidth, 0.0);
     }
 
     /**
      * This function returns the width of the boundary line.
-     * @return the width as float value
+     * @return the width in pixels as float value
      */
     public float getLineWidth() {
         return lineWidth;
@@ -215,10 +417,24 @@ public class Polygon extends Surface {
 
     /**
      * This function sets the width of the current boundary line.
-     * @param lineWidth the new width of the boundary line as float value
+     * @param lineWidth the new width of the boundary line in pixels as float value
      */
     public void setLineWidth(float lineWidth) {
-        this.lineWidth = lineWidth;
+        if(this.lineWidth != lineWidth) {
+            double oldMargin = this.getDrawingMargin();
+            this.lineWidth = lineWidth;
+            super.fireStyleChanged(oldMargin);
+        }
+    }
+    
+    /**
+     * This function returns half of the line width, by which the drawn
+     * boundary exceeds the envelope.
+     * @return the margin in pixels
+     */
+    @Override
+    public double getDrawingMargin() {
+        return this.lineWidth / 2.0;
     }
     
 }
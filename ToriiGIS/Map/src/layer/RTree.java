@@ -0,0 +1,494 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * This class is a spatial index for objects with a rectangular envelope.
+ * <br>The tree can be filled at once with the Sort-Tile-Recursive algorithm (STR),
+ * which creates well packed nodes, or object by object with single inserts.
+ * A search only visits the nodes, whose bounds intersect the search area.
+ * A nearest neighbour search visits the nodes in the order of their distance
+ * to the query position (best-first) and stops, when enough objects are found.
+ * @author Christoph
+ * @param <T> the type of the indexed objects
+ */
+public class RTree<T> {
+
+    private static final int DEFAULT_NODE_CAPACITY = 16;
+
+    private final int nodeCapacity;
+    private Node<T> root;
+    private int size;
+
+    /**
+     * The empty constructor of this class.
+     * The tree is created with a default node capacity.
+     */
+    public RTree() {
+        this(DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * The constructor of this class.
+     * @param nodeCapacity the maximum number of entries of one node, at minimum 4
+     */
+    public RTree(int nodeCapacity) {
+        this.nodeCapacity = Math.max(4, nodeCapacity);
+        this.root = new Node<>(true);
+        this.size = 0;
+    }
+
+    /**
+     * This function replaces the whole content of the tree by the given objects.
+     * The tree will be build with the Sort-Tile-Recursive algorithm.
+     * @param envelopes a List of the envelopes of the objects
+     * @param items a List of the objects, in the same order as the envelopes
+     */
+    public void load(List<Rectangle2D> envelopes, List<T> items) {
+        ArrayList<Node<T>> level = new ArrayList<>();
+        ArrayList<Entry<T>> entries = new ArrayList<>(items.size());
+        for(int i = 0; i < items.size(); i++) {
+            entries.add(new Entry<>(envelopes.get(i), items.get(i)));
+        }
+
+        //pack the leaves
+        for(List<Entry<T>> slice : this.tile(entries, (e) -> e.bounds)) {
+            Node<T> leaf = new Node<>(true);
+            leaf.entries.addAll(slice);
+            leaf.updateBounds();
+            level.add(leaf);
+        }
+
+        //pack the upper levels until only one node remains
+        while(level.size() > 1) {
+            ArrayList<Node<T>> upperLevel = new ArrayList<>();
+            for(List<Node<T>> slice : this.tile(level, (n) -> n.bounds)) {
+                Node<T> node = new Node<>(false);
+                node.children.addAll(slice);
+                node.updateBounds();
+                upperLevel.add(node);
+            }
+            level = upperLevel;
+        }
+
+        this.root = level.isEmpty() ? new Node<>(true) : level.get(0);
+        this.size = entries.size();
+    }
+
+    /**
+     * This function sorts the given elements into groups of neighbouring elements.
+     * Each group has the size of the node capacity (except the last ones).
+     * @param elements the elements to group
+     * @param boundsOf a function returning the bounds of one element
+     * @return a List of groups
+     */
+    private <E> ArrayList<List<E>> tile(ArrayList<E> elements, Function<E, Rectangle2D> boundsOf) {
+        ArrayList<List<E>> groups = new ArrayList<>();
+        int countOfGroups = (int) Math.ceil(elements.size() / (double) this.nodeCapacity);
+        int countOfSlices = (int) Math.ceil(Math.sqrt(countOfGroups));
+        int sliceSize = countOfSlices * this.nodeCapacity;
+
+        elements.sort(Comparator.comparingDouble((e) -> boundsOf.apply(e).getCenterX()));
+        for(int i = 0; i < elements.size(); i += sliceSize) {
+            List<E> slice = new ArrayList<>(elements.subList(i, Math.min(i + sliceSize, elements.size())));
+            slice.sort(Comparator.comparingDouble((e) -> boundsOf.apply(e).getCenterY()));
+            for(int j = 0; j < slice.size(); j += this.nodeCapacity) {
+                groups.add(slice.subList(j, Math.min(j + this.nodeCapacity, slice.size())));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * This function inserts a new object into the tree.
+     * @param envelope the envelope of the object
+     * @param item the object, that has to be inserted
+     */
+    public void insert(Rectangle2D envelope, T item) {
+        Node<T> sibling = this.insert(this.root, new Entry<>(envelope, item));
+        if(sibling != null) {
+            Node<T> newRoot = new Node<>(false);
+            newRoot.children.add(this.root);
+            newRoot.children.add(sibling);
+            newRoot.updateBounds();
+            this.root = newRoot;
+        }
+        this.size++;
+    }
+
+    /**
+     * This function inserts an entry into the subtree of the given node.
+     * The child with the least enlargement will be chosen on every level.
+     * @param node the root of the subtree
+     * @param entry the new entry
+     * @return the new sibling of the node, if the node was split, otherwise null
+     */
+    private Node<T> insert(Node<T> node, Entry<T> entry) {
+        if(node.leaf) {
+            node.entries.add(entry);
+            node.addBounds(entry.bounds);
+            return node.entries.size() > this.nodeCapacity ? this.split(node) : null;
+        }
+
+        Node<T> bestChild = null;
+        double bestEnlargement = Double.MAX_VALUE;
+        double bestArea = Double.MAX_VALUE;
+        for(Node<T> child : node.children) {
+            double area = area(child.bounds);
+            double enlargement = area(child.bounds.createUnion(entry.bounds)) - area;
+            if(enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                bestChild = child;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+
+        Node<T> sibling = this.insert(bestChild, entry);
+        node.addBounds(entry.bounds);
+        if(sibling != null) {
+            node.children.add(sibling);
+            if(node.children.size() > this.nodeCapacity) {
+                return this.split(node);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This function splits an overflowing node into two nodes.
+     * The content will be sorted along the axis with the greater extent
+     * and divided in the middle.
+     * @param node the overflowing node, which keeps the first half
+     * @return the new node containing the second half
+     */
+    private Node<T> split(Node<T> node) {
+        boolean alongX = node.bounds.getWidth() >= node.bounds.getHeight();
+        Node<T> sibling = new Node<>(node.leaf);
+        if(node.leaf) {
+            node.entries.sort(Comparator.comparingDouble((e) -> alongX ? e.bounds.getCenterX() : e.bounds.getCenterY()));
+            List<Entry<T>> secondHalf = node.entries.subList(node.entries.size() / 2, node.entries.size());
+            sibling.entries.addAll(secondHalf);
+            secondHalf.clear();
+        } else {
+            node.children.sort(Comparator.comparingDouble((n) -> alongX ? n.bounds.getCenterX() : n.bounds.getCenterY()));
+            List<Node<T>> secondHalf = node.children.subList(node.children.size() / 2, node.children.size());
+            sibling.children.addAll(secondHalf);
+            secondHalf.clear();
+        }
+        node.updateBounds();
+        sibling.updateBounds();
+        return sibling;
+    }
+
+    /**
+     * This function removes an object from the tree.
+     * <br>Nodes are not merged after removing, i.e. the tree should be
+     * rebuild with the function <code>load</code> after a large number of removals.
+     * @param envelope the envelope of the object when it was inserted
+     * @param item the object, that has to be removed
+     * @return TRUE if the object was found and removed, otherwise FALSE
+     */
+    public boolean remove(Rectangle2D envelope, T item) {
+        if(this.remove(this.root, envelope, item)) {
+            this.size--;
+            if(!this.root.leaf && this.root.children.size() == 1) {
+                this.root = this.root.children.get(0);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * This function removes an object from the subtree of the given node.
+     * @param node the root of the subtree
+     * @param envelope the envelope of the object
+     * @param item the object to remove
+     * @return TRUE if the object was removed, otherwise FALSE
+     */
+    private boolean remove(Node<T> node, Rectangle2D envelope, T item) {
+        if(node.bounds == null || !contains(node.bounds, envelope)) {
+            return false;
+        }
+        if(node.leaf) {
+            for(int i = 0; i < node.entries.size(); i++) {
+                if(node.entries.get(i).item.equals(item)) {
+                    node.entries.remove(i);
+                    node.updateBounds();
+                    return true;
+                }
+            }
+            return false;
+        }
+        for(int i = 0; i < node.children.size(); i++) {
+            Node<T> child = node.children.get(i);
+            if(this.remove(child, envelope, item)) {
+                if(child.isEmpty()) {
+                    node.children.remove(i);
+                }
+                node.updateBounds();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This function returns all objects, whose envelopes intersect the given area.
+     * @param area the search area
+     * @return an ArrayList of all objects found
+     */
+    public ArrayList<T> search(Rectangle2D area) {
+        ArrayList<T> result = new ArrayList<>();
+        this.search(this.root, area, result);
+        return result;
+    }
+
+    /**
+     * This function collects all objects of the subtree of the given node,
+     * whose envelopes intersect the given area.
+     * @param node the root of the subtree
+     * @param area the search area
+     * @param result the ArrayList, where the objects found will be stored
+     */
+    private void search(Node<T> node, Rectangle2D area, ArrayList<T> result) {
+        if(node.bounds == null || !intersects(node.bounds, area)) {
+            return;
+        }
+        if(node.leaf) {
+            for(Entry<T> entry : node.entries) {
+                if(intersects(entry.bounds, area)) {
+                    result.add(entry.item);
+                }
+            }
+        } else {
+            for(Node<T> child : node.children) {
+                this.search(child, area, result);
+            }
+        }
+    }
+
+    /**
+     * This function returns the k objects nearest to the given position.
+     * <br>Nodes and entries are visited in the order of the distance between
+     * their bounds and the position. The exact distance of an object is only
+     * calculated, when its envelope is the nearest element left, i.e. far away
+     * objects are never measured.
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @param k the maximum number of objects
+     * @param maxDistance the maximum distance of the objects, may be infinite
+     * @param distance a function, which calculates the exact distance between the position
+     * and an object. It must not be smaller than the distance to the envelope of the object.
+     * @return an ArrayList of at most k objects ordered by their distance
+     */
+    public ArrayList<T> nearest(double x, double y, int k, double maxDistance, ToDoubleFunction<? super T> distance) {
+        ArrayList<T> result = new ArrayList<>(Math.max(0, Math.min(k, this.size)));
+        if(k <= 0 || this.root.bounds == null) {
+            return result;
+        }
+        PriorityQueue<Candidate<T>> queue = new PriorityQueue<>();
+        queue.add(new Candidate<>(distance(this.root.bounds, x, y), this.root, null, false));
+        while(!queue.isEmpty() && result.size() < k) {
+            Candidate<T> candidate = queue.poll();
+            if(candidate.distance > maxDistance) {
+                break;
+            }
+            if(candidate.exact) {
+                result.add(candidate.entry.item);
+            } else if(candidate.entry != null) {
+                queue.add(new Candidate<>(distance.applyAsDouble(candidate.entry.item), null, candidate.entry, true));
+            } else if(candidate.node.leaf) {
+                for(Entry<T> entry : candidate.node.entries) {
+                    queue.add(new Candidate<>(distance(entry.bounds, x, y), null, entry, false));
+                }
+            } else {
+                for(Node<T> child : candidate.node.children) {
+                    if(child.bounds != null) {
+                        queue.add(new Candidate<>(distance(child.bounds, x, y), child, null, false));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This function returns the distance between a position and a rectangle.
+     * @param r the rectangle
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return the distance, zero if the position lies inside the rectangle
+     */
+    static double distance(Rectangle2D r, double x, double y) {
+        double deltaX = Math.max(0.0, Math.max(r.getMinX() - x, x - r.getMaxX()));
+        double deltaY = Math.max(0.0, Math.max(r.getMinY() - y, y - r.getMaxY()));
+        return Math.sqrt((deltaX * deltaX) + (deltaY * deltaY));
+    }
+
+    /**
+     * This function removes all objects from the tree.
+     */
+    public void clear() {
+        this.root = new Node<>(true);
+        this.size = 0;
+    }
+
+    /**
+     * This function returns the number of objects in the tree.
+     * @return the number of indexed objects
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * This function returns the bounds of all objects in the tree.
+     * @return a Rectangle2D-object or null, if the tree is empty
+     */
+    public Rectangle2D getBounds() {
+        return this.root.bounds;
+    }
+
+    /**
+     * This function checks, wether two rectangles intersect each other.
+     * In contrast to <code>Rectangle2D.intersects</code>, touching rectangles
+     * and rectangles without extent (e.g. the envelope of a point) are considered.
+     * @param a the first rectangle
+     * @param b the second rectangle
+     * @return TRUE if the rectangles intersect or touch each other, otherwise FALSE
+     */
+    static boolean intersects(Rectangle2D a, Rectangle2D b) {
+        return a.getMinX() <= b.getMaxX() && b.getMinX() <= a.getMaxX()
+            && a.getMinY() <= b.getMaxY() && b.getMinY() <= a.getMaxY();
+    }
+
+    /**
+     * This function checks, wether the first rectangle contains the second one.
+     * @param a the outer rectangle
+     * @param b the inner rectangle
+     * @return TRUE if the inner rectangle lies completely in the outer one, otherwise FALSE
+     */
+    static boolean contains(Rectangle2D a, Rectangle2D b) {
+        return a.getMinX() <= b.getMinX() && b.getMaxX() <= a.getMaxX()
+            && a.getMinY() <= b.getMinY() && b.getMaxY() <= a.getMaxY();
+    }
+
+    /**
+     * This function returns the area of a rectangle.
+     * @param r the rectangle
+     * @return the area as double value
+     */
+    private static double area(Rectangle2D r) {
+        return r.getWidth() * r.getHeight();
+    }
+
+    /**
+     * This class represents one indexed object and its envelope.
+     * @param <T> the type of the indexed object
+     */
+    static final class Entry<T> {
+
+        final Rectangle2D bounds;
+        final T item;
+
+        Entry(Rectangle2D bounds, T item) {
+            this.bounds = bounds;
+            this.item = item;
+        }
+
+    }
+
+    /**
+     * This class represents a node or an entry in the queue of a nearest
+     * neighbour search. Entries are queued twice: first with the distance to
+     * their envelope, then with their exact distance.
+     * @param <T> the type of the indexed objects
+     */
+    static final class Candidate<T> implements Comparable<Candidate<T>> {
+
+        final double distance;
+        final Node<T> node;
+        final Entry<T> entry;
+        final boolean exact;
+
+        Candidate(double distance, Node<T> node, Entry<T> entry, boolean exact) {
+            this.distance = distance;
+            this.node = node;
+            this.entry = entry;
+            this.exact = exact;
+        }
+
+        @Override
+        public int compareTo(Candidate<T> other) {
+            int order = Double.compare(this.distance, other.distance);
+            //exact distances first, so that ties do not expand further nodes
+            return order != 0 ? order : Boolean.compare(other.exact, this.exact);
+        }
+
+    }
+
+    /**
+     * This class represents one node of the tree.
+     * A leaf node contains entries, all other nodes contain child nodes.
+     * @param <T> the type of the indexed objects
+     */
+    static final class Node<T> {
+
+        final boolean leaf;
+        final ArrayList<Entry<T>> entries;
+        final ArrayList<Node<T>> children;
+        Rectangle2D.Double bounds;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+            this.entries = leaf ? new ArrayList<>() : null;
+            this.children = leaf ? null : new ArrayList<>();
+        }
+
+        boolean isEmpty() {
+            return this.leaf ? this.entries.isEmpty() : this.children.isEmpty();
+        }
+
+        void addBounds(Rectangle2D r) {
+            if(this.bounds == null) {
+                this.bounds = new Rectangle2D.Double(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+            } else {
+                this.bounds.add(r);
+            }
+        }
+
+        void updateBounds() {
+            this.bounds = null;
+            if(this.leaf) {
+                this.entries.forEach((entry) -> this.addBounds(entry.bounds));
+            } else {
+                this.children.forEach((child) -> this.addBounds(child.bounds));
+            }
+        }
+
+    }
+
+}
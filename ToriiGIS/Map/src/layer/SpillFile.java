@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * This class stores coordinates outside of the heap in a temporary file,
+ * which is mapped into memory for reading.
+ * <br>The file is deleted, when it is closed after mapping it, i.e. it
+ * occupies disk space only as long as its mapping is referenced by
+ * coordinates. The operating system loads the pages on access and may
+ * drop them again under memory pressure. A MappedByteBuffer cannot exceed
+ * 2 GB, so the file consists of segments of 1 GB and no array of
+ * coordinates crosses the border of a segment.
+ * <br>The values can be read by several threads at the same time.
+ * @author Christoph
+ */
+final class SpillFile {
+    
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_LENGTH = 1L << SEGMENT_SHIFT;
+    private static final int BUFFER_SIZE = 1 << 20;
+    
+    private final DoubleBuffer[] segments;
+
+    private SpillFile(DoubleBuffer[] segments) {
+        this.segments = segments;
+    }
+    
+    /**
+     * This function writes arrays of coordinates into a new temporary file.
+     * Arrays longer than a segment are not written.
+     * @param directory the directory of the temporary file
+     * @param arrays the arrays of coordinates
+     * @param lengths the number of values to write of every array
+     * @param indices the array, which receives the index of the first value
+     * of every array within the file, or -1 if the array was not written
+     * @return the new SpillFile-object
+     * @throws IOException if the file cannot be written or mapped
+     */
+    static SpillFile write(Path directory, List<double[]> arrays, int[] lengths, long[] indices) throws IOException {
+        Path file = Files.createTempFile(directory, "toriigis-", ".spill");
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                                   StandardOpenOption.DELETE_ON_CLOSE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+            long index = 0;
+            for(int k = 0; k < arrays.size(); k++) {
+                int length = lengths[k];
+                if(length > SEGMENT_LENGTH) {
+                    indices[k] = -1;
+                    continue;
+                }
+                if((index & (SEGMENT_LENGTH - 1)) + length > SEGMENT_LENGTH) {
+                    //continue at the beginning of the next segment
+                    writeBuffer(channel, buffer, index);
+                    index = ((index >>> SEGMENT_SHIFT) + 1) << SEGMENT_SHIFT;
+                }
+                indices[k] = index;
+                double[] values = arrays.get(k);
+                for(int i = 0; i < length; i++) {
+                    if(!buffer.hasRemaining()) {
+                        writeBuffer(channel, buffer, index + i);
+                    }
+                    buffer.putDouble(values[i]);
+                }
+                index += length;
+            }
+            writeBuffer(channel, buffer, index);
+            
+            int countOfSegments = (int) ((index + SEGMENT_LENGTH - 1) >>> SEGMENT_SHIFT);
+            DoubleBuffer[] segments = new DoubleBuffer[countOfSegments];
+            for(int s = 0; s < countOfSegments; s++) {
+                long start = (long) s << SEGMENT_SHIFT;
+                long length = Math.min(index - start, SEGMENT_LENGTH);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, 8 * start, 8 * length)
+                                     .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            }
+            return new SpillFile(segments);
+        }
+    }
+    
+    /**
+     * This function writes the content of the buffer into the file, so that
+     * the end of the written bytes corresponds to the given index.
+     */
+    private static void writeBuffer(FileChannel channel, ByteBuffer buffer, long endIndex) throws IOException {
+        buffer.flip();
+        long position = 8 * endIndex - buffer.remaining();
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * This function returns one value.
+     * @param index the index of the value within the file
+     * @return the value as double
+     */
+    double get(long index) {
+        return this.segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & (SEGMENT_LENGTH - 1)));
+    }
+    
+    /**
+     * This function copies successive values into an array.
+     * @param index the index of the first value within the file
+     * @param target the array for the values
+     * @param length the number of values
+     * @return the given array
+     */
+    double[] read(long index, double[] target, int length) {
+        DoubleBuffer segment = this.segments[(int) (index >>> SEGMENT_SHIFT)];
+        int start = (int) (index & (SEGMENT_LENGTH - 1));
+        for(int i = 0; i < length; i++) {
+            target[i] = segment.get(start + i);
+        }
+        return target;
+    }
+    
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.util.Objects;
+
+/**
+ * This class describes how a geometry is drawn, i.e. the colour of its
+ * lines, the colour of the filling of surfaces, the line width and the
+ * radius of points. Line widths and radii are given in pixels, i.e. they do
+ * not change with the scale of the map.
+ * <br>Objects of this class are immutable and can be shared by any number
+ * of geometries, e.g. by all features of one category of a thematic map.
+ * @author Christoph
+ */
+public final class Symbol {
+    
+    private final Color colour;
+    private final Color fillColour;
+    private final float lineWidth;
+    private final double radius;
+    private final BasicStroke stroke;
+    private volatile ScaledStroke scaledStroke = null;
+
+    /**
+     * The constructor of this class.
+     * @param colour the colour of lines, boundaries and points
+     * @param fillColour the colour of the filling of polygons or null for no filling
+     * @param lineWidth the width of lines and boundaries in pixels
+     * @param radius the radius of points in pixels
+     */
+    public Symbol(Color colour, Color fillColour, float lineWidth, double radius) {
+        this.colour = Objects.requireNonNull(colour);
+        this.fillColour = fillColour;
+        this.lineWidth = lineWidth;
+        this.radius = radius;
+        this.stroke = new BasicStroke(lineWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND);
+    }
+    
+    /**
+     * The constructor of this class for a symbol, whose filling has half of the
+     * opacity of the colour. Points get a radius of 2 pixels.
+     * @param colour the colour of lines, boundaries and points
+     * @param lineWidth the width of lines and boundaries in pixels
+     */
+    public Symbol(Color colour, float lineWidth) {
+        this(colour, new Color(colour.getRed(), colour.getGreen(), colour.getBlue(), colour.getAlpha() / 2),
+             lineWidth, 2.0);
+    }
+    
+    /**
+     * This function returns the colour of lines, boundaries and points.
+     * @return a Color-object
+     */
+    public Color getColour() {
+        return this.colour;
+    }
+    
+    /**
+     * This function returns the colour of the filling of polygons.
+     * @return a Color-object or null, if polygons are not filled
+     */
+    public Color getFillColour() {
+        return this.fillColour;
+    }
+    
+    /**
+     * This function returns the width of lines and boundaries.
+     * @return the width in pixels
+     */
+    public float getLineWidth() {
+        return this.lineWidth;
+    }
+    
+    /**
+     * This function returns the radius of points.
+     * @return the radius in pixels
+     */
+    public double getRadius() {
+        return this.radius;
+    }
+    
+    /**
+     * This function returns the stroke for drawing lines with the line width
+     * of this symbol without transformation, i.e. in pixels. The stroke is
+     * created only once.
+     * @return a BasicStroke-object with flat ends and round joins
+     */
+    public BasicStroke getStroke() {
+        return this.stroke;
+    }
+    
+    /**
+     * This function returns the stroke for drawing lines in map units, i.e.
+     * with the map transformation. The line width is converted into map
+     * units, so the lines keep their width in pixels at every scale. The
+     * stroke of the last pixel size is kept for the next call.
+     * @param pixelSize the size of one pixel in map units
+     * @return a BasicStroke-object with flat ends and round joins
+     */
+    public BasicStroke getStroke(double pixelSize) {
+        ScaledStroke scaled = this.scaledStroke;
+        if(scaled == null || scaled.pixelSize != pixelSize) {
+            scaled = new ScaledStroke(pixelSize, new BasicStroke((float) (this.lineWidth * pixelSize),
+                                                                 BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
+            this.scaledStroke = scaled;
+        }
+        return scaled.stroke;
+    }
+    
+    /**
+     * This class is a stroke in map units together with the pixel size,
+     * for which it was created.
+     */
+    private static final class ScaledStroke {
+        
+        private final double pixelSize;
+        private final BasicStroke stroke;
+        
+        private ScaledStroke(double pixelSize, BasicStroke stroke) {
+            this.pixelSize = pixelSize;
+            this.stroke = stroke;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+import java.awt.geom.Rectangle2D;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a spatio-temporal index of the geometries of a layer.
+ * <br>Every geometry has a time interval. The time range of the layer is
+ * divided into slices of equal length, and every slice has its own
+ * R-tree with the geometries, whose intervals overlap the slice. A query
+ * searches only the R-trees of the slices within the time window, i.e. a
+ * short window of an animation reads only a small part of the layer.
+ * Geometries, whose intervals span many slices, are stored once in an
+ * additional R-tree instead of being copied into every slice.
+ * <br>The index is immutable, the layer builds a new one after modifications.
+ * @author Christoph
+ */
+public class TimeIndex {
+    
+    private static final int ENTRIES_PER_SLICE = 256;
+    private static final int MAX_SLICES = 1024;
+    private static final int MAX_SPAN = 8;
+    
+    private final ArrayList<RTree<Entry>> slices = new ArrayList<>();
+    private final RTree<Entry> longEntries = new RTree<>();
+    private final double startTime;
+    private final double endTime;
+    private final double sliceLength;
+    private final int countOfSlices;
+    private final int size;
+
+    /**
+     * The constructor of this class. Geometries without a valid start time
+     * are not indexed. A missing end time (NaN) makes the interval an instant.
+     * @param geometries the geometries of the layer
+     * @param starts the start time of every geometry
+     * @param ends the end time of every geometry
+     */
+    public TimeIndex(List<Geometry> geometries, double[] starts, double[] ends) {
+        ArrayList<Entry> entries = new ArrayList<>(geometries.size());
+        double minTime = Double.POSITIVE_INFINITY;
+        double maxTime = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < geometries.size(); i++) {
+            double start = starts[i];
+            double end = Double.isNaN(ends[i]) ? start : ends[i];
+            if(!Double.isFinite(start) || !Double.isFinite(end) || end < start) {
+                continue;
+            }
+            entries.add(new Entry(geometries.get(i), start, end));
+            minTime = Math.min(minTime, start);
+            maxTime = Math.max(maxTime, end);
+        }
+        this.size = entries.size();
+        if(entries.isEmpty()) {
+            this.startTime = Double.NaN;
+            this.endTime = Double.NaN;
+            this.sliceLength = 1.0;
+            this.countOfSlices = 0;
+            return;
+        }
+        this.startTime = minTime;
+        this.endTime = maxTime;
+        this.countOfSlices = maxTime > minTime
+                ? Math.max(1, Math.min(MAX_SLICES, entries.size() / ENTRIES_PER_SLICE))
+                : 1;
+        this.sliceLength = maxTime > minTime ? (maxTime - minTime) / this.countOfSlices : 1.0;
+        
+        ArrayList<ArrayList<Entry>> sliceEntries = new ArrayList<>(this.countOfSlices);
+        for(int s = 0; s < this.countOfSlices; s++) {
+            sliceEntries.add(new ArrayList<>());
+        }
+        ArrayList<Entry> spanning = new ArrayList<>();
+        for(Entry entry : entries) {
+            entry.firstSlice = this.sliceOf(entry.start);
+            int lastSlice = this.sliceOf(entry.end);
+            if(lastSlice - entry.firstSlice >= MAX_SPAN) {
+                spanning.add(entry);
+                continue;
+            }
+            for(int s = entry.firstSlice; s <= lastSlice; s++) {
+                sliceEntries.get(s).add(entry);
+            }
+        }
+        sliceEntries.forEach((slice) -> {
+            this.slices.add(load(slice));
+        });
+        this.longEntries.load(envelopesOf(spanning), spanning);
+    }
+    
+    /**
+     * This function creates the R-tree of a slice.
+     * @param entries the entries of the slice
+     * @return the new RTree-object
+     */
+    private static RTree<Entry> load(ArrayList<Entry> entries) {
+        RTree<Entry> tree = new RTree<>();
+        tree.load(envelopesOf(entries), entries);
+        return tree;
+    }
+    
+    /**
+     * This function returns the envelopes of the geometries of the entries.
+     * @param entries a List of entries
+     * @return an ArrayList of Rectangle2D-objects in the same order
+     */
+    private static ArrayList<Rectangle2D> envelopesOf(List<Entry> entries) {
+        ArrayList<Rectangle2D> envelopes = new ArrayList<>(entries.size());
+        entries.forEach((entry) -> {
+            envelopes.add(entry.envelope);
+        });
+        return envelopes;
+    }
+    
+    /**
+     * This function returns the slice of a point in time.
+     * @param time a time within the range of the index
+     * @return the zero-based index of the slice
+     */
+    private int sliceOf(double time) {
+        int slice = (int) ((time - this.startTime) / this.sliceLength);
+        return Math.max(0, Math.min(this.countOfSlices - 1, slice));
+    }
+    
+    /**
+     * This function returns all geometries, whose envelopes intersect the
+     * given area and whose time intervals overlap the given time window.
+     * The bounds of the intervals and of the window are inclusive.
+     * @param area the search area in map units
+     * @param start the start of the time window
+     * @param end the end of the time window
+     * @return an ArrayList of candidate geometries, every geometry is contained once
+     */
+    public ArrayList<Geometry> search(Rectangle2D area, double start, double end) {
+        ArrayList<Geometry> result = new ArrayList<>();
+        if(this.size == 0 || end < this.startTime || start > this.endTime || end < start) {
+            return result;
+        }
+        int firstSlice = this.sliceOf(Math.max(start, this.startTime));
+        int lastSlice = this.sliceOf(Math.min(end, this.endTime));
+        for(int s = firstSlice; s <= lastSlice; s++) {
+            for(Entry entry : this.slices.get(s).search(area)) {
+                //an entry in several slices is reported by the first searched one
+                if(entry.start <= end && entry.end >= start && Math.max(entry.firstSlice, firstSlice) == s) {
+                    result.add(entry.geom);
+                }
+            }
+        }
+        for(Entry entry : this.longEntries.search(area)) {
+            if(entry.start <= end && entry.end >= start) {
+                result.add(entry.geom);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * This function returns the earliest start time of the indexed geometries.
+     * @return the start time or NaN, if the index is empty
+     */
+    public double getStartTime() {
+        return this.startTime;
+    }
+    
+    /**
+     * This function returns the latest end time of the indexed geometries.
+     * @return the end time or NaN, if the index is empty
+     */
+    public double getEndTime() {
+        return this.endTime;
+    }
+    
+    /**
+     * This function returns the number of indexed geometries.
+     * @return the number of geometries with a valid time interval
+     */
+    public int size() {
+        return this.size;
+    }
+    
+    /**
+     * This function converts an attribute value into a point in time.
+     * <br>Numbers are taken as milliseconds since 1970-01-01T00:00:00Z.
+     * Dates and times are parsed in the formats of ISO 8601, e.g.
+     * 2017-03-15, 2017-03-15T10:15:30, 2017-03-15 10:15:30 or
+     * 2017-03-15T10:15:30+01:00, and dates of dBASE-files like 20170315.
+     * Numbers of eight digits are taken as such dates, if they are valid.
+     * Times without offset are taken as UTC.
+     * @param value the attribute value
+     * @return the milliseconds since 1970-01-01T00:00:00Z, NaN if the value is no time
+     */
+    public static double parseTime(String value) {
+        if(value == null) {
+            return Double.NaN;
+        }
+        String text = value.trim();
+        if(text.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            if(text.length() == 8 && text.chars().allMatch(Character::isDigit)) {
+                try {
+                    return LocalDate.parse(text, DateTimeFormatter.BASIC_ISO_DATE)
+                            .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+                } catch (DateTimeParseException ex) {
+                    return Double.parseDouble(text);
+                }
+            }
+            if(text.indexOf(':') < 0 && text.lastIndexOf('-') <= 0) {
+                return Double.parseDouble(text);
+            }
+            if(text.length() > 10 && text.charAt(10) == ' ') {
+                text = text.substring(0, 10) + 'T' + text.substring(11);
+            }
+            if(text.length() <= 10) {
+                return LocalDate.parse(text).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            try {
+                return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ex) {
+                return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC).toEpochMilli();
+            }
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            return Double.NaN;
+        }
+    }
+    
+    /**
+     * This class is a geometry with its time interval.
+     */
+    private static class Entry {
+        
+        private final Geometry geom;
+        private final Rectangle2D envelope;
+        private final double start;
+        private final double end;
+        private int firstSlice;
+        
+        private Entry(Geometry geom, double start, double end) {
+            this.geom = geom;
+            this.envelope = geom.getEnvelope();
+            this.start = start;
+            this.end = end;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+/**
+ * This interface describes an operation, which accepts the coordinates of
+ * one vertice as primitive values, i.e. without creating Point-objects.
+ * @author Christoph
+ */
+@FunctionalInterface
+public interface VertexConsumer {
+    
+    /**
+     * This function is called for every vertice of a geometry.
+     * @param x the x-coordinate of the vertice
+     * @param y the y-coordinate of the vertice
+     * @param z the z-coordinate of the vertice, zero if the geometry has no heights
+     */
+    public void accept(double x, double y, double z);
+    
+}
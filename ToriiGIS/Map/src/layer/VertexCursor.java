@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+/**
+ * This class is a reusable view on the vertices of a geometry, e.g. for
+ * scanning all geometries of a layer without creating a Point-object per
+ * vertice. The cursor is positioned before the first vertice by reset() and
+ * moved by next():
+ * <pre>
+ * VertexCursor cursor = new VertexCursor();
+ * for(Geometry geom : geometries) {
+ *     cursor.reset((VertexSequence) geom);
+ *     while(cursor.next()) {
+ *         ... cursor.getX(), cursor.getY() ...
+ *     }
+ * }
+ * </pre>
+ * Compressed coordinates are decoded step by step, i.e. several cursors can
+ * be used at the same time. The geometry must not be modified while it is
+ * iterated. A cursor must not be shared between threads.
+ * @author Christoph
+ */
+public final class VertexCursor {
+    
+    private VertexSequence sequence;
+    private PackedCoordinates packed;
+    private int countOfVertices;
+    private int count;
+    private int index;
+    private double firstX;
+    private double firstY;
+    private double firstZ;
+    private double firstM;
+    
+    //the state of the cursor, which is updated by PackedCoordinates
+    double x;
+    double y;
+    double z;
+    double m;
+    final int[] position = {0};
+    long quantizedX;
+    long quantizedY;
+    long quantizedZ;
+    
+    /**
+     * The constructor creates a cursor without a geometry.
+     */
+    public VertexCursor() {
+        this.count = 0;
+        this.index = -1;
+    }
+    
+    /**
+     * The constructor creates a cursor before the first vertice of the given geometry.
+     * @param sequence the Line- or Polygon-object
+     */
+    public VertexCursor(VertexSequence sequence) {
+        this.reset(sequence);
+    }
+    
+    /**
+     * This function moves the cursor before the first vertice of a geometry.
+     * @param sequence the Line- or Polygon-object
+     * @return this cursor
+     */
+    public VertexCursor reset(VertexSequence sequence) {
+        return this.reset(sequence, false);
+    }
+    
+    /**
+     * This function moves the cursor before the first vertice of a geometry.
+     * If the ring should be closed and the geometry is closed, the first
+     * vertice is returned again after the last one, e.g. for writing
+     * formats with explicitly closed rings.
+     * @param sequence the Line- or Polygon-object
+     * @param closeRing TRUE, if the first vertice of a closed geometry should be repeated
+     * @return this cursor
+     */
+    public VertexCursor reset(VertexSequence sequence, boolean closeRing) {
+        this.sequence = sequence;
+        if(sequence instanceof Line) {
+            this.packed = ((Line) sequence).getPackedCoordinates();
+        } else if(sequence instanceof Polygon) {
+            this.packed = ((Polygon) sequence).getPackedCoordinates();
+        } else {
+            this.packed = null;
+        }
+        this.countOfVertices = sequence.getCountOfVertices();
+        this.count = closeRing && sequence.isClosed() && this.countOfVertices > 0 ? this.countOfVertices + 1 : this.countOfVertices;
+        this.index = -1;
+        this.position[0] = 0;
+        this.quantizedX = 0;
+        this.quantizedY = 0;
+        this.quantizedZ = 0;
+        return this;
+    }
+    
+    /**
+     * This function moves the cursor to the next vertice.
+     * @return TRUE if the cursor is positioned on a vertice, FALSE if all vertices have been visited
+     */
+    public boolean next() {
+        if(this.index + 1 >= this.count) {
+            this.index = this.count;
+            return false;
+        }
+        this.index++;
+        if(this.index == this.countOfVertices) {
+            this.x = this.firstX;
+            this.y = this.firstY;
+            this.z = this.firstZ;
+            this.m = this.firstM;
+            return true;
+        }
+        if(this.packed != null) {
+            this.packed.read(this);
+        } else {
+            this.x = this.sequence.getVerticeX(this.index);
+            this.y = this.sequence.getVerticeY(this.index);
+            this.z = this.sequence.getVerticeZ(this.index);
+            this.m = this.sequence.getVerticeM(this.index);
+        }
+        if(this.index == 0) {
+            this.firstX = this.x;
+            this.firstY = this.y;
+            this.firstZ = this.z;
+            this.firstM = this.m;
+        }
+        return true;
+    }
+    
+    /**
+     * This function returns the index of the current vertice.
+     * @return the zero-based index, the number of vertices for the repeated first vertice of a closed ring
+     */
+    public int getIndex() {
+        return this.index;
+    }
+    
+    /**
+     * This function returns the x-coordinate of the current vertice.
+     * @return the x-coordinate as double value
+     */
+    public double getX() {
+        return this.x;
+    }
+    
+    /**
+     * This function returns the y-coordinate of the current vertice.
+     * @return the y-coordinate as double value
+     */
+    public double getY() {
+        return this.y;
+    }
+    
+    /**
+     * This function returns the z-coordinate of the current vertice.
+     * @return the z-coordinate as double value, zero if the geometry has no heights
+     */
+    public double getZ() {
+        return this.z;
+    }
+    
+    /**
+     * This function returns the measure of the current vertice.
+     * @return the measure as double value, NaN if the geometry has no measures
+     */
+    public double getM() {
+        return this.m;
+    }
+    
+}
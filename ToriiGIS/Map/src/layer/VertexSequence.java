@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package layer;
+
+/**
+ * This interface describes a geometry, which is builded up by an ordered
+ * list of vertices, e.g. a line or a polygon.
+ * @author Christoph
+ */
+public interface VertexSequence {
+    
+    /**
+     * This function returns the number of vertices of the geometry.
+     * @return the number of vertices
+     */
+    public int getCountOfVertices();
+    
+    /**
+     * This function returns the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the vertice as Point-object
+     */
+    public Point getVertice(int position);
+    
+    /**
+     * This function returns the x-coordinate of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the x-coordinate as double value
+     */
+    public double getVerticeX(int position);
+    
+    /**
+     * This function returns the y-coordinate of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the y-coordinate as double value
+     */
+    public double getVerticeY(int position);
+    
+    /**
+     * This function returns the z-coordinate of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the z-coordinate as double value
+     */
+    public double getVerticeZ(int position);
+    
+    /**
+     * This function returns the measure of the vertice at the given position.
+     * @param position the zero-based index of the vertice
+     * @return the measure as double value, NaN if the vertices have no measures
+     */
+    public double getVerticeM(int position);
+    
+    /**
+     * This function returns the dimension of the stored coordinates.
+     * @return XY, XYZ or XYM
+     */
+    public CoordinateDimension getDimension();
+    
+    /**
+     * This function passes the coordinates of all vertices to the given
+     * consumer without creating Point-objects.
+     * @param consumer the operation for every vertice
+     */
+    public void forEachVertex(VertexConsumer consumer);
+    
+    /**
+     * This function adds a new vertice at the given position (zero-based index).
+     * @param p the new vertice as Point-object
+     * @param position the zero-based position for inserting
+     */
+    public void addVertice(Point p, int position);
+    
+    /**
+     * This function adds a new vertice with all of its values at the given
+     * position. The dimension of the coordinates is kept, i.e. the measure
+     * is only stored for XYM.
+     * @param position the zero-based position for inserting
+     * @param x the x-coordinate of the new vertice
+     * @param y the y-coordinate of the new vertice
+     * @param z the z-coordinate of the new vertice, which is ignored for XYM
+     * @param m the measure of the new vertice, which is ignored without measures
+     */
+    public void addVertice(int position, double x, double y, double z, double m);
+    
+    /**
+     * This function replaces all values of the vertice at the given position.
+     * The dimension of the coordinates is kept, i.e. the measure is only
+     * stored for XYM.
+     * @param position the zero-based index of the vertice
+     * @param x the new x-coordinate
+     * @param y the new y-coordinate
+     * @param z the new z-coordinate, which is ignored for XYM
+     * @param m the new measure, which is ignored without measures
+     */
+    public void setVertice(int position, double x, double y, double z, double m);
+    
+    /**
+     * This function removes a vertice at the given position.
+     * @param position the zero-based index of the vertice, that has to be deleted
+     */
+    public void removeVertice(int position);
+    
+    /**
+     * This function returns the information, wether the last vertice is
+     * connected with the first one.
+     * @return TRUE for a closed ring (e.g. a polygon), otherwise FALSE
+     */
+    public boolean isClosed();
+    
+}
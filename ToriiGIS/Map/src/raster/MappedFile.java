@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package raster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class maps a file of any size into memory for reading.
+ * <br>A MappedByteBuffer cannot exceed 2 GB, i.e. the file is mapped in
+ * segments of 1 GB. The segments overlap by the maximum length of a block,
+ * so that every block lies completely within the segment of its first byte
+ * and can be returned as one buffer. Slices of the buffers can be created
+ * by several threads at the same time.
+ * @author Christoph
+ */
+final class MappedFile implements Closeable {
+    
+    private static final long SEGMENT_SIZE = 1L << 30;
+    
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final ByteOrder order;
+    private final long size;
+
+    /**
+     * The constructor of this class.
+     * @param file the path to the file
+     * @param maxLength the maximum length of the blocks in bytes
+     * @param order the byte order of the returned buffers
+     * @throws IOException if the file cannot be mapped
+     */
+    MappedFile(Path file, int maxLength, ByteOrder order) throws IOException {
+        if(maxLength < 0 || maxLength > Integer.MAX_VALUE - SEGMENT_SIZE) {
+            throw new IOException("the maximum length of a block is too large: " + maxLength);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.order = order;
+        try {
+            this.size = this.channel.size();
+            int countOfSegments = (int) Math.max(1, (this.size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            this.segments = new MappedByteBuffer[countOfSegments];
+            for(int i = 0; i < countOfSegments; i++) {
+                long start = i * SEGMENT_SIZE;
+                long length = Math.min(this.size - start, SEGMENT_SIZE + maxLength);
+                this.segments[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        } catch (IOException ex) {
+            this.channel.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * This function returns a block of the file.
+     * @param position the position of the first byte within the file
+     * @param length the length of the block in bytes
+     * @return a new ByteBuffer starting with the block at index 0
+     * @throws IOException if the block lies outside of the file or exceeds the maximum length
+     */
+    ByteBuffer slice(long position, int length) throws IOException {
+        if(position < 0 || length < 0 || position + length > this.size) {
+            throw new IOException("the block at position " + position + " lies outside of the file");
+        }
+        int index = (int) (position / SEGMENT_SIZE);
+        int start = (int) (position - index * SEGMENT_SIZE);
+        ByteBuffer buffer = this.segments[index].duplicate();
+        if(start + length > buffer.capacity()) {
+            throw new IOException("the block at position " + position + " exceeds the maximum length");
+        }
+        buffer.position(start);
+        buffer.limit(start + length);
+        return buffer.slice().order(this.order);
+    }
+    
+    /**
+     * This function returns the size of the file.
+     * @return the size in bytes
+     */
+    long size() {
+        return this.size;
+    }
+    
+    /**
+     * This function closes the file. The mapped memory will be released
+     * by the garbage collector.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+    
+}
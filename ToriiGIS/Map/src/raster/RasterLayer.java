@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package raster;
+
+import io.ProgressListener;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class draws a georeferenced raster image, e.g. an orthophoto or a
+ * DEM, as a layer of the map.
+ * <br>The image is read from an uncompressed GeoTIFF file, which is
+ * memory-mapped, i.e. only the visible parts are loaded by the operating
+ * system. For every scale the level of the pyramid is chosen, whose
+ * resolution comes closest to the resolution of the screen, so that the count of
+ * drawn tiles depends only on the size of the map view. The tiles are
+ * resampled bilinearly while drawing and kept in a cache, which removes
+ * the least recently used tiles.
+ * @author Christoph
+ */
+public class RasterLayer implements Closeable {
+    
+    public static final int DEFAULT_MAX_TILES = 128;
+    private static final Logger LOG = Logger.getLogger(RasterLayer.class.getName());
+    
+    private final TiffImage image;
+    private final RasterPyramid pyramid;
+    private final LinkedHashMap<Long, BufferedImage> tiles;
+    private final Rectangle2D bounds;
+
+    /**
+     * The constructor of this class. The overviews are stored in a file
+     * next to the image with the additional extension <i>.pyr</i>.
+     * @param file the path to the GeoTIFF file
+     * @throws IOException if the image cannot be read or the overviews cannot be built
+     */
+    public RasterLayer(Path file) throws IOException {
+        this(file, file.resolveSibling(file.getFileName() + ".pyr"), DEFAULT_MAX_TILES, ProgressListener.NONE);
+    }
+    
+    /**
+     * The constructor of this class. Building the overviews reads the
+     * whole image once, afterwards the overview file will be reused.
+     * @param file the path to the GeoTIFF file
+     * @param overviewFile the path to the file of the overviews
+     * @param maxTiles the maximum count of tiles in the cache
+     * @param listener a listener informed about the progress of building the overviews
+     * @throws IOException if the image cannot be read or the overviews cannot be built
+     */
+    public RasterLayer(Path file, Path overviewFile, int maxTiles, ProgressListener listener) throws IOException {
+        if(maxTiles <= 0) {
+            throw new IllegalArgumentException("the count of tiles has to be positive");
+        }
+        this.image = new TiffImage(file);
+        try {
+            this.pyramid = new RasterPyramid(this.image, file, overviewFile, listener);
+        } catch (IOException ex) {
+            this.image.close();
+            throw ex;
+        }
+        this.tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+                return this.size() > maxTiles;
+            }
+        };
+        this.bounds = new Rectangle2D.Double(this.image.getOriginX(),
+                                             this.image.getOriginY() - this.image.getHeight() * this.image.getPixelHeight(),
+                                             this.image.getWidth() * this.image.getPixelWidth(),
+                                             this.image.getHeight() * this.image.getPixelHeight());
+    }
+    
+    /**
+     * This function draws all tiles of the current level, which intersect
+     * the visible area.
+     * @param g2 the Graphics2D-object with the map transformation
+     * @param visibleArea the area in map units, that has to be drawn
+     * @param scale the scale of the map, i.e. the number of pixels per map unit
+     */
+    public void draw(Graphics2D g2, Rectangle2D visibleArea, double scale) {
+        Rectangle2D area = visibleArea.createIntersection(this.bounds);
+        if(area.isEmpty()) {
+            return;
+        }
+        int level = this.getLevel(scale);
+        double pixelWidth = this.image.getPixelWidth() * (1L << level);
+        double pixelHeight = this.image.getPixelHeight() * (1L << level);
+        double tileWidth = RasterPyramid.TILE_SIZE * pixelWidth;
+        double tileHeight = RasterPyramid.TILE_SIZE * pixelHeight;
+        int minX = toTileIndex((area.getMinX() - this.image.getOriginX()) / tileWidth, this.pyramid.getTilesAcross(level));
+        int maxX = toTileIndex((area.getMaxX() - this.image.getOriginX()) / tileWidth, this.pyramid.getTilesAcross(level));
+        int minY = toTileIndex((this.image.getOriginY() - area.getMaxY()) / tileHeight, this.pyramid.getTilesDown(level));
+        int maxY = toTileIndex((this.image.getOriginY() - area.getMinY()) / tileHeight, this.pyramid.getTilesDown(level));
+        
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        for(int y = minY; y <= maxY; y++) {
+            for(int x = minX; x <= maxX; x++) {
+                BufferedImage tile = this.getTile(level, x, y);
+                if(tile != null) {
+                    AffineTransform tileTransform = new AffineTransform(pixelWidth, 0.0, 0.0, -pixelHeight,
+                                                                        this.image.getOriginX() + x * tileWidth,
+                                                                        this.image.getOriginY() - y * tileHeight);
+                    g2.drawImage(tile, tileTransform, null);
+                }
+            }
+        }
+    }
+    
+    /**
+     * This function returns the level of the pyramid, which is drawn at the
+     * given scale, i.e. the coarsest level, whose pixels are not larger than
+     * the pixels of the screen.
+     * @param scale the number of pixels per map unit
+     * @return the level between 0 and the count of levels - 1
+     */
+    public int getLevel(double scale) {
+        double level = Math.floor(Math.log(1.0 / (scale * this.image.getPixelWidth())) / Math.log(2));
+        if(Double.isNaN(level) || level < 0.0) {
+            return 0;
+        }
+        return (int) Math.min(level, this.pyramid.getCountOfLevels() - 1);
+    }
+    
+    /**
+     * This function returns the value of a band at the given position in
+     * full resolution, e.g. the height of a DEM.
+     * @param x the x-coordinate in map units
+     * @param y the y-coordinate in map units
+     * @param band the index of the band, starting with 0
+     * @return the value or NaN, if the position lies outside of the image or has no data
+     * @throws IOException if the image cannot be read
+     */
+    public double getValue(double x, double y, int band) throws IOException {
+        if(band < 0 || band >= this.image.getSamplesPerPixel()) {
+            throw new IllegalArgumentException("the image has no band " + band);
+        }
+        double column = Math.floor((x - this.image.getOriginX()) / this.image.getPixelWidth());
+        double row = Math.floor((this.image.getOriginY() - y) / this.image.getPixelHeight());
+        if(column < 0 || row < 0 || column >= this.image.getWidth() || row >= this.image.getHeight()) {
+            return Double.NaN;
+        }
+        double value = this.image.getSample((int) column, (int) row, band);
+        return value == this.image.getNoData() ? Double.NaN : value;
+    }
+    
+    /**
+     * This function returns the area covered by the image.
+     * @return a Rectangle2D-object in map units
+     */
+    public Rectangle2D getBounds() {
+        return (Rectangle2D) this.bounds.clone();
+    }
+    
+    /**
+     * This function returns the count of bands of the image.
+     * @return the count as int value
+     */
+    public int getCountOfBands() {
+        return this.image.getSamplesPerPixel();
+    }
+    
+    /**
+     * This function returns the count of levels of the pyramid
+     * including the full resolution.
+     * @return the count as int value
+     */
+    public int getCountOfLevels() {
+        return this.pyramid.getCountOfLevels();
+    }
+    
+    /**
+     * This function returns the count of tiles in the cache.
+     * @return the count as int value
+     */
+    public int getCountOfCachedTiles() {
+        synchronized(this.tiles) {
+            return this.tiles.size();
+        }
+    }
+    
+    /**
+     * This function closes the image and the overview file.
+     * @throws IOException if a file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized(this.tiles) {
+            this.tiles.clear();
+        }
+        try {
+            this.pyramid.close();
+        } finally {
+            this.image.close();
+        }
+    }
+    
+    /**
+     * This function returns a tile from the cache or reads it from the pyramid.
+     * @return a BufferedImage-object or null, if the tile cannot be read
+     */
+    private BufferedImage getTile(int level, int x, int y) {
+        long key = ((long) level << 58) | ((long) x << 29) | y;
+        synchronized(this.tiles) {
+            BufferedImage tile = this.tiles.get(key);
+            if(tile != null) {
+                return tile;
+            }
+        }
+        try {
+            int[] pixels = this.pyramid.readTile(level, x, y);
+            BufferedImage tile = new BufferedImage(RasterPyramid.TILE_SIZE, RasterPyramid.TILE_SIZE,
+                                                   BufferedImage.TYPE_INT_ARGB);
+            tile.getRaster().setDataElements(0, 0, RasterPyramid.TILE_SIZE, RasterPyramid.TILE_SIZE, pixels);
+            synchronized(this.tiles) {
+                this.tiles.put(key, tile);
+            }
+            return tile;
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "the tile " + level + "/" + x + "/" + y + " cannot be read", ex);
+            return null;
+        }
+    }
+    
+    private static int toTileIndex(double position, int countOfTiles) {
+        return Math.max(0, Math.min(countOfTiles - 1, (int) Math.floor(position)));
+    }
+    
+}
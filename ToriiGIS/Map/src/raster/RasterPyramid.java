@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package raster;
+
+import io.ProgressListener;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class divides a TIFF image into tiles of 256 x 256 ARGB pixels and
+ * provides overviews with the half resolution of the previous level, until
+ * the whole image fits into one tile.
+ * <br>The tiles of level 0 are converted from the blocks of the image on
+ * demand. The overviews are built once by averaging 2 x 2 pixels and are
+ * stored in an overview file, which will be reused as long as the image
+ * does not change. The overview file is memory-mapped for reading.
+ * <br>Samples of more than 8 bits (e.g. the heights of a DEM) are scaled
+ * linearly from their range of values to grey values, the range is
+ * determined while building the overviews.
+ * @author Christoph
+ */
+final class RasterPyramid implements Closeable {
+    
+    static final int TILE_SIZE = 256;
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+    private static final int HEADER_SIZE = 64;
+    private static final long MAGIC = 0x546F726969505952L;
+    private static final int VERSION = 1;
+    
+    private final TiffImage image;
+    private final int countOfLevels;
+    private final long[] levelOffsets;
+    private double minValue = 0.0;
+    private double maxValue = 255.0;
+    private final MappedFile overviews;
+
+    /**
+     * The constructor of this class. The overview file will be built,
+     * if it does not exist or does not belong to the current image.
+     * @param image the image
+     * @param source the path to the image file
+     * @param overviewFile the path to the overview file
+     * @param listener a listener informed about the progress of building the overviews
+     * @throws IOException if the overview file cannot be built or read
+     */
+    RasterPyramid(TiffImage image, Path source, Path overviewFile, ProgressListener listener) throws IOException {
+        this.image = image;
+        int level = 0;
+        while(this.getTilesAcross(level) > 1 || this.getTilesDown(level) > 1) {
+            level++;
+        }
+        this.countOfLevels = level + 1;
+        this.levelOffsets = new long[this.countOfLevels + 1];
+        this.levelOffsets[0] = HEADER_SIZE;
+        this.levelOffsets[1] = HEADER_SIZE;
+        for(int i = 2; i <= this.countOfLevels; i++) {
+            this.levelOffsets[i] = this.levelOffsets[i - 1]
+                                   + (long) this.getTilesAcross(i - 1) * this.getTilesDown(i - 1) * TILE_BYTES;
+        }
+        
+        ByteBuffer header = this.createHeader(source);
+        if(!this.isValid(overviewFile, header)) {
+            try {
+                this.build(overviewFile, header, listener);
+            } catch (IOException ex) {
+                Files.deleteIfExists(overviewFile);
+                throw ex;
+            }
+        }
+        this.overviews = new MappedFile(overviewFile, TILE_BYTES, ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * This function returns the pixels of a tile.
+     * @param level the level of the pyramid, 0 for the full resolution
+     * @param tileX the column of the tile, counted from the left
+     * @param tileY the row of the tile, counted from the top
+     * @return an array of ARGB values row by row, pixels outside of the image are transparent
+     * @throws IOException if the tile cannot be read
+     */
+    int[] readTile(int level, int tileX, int tileY) throws IOException {
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        if(level == 0) {
+            this.readImageTile(tileX, tileY, pixels);
+        } else {
+            this.overviews.slice(this.getTileOffset(level, tileX, tileY), TILE_BYTES).asIntBuffer().get(pixels);
+        }
+        return pixels;
+    }
+    
+    /**
+     * This function returns the count of tiles of a level in x-direction.
+     * @param level the level of the pyramid
+     * @return the count as int value
+     */
+    int getTilesAcross(int level) {
+        long size = (long) TILE_SIZE << level;
+        return (int) ((this.image.getWidth() + size - 1) / size);
+    }
+    
+    /**
+     * This function returns the count of tiles of a level in y-direction.
+     * @param level the level of the pyramid
+     * @return the count as int value
+     */
+    int getTilesDown(int level) {
+        long size = (long) TILE_SIZE << level;
+        return (int) ((this.image.getHeight() + size - 1) / size);
+    }
+    
+    /**
+     * This function returns the count of levels including level 0.
+     * @return the count as int value
+     */
+    int getCountOfLevels() {
+        return this.countOfLevels;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        this.overviews.close();
+    }
+    
+    /**
+     * This function converts the blocks of the image into a tile of level 0.
+     */
+    private void readImageTile(int tileX, int tileY, int[] pixels) throws IOException {
+        int blockWidth = this.image.getBlockWidth();
+        int blockHeight = this.image.getBlockHeight();
+        int minX = tileX * TILE_SIZE;
+        int minY = tileY * TILE_SIZE;
+        int maxX = Math.min(minX + TILE_SIZE, this.image.getWidth());
+        int maxY = Math.min(minY + TILE_SIZE, this.image.getHeight());
+        for(int blockY = minY / blockHeight; blockY * blockHeight < maxY; blockY++) {
+            for(int blockX = minX / blockWidth; blockX * blockWidth < maxX; blockX++) {
+                ByteBuffer block = this.image.getBlock(blockX, blockY);
+                int startX = Math.max(minX, blockX * blockWidth);
+                int endX = Math.min(maxX, (blockX + 1) * blockWidth);
+                int startY = Math.max(minY, blockY * blockHeight);
+                int endY = Math.min(maxY, (blockY + 1) * blockHeight);
+                for(int y = startY; y < endY; y++) {
+                    for(int x = startX; x < endX; x++) {
+                        pixels[(y - minY) * TILE_SIZE + x - minX] = this.toColour(block, x - blockX * blockWidth,
+                                                                                  y - blockY * blockHeight);
+                    }
+                }
+            }
+        }
+    }
+    
+    private int toColour(ByteBuffer block, int x, int y) {
+        double first = this.image.getSample(block, x, y, 0);
+        if(first == this.image.getNoData() || Double.isNaN(first)) {
+            return 0;
+        }
+        int samplesPerPixel = this.image.getSamplesPerPixel();
+        int red = this.toByte(first);
+        int green = red;
+        int blue = red;
+        int alpha = 255;
+        if(samplesPerPixel == 2) {
+            alpha = this.toByte(this.image.getSample(block, x, y, 1));
+        } else if(samplesPerPixel >= 3) {
+            green = this.toByte(this.image.getSample(block, x, y, 1));
+            blue = this.toByte(this.image.getSample(block, x, y, 2));
+            if(samplesPerPixel >= 4) {
+                alpha = this.toByte(this.image.getSample(block, x, y, 3));
+            }
+        }
+        return alpha << 24 | red << 16 | green << 8 | blue;
+    }
+    
+    private int toByte(double value) {
+        if(this.image.hasColourValues()) {
+            return (int) value;
+        }
+        double range = this.maxValue - this.minValue;
+        double scaled = range > 0.0 ? (value - this.minValue) / range * 255.0 : 128.0;
+        return (int) Math.round(Math.max(0.0, Math.min(255.0, scaled)));
+    }
+    
+    private long getTileOffset(int level, int tileX, int tileY) {
+        return this.levelOffsets[level] + ((long) tileY * this.getTilesAcross(level) + tileX) * TILE_BYTES;
+    }
+    
+    /**
+     * This function creates the header of the overview file, which identifies
+     * the image by the size and the time of the last modification of its file.
+     */
+    private ByteBuffer createHeader(Path source) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(0, MAGIC);
+        header.putInt(8, VERSION);
+        header.putInt(12, TILE_SIZE);
+        header.putInt(16, this.countOfLevels);
+        header.putLong(24, Files.size(source));
+        header.putLong(32, Files.getLastModifiedTime(source).toMillis());
+        return header;
+    }
+    
+    /**
+     * This function checks, whether the overview file belongs to the image,
+     * and reads the range of values from it.
+     * @return TRUE if the overview file can be used
+     */
+    private boolean isValid(Path overviewFile, ByteBuffer expectedHeader) throws IOException {
+        if(!Files.isRegularFile(overviewFile) || Files.size(overviewFile) != this.levelOffsets[this.countOfLevels]) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try(FileChannel channel = FileChannel.open(overviewFile, StandardOpenOption.READ)) {
+            this.read(channel, 0, header);
+        }
+        for(int i = 0; i < 40; i++) {
+            if(header.get(i) != expectedHeader.get(i)) {
+                return false;
+            }
+        }
+        this.minValue = header.getDouble(40);
+        this.maxValue = header.getDouble(48);
+        return true;
+    }
+    
+    /**
+     * This function determines the range of values and writes the overviews
+     * level by level. The header is written at last, i.e. an incomplete
+     * overview file will be rebuilt.
+     */
+    private void build(Path overviewFile, ByteBuffer header, ProgressListener listener) throws IOException {
+        long total = (this.levelOffsets[this.countOfLevels] - HEADER_SIZE) / TILE_BYTES;
+        int blocksAcross = (this.image.getWidth() + this.image.getBlockWidth() - 1) / this.image.getBlockWidth();
+        int blocksDown = (this.image.getHeight() + this.image.getBlockHeight() - 1) / this.image.getBlockHeight();
+        if(!this.image.hasColourValues()) {
+            total += (long) blocksAcross * blocksDown;
+        }
+        long processed = 0;
+        
+        if(!this.image.hasColourValues()) {
+            this.minValue = Double.POSITIVE_INFINITY;
+            this.maxValue = Double.NEGATIVE_INFINITY;
+            for(int blockY = 0; blockY < blocksDown; blockY++) {
+                for(int blockX = 0; blockX < blocksAcross; blockX++) {
+                    this.updateRange(blockX, blockY);
+                    listener.progressChanged(++processed, total);
+                }
+            }
+            if(this.minValue > this.maxValue) {
+                this.minValue = 0.0;
+                this.maxValue = 0.0;
+            }
+        }
+        header.putDouble(40, this.minValue);
+        header.putDouble(48, this.maxValue);
+        
+        try(FileChannel channel = FileChannel.open(overviewFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                   StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(TILE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            int[] child = new int[TILE_SIZE * TILE_SIZE];
+            for(int level = 1; level < this.countOfLevels; level++) {
+                for(int tileY = 0; tileY < this.getTilesDown(level); tileY++) {
+                    for(int tileX = 0; tileX < this.getTilesAcross(level); tileX++) {
+                        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+                        for(int i = 0; i < 4; i++) {
+                            int childX = 2 * tileX + i % 2;
+                            int childY = 2 * tileY + i / 2;
+                            if(childX >= this.getTilesAcross(level - 1) || childY >= this.getTilesDown(level - 1)) {
+                                continue;
+                            }
+                            if(level == 1) {
+                                child = this.readTile(0, childX, childY);
+                            } else {
+                                buffer.clear();
+                                this.read(channel, this.getTileOffset(level - 1, childX, childY), buffer);
+                                buffer.asIntBuffer().get(child);
+                            }
+                            downsample(child, pixels, i % 2 * TILE_SIZE / 2, i / 2 * TILE_SIZE / 2);
+                        }
+                        buffer.clear();
+                        buffer.asIntBuffer().put(pixels);
+                        this.write(channel, this.getTileOffset(level, tileX, tileY), buffer);
+                        listener.progressChanged(++processed, total);
+                    }
+                }
+            }
+            header.clear();
+            this.write(channel, 0, header);
+        }
+    }
+    
+    private void updateRange(int blockX, int blockY) throws IOException {
+        ByteBuffer block = this.image.getBlock(blockX, blockY);
+        int width = Math.min(this.image.getBlockWidth(), this.image.getWidth() - blockX * this.image.getBlockWidth());
+        int height = Math.min(this.image.getBlockHeight(), this.image.getHeight() - blockY * this.image.getBlockHeight());
+        double noData = this.image.getNoData();
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                if(this.image.getSample(block, x, y, 0) == noData) {
+                    continue;
+                }
+                for(int band = 0; band < this.image.getSamplesPerPixel(); band++) {
+                    double value = this.image.getSample(block, x, y, band);
+                    if(!Double.isNaN(value)) {
+                        this.minValue = Math.min(this.minValue, value);
+                        this.maxValue = Math.max(this.maxValue, value);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * This function averages 2 x 2 pixels of a tile into one pixel of a
+     * quarter of the parent tile. The colours are weighted by their opacity.
+     */
+    private static void downsample(int[] child, int[] parent, int offsetX, int offsetY) {
+        for(int y = 0; y < TILE_SIZE / 2; y++) {
+            for(int x = 0; x < TILE_SIZE / 2; x++) {
+                int alpha = 0;
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                for(int i = 0; i < 4; i++) {
+                    int pixel = child[(2 * y + i / 2) * TILE_SIZE + 2 * x + i % 2];
+                    int weight = pixel >>> 24;
+                    alpha += weight;
+                    red += (pixel >> 16 & 0xFF) * weight;
+                    green += (pixel >> 8 & 0xFF) * weight;
+                    blue += (pixel & 0xFF) * weight;
+                }
+                if(alpha > 0) {
+                    parent[(offsetY + y) * TILE_SIZE + offsetX + x] = (alpha + 2) / 4 << 24 | red / alpha << 16
+                                                                      | green / alpha << 8 | blue / alpha;
+                }
+            }
+        }
+    }
+    
+    private void read(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of the overview file");
+            }
+        }
+        buffer.flip();
+    }
+    
+    private void write(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+    
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package raster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * This class reads uncompressed TIFF and BigTIFF files with the georeference
+ * of GeoTIFF.
+ * <br>Only the first image of the file is read. Its pixels may be organized
+ * in tiles or strips, which are called blocks in the following, and have to
+ * be interleaved by pixel. All samples of a pixel need the same type, i.e.
+ * unsigned or signed integers with 8, 16, 32 or 64 bits or floating point
+ * numbers with 32 or 64 bits. The blocks are read from a memory-mapped file
+ * without copying.
+ * <br>The georeference is taken from the tags ModelPixelScale and
+ * ModelTiepoint or ModelTransformation without rotation. Without
+ * georeference the image lies in the first quadrant with one map unit per
+ * pixel. The value of the tag GDAL_NODATA is used as no-data value.
+ * @author Christoph
+ */
+final class TiffImage implements Closeable {
+    
+    private static final int IMAGE_WIDTH = 256;
+    private static final int IMAGE_LENGTH = 257;
+    private static final int BITS_PER_SAMPLE = 258;
+    private static final int COMPRESSION = 259;
+    private static final int PHOTOMETRIC_INTERPRETATION = 262;
+    private static final int STRIP_OFFSETS = 273;
+    private static final int SAMPLES_PER_PIXEL = 277;
+    private static final int ROWS_PER_STRIP = 278;
+    private static final int STRIP_BYTE_COUNTS = 279;
+    private static final int PLANAR_CONFIGURATION = 284;
+    private static final int TILE_WIDTH = 322;
+    private static final int TILE_LENGTH = 323;
+    private static final int TILE_OFFSETS = 324;
+    private static final int TILE_BYTE_COUNTS = 325;
+    private static final int SAMPLE_FORMAT = 339;
+    private static final int MODEL_PIXEL_SCALE = 33550;
+    private static final int MODEL_TIEPOINT = 33922;
+    private static final int MODEL_TRANSFORMATION = 34264;
+    private static final int GDAL_NODATA = 42113;
+    private static final int[] TYPE_SIZES = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8, 4, 0, 0, 8, 8, 8};
+    private static final int ASCII = 2;
+    
+    private final MappedFile file;
+    private final int width;
+    private final int height;
+    private final int blockWidth;
+    private final int blockHeight;
+    private final int blocksAcross;
+    private final int samplesPerPixel;
+    private final int bytesPerSample;
+    private final int sampleFormat;
+    private final long[] blockOffsets;
+    private final long[] blockByteCounts;
+    private final double originX;
+    private final double originY;
+    private final double pixelWidth;
+    private final double pixelHeight;
+    private final double noData;
+
+    /**
+     * The constructor of this class.
+     * @param path the path to the TIFF file
+     * @throws IOException if the file cannot be read or is not supported
+     */
+    TiffImage(Path path) throws IOException {
+        HashMap<Integer, double[]> values = new HashMap<>();
+        HashMap<Integer, String> texts = new HashMap<>();
+        ByteOrder order;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, 16, ByteOrder.BIG_ENDIAN);
+            if(header.getShort(0) == 0x4949) {
+                order = ByteOrder.LITTLE_ENDIAN;
+            } else if(header.getShort(0) == 0x4D4D) {
+                order = ByteOrder.BIG_ENDIAN;
+            } else {
+                throw new IOException("the file " + path + " is no TIFF file");
+            }
+            header.order(order);
+            int version = header.getShort(2);
+            if(version == 42) {
+                readDirectory(channel, header.getInt(4) & 0xFFFFFFFFL, false, order, values, texts);
+            } else if(version == 43 && header.getShort(4) == 8) {
+                readDirectory(channel, header.getLong(8), true, order, values, texts);
+            } else {
+                throw new IOException("the file " + path + " is no TIFF file");
+            }
+        }
+        
+        //check the organisation of the pixels
+        if(getValue(values, COMPRESSION, 1) != 1) {
+            throw new IOException("compressed TIFF files are not supported");
+        }
+        if(getValue(values, PHOTOMETRIC_INTERPRETATION, 1) == 3) {
+            throw new IOException("TIFF files with a palette are not supported");
+        }
+        this.width = (int) getValue(values, IMAGE_WIDTH, 0);
+        this.height = (int) getValue(values, IMAGE_LENGTH, 0);
+        this.samplesPerPixel = (int) getValue(values, SAMPLES_PER_PIXEL, 1);
+        if(this.samplesPerPixel > 1 && getValue(values, PLANAR_CONFIGURATION, 1) != 1) {
+            throw new IOException("TIFF files with separate planes are not supported");
+        }
+        double[] bitsPerSample = values.getOrDefault(BITS_PER_SAMPLE, new double[] {1});
+        for(double bits : bitsPerSample) {
+            if(bits != bitsPerSample[0]) {
+                throw new IOException("TIFF files with different types of samples are not supported");
+            }
+        }
+        this.bytesPerSample = (int) bitsPerSample[0] / 8;
+        this.sampleFormat = (int) getValue(values, SAMPLE_FORMAT, 1);
+        boolean supported = this.bytesPerSample * 8 == bitsPerSample[0] && Long.bitCount(this.bytesPerSample) == 1;
+        if(!supported || this.sampleFormat < 1 || this.sampleFormat > 3
+                      || (this.sampleFormat == 3 && this.bytesPerSample < 4)) {
+            throw new IOException("TIFF files with " + (int) bitsPerSample[0] + " bits of sample format "
+                                  + this.sampleFormat + " are not supported");
+        }
+        if(values.containsKey(TILE_OFFSETS)) {
+            this.blockWidth = (int) getValue(values, TILE_WIDTH, 0);
+            this.blockHeight = (int) getValue(values, TILE_LENGTH, 0);
+            this.blockOffsets = toLongs(values.get(TILE_OFFSETS));
+            this.blockByteCounts = toLongs(values.get(TILE_BYTE_COUNTS));
+        } else {
+            this.blockWidth = this.width;
+            this.blockHeight = (int) Math.min(this.height, getValue(values, ROWS_PER_STRIP, this.height));
+            this.blockOffsets = toLongs(values.get(STRIP_OFFSETS));
+            this.blockByteCounts = toLongs(values.get(STRIP_BYTE_COUNTS));
+        }
+        if(this.width <= 0 || this.height <= 0 || this.blockWidth <= 0 || this.blockHeight <= 0) {
+            throw new IOException("the TIFF file contains no image");
+        }
+        this.blocksAcross = (this.width + this.blockWidth - 1) / this.blockWidth;
+        long countOfBlocks = (long) this.blocksAcross * ((this.height + this.blockHeight - 1) / this.blockHeight);
+        if(this.blockOffsets == null || this.blockByteCounts == null
+                || this.blockOffsets.length < countOfBlocks || this.blockByteCounts.length < countOfBlocks) {
+            throw new IOException("the TIFF file contains not all blocks of the image");
+        }
+        
+        //determine the georeference
+        double[] scale = values.get(MODEL_PIXEL_SCALE);
+        double[] tiepoint = values.get(MODEL_TIEPOINT);
+        double[] transformation = values.get(MODEL_TRANSFORMATION);
+        if(scale != null && scale.length >= 2 && tiepoint != null && tiepoint.length >= 6) {
+            this.pixelWidth = scale[0];
+            this.pixelHeight = scale[1];
+            this.originX = tiepoint[3] - tiepoint[0] * this.pixelWidth;
+            this.originY = tiepoint[4] + tiepoint[1] * this.pixelHeight;
+        } else if(transformation != null && transformation.length >= 8
+                  && transformation[1] == 0.0 && transformation[4] == 0.0) {
+            this.pixelWidth = transformation[0];
+            this.pixelHeight = -transformation[5];
+            this.originX = transformation[3];
+            this.originY = transformation[7];
+        } else {
+            this.pixelWidth = 1.0;
+            this.pixelHeight = 1.0;
+            this.originX = 0.0;
+            this.originY = this.height;
+        }
+        if(!(this.pixelWidth > 0.0) || !(this.pixelHeight > 0.0)) {
+            throw new IOException("rotated or mirrored TIFF files are not supported");
+        }
+        double value;
+        try {
+            value = texts.containsKey(GDAL_NODATA) ? Double.parseDouble(texts.get(GDAL_NODATA).trim()) : Double.NaN;
+        } catch (NumberFormatException ex) {
+            value = Double.NaN;
+        }
+        this.noData = value;
+        
+        long maxByteCount = 0;
+        for(long byteCount : this.blockByteCounts) {
+            maxByteCount = Math.max(maxByteCount, byteCount);
+        }
+        this.file = new MappedFile(path, (int) Math.min(Integer.MAX_VALUE, maxByteCount), order);
+    }
+    
+    /**
+     * This function returns the data of a block.
+     * @param blockX the column of the block, counted from the left
+     * @param blockY the row of the block, counted from the top
+     * @return a ByteBuffer with the first byte of the block at index 0
+     * @throws IOException if the block cannot be read
+     */
+    ByteBuffer getBlock(int blockX, int blockY) throws IOException {
+        int index = blockY * this.blocksAcross + blockX;
+        return this.file.slice(this.blockOffsets[index], (int) this.blockByteCounts[index]);
+    }
+    
+    /**
+     * This function returns one sample of a pixel within a block.
+     * The last block of a strip image may be shorter than the others.
+     * @param block the data of the block
+     * @param x the column of the pixel within the block
+     * @param y the row of the pixel within the block
+     * @param band the index of the sample
+     * @return the value of the sample
+     */
+    double getSample(ByteBuffer block, int x, int y, int band) {
+        int index = ((y * this.blockWidth + x) * this.samplesPerPixel + band) * this.bytesPerSample;
+        switch(this.bytesPerSample) {
+            case 1:
+                return this.sampleFormat == 2 ? block.get(index) : block.get(index) & 0xFF;
+            case 2:
+                return this.sampleFormat == 2 ? block.getShort(index) : block.getShort(index) & 0xFFFF;
+            case 4:
+                if(this.sampleFormat == 3) {
+                    return block.getFloat(index);
+                }
+                return this.sampleFormat == 2 ? block.getInt(index) : block.getInt(index) & 0xFFFFFFFFL;
+            default:
+                return this.sampleFormat == 3 ? block.getDouble(index) : block.getLong(index);
+        }
+    }
+    
+    /**
+     * This function returns one sample of a pixel of the image.
+     * @param x the column of the pixel
+     * @param y the row of the pixel
+     * @param band the index of the sample
+     * @return the value of the sample
+     * @throws IOException if the block of the pixel cannot be read
+     */
+    double getSample(int x, int y, int band) throws IOException {
+        ByteBuffer block = this.getBlock(x / this.blockWidth, y / this.blockHeight);
+        return this.getSample(block, x % this.blockWidth, y % this.blockHeight, band);
+    }
+    
+    /**
+     * This function returns the width of the image in pixel.
+     * @return the width as int value
+     */
+    int getWidth() {
+        return this.width;
+    }
+    
+    /**
+     * This function returns the height of the image in pixel.
+     * @return the height as int value
+     */
+    int getHeight() {
+        return this.height;
+    }
+    
+    /**
+     * This function returns the width of the tiles or strips in pixel.
+     * @return the width as int value
+     */
+    int getBlockWidth() {
+        return this.blockWidth;
+    }
+    
+    /**
+     * This function returns the height of the tiles or strips in pixel.
+     * @return the height as int value
+     */
+    int getBlockHeight() {
+        return this.blockHeight;
+    }
+    
+    /**
+     * This function returns the count of samples per pixel, i.e. the count of bands.
+     * @return the count as int value
+     */
+    int getSamplesPerPixel() {
+        return this.samplesPerPixel;
+    }
+    
+    /**
+     * This function returns the information, whether the samples are unsigned
+     * bytes, i.e. can be used as colour values without scaling.
+     * @return TRUE if the samples are unsigned bytes
+     */
+    boolean hasColourValues() {
+        return this.bytesPerSample == 1 && this.sampleFormat == 1;
+    }
+    
+    /**
+     * This function returns the x-coordinate of the upper left corner of the image.
+     * @return the coordinate in map units
+     */
+    double getOriginX() {
+        return this.originX;
+    }
+    
+    /**
+     * This function returns the y-coordinate of the upper left corner of the image.
+     * @return the coordinate in map units
+     */
+    double getOriginY() {
+        return this.originY;
+    }
+    
+    /**
+     * This function returns the width of a pixel.
+     * @return the width in map units
+     */
+    double getPixelWidth() {
+        return this.pixelWidth;
+    }
+    
+    /**
+     * This function returns the height of a pixel.
+     * @return the height in map units
+     */
+    double getPixelHeight() {
+        return this.pixelHeight;
+    }
+    
+    /**
+     * This function returns the value of samples without data.
+     * @return the value or NaN, if the file does not define one
+     */
+    double getNoData() {
+        return this.noData;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        this.file.close();
+    }
+    
+    /**
+     * This function reads the tags of an image file directory.
+     */
+    private static void readDirectory(FileChannel channel, long position, boolean bigTiff, ByteOrder order,
+                                      HashMap<Integer, double[]> values, HashMap<Integer, String> texts)
+                                      throws IOException {
+        int entrySize = bigTiff ? 20 : 12;
+        int valueSize = bigTiff ? 8 : 4;
+        ByteBuffer count = read(channel, position, valueSize == 8 ? 8 : 2, order);
+        long countOfEntries = bigTiff ? count.getLong(0) : count.getShort(0) & 0xFFFF;
+        if(countOfEntries <= 0 || countOfEntries > 65535) {
+            throw new IOException("the image file directory of the TIFF file is invalid");
+        }
+        ByteBuffer entries = read(channel, position + (bigTiff ? 8 : 2), (int) countOfEntries * entrySize, order);
+        for(int i = 0; i < countOfEntries; i++) {
+            int tag = entries.getShort(i * entrySize) & 0xFFFF;
+            int type = entries.getShort(i * entrySize + 2) & 0xFFFF;
+            long countOfValues = bigTiff ? entries.getLong(i * entrySize + 4) : entries.getInt(i * entrySize + 4) & 0xFFFFFFFFL;
+            if(type >= TYPE_SIZES.length || TYPE_SIZES[type] == 0 || countOfValues * TYPE_SIZES[type] > Integer.MAX_VALUE) {
+                continue;
+            }
+            int length = (int) countOfValues * TYPE_SIZES[type];
+            ByteBuffer data;
+            if(length <= valueSize) {
+                entries.position(i * entrySize + entrySize - valueSize);
+                data = entries.slice().order(order);
+            } else {
+                long offset = bigTiff ? entries.getLong(i * entrySize + 12) : entries.getInt(i * entrySize + 8) & 0xFFFFFFFFL;
+                data = read(channel, offset, length, order);
+            }
+            if(type == ASCII) {
+                byte[] text = new byte[length];
+                data.get(text);
+                texts.put(tag, new String(text, StandardCharsets.US_ASCII).replace("\0", ""));
+            } else {
+                double[] numbers = new double[(int) countOfValues];
+                for(int j = 0; j < numbers.length; j++) {
+                    numbers[j] = readNumber(data, type);
+                }
+                values.put(tag, numbers);
+            }
+        }
+    }
+    
+    private static double readNumber(ByteBuffer data, int type) {
+        switch(type) {
+            case 1:
+            case 7:
+                return data.get() & 0xFF;
+            case 6:
+                return data.get();
+            case 3:
+                return data.getShort() & 0xFFFF;
+            case 8:
+                return data.getShort();
+            case 4:
+            case 13:
+                return data.getInt() & 0xFFFFFFFFL;
+            case 9:
+                return data.getInt();
+            case 5:
+                return (double) (data.getInt() & 0xFFFFFFFFL) / (data.getInt() & 0xFFFFFFFFL);
+            case 10:
+                return (double) data.getInt() / data.getInt();
+            case 11:
+                return data.getFloat();
+            case 12:
+                return data.getDouble();
+            default:
+                return data.getLong();
+        }
+    }
+    
+    private static ByteBuffer read(FileChannel channel, long position, int length, ByteOrder order) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(order);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of the TIFF file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+    
+    private static double getValue(HashMap<Integer, double[]> values, int tag, double defaultValue) {
+        double[] value = values.get(tag);
+        return value == null || value.length == 0 ? defaultValue : value[0];
+    }
+    
+    private static long[] toLongs(double[] values) {
+        if(values == null) {
+            return null;
+        }
+        long[] longs = new long[values.length];
+        for(int i = 0; i < values.length; i++) {
+            longs[i] = (long) values[i];
+        }
+        return longs;
+    }
+    
+}
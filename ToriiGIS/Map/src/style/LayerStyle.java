@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package style;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.IntUnaryOperator;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.EventListenerList;
+import layer.Attributes;
+import layer.Geometry;
+import layer.Layer;
+import layer.Symbol;
+
+/**
+ * This class describes the style of a layer by an ordered list of rules,
+ * e.g. for thematic maps with categorized or graduated symbols.
+ * <br>Every feature is drawn with the symbol of the first rule, whose
+ * condition it matches, if this rule is visible at the current scale.
+ * Features without a matching rule are not drawn. The own style of the
+ * geometries is ignored.
+ * <br>The rules are evaluated once per feature into an array with the index
+ * of the matching rule. Consecutive categories of the same attribute are
+ * compiled into one hash lookup, the numbers of graduated attributes are parsed
+ * once. The array is kept per layer until the rules, the attribute table or
+ * the count of features change, i.e. drawing a frame costs one lookup per
+ * geometry, even if the style is shared by several layers.
+ * @author Christoph
+ */
+public class LayerStyle {
+    
+    private final ArrayList<StyleRule> rules = new ArrayList<>();
+    private final EventListenerList listenerList = new EventListenerList();
+    private final WeakHashMap<Layer, CompiledStyle> compiled = new WeakHashMap<>();
+    
+    /**
+     * This function creates a style with one category per value of an attribute.
+     * @param attrName the name of the attribute
+     * @param categories a Map from the values to their symbols, the order of the
+     * rules follows the iteration order of the map
+     * @param otherwise the symbol for all other values or null, if they shall not be drawn
+     * @return the new LayerStyle-object
+     */
+    public static LayerStyle categorized(String attrName, Map<String, Symbol> categories, Symbol otherwise) {
+        LayerStyle style = new LayerStyle();
+        categories.forEach((value, symbol) -> {
+            style.rules.add(StyleRule.category(attrName, value, symbol));
+        });
+        if(otherwise != null) {
+            style.rules.add(StyleRule.otherwise(otherwise));
+        }
+        return style;
+    }
+    
+    /**
+     * This function creates a style with one range per class of a numeric attribute.
+     * @param attrName the name of the attribute
+     * @param breaks the ascending bounds of the classes, i.e. one more than symbols
+     * @param symbols the symbols of the classes
+     * @return the new LayerStyle-object
+     */
+    public static LayerStyle graduated(String attrName, double[] breaks, Symbol[] symbols) {
+        if(breaks.length != symbols.length + 1) {
+            throw new IllegalArgumentException("the count of breaks has to be the count of symbols + 1");
+        }
+        LayerStyle style = new LayerStyle();
+        for(int i = 0; i < symbols.length; i++) {
+            style.rules.add(StyleRule.range(attrName, breaks[i], breaks[i + 1], symbols[i]));
+        }
+        return style;
+    }
+    
+    /**
+     * This function adds a rule at the end of the list.
+     * @param rule the new StyleRule-object
+     */
+    public void addRule(StyleRule rule) {
+        synchronized(this) {
+            this.checkCountOfRules();
+            this.rules.add(rule);
+            this.compiled.clear();
+        }
+        this.fireStateChanged();
+    }
+    
+    /**
+     * This function inserts a rule at the given position of the list.
+     * @param rule the new StyleRule-object
+     * @param position the zero-based position for inserting
+     */
+    public void addRule(StyleRule rule, int position) {
+        synchronized(this) {
+            this.checkCountOfRules();
+            this.rules.add(position, rule);
+            this.compiled.clear();
+        }
+        this.fireStateChanged();
+    }
+    
+    /**
+     * This function removes a rule from the list.
+     * @param rule the StyleRule-object, that has to be removed
+     * @return TRUE if the rule was part of the style
+     */
+    public boolean removeRule(StyleRule rule) {
+        synchronized(this) {
+            if(!this.rules.remove(rule)) {
+                return false;
+            }
+            this.compiled.clear();
+        }
+        this.fireStateChanged();
+        return true;
+    }
+    
+    /**
+     * This function replaces all rules.
+     * @param rules a List of StyleRule-objects in the order of evaluation
+     */
+    public void setRules(List<StyleRule> rules) {
+        synchronized(this) {
+            if(rules.size() > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("a style cannot have more than " + Short.MAX_VALUE + " rules");
+            }
+            this.rules.clear();
+            this.rules.addAll(rules);
+            this.compiled.clear();
+        }
+        this.fireStateChanged();
+    }
+    
+    /**
+     * This function returns all rules in the order of evaluation.
+     * @return an unmodifiable List of StyleRule-objects
+     */
+    public synchronized List<StyleRule> getRules() {
+        return Collections.unmodifiableList(new ArrayList<>(this.rules));
+    }
+    
+    /**
+     * This function registers a listener, which will be informed about all
+     * changes of the rules.
+     * @param listener the new ChangeListener-object
+     */
+    public void addChangeListener(ChangeListener listener) {
+        this.listenerList.add(ChangeListener.class, listener);
+    }
+    
+    /**
+     * This function removes a registered listener.
+     * @param listener the ChangeListener-object, that has to be removed
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        this.listenerList.remove(ChangeListener.class, listener);
+    }
+    
+    /**
+     * This function draws all geometries of a layer within the given area.
+     * @param g2 the Graphics2D-object with the map transformation
+     * @param layer the layer, that has to be drawn
+     * @param area the area in map units, that has to be drawn
+     * @param scale the scale of the map in pixels per map unit
+     */
+    public void draw(Graphics2D g2, Layer layer, Rectangle2D area, double scale) {
+        this.draw(g2, layer, layer.queryGeometries(area), scale);
+    }
+    
+    /**
+     * This function draws the given geometries of a layer, e.g. the result
+     * of a temporal query.
+     * @param g2 the Graphics2D-object with the map transformation
+     * @param layer the layer, that has to be drawn
+     * @param geometries the geometries of the layer, that have to be drawn
+     * @param scale the scale of the map in pixels per map unit
+     */
+    public void draw(Graphics2D g2, Layer layer, List<Geometry> geometries, double scale) {
+        CompiledStyle style = this.compile(layer, false);
+        Symbol[] symbols = style.getVisibleSymbols(scale);
+        boolean recompiled = false;
+        for(Geometry geom : geometries) {
+            Integer featureIndex = style.featureIndices.get(geom);
+            if(featureIndex == null && !recompiled) {
+                //the geometries were replaced without changing their count
+                style = this.compile(layer, true);
+                symbols = style.getVisibleSymbols(scale);
+                featureIndex = style.featureIndices.get(geom);
+                recompiled = true;
+            }
+            if(featureIndex == null) {
+                continue;
+            }
+            int ruleIndex = style.ruleIndices[featureIndex];
+            if(ruleIndex >= 0 && symbols[ruleIndex] != null) {
+                geom.draw(g2, symbols[ruleIndex]);
+            }
+        }
+    }
+    
+    /**
+     * This function returns the symbol of a feature.
+     * @param layer the layer of the feature
+     * @param featureIndex the zero-based index of the feature
+     * @param scale the scale of the map in pixels per map unit
+     * @return the Symbol-object or null, if the feature is not drawn at this scale
+     */
+    public Symbol getSymbol(Layer layer, int featureIndex, double scale) {
+        CompiledStyle style = this.compile(layer, false);
+        int ruleIndex = style.ruleIndices[featureIndex];
+        if(ruleIndex < 0 || !style.rules[ruleIndex].isVisible(scale)) {
+            return null;
+        }
+        return style.rules[ruleIndex].getSymbol();
+    }
+    
+    /**
+     * This function informs all registered listeners about a change of the rules.
+     */
+    protected void fireStateChanged() {
+        ChangeEvent e = new ChangeEvent(this);
+        for(ChangeListener listener : this.listenerList.getListeners(ChangeListener.class)) {
+            listener.stateChanged(e);
+        }
+    }
+    
+    private void checkCountOfRules() {
+        if(this.rules.size() >= Short.MAX_VALUE) {
+            throw new IllegalArgumentException("a style cannot have more than " + Short.MAX_VALUE + " rules");
+        }
+    }
+    
+    /**
+     * This function returns the evaluated rules for the layer and evaluates
+     * them again, if necessary.
+     * @param force TRUE for evaluating the rules in any case
+     */
+    private synchronized CompiledStyle compile(Layer layer, boolean force) {
+        CompiledStyle current = this.compiled.get(layer);
+        if(!force && current != null && current.isValid(layer)) {
+            return current;
+        }
+        StyleRule[] currentRules = this.rules.toArray(new StyleRule[this.rules.size()]);
+        Attributes attributes = layer.getAttributeTable();
+        List<IntUnaryOperator> matchers = createMatchers(currentRules, attributes);
+        
+        short[] ruleIndices = new short[layer.getCountOfFeatures()];
+        for(int i = 0; i < ruleIndices.length; i++) {
+            int ruleIndex = -1;
+            for(int j = 0; j < matchers.size() && ruleIndex < 0; j++) {
+                ruleIndex = matchers.get(j).applyAsInt(i);
+            }
+            ruleIndices[i] = (short) ruleIndex;
+        }
+        
+        IdentityHashMap<Geometry, Integer> featureIndices = new IdentityHashMap<>(ruleIndices.length);
+        int featureIndex = 0;
+        for(Geometry geom : layer.getGeometryList()) {
+            featureIndices.put(geom, featureIndex++);
+        }
+        for(ArrayList<Geometry> multiGeom : layer.getMultiGeometryList()) {
+            for(Geometry geom : multiGeom) {
+                featureIndices.put(geom, featureIndex);
+            }
+            featureIndex++;
+        }
+        current = new CompiledStyle(layer, attributes, currentRules, ruleIndices, featureIndices);
+        this.compiled.put(layer, current);
+        return current;
+    }
+    
+    /**
+     * This function converts the rules into functions, which return the index
+     * of the matching rule for the index of a feature or -1.
+     */
+    private static List<IntUnaryOperator> createMatchers(StyleRule[] rules, Attributes attributes) {
+        ArrayList<IntUnaryOperator> matchers = new ArrayList<>();
+        HashMap<Integer, double[]> numbers = new HashMap<>();
+        int i = 0;
+        while(i < rules.length) {
+            StyleRule rule = rules[i];
+            int ruleIndex = i;
+            if(rule.getKind() == StyleRule.OTHERWISE) {
+                matchers.add((feature) -> ruleIndex);
+                i++;
+            } else if(rule.getKind() == StyleRule.RANGE) {
+                int column = attributes == null ? -1 : attributes.indexOf(rule.getAttrName());
+                double[] values = column < 0 ? new double[0]
+                                             : numbers.computeIfAbsent(column, (c) -> parseColumn(attributes, c));
+                double lowerBound = rule.getLowerBound();
+                double upperBound = rule.getUpperBound();
+                matchers.add((feature) -> feature < values.length && values[feature] >= lowerBound
+                                          && values[feature] < upperBound ? ruleIndex : -1);
+                i++;
+            } else {
+                HashMap<String, Integer> categories = new HashMap<>();
+                while(i < rules.length && rules[i].getKind() == StyleRule.CATEGORY
+                                       && rules[i].getAttrName().equals(rule.getAttrName())) {
+                    categories.putIfAbsent(rules[i].getValue(), i);
+                    i++;
+                }
+                int column = attributes == null ? -1 : attributes.indexOf(rule.getAttrName());
+                int size = attributes == null ? 0 : attributes.size();
+                matchers.add((feature) -> {
+                    String value = column >= 0 && feature < size ? attributes.getAttr(feature, column) : null;
+                    return categories.getOrDefault(value, -1);
+                });
+            }
+        }
+        return matchers;
+    }
+    
+    private static double[] parseColumn(Attributes attributes, int column) {
+        double[] values = new double[attributes.size()];
+        for(int i = 0; i < values.length; i++) {
+            String value = attributes.getAttr(i, column);
+            try {
+                values[i] = value == null ? Double.NaN : Double.parseDouble(value.trim());
+            } catch (NumberFormatException ex) {
+                values[i] = Double.NaN;
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * This class holds the rules evaluated for one layer. It does not refer
+     * to the layer, so that the layer can be collected as key of the cache.
+     */
+    private static final class CompiledStyle {
+        
+        private final Attributes attributes;
+        private final int modificationCount;
+        private final int countOfFeatures;
+        private final StyleRule[] rules;
+        private final short[] ruleIndices;
+        private final IdentityHashMap<Geometry, Integer> featureIndices;
+
+        private CompiledStyle(Layer layer, Attributes attributes, StyleRule[] rules, short[] ruleIndices,
+                              IdentityHashMap<Geometry, Integer> featureIndices) {
+            this.attributes = attributes;
+            this.modificationCount = attributes == null ? 0 : attributes.getModificationCount();
+            this.countOfFeatures = layer.getCountOfFeatures();
+            this.rules = rules;
+            this.ruleIndices = ruleIndices;
+            this.featureIndices = featureIndices;
+        }
+        
+        private boolean isValid(Layer currentLayer) {
+            Attributes currentAttributes = currentLayer.getAttributeTable();
+            return this.attributes == currentAttributes
+                   && this.countOfFeatures == currentLayer.getCountOfFeatures()
+                   && (currentAttributes == null || this.modificationCount == currentAttributes.getModificationCount());
+        }
+        
+        private Symbol[] getVisibleSymbols(double scale) {
+            Symbol[] symbols = new Symbol[this.rules.length];
+            for(int i = 0; i < symbols.length; i++) {
+                symbols[i] = this.rules[i].isVisible(scale) ? this.rules[i].getSymbol() : null;
+            }
+            return symbols;
+        }
+        
+    }
+    
+}
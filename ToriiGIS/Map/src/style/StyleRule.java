@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package style;
+
+import java.util.Objects;
+import layer.Symbol;
+
+/**
+ * This class describes one rule of a layer style, i.e. a condition on the
+ * attributes of a feature and the symbol for drawing the matching features.
+ * <br>There are three kinds of conditions: a category matches all features,
+ * whose attribute has a given value, a range matches all features, whose
+ * attribute is a number between a lower bound (inclusive) and an upper bound
+ * (exclusive), and an otherwise-rule matches all features. Additionally
+ * every rule has a range of scales, in which its features are visible.
+ * <br>Objects of this class are immutable.
+ * @author Christoph
+ */
+public final class StyleRule {
+    
+    static final int CATEGORY = 0;
+    static final int RANGE = 1;
+    static final int OTHERWISE = 2;
+    
+    private final int kind;
+    private final String attrName;
+    private final String value;
+    private final double lowerBound;
+    private final double upperBound;
+    private final Symbol symbol;
+    private final double minScale;
+    private final double maxScale;
+
+    private StyleRule(int kind, String attrName, String value, double lowerBound, double upperBound,
+                      Symbol symbol, double minScale, double maxScale) {
+        this.kind = kind;
+        this.attrName = attrName;
+        this.value = value;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.symbol = Objects.requireNonNull(symbol);
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+    }
+    
+    /**
+     * This function creates a rule for all features with the given value of an attribute.
+     * @param attrName the name of the attribute
+     * @param value the value as String, null for features without value
+     * @param symbol the symbol for drawing the features
+     * @return the new StyleRule-object
+     */
+    public static StyleRule category(String attrName, String value, Symbol symbol) {
+        return new StyleRule(CATEGORY, Objects.requireNonNull(attrName), value, Double.NaN, Double.NaN,
+                             symbol, 0.0, Double.POSITIVE_INFINITY);
+    }
+    
+    /**
+     * This function creates a rule for all features, whose attribute is a
+     * number within the given range. Values, which are no numbers, do not match.
+     * @param attrName the name of the attribute
+     * @param lowerBound the lowest value of the range (inclusive)
+     * @param upperBound the highest value of the range (exclusive)
+     * @param symbol the symbol for drawing the features
+     * @return the new StyleRule-object
+     */
+    public static StyleRule range(String attrName, double lowerBound, double upperBound, Symbol symbol) {
+        return new StyleRule(RANGE, Objects.requireNonNull(attrName), null, lowerBound, upperBound,
+                             symbol, 0.0, Double.POSITIVE_INFINITY);
+    }
+    
+    /**
+     * This function creates a rule for all features, e.g. as the last rule
+     * for all features not matched by any other rule.
+     * @param symbol the symbol for drawing the features
+     * @return the new StyleRule-object
+     */
+    public static StyleRule otherwise(Symbol symbol) {
+        return new StyleRule(OTHERWISE, null, null, Double.NaN, Double.NaN, symbol, 0.0, Double.POSITIVE_INFINITY);
+    }
+    
+    /**
+     * This function creates a copy of the rule, which is only visible within
+     * the given range of scales.
+     * @param minScale the lowest scale in pixels per map unit (inclusive)
+     * @param maxScale the highest scale in pixels per map unit (exclusive)
+     * @return the new StyleRule-object
+     */
+    public StyleRule withScaleRange(double minScale, double maxScale) {
+        return new StyleRule(this.kind, this.attrName, this.value, this.lowerBound, this.upperBound,
+                             this.symbol, minScale, maxScale);
+    }
+    
+    /**
+     * This function returns the information, whether the features of this
+     * rule are drawn at the given scale.
+     * @param scale the scale of the map in pixels per map unit
+     * @return TRUE if the scale lies within the range of the rule
+     */
+    public boolean isVisible(double scale) {
+        return scale >= this.minScale && scale < this.maxScale;
+    }
+    
+    int getKind() {
+        return this.kind;
+    }
+    
+    /**
+     * This function returns the name of the attribute of the condition.
+     * @return the name as String or null for an otherwise-rule
+     */
+    public String getAttrName() {
+        return this.attrName;
+    }
+    
+    /**
+     * This function returns the value of a category.
+     * @return the value as String or null
+     */
+    public String getValue() {
+        return this.value;
+    }
+    
+    /**
+     * This function returns the lowest value of a range.
+     * @return the value or NaN, if the rule is no range
+     */
+    public double getLowerBound() {
+        return this.lowerBound;
+    }
+    
+    /**
+     * This function returns the highest value of a range.
+     * @return the value or NaN, if the rule is no range
+     */
+    public double getUpperBound() {
+        return this.upperBound;
+    }
+    
+    /**
+     * This function returns the symbol for drawing the matching features.
+     * @return a Symbol-object
+     */
+    public Symbol getSymbol() {
+        return this.symbol;
+    }
+    
+    /**
+     * This function returns the lowest scale, at which the rule is visible.
+     * @return the scale in pixels per map unit
+     */
+    public double getMinScale() {
+        return this.minScale;
+    }
+    
+    /**
+     * This function returns the highest scale, up to which the rule is visible.
+     * @return the scale in pixels per map unit
+     */
+    public double getMaxScale() {
+        return this.maxScale;
+    }
+    
+}
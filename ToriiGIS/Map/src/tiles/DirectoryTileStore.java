@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tiles;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * This class stores the tiles of a pyramid as files of a directory tree
+ * (z/x/y.mvt), which can be served by any web server, and reads them again.
+ * The zoom levels are taken from the names of the subdirectories.
+ * @author Christoph
+ */
+public class DirectoryTileStore implements TileStore, TileSource {
+    
+    private final Path root;
+
+    /**
+     * The constructor creates a store for the given directory.
+     * @param root the root directory, which will be created if necessary
+     */
+    public DirectoryTileStore(Path root) {
+        this.root = root;
+    }
+    
+    @Override
+    public void putTile(int z, int x, int y, byte[] data) throws IOException {
+        Path directory = this.root.resolve(Integer.toString(z)).resolve(Integer.toString(x));
+        Files.createDirectories(directory);
+        Files.write(directory.resolve(y + ".mvt"), data);
+    }
+    
+    @Override
+    public byte[] getTile(int z, int x, int y) throws IOException {
+        try {
+            return Files.readAllBytes(this.root.resolve(Integer.toString(z)).resolve(Integer.toString(x))
+                                               .resolve(y + ".mvt"));
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+    
+    @Override
+    public int getMinZoom() throws IOException {
+        return this.getZoomLevels()[0];
+    }
+    
+    @Override
+    public int getMaxZoom() throws IOException {
+        return this.getZoomLevels()[1];
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    /**
+     * This function searches the subdirectories named by zoom levels.
+     * @return the lowest and the highest zoom level
+     * @throws IOException if the directory cannot be read or contains no zoom levels
+     */
+    private int[] getZoomLevels() throws IOException {
+        int[] zoomLevels = {Integer.MAX_VALUE, -1};
+        try(DirectoryStream<Path> directories = Files.newDirectoryStream(this.root)) {
+            for(Path directory : directories) {
+                String name = directory.getFileName().toString();
+                if(Files.isDirectory(directory) && name.matches("[0-9]{1,2}")) {
+                    zoomLevels[0] = Math.min(zoomLevels[0], Integer.parseInt(name));
+                    zoomLevels[1] = Math.max(zoomLevels[1], Integer.parseInt(name));
+                }
+            }
+        }
+        if(zoomLevels[1] < 0) {
+            throw new IOException("the directory " + this.root + " contains no tiles");
+        }
+        return zoomLevels;
+    }
+    
+}
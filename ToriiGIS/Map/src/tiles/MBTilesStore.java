@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class stores the tiles of a pyramid in an MBTiles file, i.e. an
+ * SQLite database with the tables metadata and tiles, and reads them again.
+ * <br>The database is accessed by JDBC, i.e. an SQLite driver (e.g.
+ * sqlite-jdbc) has to be on the classpath. The tiles are compressed with
+ * gzip and inserted in batches within one transaction per batch. The rows
+ * are counted from the bottom (TMS scheme) as required by the specification.
+ * @author Christoph
+ */
+public class MBTilesStore implements TileStore, TileSource {
+    
+    private static final int BATCH_SIZE = 500;
+    
+    private final Connection connection;
+    private final PreparedStatement insertTile;
+    private final PreparedStatement insertMetadata;
+    private final PreparedStatement selectTile;
+    private int countOfBatchedTiles = 0;
+
+    /**
+     * The constructor creates the tables in the given file. Existing tiles
+     * and properties with the same keys will be replaced.
+     * @param file the path of the MBTiles file
+     * @throws IOException if the file cannot be opened or the tables cannot be created
+     */
+    public MBTilesStore(Path file) throws IOException {
+        try {
+            this.connection = DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath());
+            try(Statement statement = this.connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS metadata (name TEXT, value TEXT)");
+                statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS metadata_name ON metadata (name)");
+                statement.execute("CREATE TABLE IF NOT EXISTS tiles (zoom_level INTEGER, tile_column INTEGER,"
+                                  + " tile_row INTEGER, tile_data BLOB)");
+                statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS tile_index ON tiles (zoom_level, tile_column, tile_row)");
+            }
+            this.connection.setAutoCommit(false);
+            this.insertTile = this.connection.prepareStatement("INSERT OR REPLACE INTO tiles VALUES (?, ?, ?, ?)");
+            this.insertMetadata = this.connection.prepareStatement("INSERT OR REPLACE INTO metadata VALUES (?, ?)");
+            this.selectTile = this.connection.prepareStatement("SELECT tile_data FROM tiles"
+                                                               + " WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?");
+        } catch (SQLException ex) {
+            throw new IOException("the MBTiles file " + file + " cannot be opened", ex);
+        }
+    }
+    
+    @Override
+    public void putTile(int z, int x, int y, byte[] data) throws IOException {
+        byte[] compressed = gzip(data);
+        synchronized(this) {
+            try {
+                this.insertTile.setInt(1, z);
+                this.insertTile.setInt(2, x);
+                this.insertTile.setInt(3, (1 << z) - 1 - y);
+                this.insertTile.setBytes(4, compressed);
+                this.insertTile.addBatch();
+                if(++this.countOfBatchedTiles == BATCH_SIZE) {
+                    this.flush();
+                }
+            } catch (SQLException ex) {
+                throw new IOException("the tile " + z + "/" + x + "/" + y + " cannot be stored", ex);
+            }
+        }
+    }
+    
+    @Override
+    public synchronized void putMetadata(String name, String value) throws IOException {
+        try {
+            this.insertMetadata.setString(1, name);
+            this.insertMetadata.setString(2, value);
+            this.insertMetadata.executeUpdate();
+        } catch (SQLException ex) {
+            throw new IOException("the property " + name + " cannot be stored", ex);
+        }
+    }
+    
+    /**
+     * This function reads a tile. Tiles compressed with gzip are decompressed.
+     * @param z the zoom level
+     * @param x the column of the tile, counted from the left
+     * @param y the row of the tile, counted from the top
+     * @return the encoded tile or null if the tile does not exist
+     * @throws IOException if the tile cannot be read
+     */
+    @Override
+    public byte[] getTile(int z, int x, int y) throws IOException {
+        byte[] data;
+        synchronized(this) {
+            try {
+                this.flush();
+                this.selectTile.setInt(1, z);
+                this.selectTile.setInt(2, x);
+                this.selectTile.setInt(3, (1 << z) - 1 - y);
+                try(ResultSet result = this.selectTile.executeQuery()) {
+                    data = result.next() ? result.getBytes(1) : null;
+                }
+            } catch (SQLException ex) {
+                throw new IOException("the tile " + z + "/" + x + "/" + y + " cannot be read", ex);
+            }
+        }
+        return data == null ? null : gunzip(data);
+    }
+    
+    @Override
+    public int getMinZoom() throws IOException {
+        return this.queryZoomLevel("SELECT min(zoom_level) FROM tiles");
+    }
+    
+    @Override
+    public int getMaxZoom() throws IOException {
+        return this.queryZoomLevel("SELECT max(zoom_level) FROM tiles");
+    }
+    
+    /**
+     * This function inserts the remaining tiles, commits the transaction and
+     * closes the file.
+     * @throws IOException if the tiles cannot be stored
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            this.flush();
+            this.insertTile.close();
+            this.insertMetadata.close();
+            this.selectTile.close();
+            this.connection.close();
+        } catch (SQLException ex) {
+            throw new IOException("the MBTiles file cannot be closed", ex);
+        }
+    }
+    
+    private void flush() throws SQLException {
+        if(this.countOfBatchedTiles > 0) {
+            this.insertTile.executeBatch();
+            this.countOfBatchedTiles = 0;
+        }
+        this.connection.commit();
+    }
+    
+    private synchronized int queryZoomLevel(String sql) throws IOException {
+        try {
+            this.flush();
+            try(Statement statement = this.connection.createStatement();
+                ResultSet result = statement.executeQuery(sql)) {
+                int zoom = result.next() ? result.getInt(1) : 0;
+                if(result.wasNull()) {
+                    throw new IOException("the MBTiles file contains no tiles");
+                }
+                return zoom;
+            }
+        } catch (SQLException ex) {
+            throw new IOException("the zoom levels cannot be read", ex);
+        }
+    }
+    
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 32);
+        try(GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static byte[] gunzip(byte[] data) throws IOException {
+        if(data.length < 2 || (data[0] & 0xFF) != 0x1F || (data[1] & 0xFF) != 0x8B) {
+            return data;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 * data.length);
+        try(InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[8192];
+            int length;
+            while((length = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, length);
+            }
+        }
+        return bytes.toByteArray();
+    }
+    
+}
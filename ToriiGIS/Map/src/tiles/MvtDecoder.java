@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tiles;
+
+import io.LayerBuilder;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import layer.Geometry;
+import layer.Layer;
+import layer.Line;
+import layer.PackedCoordinates;
+import layer.Point;
+import layer.Polygon;
+
+/**
+ * This class decodes one layer of a Mapbox Vector Tile into a layer in map
+ * coordinates.
+ * <br>The keys of the tile become the attributes, numbers and booleans are
+ * converted into strings. Features with several parts become multi-geometries.
+ * Like the other readers, the decoder drops the holes of polygons, i.e. the
+ * rings with a negative area in tile coordinates.
+ * @author Christoph
+ */
+public final class MvtDecoder {
+    
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+    private static final int CLOSE_PATH = 7;
+    private static final int POINT = 1;
+    private static final int LINESTRING = 2;
+    private static final int POLYGON = 3;
+
+    private MvtDecoder() {
+    }
+    
+    /**
+     * This function decodes a layer of a tile.
+     * @param data the encoded tile
+     * @param layerName the name of the layer in the tile, null for the first layer
+     * @param tile the area of the tile in map coordinates
+     * @return the new Layer-object, which is empty if the tile does not contain the layer
+     * @throws IllegalArgumentException if the data is no valid vector tile
+     */
+    public static Layer decode(byte[] data, String layerName, Rectangle2D tile) {
+        ProtobufInput input = new ProtobufInput(data);
+        int field;
+        while((field = input.nextField()) != -1) {
+            if(field != 3) {
+                input.skip();
+                continue;
+            }
+            ProtobufInput layer = input.readMessage();
+            Layer decoded = decodeLayer(layer, layerName, tile);
+            if(decoded != null) {
+                return decoded;
+            }
+        }
+        return new LayerBuilder().build(new String[0], null);
+    }
+    
+    /**
+     * This function decodes a layer message.
+     * @param input the reader of the layer message
+     * @param layerName the expected name or null
+     * @param tile the area of the tile in map coordinates
+     * @return the new Layer-object or null if the layer has another name
+     */
+    private static Layer decodeLayer(ProtobufInput input, String layerName, Rectangle2D tile) {
+        //the tables follow the features, so the features are decoded at the end
+        ArrayList<ProtobufInput> features = new ArrayList<>();
+        ArrayList<String> keys = new ArrayList<>();
+        ArrayList<String> values = new ArrayList<>();
+        String name = null;
+        int extent = 4096;
+        int field;
+        while((field = input.nextField()) != -1) {
+            switch(field) {
+                case 1:
+                    name = input.readString();
+                    break;
+                case 2:
+                    features.add(input.readMessage());
+                    break;
+                case 3:
+                    keys.add(input.readString());
+                    break;
+                case 4:
+                    values.add(decodeValue(input.readMessage()));
+                    break;
+                case 5:
+                    extent = (int) input.readVarint();
+                    break;
+                default:
+                    input.skip();
+            }
+        }
+        if(layerName != null && !layerName.equals(name)) {
+            return null;
+        }
+        
+        String[] attrNames = keys.toArray(new String[keys.size()]);
+        GeometryDecoder geometryDecoder = new GeometryDecoder(tile, extent);
+        LayerBuilder builder = new LayerBuilder();
+        for(ProtobufInput feature : features) {
+            String[] attrs = new String[attrNames.length];
+            int type = 0;
+            ProtobufInput geometry = null;
+            while((field = feature.nextField()) != -1) {
+                if(field == 2) {
+                    ProtobufInput tags = feature.readMessage();
+                    while(!tags.isAtEnd()) {
+                        int key = (int) tags.readVarint();
+                        int value = (int) tags.readVarint();
+                        if(key < attrs.length && value < values.size()) {
+                            attrs[key] = values.get(value);
+                        }
+                    }
+                } else if(field == 3) {
+                    type = (int) feature.readVarint();
+                } else if(field == 4) {
+                    geometry = feature.readMessage();
+                } else {
+                    feature.skip();
+                }
+            }
+            if(geometry == null) {
+                continue;
+            }
+            ArrayList<Geometry> parts = geometryDecoder.decode(geometry, type);
+            if(parts.size() == 1) {
+                builder.addFeature(parts.get(0), attrs);
+            } else if(parts.size() > 1) {
+                builder.addFeature(parts, attrs);
+            }
+        }
+        return builder.build(attrNames, null);
+    }
+    
+    private static String decodeValue(ProtobufInput input) {
+        String value = null;
+        int field;
+        while((field = input.nextField()) != -1) {
+            switch(field) {
+                case 1:
+                    value = input.readString();
+                    break;
+                case 2:
+                    value = Float.toString(Float.intBitsToFloat(input.readFixed32()));
+                    break;
+                case 3:
+                    value = Double.toString(Double.longBitsToDouble(input.readFixed64()));
+                    break;
+                case 4:
+                    value = Long.toString(input.readVarint());
+                    break;
+                case 5:
+                    value = Long.toUnsignedString(input.readVarint());
+                    break;
+                case 6:
+                    value = Long.toString(input.readSInt());
+                    break;
+                case 7:
+                    value = Boolean.toString(input.readVarint() != 0);
+                    break;
+                default:
+                    input.skip();
+            }
+        }
+        return value;
+    }
+    
+    /**
+     * This class converts the commands of a feature into geometries.
+     */
+    private static final class GeometryDecoder {
+        
+        private final double minX;
+        private final double maxY;
+        private final double scale;
+        private int[] positions = new int[64];
+        
+        private GeometryDecoder(Rectangle2D tile, int extent) {
+            this.minX = tile.getMinX();
+            this.maxY = tile.getMaxY();
+            this.scale = tile.getWidth() / extent;
+        }
+        
+        private ArrayList<Geometry> decode(ProtobufInput commands, int type) {
+            ArrayList<Geometry> parts = new ArrayList<>();
+            int x = 0;
+            int y = 0;
+            int size = 0;
+            while(!commands.isAtEnd()) {
+                int command = (int) commands.readVarint();
+                int id = command & 0x7;
+                int count = command >>> 3;
+                if(id == CLOSE_PATH) {
+                    continue;
+                }
+                if(id != MOVE_TO && id != LINE_TO) {
+                    throw new IllegalArgumentException("unknown command " + id);
+                }
+                for(int i = 0; i < count; i++) {
+                    x += (int) commands.readSInt();
+                    y += (int) commands.readSInt();
+                    if(id == MOVE_TO) {
+                        this.addPart(parts, type, size);
+                        size = 0;
+                    }
+                    if(size + 2 > this.positions.length) {
+                        this.positions = Arrays.copyOf(this.positions, 2 * this.positions.length);
+                    }
+                    this.positions[size++] = x;
+                    this.positions[size++] = y;
+                }
+            }
+            this.addPart(parts, type, size);
+            return parts;
+        }
+        
+        private void addPart(ArrayList<Geometry> parts, int type, int size) {
+            int count = size / 2;
+            if(count == 0) {
+                return;
+            }
+            if(type == POINT) {
+                for(int i = 0; i < count; i++) {
+                    parts.add(new Point(this.mapX(this.positions[2 * i]), this.mapY(this.positions[2 * i + 1]), 0.0));
+                }
+                return;
+            }
+            if(type == POLYGON) {
+                long area = 0;
+                for(int i = 0, j = count - 1; i < count; j = i++) {
+                    area += (long) this.positions[2 * j] * this.positions[2 * i + 1]
+                            - (long) this.positions[2 * i] * this.positions[2 * j + 1];
+                }
+                if(area <= 0) {
+                    return;
+                }
+            }
+            double[] xyz = new double[3 * count];
+            for(int i = 0; i < count; i++) {
+                xyz[3 * i] = this.mapX(this.positions[2 * i]);
+                xyz[3 * i + 1] = this.mapY(this.positions[2 * i + 1]);
+            }
+            PackedCoordinates vertices = new PackedCoordinates(xyz, 0, count);
+            if(type == LINESTRING) {
+                parts.add(new Line(vertices));
+            } else if(type == POLYGON) {
+                parts.add(new Polygon(vertices));
+            }
+        }
+        
+        private double mapX(int x) {
+            return this.minX + x * this.scale;
+        }
+        
+        private double mapY(int y) {
+            return this.maxY - y * this.scale;
+        }
+        
+    }
+    
+}
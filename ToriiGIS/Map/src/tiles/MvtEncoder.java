@@ -0,0 +1,437 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tiles;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+import layer.Attributes;
+import layer.Circle;
+import layer.Clipper;
+import layer.Geometry;
+import layer.Layer;
+import layer.Line;
+import layer.Point;
+import layer.Polygon;
+import layer.RTree;
+
+/**
+ * This class encodes the features of a layer as Mapbox Vector Tiles (MVT,
+ * version 2) of a regular tile pyramid, e.g. of Web Mercator.
+ * <br>The features of a tile are found by an R-tree of the feature envelopes.
+ * Their geometries are clipped against the tile including a small buffer,
+ * quantized to the integer coordinates of the tile and encoded with the
+ * commands of the specification. The parts of a feature become one MVT
+ * feature per geometry type, circles are approximated by polygons. The
+ * attribute values are stored in the key and value tables of the tile,
+ * integers as numbers and all other values as strings.
+ * <br>The layer must not be modified while tiles are encoded. Tiles can be
+ * encoded in parallel.
+ * @author Christoph
+ */
+public class MvtEncoder {
+    
+    /**
+     * The extent of the Web Mercator projection (EPSG:3857) in metres.
+     */
+    public static final Rectangle2D WEB_MERCATOR = new Rectangle2D.Double(-20037508.342789244, -20037508.342789244,
+                                                                          2 * 20037508.342789244, 2 * 20037508.342789244);
+    
+    private static final int CIRCLE_SEGMENTS = 64;
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+    private static final int CLOSE_PATH = 7;
+    private static final int POINT = 1;
+    private static final int LINESTRING = 2;
+    private static final int POLYGON = 3;
+    private static final Pattern INTEGER = Pattern.compile("-?(0|[1-9][0-9]{0,17})");
+    
+    private final Layer layer;
+    private final String name;
+    private final Rectangle2D gridExtent;
+    private final int extent;
+    private final int buffer;
+    private final RTree<Integer> index = new RTree<>();
+    private final String[] attrNames;
+
+    /**
+     * The constructor creates an encoder for the Web Mercator tile pyramid with
+     * 4096 units per tile and a buffer of 64 units.
+     * @param layer the Layer-object in Web Mercator coordinates
+     * @param name the name of the layer in the tiles
+     */
+    public MvtEncoder(Layer layer, String name) {
+        this(layer, name, WEB_MERCATOR, 4096, 64);
+    }
+    
+    /**
+     * The constructor creates an encoder for any square tile pyramid.
+     * @param layer the Layer-object
+     * @param name the name of the layer in the tiles
+     * @param gridExtent the area of the tile on zoom level 0
+     * @param extent the number of integer units along each side of a tile
+     * @param buffer the number of units around a tile, which are kept by the clipping
+     */
+    public MvtEncoder(Layer layer, String name, Rectangle2D gridExtent, int extent, int buffer) {
+        this.layer = layer;
+        this.name = name;
+        this.gridExtent = (Rectangle2D) gridExtent.clone();
+        this.extent = extent;
+        this.buffer = buffer;
+        Attributes attributes = layer.getAttributeTable();
+        this.attrNames = attributes == null || attributes.getAttrNames() == null ? new String[0] : attributes.getAttrNames();
+        
+        List<Rectangle2D> envelopes = new ArrayList<>();
+        List<Integer> features = new ArrayList<>();
+        for(int i = 0; i < layer.getCountOfFeatures(); i++) {
+            Rectangle2D envelope = null;
+            for(Geometry geom : layer.getFeatureGeometries(i)) {
+                if(envelope == null) {
+                    envelope = (Rectangle2D) geom.getEnvelope().clone();
+                } else {
+                    envelope.add(geom.getEnvelope());
+                }
+            }
+            if(envelope != null) {
+                envelopes.add(envelope);
+                features.add(i);
+            }
+        }
+        this.index.load(envelopes, features);
+    }
+    
+    /**
+     * This function returns the area of a tile.
+     * @param z the zoom level
+     * @param x the column of the tile, counted from the left
+     * @param y the row of the tile, counted from the top
+     * @return a new Rectangle2D-object
+     */
+    public Rectangle2D getTileEnvelope(int z, int x, int y) {
+        double size = this.gridExtent.getWidth() / (1L << z);
+        return new Rectangle2D.Double(this.gridExtent.getMinX() + x * size,
+                                      this.gridExtent.getMaxY() - (y + 1) * size, size, size);
+    }
+    
+    /**
+     * This function returns the information, whether any feature intersects
+     * a tile or its buffer. If not, the tiles of higher zoom levels within
+     * this tile are empty too.
+     * @param z the zoom level
+     * @param x the column of the tile
+     * @param y the row of the tile
+     * @return TRUE if the tile may contain features
+     */
+    public boolean hasFeatures(int z, int x, int y) {
+        return !this.index.search(this.getClipArea(this.getTileEnvelope(z, x, y))).isEmpty();
+    }
+    
+    /**
+     * This function encodes a tile.
+     * @param z the zoom level
+     * @param x the column of the tile, counted from the left
+     * @param y the row of the tile, counted from the top
+     * @return the encoded tile or null if the tile contains no features
+     */
+    public byte[] encode(int z, int x, int y) {
+        Rectangle2D tile = this.getTileEnvelope(z, x, y);
+        Rectangle2D clip = this.getClipArea(tile);
+        ArrayList<Integer> features = this.index.search(clip);
+        if(features.isEmpty()) {
+            return null;
+        }
+        Collections.sort(features);
+        
+        ProtobufOutput layerMessage = new ProtobufOutput();
+        layerMessage.writeUInt(15, 2);
+        layerMessage.writeString(1, this.name);
+        HashMap<String, Integer> keys = new HashMap<>();
+        HashMap<Object, Integer> values = new HashMap<>();
+        ArrayList<String> keyList = new ArrayList<>();
+        ArrayList<Object> valueList = new ArrayList<>();
+        GeometryEncoder encoder = new GeometryEncoder(tile, this.extent);
+        ProtobufOutput featureMessage = new ProtobufOutput();
+        int[] tags = new int[2 * this.attrNames.length];
+        int countOfFeatures = 0;
+        
+        for(int featureIndex : features) {
+            int countOfTags = 0;
+            String[] attrs = this.layer.getFeatureAttrs(featureIndex);
+            for(int j = 0; attrs != null && j < Math.min(attrs.length, this.attrNames.length); j++) {
+                if(attrs[j] == null || this.attrNames[j] == null) {
+                    continue;
+                }
+                Object value = INTEGER.matcher(attrs[j]).matches() ? (Object) Long.valueOf(attrs[j]) : (Object) attrs[j];
+                tags[countOfTags++] = indexOf(this.attrNames[j], keys, keyList);
+                tags[countOfTags++] = indexOf(value, values, valueList);
+            }
+            
+            List<Geometry> parts = this.layer.getFeatureGeometries(featureIndex);
+            for(int type = POINT; type <= POLYGON; type++) {
+                encoder.reset();
+                for(Geometry geom : parts) {
+                    encoder.add(geom, type, clip);
+                }
+                if(encoder.isEmpty()) {
+                    continue;
+                }
+                featureMessage.reset();
+                featureMessage.writeUInt(1, featureIndex);
+                if(countOfTags > 0) {
+                    featureMessage.writePacked(2, tags, countOfTags);
+                }
+                featureMessage.writeUInt(3, type);
+                encoder.write(featureMessage);
+                layerMessage.writeMessage(2, featureMessage);
+                countOfFeatures++;
+            }
+        }
+        if(countOfFeatures == 0) {
+            return null;
+        }
+        
+        keyList.forEach((key) -> {
+            layerMessage.writeString(3, key);
+        });
+        ProtobufOutput valueMessage = new ProtobufOutput();
+        for(Object value : valueList) {
+            valueMessage.reset();
+            if(value instanceof Long) {
+                valueMessage.writeSInt(6, (Long) value);
+            } else {
+                valueMessage.writeString(1, (String) value);
+            }
+            layerMessage.writeMessage(4, valueMessage);
+        }
+        layerMessage.writeUInt(5, this.extent);
+        return new ProtobufOutput().writeMessage(3, layerMessage).toByteArray();
+    }
+    
+    /**
+     * This function returns the name of the layer in the tiles.
+     * @return the name as String
+     */
+    public String getName() {
+        return this.name;
+    }
+    
+    /**
+     * This function returns the names of the attributes.
+     * @return the array of names
+     */
+    public String[] getAttrNames() {
+        return Arrays.copyOf(this.attrNames, this.attrNames.length);
+    }
+    
+    /**
+     * This function returns the area of the tile on zoom level 0.
+     * @return a new Rectangle2D-object
+     */
+    public Rectangle2D getGridExtent() {
+        return (Rectangle2D) this.gridExtent.clone();
+    }
+    
+    /**
+     * This function returns the envelope of all features.
+     * @return the Rectangle2D-object or null if the layer is empty
+     */
+    public Rectangle2D getBounds() {
+        return this.index.getBounds();
+    }
+    
+    private Rectangle2D getClipArea(Rectangle2D tile) {
+        double margin = tile.getWidth() * this.buffer / this.extent;
+        return new Rectangle2D.Double(tile.getMinX() - margin, tile.getMinY() - margin,
+                                      tile.getWidth() + 2 * margin, tile.getHeight() + 2 * margin);
+    }
+    
+    private static <T> int indexOf(T item, HashMap<T, Integer> indices, ArrayList<T> items) {
+        Integer index = indices.get(item);
+        if(index == null) {
+            index = items.size();
+            indices.put(item, index);
+            items.add(item);
+        }
+        return index;
+    }
+    
+    /**
+     * This class collects the commands of the geometry of one MVT feature.
+     * The cursor is kept across all parts, i.e. every position is encoded
+     * relative to the previous one.
+     */
+    private static final class GeometryEncoder {
+        
+        private final double minX;
+        private final double maxY;
+        private final double scale;
+        private int[] commands = new int[64];
+        private int size;
+        private int cursorX;
+        private int cursorY;
+        private int countOfPoints;
+        private int[] ring = new int[64];
+        private int ringSize;
+        private final double[] segment = new double[6];
+        
+        private GeometryEncoder(Rectangle2D tile, int extent) {
+            this.minX = tile.getMinX();
+            this.maxY = tile.getMaxY();
+            this.scale = extent / tile.getWidth();
+        }
+        
+        private void reset() {
+            this.size = 0;
+            this.cursorX = 0;
+            this.cursorY = 0;
+            this.countOfPoints = 0;
+        }
+        
+        private boolean isEmpty() {
+            return this.size == 0;
+        }
+        
+        private void write(ProtobufOutput featureMessage) {
+            if(this.countOfPoints > 0) {
+                this.commands[0] = command(MOVE_TO, this.countOfPoints);
+            }
+            featureMessage.writePacked(4, this.commands, this.size);
+        }
+        
+        /**
+         * This function adds a geometry, if it has the given type.
+         * @param geom the Geometry-object
+         * @param type the type of the MVT feature
+         * @param clip the clipping area in map coordinates
+         */
+        private void add(Geometry geom, int type, Rectangle2D clip) {
+            if(geom instanceof Point && type == POINT) {
+                Point p = (Point) geom;
+                if(clip.contains(p.getXCoord(), p.getYCoord())) {
+                    if(this.countOfPoints == 0) {
+                        //the count of the MoveTo-command will be set at the end
+                        this.append(0);
+                    }
+                    this.appendPosition(this.tileX(p.getXCoord()), this.tileY(p.getYCoord()));
+                    this.countOfPoints++;
+                }
+            } else if(geom instanceof Line && type == LINESTRING) {
+                this.addPath(Clipper.clipLine((Line) geom, clip), false);
+            } else if(geom instanceof Polygon && type == POLYGON) {
+                this.addPath(Clipper.clipPolygon((Polygon) geom, clip), true);
+            } else if(geom instanceof Circle && type == POLYGON) {
+                this.addPath(Clipper.clipPolygon(((Circle) geom).toPolygon(CIRCLE_SEGMENTS), clip), true);
+            }
+        }
+        
+        private void addPath(Path2D path, boolean closed) {
+            this.ringSize = 0;
+            for(PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+                int segmentType = it.currentSegment(this.segment);
+                if(segmentType == PathIterator.SEG_MOVETO) {
+                    this.addRing(closed);
+                    this.ringSize = 0;
+                }
+                if(segmentType == PathIterator.SEG_MOVETO || segmentType == PathIterator.SEG_LINETO) {
+                    int x = this.tileX(this.segment[0]);
+                    int y = this.tileY(this.segment[1]);
+                    if(this.ringSize == 0 || x != this.ring[this.ringSize - 2] || y != this.ring[this.ringSize - 1]) {
+                        if(this.ringSize + 2 > this.ring.length) {
+                            this.ring = Arrays.copyOf(this.ring, 2 * this.ring.length);
+                        }
+                        this.ring[this.ringSize++] = x;
+                        this.ring[this.ringSize++] = y;
+                    }
+                }
+            }
+            this.addRing(closed);
+        }
+        
+        /**
+         * This function encodes the collected vertices as line or ring.
+         * Rings without area are dropped, exterior rings get a positive area
+         * in tile coordinates, i.e. they are clockwise on the screen.
+         * @param closed TRUE for a ring
+         */
+        private void addRing(boolean closed) {
+            int count = this.ringSize / 2;
+            if(closed && count > 1 && this.ring[0] == this.ring[2 * count - 2] && this.ring[1] == this.ring[2 * count - 1]) {
+                count--;
+            }
+            if(count < (closed ? 3 : 2)) {
+                return;
+            }
+            boolean reversed = false;
+            if(closed) {
+                long area = 0;
+                for(int i = 0, j = count - 1; i < count; j = i++) {
+                    area += (long) this.ring[2 * j] * this.ring[2 * i + 1] - (long) this.ring[2 * i] * this.ring[2 * j + 1];
+                }
+                if(area == 0) {
+                    return;
+                }
+                reversed = area < 0;
+            }
+            for(int k = 0; k < count; k++) {
+                int i = reversed ? (count - k) % count : k;
+                if(k == 0) {
+                    this.append(command(MOVE_TO, 1));
+                } else if(k == 1) {
+                    this.append(command(LINE_TO, count - 1));
+                }
+                this.appendPosition(this.ring[2 * i], this.ring[2 * i + 1]);
+            }
+            if(closed) {
+                this.append(command(CLOSE_PATH, 1));
+            }
+        }
+        
+        private void appendPosition(int x, int y) {
+            this.append((int) ProtobufOutput.zigzag(x - this.cursorX));
+            this.append((int) ProtobufOutput.zigzag(y - this.cursorY));
+            this.cursorX = x;
+            this.cursorY = y;
+        }
+        
+        private void append(int value) {
+            if(this.size == this.commands.length) {
+                this.commands = Arrays.copyOf(this.commands, 2 * this.commands.length);
+            }
+            this.commands[this.size++] = value;
+        }
+        
+        private int tileX(double x) {
+            return (int) Math.round((x - this.minX) * this.scale);
+        }
+        
+        private int tileY(double y) {
+            return (int) Math.round((this.maxY - y) * this.scale);
+        }
+        
+        private static int command(int id, int count) {
+            return (id & 0x7) | (count << 3);
+        }
+        
+    }
+    
+}
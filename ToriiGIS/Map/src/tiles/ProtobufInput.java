@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tiles;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class decodes messages in the Protocol Buffers format.
+ * <br>Embedded messages are read as views on the same array, i.e. nothing
+ * is copied. Fields with the wire types for 32 and 64 bit values are
+ * supported for the float and double values of vector tiles.
+ * @author Christoph
+ */
+final class ProtobufInput {
+    
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+    
+    private final byte[] buffer;
+    private int position;
+    private final int limit;
+    private int wireType;
+    
+    /**
+     * The constructor creates a reader for a whole array.
+     * @param buffer the encoded message
+     */
+    ProtobufInput(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+    
+    private ProtobufInput(byte[] buffer, int offset, int limit) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = limit;
+    }
+    
+    /**
+     * This function reads the key of the next field.
+     * @return the number of the field or -1 at the end of the message
+     */
+    int nextField() {
+        if(this.position >= this.limit) {
+            return -1;
+        }
+        long key = this.readVarint();
+        this.wireType = (int) (key & 0x7);
+        return (int) (key >>> 3);
+    }
+    
+    /**
+     * This function returns the wire type of the current field.
+     * @return the wire type
+     */
+    int getWireType() {
+        return this.wireType;
+    }
+    
+    /**
+     * This function reads a variable-length integer.
+     * @return the value
+     * @throws IllegalArgumentException if the message ends within the value
+     */
+    long readVarint() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if(this.position >= this.limit || shift > 63) {
+                throw new IllegalArgumentException("invalid variable-length integer at byte " + this.position);
+            }
+            b = this.buffer[this.position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while(b < 0);
+        return value;
+    }
+    
+    /**
+     * This function reads a zigzag-encoded signed integer.
+     * @return the value
+     */
+    long readSInt() {
+        long value = this.readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    /**
+     * This function reads a little-endian value of 32 bits.
+     * @return the bits of the value
+     */
+    int readFixed32() {
+        this.checkRemaining(4);
+        int value = 0;
+        for(int i = 0; i < 4; i++) {
+            value |= (this.buffer[this.position++] & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+    
+    /**
+     * This function reads a little-endian value of 64 bits.
+     * @return the bits of the value
+     */
+    long readFixed64() {
+        this.checkRemaining(8);
+        long value = 0;
+        for(int i = 0; i < 8; i++) {
+            value |= (long) (this.buffer[this.position++] & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+    
+    /**
+     * This function reads a string in UTF-8.
+     * @return the string
+     */
+    String readString() {
+        int length = this.readLength();
+        String value = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+        this.position += length;
+        return value;
+    }
+    
+    /**
+     * This function reads an embedded message or a packed field.
+     * @return a reader for the content of the field
+     */
+    ProtobufInput readMessage() {
+        int length = this.readLength();
+        ProtobufInput message = new ProtobufInput(this.buffer, this.position, this.position + length);
+        this.position += length;
+        return message;
+    }
+    
+    /**
+     * This function returns the information, whether the end of the message is reached.
+     * @return TRUE if all bytes have been read
+     */
+    boolean isAtEnd() {
+        return this.position >= this.limit;
+    }
+    
+    /**
+     * This function skips the value of the current field.
+     */
+    void skip() {
+        switch(this.wireType) {
+            case VARINT:
+                this.readVarint();
+                break;
+            case FIXED64:
+                this.checkRemaining(8);
+                this.position += 8;
+                break;
+            case LENGTH_DELIMITED:
+                this.position += this.readLength();
+                break;
+            case FIXED32:
+                this.checkRemaining(4);
+                this.position += 4;
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported wire type " + this.wireType);
+        }
+    }
+    
+    private int readLength() {
+        long length = this.readVarint();
+        if(length > this.limit - this.position) {
+            throw new IllegalArgumentException("the field at byte " + this.position + " exceeds the message");
+        }
+        return (int) length;
+    }
+    
+    private void checkRemaining(int length) {
+        if(this.limit - this.position < length) {
+            throw new IllegalArgumentException("the message ends unexpectedly at byte " + this.position);
+        }
+    }
+    
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tiles;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class encodes messages in the Protocol Buffers format, which is used
+ * by Mapbox Vector Tiles.
+ * <br>Only the wire types needed by vector tiles are supported: variable-length
+ * integers and length-delimited fields, i.e. strings, embedded messages and
+ * packed integers. Embedded messages are written into a separate object
+ * first, because their length precedes them.
+ * @author Christoph
+ */
+final class ProtobufOutput {
+    
+    private static final int VARINT = 0;
+    private static final int LENGTH_DELIMITED = 2;
+    
+    private byte[] buffer = new byte[256];
+    private int size = 0;
+    
+    /**
+     * This function writes an unsigned integer field.
+     * @param field the number of the field
+     * @param value the value
+     * @return this object
+     */
+    ProtobufOutput writeUInt(int field, long value) {
+        this.writeVarint((field << 3) | VARINT);
+        this.writeVarint(value);
+        return this;
+    }
+    
+    /**
+     * This function writes a zigzag-encoded signed integer field (sint64).
+     * @param field the number of the field
+     * @param value the value
+     * @return this object
+     */
+    ProtobufOutput writeSInt(int field, long value) {
+        return this.writeUInt(field, zigzag(value));
+    }
+    
+    /**
+     * This function writes a string field in UTF-8.
+     * @param field the number of the field
+     * @param value the string
+     * @return this object
+     */
+    ProtobufOutput writeString(int field, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.writeVarint((field << 3) | LENGTH_DELIMITED);
+        this.writeVarint(bytes.length);
+        this.writeRaw(bytes, 0, bytes.length);
+        return this;
+    }
+    
+    /**
+     * This function writes an embedded message.
+     * @param field the number of the field
+     * @param message the encoded message
+     * @return this object
+     */
+    ProtobufOutput writeMessage(int field, ProtobufOutput message) {
+        this.writeVarint((field << 3) | LENGTH_DELIMITED);
+        this.writeVarint(message.size);
+        this.writeRaw(message.buffer, 0, message.size);
+        return this;
+    }
+    
+    /**
+     * This function writes a packed field of unsigned integers.
+     * @param field the number of the field
+     * @param values the array of values
+     * @param count the number of values to write
+     * @return this object
+     */
+    ProtobufOutput writePacked(int field, int[] values, int count) {
+        int length = 0;
+        for(int i = 0; i < count; i++) {
+            length += sizeOfVarint(values[i] & 0xFFFFFFFFL);
+        }
+        this.writeVarint((field << 3) | LENGTH_DELIMITED);
+        this.writeVarint(length);
+        for(int i = 0; i < count; i++) {
+            this.writeVarint(values[i] & 0xFFFFFFFFL);
+        }
+        return this;
+    }
+    
+    /**
+     * This function returns the number of written bytes.
+     * @return the size in bytes
+     */
+    int size() {
+        return this.size;
+    }
+    
+    /**
+     * This function removes all written bytes, i.e. the object can be reused.
+     */
+    void reset() {
+        this.size = 0;
+    }
+    
+    /**
+     * This function returns the written bytes.
+     * @return a new array of bytes
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(this.buffer, this.size);
+    }
+    
+    /**
+     * This function zigzag-encodes a signed value, i.e. small absolute values
+     * get small unsigned values.
+     * @param value the signed value
+     * @return the encoded value
+     */
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private void writeVarint(long value) {
+        this.ensureCapacity(10);
+        while((value & ~0x7FL) != 0) {
+            this.buffer[this.size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[this.size++] = (byte) value;
+    }
+    
+    private void writeRaw(byte[] bytes, int offset, int length) {
+        this.ensureCapacity(length);
+        System.arraycopy(bytes, offset, this.buffer, this.size, length);
+        this.size += length;
+    }
+    
+    private void ensureCapacity(int length) {
+        if(this.size + length > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.size + length, 2 * this.buffer.length));
+        }
+    }
+    
+    private static int sizeOfVarint(long value) {
+        int size = 1;
+        while((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
+}
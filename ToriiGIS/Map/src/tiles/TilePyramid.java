@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tiles;
+
+import io.ProgressListener;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class generates all tiles of a pyramid between two zoom levels.
+ * <br>The tiles of one zoom level are encoded in parallel. Only the four
+ * children of tiles containing features are visited on the next level,
+ * i.e. empty regions of the grid cost nothing. Empty tiles are not stored.
+ * @author Christoph
+ */
+public final class TilePyramid {
+    
+    private static final int MAX_ZOOM = 30;
+    private static final double EARTH_RADIUS = 6378137.0;
+
+    private TilePyramid() {
+    }
+    
+    /**
+     * This function encodes all tiles of the given zoom levels and stores
+     * them together with the metadata of the pyramid.
+     * The store will not be closed.
+     * @param encoder the MvtEncoder-object of the layer
+     * @param minZoom the first zoom level
+     * @param maxZoom the last zoom level
+     * @param store the TileStore-object
+     * @param progress the listener, which gets the number of finished zoom levels
+     * @return the number of stored tiles
+     * @throws IOException if a tile cannot be stored
+     */
+    public static long generate(MvtEncoder encoder, int minZoom, int maxZoom, TileStore store,
+                                ProgressListener progress) throws IOException {
+        if(minZoom < 0 || maxZoom < minZoom || maxZoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("invalid zoom levels " + minZoom + " to " + maxZoom);
+        }
+        writeMetadata(encoder, minZoom, maxZoom, store);
+        Rectangle2D bounds = encoder.getBounds();
+        if(bounds == null) {
+            return 0;
+        }
+        
+        AtomicLong countOfTiles = new AtomicLong();
+        long[] candidates = coveringTiles(encoder.getGridExtent(), minZoom, bounds);
+        try {
+            for(int z = minZoom; z <= maxZoom; z++) {
+                int zoom = z;
+                long[] filled = Arrays.stream(candidates).parallel().filter((tile) -> {
+                    int x = (int) (tile >>> 32);
+                    int y = (int) tile;
+                    if(!encoder.hasFeatures(zoom, x, y)) {
+                        return false;
+                    }
+                    byte[] data = encoder.encode(zoom, x, y);
+                    if(data != null) {
+                        try {
+                            store.putTile(zoom, x, y, data);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                        countOfTiles.incrementAndGet();
+                    }
+                    return true;
+                }).toArray();
+                progress.progressChanged(z - minZoom + 1, maxZoom - minZoom + 1);
+                
+                candidates = new long[4 * filled.length];
+                for(int i = 0; i < filled.length; i++) {
+                    long x = 2 * (filled[i] >>> 32);
+                    long y = 2 * (filled[i] & 0xFFFFFFFFL);
+                    candidates[4 * i] = (x << 32) | y;
+                    candidates[4 * i + 1] = ((x + 1) << 32) | y;
+                    candidates[4 * i + 2] = (x << 32) | (y + 1);
+                    candidates[4 * i + 3] = ((x + 1) << 32) | (y + 1);
+                }
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return countOfTiles.get();
+    }
+    
+    /**
+     * This function returns all tiles of a zoom level, which intersect the
+     * bounds or are adjacent to them.
+     * @param grid the area of the tile on zoom level 0
+     * @param z the zoom level
+     * @param bounds the area of the features
+     * @return the tiles as columns in the upper and rows in the lower 32 bits
+     */
+    private static long[] coveringTiles(Rectangle2D grid, int z, Rectangle2D bounds) {
+        int countOfTiles = 1 << z;
+        double size = grid.getWidth() / countOfTiles;
+        int firstColumn = clamp((int) Math.floor((bounds.getMinX() - grid.getMinX()) / size) - 1, countOfTiles);
+        int lastColumn = clamp((int) Math.floor((bounds.getMaxX() - grid.getMinX()) / size) + 1, countOfTiles);
+        int firstRow = clamp((int) Math.floor((grid.getMaxY() - bounds.getMaxY()) / size) - 1, countOfTiles);
+        int lastRow = clamp((int) Math.floor((grid.getMaxY() - bounds.getMinY()) / size) + 1, countOfTiles);
+        long[] tiles = new long[(lastColumn - firstColumn + 1) * (lastRow - firstRow + 1)];
+        int i = 0;
+        for(long x = firstColumn; x <= lastColumn; x++) {
+            for(long y = firstRow; y <= lastRow; y++) {
+                tiles[i++] = (x << 32) | y;
+            }
+        }
+        return tiles;
+    }
+    
+    private static int clamp(int index, int countOfTiles) {
+        return Math.max(0, Math.min(countOfTiles - 1, index));
+    }
+    
+    /**
+     * This function stores the metadata of the MBTiles specification.
+     * The bounds are only stored for the Web Mercator grid.
+     * @param encoder the MvtEncoder-object
+     * @param minZoom the first zoom level
+     * @param maxZoom the last zoom level
+     * @param store the TileStore-object
+     * @throws IOException if the metadata cannot be stored
+     */
+    private static void writeMetadata(MvtEncoder encoder, int minZoom, int maxZoom, TileStore store) throws IOException {
+        store.putMetadata("name", encoder.getName());
+        store.putMetadata("format", "pbf");
+        store.putMetadata("type", "overlay");
+        store.putMetadata("minzoom", Integer.toString(minZoom));
+        store.putMetadata("maxzoom", Integer.toString(maxZoom));
+        Rectangle2D bounds = encoder.getBounds();
+        if(bounds != null && encoder.getGridExtent().equals(MvtEncoder.WEB_MERCATOR)) {
+            store.putMetadata("bounds", longitude(bounds.getMinX()) + "," + latitude(bounds.getMinY()) + ","
+                                        + longitude(bounds.getMaxX()) + "," + latitude(bounds.getMaxY()));
+        }
+        
+        StringBuilder json = new StringBuilder("{\"vector_layers\":[{\"id\":");
+        appendText(encoder.getName(), json);
+        json.append(",\"fields\":{");
+        String[] attrNames = encoder.getAttrNames();
+        for(int i = 0; i < attrNames.length; i++) {
+            if(i > 0) {
+                json.append(',');
+            }
+            appendText(attrNames[i] == null ? "" : attrNames[i], json);
+            json.append(":\"String\"");
+        }
+        json.append("},\"minzoom\":").append(minZoom).append(",\"maxzoom\":").append(maxZoom).append("}]}");
+        store.putMetadata("json", json.toString());
+    }
+    
+    private static double longitude(double x) {
+        return Math.toDegrees(x / EARTH_RADIUS);
+    }
+    
+    private static double latitude(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(y / EARTH_RADIUS)));
+    }
+    
+    private static void appendText(String text, StringBuilder json) {
+        json.append('"');
+        for(char c : text.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if(c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+    
+}
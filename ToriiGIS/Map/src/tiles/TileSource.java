@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tiles;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * This interface has to be implemented by all classes, which provide the
+ * encoded tiles of a pyramid, e.g. for drawing them. The tiles are addressed
+ * in the XYZ scheme, i.e. the rows are counted from the top. Tiles may be
+ * read in parallel.
+ * @author Christoph
+ */
+public interface TileSource extends Closeable {
+    
+    /**
+     * This function reads one tile.
+     * @param z the zoom level
+     * @param x the column of the tile, counted from the left
+     * @param y the row of the tile, counted from the top
+     * @return the encoded tile without compression or null if the tile does not exist
+     * @throws IOException if the tile cannot be read
+     */
+    public byte[] getTile(int z, int x, int y) throws IOException;
+    
+    /**
+     * This function returns the lowest zoom level of the pyramid.
+     * @return the zoom level
+     * @throws IOException if the zoom levels cannot be determined
+     */
+    public int getMinZoom() throws IOException;
+    
+    /**
+     * This function returns the highest zoom level of the pyramid.
+     * Tiles of higher zoom levels have to be drawn from the tiles of this level.
+     * @return the zoom level
+     * @throws IOException if the zoom levels cannot be determined
+     */
+    public int getMaxZoom() throws IOException;
+    
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tiles;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * This interface has to be implemented by all classes, which store the
+ * encoded tiles of a pyramid. The tiles are addressed in the XYZ scheme,
+ * i.e. the rows are counted from the top. Tiles may be stored in parallel.
+ * @author Christoph
+ */
+public interface TileStore extends Closeable {
+    
+    /**
+     * This function stores one tile.
+     * @param z the zoom level
+     * @param x the column of the tile, counted from the left
+     * @param y the row of the tile, counted from the top
+     * @param data the encoded tile
+     * @throws IOException if the tile cannot be stored
+     */
+    public void putTile(int z, int x, int y, byte[] data) throws IOException;
+    
+    /**
+     * This function stores a property of the whole pyramid, e.g. its name or bounds.
+     * Stores without metadata ignore the property.
+     * @param name the name of the property
+     * @param value the value of the property
+     * @throws IOException if the property cannot be stored
+     */
+    public default void putMetadata(String name, String value) throws IOException {
+    }
+    
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package tiles;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import layer.Geometry;
+import layer.Layer;
+
+/**
+ * This class draws pre-generated vector tiles of a tile source as a layer
+ * of the map.
+ * <br>Only the tiles, which intersect the visible area, are read and decoded.
+ * This happens asynchronously on background threads, the listeners are informed
+ * about the area of every loaded tile, so that it can be repainted. The decoded
+ * tiles are kept in a cache, which removes the least recently used tiles.
+ * While a tile is loading, the next cached tile of a lower zoom level is drawn
+ * instead. Beyond the highest zoom level of the source the tiles of this
+ * level are drawn enlarged. Thus the effort of drawing depends only on the
+ * size of the map view and not on the size of the source dataset.
+ * @author Christoph
+ */
+public class VectorTileLayer implements Closeable {
+    
+    public static final int DEFAULT_TILE_SIZE = 256;
+    public static final int DEFAULT_MAX_TILES = 256;
+    private static final int COUNT_OF_THREADS = 2;
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+    private static final Logger LOG = Logger.getLogger(VectorTileLayer.class.getName());
+    
+    private final TileSource source;
+    private final String layerName;
+    private final Rectangle2D gridExtent;
+    private final int tileSize;
+    private final int maxTiles;
+    private final int minZoom;
+    private final int maxZoom;
+    private final Layer emptyTile;
+    private final LinkedHashMap<Long, Layer> tiles;
+    private final HashSet<Long> pendingTiles = new HashSet<>();
+    private final CopyOnWriteArrayList<Consumer<Rectangle2D>> tileListeners = new CopyOnWriteArrayList<>();
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The constructor of this class for tiles in the web mercator grid
+     * with a size of 256 pixel.
+     * @param source the source of the encoded tiles
+     * @param layerName the name of the layer in the tiles, null for the first layer
+     * @throws IOException if the zoom levels of the source cannot be read
+     */
+    public VectorTileLayer(TileSource source, String layerName) throws IOException {
+        this(source, layerName, MvtEncoder.WEB_MERCATOR, DEFAULT_TILE_SIZE, DEFAULT_MAX_TILES);
+    }
+    
+    /**
+     * The constructor of this class.
+     * @param source the source of the encoded tiles
+     * @param layerName the name of the layer in the tiles, null for the first layer
+     * @param gridExtent the area of the tile at zoom level 0 in map coordinates
+     * @param tileSize the size of a tile on the screen in pixel
+     * @param maxTiles the maximum count of decoded tiles in the cache
+     * @throws IOException if the zoom levels of the source cannot be read
+     */
+    public VectorTileLayer(TileSource source, String layerName, Rectangle2D gridExtent,
+                           int tileSize, int maxTiles) throws IOException {
+        if(tileSize <= 0 || maxTiles <= 0) {
+            throw new IllegalArgumentException("the tile size and the count of tiles have to be positive");
+        }
+        this.source = source;
+        this.layerName = layerName;
+        this.gridExtent = gridExtent;
+        this.tileSize = tileSize;
+        this.maxTiles = maxTiles;
+        this.minZoom = source.getMinZoom();
+        this.maxZoom = Math.min(source.getMaxZoom(), 29);
+        this.emptyTile = MvtDecoder.decode(new byte[0], layerName, gridExtent);
+        this.tiles = new LinkedHashMap<Long, Layer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Layer> eldest) {
+                return this.size() > maxTiles;
+            }
+        };
+        this.executor = new ThreadPoolExecutor(COUNT_OF_THREADS, COUNT_OF_THREADS, 0L, TimeUnit.MILLISECONDS,
+                                               new LinkedBlockingQueue<>(), createThreadFactory());
+    }
+    
+    /**
+     * This function adds a listener, which is informed about the area of
+     * every tile after it has been loaded. The listener is called on a
+     * background thread.
+     * @param listener a Consumer of the tile area in map coordinates
+     */
+    public void addTileListener(Consumer<Rectangle2D> listener) {
+        this.tileListeners.add(listener);
+    }
+    
+    /**
+     * This function removes a listener.
+     * @param listener the listener, that has to be removed
+     */
+    public void removeTileListener(Consumer<Rectangle2D> listener) {
+        this.tileListeners.remove(listener);
+    }
+    
+    /**
+     * This function draws all tiles, which intersect the visible area.
+     * Missing tiles are requested and drawn after the listeners have been informed.
+     * @param g2 the Graphics2D-object with the map transformation
+     * @param visibleArea the area in map units, that has to be drawn
+     * @param scale the scale of the map, i.e. the number of pixels per map unit
+     */
+    public void draw(Graphics2D g2, Rectangle2D visibleArea, double scale) {
+        Rectangle2D area = visibleArea.createIntersection(this.gridExtent);
+        if(area.isEmpty()) {
+            return;
+        }
+        int z = this.getZoom(scale);
+        int countOfTiles = 1 << z;
+        double size = this.gridExtent.getWidth() / countOfTiles;
+        int minX = this.toTileIndex((area.getMinX() - this.gridExtent.getMinX()) / size, countOfTiles);
+        int maxX = this.toTileIndex((area.getMaxX() - this.gridExtent.getMinX()) / size, countOfTiles);
+        int minY = this.toTileIndex((this.gridExtent.getMaxY() - area.getMaxY()) / size, countOfTiles);
+        int maxY = this.toTileIndex((this.gridExtent.getMaxY() - area.getMinY()) / size, countOfTiles);
+        if((long) (maxX - minX + 1) * (maxY - minY + 1) > this.maxTiles / 2) {
+            LOG.log(Level.FINE, "too many tiles of zoom level {0} are visible", z);
+            return;
+        }
+        
+        for(int x = minX; x <= maxX; x++) {
+            for(int y = minY; y <= maxY; y++) {
+                Layer tile = this.getTile(z, x, y);
+                for(int level = z - 1; tile == null && level >= this.minZoom; level--) {
+                    tile = this.getCachedTile(level, x >> (z - level), y >> (z - level));
+                }
+                if(tile != null) {
+                    Rectangle2D envelope = this.getTileEnvelope(z, x, y);
+                    Graphics2D tileGraphics = (Graphics2D) g2.create();
+                    try {
+                        tileGraphics.clip(envelope);
+                        for(Geometry geom : tile.queryGeometries(envelope.createIntersection(visibleArea))) {
+                            geom.draw(tileGraphics);
+                        }
+                    } finally {
+                        tileGraphics.dispose();
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * This function returns the zoom level of the tiles, which are drawn at
+     * the given scale, i.e. whose size on the screen comes closest to the tile size.
+     * @param scale the number of pixels per map unit
+     * @return the zoom level between the lowest and the highest level of the source
+     */
+    public int getZoom(double scale) {
+        double level = Math.log(scale * this.gridExtent.getWidth() / this.tileSize) / Math.log(2);
+        int zoom = Double.isNaN(level) ? this.minZoom : (int) Math.round(Math.max(level, -1.0));
+        return Math.max(this.minZoom, Math.min(this.maxZoom, zoom));
+    }
+    
+    /**
+     * This function returns the area of a tile.
+     * @param z the zoom level
+     * @param x the column of the tile, counted from the left
+     * @param y the row of the tile, counted from the top
+     * @return a new Rectangle2D-object
+     */
+    public Rectangle2D getTileEnvelope(int z, int x, int y) {
+        double size = this.gridExtent.getWidth() / (1L << z);
+        return new Rectangle2D.Double(this.gridExtent.getMinX() + x * size,
+                                      this.gridExtent.getMaxY() - (y + 1) * size, size, size);
+    }
+    
+    /**
+     * This function returns the count of decoded tiles in the cache.
+     * @return the count as int value
+     */
+    public int getCountOfCachedTiles() {
+        synchronized(this.tiles) {
+            return this.tiles.size();
+        }
+    }
+    
+    /**
+     * This function returns the name of the layer in the tiles.
+     * @return the name as String or null for the first layer
+     */
+    public String getLayerName() {
+        return this.layerName;
+    }
+    
+    /**
+     * This function returns the lowest zoom level of the tile source.
+     * @return the zoom level
+     */
+    public int getMinZoom() {
+        return this.minZoom;
+    }
+    
+    /**
+     * This function returns the highest zoom level of the tile source.
+     * @return the zoom level
+     */
+    public int getMaxZoom() {
+        return this.maxZoom;
+    }
+    
+    /**
+     * This function stops loading tiles and closes the tile source.
+     * @throws IOException if the tile source cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.executor.shutdownNow();
+        try {
+            this.executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized(this.tiles) {
+            this.tiles.clear();
+            this.pendingTiles.clear();
+        }
+        this.source.close();
+    }
+    
+    /**
+     * This function returns a decoded tile from the cache. If the tile is
+     * not cached, it will be loaded in the background.
+     * @return the Layer-object of the tile or null, if the tile is loading
+     */
+    private Layer getTile(int z, int x, int y) {
+        long key = toKey(z, x, y);
+        synchronized(this.tiles) {
+            Layer tile = this.tiles.get(key);
+            if(tile != null || !this.pendingTiles.add(key) || this.executor.isShutdown()) {
+                return tile;
+            }
+        }
+        this.executor.execute(() -> {
+            Rectangle2D envelope = this.getTileEnvelope(z, x, y);
+            Layer tile = this.emptyTile;
+            try {
+                byte[] data = this.source.getTile(z, x, y);
+                if(data != null) {
+                    tile = MvtDecoder.decode(data, this.layerName, envelope);
+                }
+            } catch (IOException | IllegalArgumentException ex) {
+                LOG.log(Level.WARNING, "the tile " + z + "/" + x + "/" + y + " cannot be loaded", ex);
+            }
+            synchronized(this.tiles) {
+                this.pendingTiles.remove(key);
+                this.tiles.put(key, tile);
+            }
+            this.tileListeners.forEach((listener) -> {
+                listener.accept(envelope);
+            });
+        });
+        return null;
+    }
+    
+    private Layer getCachedTile(int z, int x, int y) {
+        synchronized(this.tiles) {
+            return this.tiles.get(toKey(z, x, y));
+        }
+    }
+    
+    private int toTileIndex(double position, int countOfTiles) {
+        return Math.max(0, Math.min(countOfTiles - 1, (int) Math.floor(position)));
+    }
+    
+    private static long toKey(int z, int x, int y) {
+        return ((long) z << 58) | ((long) x << 29) | y;
+    }
+    
+    private static ThreadFactory createThreadFactory() {
+        int poolNumber = POOL_NUMBER.incrementAndGet();
+        AtomicInteger threadNumber = new AtomicInteger();
+        return (runnable) -> {
+            Thread thread = new Thread(runnable, "vector-tiles-" + poolNumber + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package view;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Iterator;
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+/**
+ * This class collects the dirty regions of a component and repaints them
+ * separately on the event dispatch thread.
+ * <br>The RepaintManager of Swing combines all dirty regions of a component
+ * into their bounding rectangle, i.e. two small changes in opposite corners
+ * repaint the whole component. This class merges only regions, which are
+ * close to each other, and paints every remaining region on its own. If
+ * there are too many regions or they cover most of the component, the
+ * component is repainted as a whole.
+ * @author Christoph
+ */
+final class DirtyRegions {
+    
+    private static final int MERGE_DISTANCE = 16;
+    private static final int MAX_REGIONS = 32;
+    
+    private final JComponent component;
+    private final ArrayList<Rectangle> regions = new ArrayList<>();
+    private boolean flushScheduled = false;
+
+    /**
+     * The constructor of this class.
+     * @param component the component, whose regions have to be repainted
+     */
+    DirtyRegions(JComponent component) {
+        this.component = component;
+    }
+    
+    /**
+     * This function adds a dirty region. The region will be repainted after
+     * all pending events have been processed.
+     * @param region the region in pixel
+     */
+    synchronized void add(Rectangle region) {
+        Rectangle dirty = region.intersection(new Rectangle(0, 0, this.component.getWidth(),
+                                                            this.component.getHeight()));
+        if(dirty.isEmpty()) {
+            return;
+        }
+        
+        //merge the new region with all regions nearby
+        boolean merged = true;
+        while(merged) {
+            merged = false;
+            Rectangle extended = new Rectangle(dirty);
+            extended.grow(MERGE_DISTANCE, MERGE_DISTANCE);
+            Iterator<Rectangle> iterator = this.regions.iterator();
+            while(iterator.hasNext()) {
+                Rectangle other = iterator.next();
+                if(extended.intersects(other)) {
+                    dirty = dirty.union(other);
+                    iterator.remove();
+                    merged = true;
+                }
+            }
+        }
+        this.regions.add(dirty);
+        if(this.regions.size() > MAX_REGIONS) {
+            Rectangle bounds = this.regions.get(0);
+            for(Rectangle other : this.regions) {
+                bounds = bounds.union(other);
+            }
+            this.regions.clear();
+            this.regions.add(bounds);
+        }
+        
+        if(!this.flushScheduled) {
+            this.flushScheduled = true;
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+    
+    /**
+     * This function paints all collected regions.
+     */
+    private void flush() {
+        ArrayList<Rectangle> dirty;
+        synchronized(this) {
+            dirty = new ArrayList<>(this.regions);
+            this.regions.clear();
+            this.flushScheduled = false;
+        }
+        long dirtyArea = 0;
+        for(Rectangle region : dirty) {
+            dirtyArea += (long) region.width * region.height;
+        }
+        if(2 * dirtyArea > (long) this.component.getWidth() * this.component.getHeight()) {
+            this.component.repaint();
+            return;
+        }
+        dirty.forEach((region) -> {
+            this.component.paintImmediately(region);
+        });
+    }
+    
+}
@@ -5,11 +5,48 @@
  */
 package view;
 
+import io.LayerReader;
+import java.awt.BorderLayout;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.ChangeListener;
+import label.Labeler;
+import layer.Geometry;
+import layer.Layer;
+import layer.LayerEvent;
+import layer.LayerListener;
+import layer.MemoryManager;
+import layer.TimeIndex;
 import org.netbeans.api.settings.ConvertAsProperties;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
 import org.openide.windows.TopComponent;
 import org.openide.util.NbBundle.Messages;
+import raster.RasterLayer;
+import style.LayerStyle;
+import tiles.VectorTileLayer;
 
 /**
  * Top component which displays something.
@@ -37,12 +74,789 @@ import org.openide.util.NbBundle.Messages;
 })
 public final class MapViewTopComponent extends TopComponent {
 
+    public static final String PROP_SELECTED_GEOMETRY = "selectedGeometry";
+    public static final String PROP_HOVERED_GEOMETRY = "hoveredGeometry";
+    public static final String PROP_TIME_WINDOW = "timeWindow";
+    public static final String PROP_PLAYING = "playing";
+    private static final int PICK_TOLERANCE = 3;
+    private static final int REPAINT_MARGIN = 4;
+    private static final String SESSION_VERSION = "1.1";
+    private static final long RESTORE_TARGET_MILLIS = 50;
+    private static final long FIRST_PAINT_TARGET_MILLIS = 250;
+    private static final int FRAME_MILLIS = 16;
+    private static final ExecutorService SESSION_EXECUTOR = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "map-session");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ExecutorService MEMORY_EXECUTOR = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "map-memory");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Logger LOG = Logger.getLogger(MapViewTopComponent.class.getName());
+    
+    private final ArrayList<Layer> layers = new ArrayList<>();
+    private final ArrayList<VectorTileLayer> tileLayers = new ArrayList<>();
+    private final ArrayList<RasterLayer> rasterLayers = new ArrayList<>();
+    private final IdentityHashMap<Layer, LayerStyle> layerStyles = new IdentityHashMap<>();
+    private final ArrayList<Labeler> labelers = new ArrayList<>();
+    private final IdentityHashMap<Layer, SessionLayer> sessionLayers = new IdentityHashMap<>();
+    private final ArrayList<SessionLayer> pendingLayers = new ArrayList<>();
+    private long restoreTime = 0;
+    private final DirtyRegions dirtyRegions = new DirtyRegions(this);
+    private final AffineTransform mapTransform = new AffineTransform();
+    private Geometry selectedGeometry;
+    private Geometry hoveredGeometry;
+    private double timeWindowStart = Double.NaN;
+    private double timeWindowEnd = Double.NaN;
+    private double playbackSpeed = 0.0;
+    private long lastFrame = 0;
+    private final Timer playbackTimer = new Timer(FRAME_MILLIS, (e) -> {
+        nextFrame();
+    });
+    private TimeSlider timeSlider = null;
+    private final LayerListener layerListener = new LayerListener() {
+        @Override
+        public void layerChanged(LayerEvent e) {
+            repaintMapArea(e.getDrawnArea(1.0 / getScale()));
+        }
+    };
+    private final ChangeListener styleListener = (e) -> {
+        repaint();
+    };
+    private final ChangeListener labelListener = (e) -> {
+        SwingUtilities.invokeLater(() -> {
+            repaint();
+        });
+    };
+    private final Consumer<Rectangle2D> tileListener = (tileArea) -> {
+        SwingUtilities.invokeLater(() -> {
+            repaintMapArea(tileArea);
+        });
+    };
+
     public MapViewTopComponent() {
         initComponents();
         setName(Bundle.CTL_MapViewTopComponent());
         setToolTipText(Bundle.HINT_MapViewTopComponent());
         putClientProperty(TopComponent.PROP_CLOSING_DISABLED, Boolean.TRUE);
+        
+        MouseAdapter pickListener = new MouseAdapter() {
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                setHoveredGeometry(pick(e.getPoint(), PICK_TOLERANCE));
+            }
 
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                setSelectedGeometry(pick(e.getPoint(), PICK_TOLERANCE));
+            }
+        };
+        addMouseListener(pickListener);
+        addMouseMotionListener(pickListener);
+    }
+    
+    /**
+     * This function adds a new layer on top of all other layers of the map.
+     * @param layer the new Layer-object
+     */
+    public void addLayer(Layer layer) {
+        this.layers.add(layer);
+        layer.addLayerListener(this.layerListener);
+        this.manageMemory(layer);
+        repaint();
+    }
+    
+    /**
+     * This function adds a layer, which was read from a file, on top of all
+     * other layers of the map. The layer will be stored in the session of the
+     * map view by its path, and a thumbnail of the layer is created in the
+     * background for restoring the session. The geometries are copied for
+     * the thumbnail by the calling thread, i.e. the event dispatch thread.
+     * @param layer the new Layer-object
+     * @param source the path of the file, from which the layer was read
+     */
+    public void addLayer(Layer layer, Path source) {
+        this.addLayer(layer);
+        SessionLayer sessionLayer = new SessionLayer(source, layer.getEnvelope(), layer.getCountOfFeatures(),
+                                                     lastModified(source));
+        sessionLayer.setPosition(Integer.MAX_VALUE);
+        this.sessionLayers.put(layer, sessionLayer);
+        Thumbnails.Sketch sketch = Thumbnails.sketch(layer);
+        SESSION_EXECUTOR.execute(() -> {
+            try {
+                Thumbnails.update(sketch, source);
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, "the thumbnail of " + source + " cannot be created", ex);
+            }
+        });
+    }
+    
+    /**
+     * This function removes a layer from the map.
+     * @param layer the Layer-object, that has to be removed
+     */
+    public void removeLayer(Layer layer) {
+        if(this.layers.remove(layer)) {
+            layer.removeLayerListener(this.layerListener);
+            this.sessionLayers.remove(layer);
+            MemoryManager.getDefault().unregister(layer);
+            this.setLayerStyle(layer, null);
+            repaint();
+        }
+    }
+    
+    /**
+     * This function sets the style of a layer, e.g. for a thematic map.
+     * The geometries of a layer without style are drawn with their own style.
+     * @param layer the Layer-object of the map
+     * @param style the new LayerStyle-object or null for removing the style
+     */
+    public void setLayerStyle(Layer layer, LayerStyle style) {
+        LayerStyle oldStyle = style == null ? this.layerStyles.remove(layer) : this.layerStyles.put(layer, style);
+        if(oldStyle != null) {
+            oldStyle.removeChangeListener(this.styleListener);
+        }
+        if(style != null) {
+            style.addChangeListener(this.styleListener);
+        }
+        repaint();
+    }
+    
+    /**
+     * This function returns the style of a layer.
+     * @param layer the Layer-object of the map
+     * @return the LayerStyle-object or null, if the layer has no style
+     */
+    public LayerStyle getLayerStyle(Layer layer) {
+        return this.layerStyles.get(layer);
+    }
+    
+    /**
+     * This function adds a raster layer to the map. All raster layers are
+     * drawn below the other layers in the order of their addition.
+     * @param rasterLayer the new RasterLayer-object
+     */
+    public void addRasterLayer(RasterLayer rasterLayer) {
+        this.rasterLayers.add(rasterLayer);
+        repaint();
+    }
+    
+    /**
+     * This function removes a raster layer from the map.
+     * The layer will not be closed.
+     * @param rasterLayer the RasterLayer-object, that has to be removed
+     */
+    public void removeRasterLayer(RasterLayer rasterLayer) {
+        if(this.rasterLayers.remove(rasterLayer)) {
+            repaint();
+        }
+    }
+    
+    /**
+     * This function returns all raster layers in drawing order.
+     * @return an ArrayList of RasterLayer-objects
+     */
+    public ArrayList<RasterLayer> getRasterLayers() {
+        return this.rasterLayers;
+    }
+    
+    /**
+     * This function adds a layer of vector tiles to the map. All tile layers
+     * are drawn above the raster layers and below the other layers in the
+     * order of their addition.
+     * @param tileLayer the new VectorTileLayer-object
+     */
+    public void addTileLayer(VectorTileLayer tileLayer) {
+        this.tileLayers.add(tileLayer);
+        tileLayer.addTileListener(this.tileListener);
+        repaint();
+    }
+    
+    /**
+     * This function removes a layer of vector tiles from the map.
+     * The layer will not be closed.
+     * @param tileLayer the VectorTileLayer-object, that has to be removed
+     */
+    public void removeTileLayer(VectorTileLayer tileLayer) {
+        if(this.tileLayers.remove(tileLayer)) {
+            tileLayer.removeTileListener(this.tileListener);
+            repaint();
+        }
+    }
+    
+    /**
+     * This function returns all layers of vector tiles in drawing order.
+     * @return an ArrayList of VectorTileLayer-objects
+     */
+    public ArrayList<VectorTileLayer> getTileLayers() {
+        return this.tileLayers;
+    }
+    
+    /**
+     * This function adds labels to the map. All labels are drawn above
+     * the layers in the order of their addition.
+     * @param labeler the new Labeler-object
+     */
+    public void addLabeler(Labeler labeler) {
+        this.labelers.add(labeler);
+        labeler.addChangeListener(this.labelListener);
+        repaint();
+    }
+    
+    /**
+     * This function removes labels from the map.
+     * The labeler will not be disposed.
+     * @param labeler the Labeler-object, that has to be removed
+     */
+    public void removeLabeler(Labeler labeler) {
+        if(this.labelers.remove(labeler)) {
+            labeler.removeChangeListener(this.labelListener);
+            repaint();
+        }
+    }
+    
+    /**
+     * This function returns all labelers of the map in drawing order.
+     * @return an ArrayList of Labeler-objects
+     */
+    public ArrayList<Labeler> getLabelers() {
+        return this.labelers;
+    }
+    
+    /**
+     * This function repaints only the part of the map view, which shows
+     * the given area. A small margin is added for antialiasing.
+     * <br>The areas are collected as dirty regions until the next cycle of the
+     * event dispatch thread. Distant regions are painted separately instead
+     * of painting their common bounding rectangle, and regions outside of
+     * the view are ignored. Only the geometries within a region are drawn.
+     * @param mapArea the area in map units, that has to be repainted
+     */
+    public void repaintMapArea(Rectangle2D mapArea) {
+        if(mapArea == null) {
+            return;
+        }
+        Rectangle screenArea = this.mapTransform.createTransformedShape(mapArea).getBounds();
+        screenArea.grow(REPAINT_MARGIN, REPAINT_MARGIN);
+        this.dirtyRegions.add(screenArea);
+    }
+    
+    /**
+     * This function returns all layers of the map in drawing order,
+     * i.e. the last layer is the top one.
+     * @return an ArrayList of Layer-objects
+     */
+    public ArrayList<Layer> getLayers() {
+        return this.layers;
+    }
+    
+    /**
+     * This function returns the transformation from map coordinates
+     * into screen coordinates.
+     * @return the AffineTransform-object of the map view
+     */
+    public AffineTransform getMapTransform() {
+        return this.mapTransform;
+    }
+    
+    /**
+     * This function paints all layers of the map.
+     * <br>Only the geometries, whose envelopes intersect the area to repaint,
+     * are fetched from the spatial index of each layer. The geometries clip
+     * themselves against this area before drawing. Layers with a style are
+     * drawn with the symbols of its rules. The raster layers and the
+     * layers of vector tiles are drawn first and read only the visible tiles.
+     * The labels are drawn last in screen coordinates, their placement is
+     * computed in the background once per zoom level.
+     * <br>If a time window is set, temporal layers draw only the features
+     * within the window, which are fetched from their spatio-temporal index.
+     * <br>Layers of a restored session, which are not read yet, are drawn
+     * as thumbnails. They are read in the background, when they become
+     * visible for the first time.
+     * @param g a Graphics-object for drawing the map
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if(this.restoreTime != 0) {
+            long millis = (System.nanoTime() - this.restoreTime) / 1000000;
+            this.restoreTime = 0;
+            LOG.log(millis > FIRST_PAINT_TARGET_MILLIS ? Level.WARNING : Level.INFO,
+                    "the map was painted {0} ms after restoring the session (target: {1} ms)",
+                    new Object[] {millis, FIRST_PAINT_TARGET_MILLIS});
+        }
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.transform(this.mapTransform);
+            Rectangle2D visibleArea = this.getVisibleMapArea(g2);
+            double scale = this.getScale();
+            for(RasterLayer rasterLayer : this.rasterLayers) {
+                rasterLayer.draw(g2, visibleArea, scale);
+            }
+            for(VectorTileLayer tileLayer : this.tileLayers) {
+                tileLayer.draw(g2, visibleArea, scale);
+            }
+            this.drawPendingLayers(g2, visibleArea);
+            for(Layer layer : this.layers) {
+                List<Geometry> geometries = this.queryGeometries(layer, visibleArea);
+                LayerStyle style = this.layerStyles.get(layer);
+                if(style != null) {
+                    style.draw(g2, layer, geometries, scale);
+                    continue;
+                }
+                for(Geometry geom : geometries) {
+                    geom.draw(g2);
+                }
+            }
+            if(!this.labelers.isEmpty()) {
+                Graphics2D labelGraphics = (Graphics2D) g.create();
+                try {
+                    for(Labeler labeler : this.labelers) {
+                        labeler.draw(labelGraphics, this.mapTransform, visibleArea);
+                    }
+                } finally {
+                    labelGraphics.dispose();
+                }
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+    
+    /**
+     * This function returns the geometries of a layer within an area, which
+     * are visible in the current time window.
+     * @param layer the Layer-object of the map
+     * @param area the search area in map units
+     * @return an ArrayList of candidate geometries
+     */
+    private List<Geometry> queryGeometries(Layer layer, Rectangle2D area) {
+        if(this.hasTimeWindow() && layer.isTemporal()) {
+            return layer.queryGeometries(area, this.timeWindowStart, this.timeWindowEnd);
+        }
+        return layer.queryGeometries(area);
+    }
+    
+    /**
+     * This function draws the thumbnails of the visible layers, which are
+     * not read yet, and starts reading them.
+     * @param g2 the Graphics2D-object with the map transformation
+     * @param visibleArea the area in map units, that has to be drawn
+     */
+    private void drawPendingLayers(Graphics2D g2, Rectangle2D visibleArea) {
+        for(SessionLayer pending : this.pendingLayers) {
+            Rectangle2D envelope = pending.getEnvelope();
+            if(envelope.getMaxX() < visibleArea.getMinX() || envelope.getMinX() > visibleArea.getMaxX()
+                    || envelope.getMaxY() < visibleArea.getMinY() || envelope.getMinY() > visibleArea.getMaxY()) {
+                continue;
+            }
+            if(pending.request()) {
+                this.readPendingLayer(pending);
+            }
+            BufferedImage thumbnail = pending.getThumbnail();
+            if(thumbnail != null) {
+                g2.drawImage(thumbnail, new AffineTransform(envelope.getWidth() / thumbnail.getWidth(), 0.0, 0.0,
+                                                            envelope.getHeight() / thumbnail.getHeight(),
+                                                            envelope.getX(), envelope.getY()), null);
+            }
+        }
+    }
+    
+    /**
+     * This function reads a layer of the restored session in the background
+     * and inserts it at its position in the drawing order.
+     * @param pending the SessionLayer-object of the layer
+     */
+    private void readPendingLayer(SessionLayer pending) {
+        long start = System.nanoTime();
+        Path source = pending.getSource();
+        SESSION_EXECUTOR.execute(() -> {
+            try {
+                Layer layer = LayerReader.forFile(source).read(source);
+                SessionLayer loaded = new SessionLayer(source, layer.getEnvelope(), layer.getCountOfFeatures(),
+                                                       lastModified(source));
+                loaded.setPosition(pending.getPosition());
+                //the layer is not shown yet, i.e. it can be sketched by this thread
+                Thumbnails.update(Thumbnails.sketch(layer), source);
+                SwingUtilities.invokeLater(() -> {
+                    if(!this.pendingLayers.remove(pending)) {
+                        return;
+                    }
+                    int index = 0;
+                    while(index < this.layers.size() && this.positionOf(this.layers.get(index)) <= loaded.getPosition()) {
+                        index++;
+                    }
+                    this.layers.add(index, layer);
+                    layer.addLayerListener(this.layerListener);
+                    this.sessionLayers.put(layer, loaded);
+                    this.manageMemory(layer);
+                    LOG.log(Level.INFO, "the layer {0} was read {1} ms after its first painting",
+                            new Object[] {source, (System.nanoTime() - start) / 1000000});
+                    repaint();
+                });
+            } catch (IOException | RuntimeException ex) {
+                LOG.log(Level.WARNING, "the layer " + source + " of the session cannot be read", ex);
+                SwingUtilities.invokeLater(() -> {
+                    this.pendingLayers.remove(pending);
+                    repaint();
+                });
+            }
+        });
+    }
+    
+    /**
+     * This function registers a new layer of the map at the memory manager and
+     * spills the coordinates of cold layers, if the memory budget is exceeded.
+     * The coordinates are selected by the event dispatch thread, the temporary
+     * file is written in the background.
+     * @param layer the new Layer-object
+     */
+    private void manageMemory(Layer layer) {
+        MemoryManager manager = MemoryManager.getDefault();
+        manager.register(layer);
+        manager.enforce(MEMORY_EXECUTOR).whenComplete((released, ex) -> {
+            if(ex != null) {
+                LOG.log(Level.WARNING, "the coordinates of the layers cannot be spilled to disk", ex);
+            }
+        });
+    }
+    
+    /**
+     * This function returns the position of a layer in the drawing order of the
+     * restored session.
+     * @param layer the Layer-object of the map
+     * @return the zero-based index in the session, Integer.MAX_VALUE for layers added later
+     */
+    private int positionOf(Layer layer) {
+        SessionLayer sessionLayer = this.sessionLayers.get(layer);
+        return sessionLayer == null ? Integer.MAX_VALUE : sessionLayer.getPosition();
+    }
+    
+    /**
+     * This function returns the modification time of a file.
+     * @param file the path of the file
+     * @return the time in milliseconds, 0 if the file cannot be accessed
+     */
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+    
+    /**
+     * This function returns the area of the map in map units, which has to be
+     * repainted, extended by the repaint margin.
+     * @param g2 the Graphics2D-object with the map transformation
+     * @return a Rectangle2D-object in map units
+     */
+    private Rectangle2D getVisibleMapArea(Graphics2D g2) {
+        Rectangle2D area = g2.getClip() != null
+                ? g2.getClip().getBounds2D()
+                : this.screenToMapArea(new Rectangle(0, 0, getWidth(), getHeight()));
+        double margin = REPAINT_MARGIN / this.getScale();
+        return new Rectangle2D.Double(area.getX() - margin,
+                                      area.getY() - margin,
+                                      area.getWidth() + 2 * margin,
+                                      area.getHeight() + 2 * margin);
+    }
+    
+    /**
+     * This function converts a rectangle of the screen into map coordinates.
+     * @param screenArea the rectangle in pixel
+     * @return the bounds of the rectangle in map units
+     */
+    public Rectangle2D screenToMapArea(Rectangle screenArea) {
+        try {
+            return this.mapTransform.createInverse().createTransformedShape(screenArea).getBounds2D();
+        } catch (NoninvertibleTransformException ex) {
+            LOG.log(Level.WARNING, "the map transformation cannot be inverted", ex);
+            return screenArea.getBounds2D();
+        }
+    }
+    
+    /**
+     * This function returns the scale of the map, i.e. the number of pixels
+     * per map unit.
+     * @return the scale as double value
+     */
+    public double getScale() {
+        double scale = Math.hypot(this.mapTransform.getScaleX(), this.mapTransform.getShearY());
+        return scale > 0.0 ? scale : 1.0;
+    }
+    
+    /**
+     * This function converts a screen position into map coordinates.
+     * @param screenPosition the position in pixel
+     * @return the position in map units
+     */
+    public Point2D screenToMap(Point screenPosition) {
+        try {
+            return this.mapTransform.inverseTransform(screenPosition, null);
+        } catch (NoninvertibleTransformException ex) {
+            LOG.log(Level.WARNING, "the map transformation cannot be inverted", ex);
+            return new Point2D.Double(screenPosition.getX(), screenPosition.getY());
+        }
+    }
+    
+    /**
+     * This function returns the top-most geometry at the given screen position.
+     * <br>The spatial index of every layer is searched for the nearest geometry
+     * within the tolerance around the position, i.e. of overlapping candidates
+     * of one layer the closest one is picked. Features of temporal layers
+     * outside of the time window cannot be picked.
+     * @param screenPosition the position in pixel
+     * @param tolerance the tolerance around the position in pixel
+     * @return the Geometry-object found or null, if there is no geometry at the position
+     */
+    public Geometry pick(Point screenPosition, int tolerance) {
+        Point2D mapPosition = this.screenToMap(screenPosition);
+        double mapTolerance = tolerance / this.getScale();
+        for(int i = this.layers.size() - 1; i >= 0; i--) {
+            Layer layer = this.layers.get(i);
+            if(this.hasTimeWindow() && layer.isTemporal()) {
+                Geometry nearest = this.pickInTimeWindow(layer, mapPosition, mapTolerance);
+                if(nearest != null) {
+                    return nearest;
+                }
+                continue;
+            }
+            List<Geometry> nearest = layer.nearestGeometries(mapPosition.getX(), mapPosition.getY(),
+                                                             1, mapTolerance);
+            if(!nearest.isEmpty()) {
+                return nearest.get(0);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * This function returns the geometry of a temporal layer nearest to the
+     * given position, which is within the time window.
+     * @param layer the temporal Layer-object
+     * @param mapPosition the position in map units
+     * @param mapTolerance the tolerance around the position in map units
+     * @return the Geometry-object found or null
+     */
+    private Geometry pickInTimeWindow(Layer layer, Point2D mapPosition, double mapTolerance) {
+        Rectangle2D area = new Rectangle2D.Double(mapPosition.getX() - mapTolerance, mapPosition.getY() - mapTolerance,
+                                                  2 * mapTolerance, 2 * mapTolerance);
+        Geometry nearest = null;
+        double minDistance = mapTolerance;
+        for(Geometry geom : this.queryGeometries(layer, area)) {
+            double distance = geom.distance(mapPosition.getX(), mapPosition.getY());
+            if(distance <= minDistance) {
+                nearest = geom;
+                minDistance = distance;
+            }
+        }
+        return nearest;
+    }
+    
+    /**
+     * This function sets the time window of the map. Temporal layers draw
+     * only the features, whose time intervals overlap the window. All
+     * listeners of the property <code>PROP_TIME_WINDOW</code> are informed.
+     * @param start the start of the time window, NaN to show all features
+     * @param end the end of the time window, NaN to show all features
+     */
+    public void setTimeWindow(double start, double end) {
+        if(!(start <= end) && !(Double.isNaN(start) && Double.isNaN(end))) {
+            throw new IllegalArgumentException("the start of the time window must not be after its end");
+        }
+        double[] oldWindow = {this.timeWindowStart, this.timeWindowEnd};
+        this.timeWindowStart = start;
+        this.timeWindowEnd = end;
+        firePropertyChange(PROP_TIME_WINDOW, oldWindow, new double[] {start, end});
+        repaint();
+    }
+    
+    /**
+     * This function stops the animation and removes the time window, i.e.
+     * all features of the temporal layers are drawn.
+     */
+    public void clearTimeWindow() {
+        this.stop();
+        this.setTimeWindow(Double.NaN, Double.NaN);
+    }
+    
+    /**
+     * This function returns the information, wether a time window is set.
+     * @return TRUE if temporal layers are filtered by time, otherwise FALSE
+     */
+    public boolean hasTimeWindow() {
+        return !Double.isNaN(this.timeWindowStart);
+    }
+    
+    /**
+     * This function returns the start of the time window.
+     * @return the start time or NaN, if no time window is set
+     */
+    public double getTimeWindowStart() {
+        return this.timeWindowStart;
+    }
+    
+    /**
+     * This function returns the end of the time window.
+     * @return the end time or NaN, if no time window is set
+     */
+    public double getTimeWindowEnd() {
+        return this.timeWindowEnd;
+    }
+    
+    /**
+     * This function returns the time range of all temporal layers of the map.
+     * @return an array with the earliest start and the latest end time,
+     * or null if the map has no features with time
+     */
+    public double[] getTimeExtent() {
+        double start = Double.POSITIVE_INFINITY;
+        double end = Double.NEGATIVE_INFINITY;
+        for(Layer layer : this.layers) {
+            TimeIndex index = layer.getTimeIndex();
+            if(index != null && index.size() > 0) {
+                start = Math.min(start, index.getStartTime());
+                end = Math.max(end, index.getEndTime());
+            }
+        }
+        return start <= end ? new double[] {start, end} : null;
+    }
+    
+    /**
+     * This function starts the animation of the temporal layers.
+     * <br>The time window is moved forward at every frame, i.e. about sixty
+     * times per second, and starts again at the beginning of the time range
+     * after passing its end. A frame queries only the slices of the
+     * spatio-temporal indices within the window. Without a time window,
+     * the animation starts with a window of a hundredth of the time range.
+     * @param speed the time units, the window moves per second
+     */
+    public void play(double speed) {
+        if(!(speed > 0.0)) {
+            throw new IllegalArgumentException("the speed must be greater than zero");
+        }
+        double[] extent = this.getTimeExtent();
+        if(extent == null) {
+            return;
+        }
+        if(!this.hasTimeWindow()) {
+            this.setTimeWindow(extent[0], extent[0] + (extent[1] - extent[0]) / 100);
+        }
+        this.playbackSpeed = speed;
+        this.lastFrame = System.nanoTime();
+        if(!this.playbackTimer.isRunning()) {
+            this.playbackTimer.start();
+            firePropertyChange(PROP_PLAYING, false, true);
+        }
+    }
+    
+    /**
+     * This function stops the animation, the time window is kept.
+     */
+    public void stop() {
+        if(this.playbackTimer.isRunning()) {
+            this.playbackTimer.stop();
+            firePropertyChange(PROP_PLAYING, true, false);
+        }
+    }
+    
+    /**
+     * This function returns the information, wether the animation is running.
+     * @return TRUE if the map is animated, otherwise FALSE
+     */
+    public boolean isPlaying() {
+        return this.playbackTimer.isRunning();
+    }
+    
+    /**
+     * This function moves the time window of the animation by the time
+     * elapsed since the last frame.
+     */
+    private void nextFrame() {
+        double[] extent = this.getTimeExtent();
+        if(extent == null || !this.hasTimeWindow()) {
+            this.stop();
+            return;
+        }
+        long now = System.nanoTime();
+        double start = this.timeWindowStart + this.playbackSpeed * (now - this.lastFrame) / 1e9;
+        double length = this.timeWindowEnd - this.timeWindowStart;
+        this.lastFrame = now;
+        if(start > extent[1]) {
+            start = extent[0];
+        }
+        this.setTimeWindow(start, start + length);
+    }
+    
+    /**
+     * This function shows or hides the time slider at the bottom of the map.
+     * @param visible TRUE for showing the slider, FALSE for hiding it
+     */
+    public void setTimeSliderVisible(boolean visible) {
+        if(visible == (this.timeSlider != null)) {
+            return;
+        }
+        if(visible) {
+            this.timeSlider = new TimeSlider(this);
+            if(!(getLayout() instanceof BorderLayout)) {
+                setLayout(new BorderLayout());
+            }
+            add(this.timeSlider, BorderLayout.SOUTH);
+        } else {
+            remove(this.timeSlider);
+            this.timeSlider = null;
+        }
+        revalidate();
+        repaint();
+    }
+    
+    /**
+     * This function returns the information, wether the time slider is shown.
+     * @return TRUE if the slider is visible, otherwise FALSE
+     */
+    public boolean isTimeSliderVisible() {
+        return this.timeSlider != null;
+    }
+    
+    /**
+     * This function returns the currently selected geometry.
+     * @return a Geometry-object or null, if nothing is selected
+     */
+    public Geometry getSelectedGeometry() {
+        return this.selectedGeometry;
+    }
+    
+    /**
+     * This function sets the selected geometry and informs all listeners
+     * of the property <code>PROP_SELECTED_GEOMETRY</code>.
+     * @param geom the new selected Geometry-object or null
+     */
+    public void setSelectedGeometry(Geometry geom) {
+        Geometry oldGeom = this.selectedGeometry;
+        this.selectedGeometry = geom;
+        firePropertyChange(PROP_SELECTED_GEOMETRY, oldGeom, geom);
+    }
+    
+    /**
+     * This function returns the geometry under the mouse cursor.
+     * @return a Geometry-object or null
+     */
+    public Geometry getHoveredGeometry() {
+        return this.hoveredGeometry;
+    }
+    
+    /**
+     * This function sets the geometry under the mouse cursor and informs all
+     * listeners of the property <code>PROP_HOVERED_GEOMETRY</code>.
+     * @param geom the new hovered Geometry-object or null
+     */
+    private void setHoveredGeometry(Geometry geom) {
+        Geometry oldGeom = this.hoveredGeometry;
+        this.hoveredGeometry = geom;
+        firePropertyChange(PROP_HOVERED_GEOMETRY, oldGeom, geom);
     }
 
     /**
@@ -74,18 +888,106 @@ public final class MapViewTopComponent extends TopComponent {
 
     @Override
     public void componentClosed() {
-        // TODO add custom code on component closing
+        this.stop();
     }
 
+    /**
+     * This function stores the session of the map view, i.e. the map
+     * transformation and the descriptions of all layers read from files
+     * in drawing order, including the layers not read yet. Neither
+     * geometries nor thumbnails are written.
+     * @param p the Properties-object of the settings
+     */
     void writeProperties(java.util.Properties p) {
         // better to version settings since initial version as advocated at
         // http://wiki.apidesign.org/wiki/PropertyFiles
-        p.setProperty("version", "1.0");
-        // TODO store your settings
+        p.setProperty("version", SESSION_VERSION);
+        double[] matrix = new double[6];
+        this.mapTransform.getMatrix(matrix);
+        StringBuilder transform = new StringBuilder();
+        for(double value : matrix) {
+            transform.append(transform.length() == 0 ? "" : ",").append(value);
+        }
+        p.setProperty("transform", transform.toString());
+        
+        ArrayList<SessionLayer> session = new ArrayList<>();
+        this.layers.forEach((layer) -> {
+            SessionLayer sessionLayer = this.sessionLayers.get(layer);
+            if(sessionLayer != null) {
+                session.add(sessionLayer);
+            }
+        });
+        this.pendingLayers.forEach((pending) -> {
+            int index = 0;
+            while(index < session.size() && session.get(index).getPosition() <= pending.getPosition()) {
+                index++;
+            }
+            session.add(index, pending);
+        });
+        p.setProperty("layer.count", Integer.toString(session.size()));
+        for(int i = 0; i < session.size(); i++) {
+            session.get(i).write(p, "layer." + i + ".");
+        }
     }
 
+    /**
+     * This function restores the session of the map view. Only the
+     * descriptions of the layers are read, the thumbnails are loaded
+     * in the background and the layers, when they become visible.
+     * @param p the Properties-object of the settings
+     */
     void readProperties(java.util.Properties p) {
+        long start = System.nanoTime();
         String version = p.getProperty("version");
-        // TODO read your settings according to their version
+        if(!SESSION_VERSION.equals(version)) {
+            return;
+        }
+        String[] matrix = p.getProperty("transform", "").split(",");
+        if(matrix.length == 6) {
+            try {
+                double[] values = new double[6];
+                for(int i = 0; i < values.length; i++) {
+                    values[i] = Double.parseDouble(matrix[i]);
+                }
+                this.mapTransform.setTransform(values[0], values[1], values[2], values[3], values[4], values[5]);
+            } catch (NumberFormatException ex) {
+                LOG.log(Level.WARNING, "the map transformation of the session is invalid", ex);
+            }
+        }
+        
+        int countOfLayers;
+        try {
+            countOfLayers = Integer.parseInt(p.getProperty("layer.count", "0"));
+        } catch (NumberFormatException ex) {
+            countOfLayers = 0;
+        }
+        for(int i = 0; i < countOfLayers; i++) {
+            try {
+                SessionLayer pending = SessionLayer.read(p, "layer." + i + ".");
+                pending.setPosition(i);
+                this.pendingLayers.add(pending);
+            } catch (IllegalArgumentException ex) {
+                LOG.log(Level.WARNING, "a layer of the session cannot be restored", ex);
+            }
+        }
+        ArrayList<SessionLayer> thumbnails = new ArrayList<>(this.pendingLayers);
+        SESSION_EXECUTOR.execute(() -> {
+            thumbnails.forEach((pending) -> {
+                try {
+                    pending.setThumbnail(Thumbnails.read(pending.getSource(), pending.getLastModified()));
+                } catch (IOException ex) {
+                    LOG.log(Level.FINE, "the thumbnail of " + pending.getSource() + " cannot be read", ex);
+                }
+            });
+            SwingUtilities.invokeLater(() -> {
+                repaint();
+            });
+        });
+        
+        this.restoreTime = System.nanoTime();
+        long millis = (this.restoreTime - start) / 1000000;
+        LOG.log(millis > RESTORE_TARGET_MILLIS ? Level.WARNING : Level.INFO,
+                "the session with {0} layers was restored in {1} ms (target: {2} ms)",
+                new Object[] {this.pendingLayers.size(), millis, RESTORE_TARGET_MILLIS});
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package view;
+
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * This class describes a layer of the map, which was read from a file,
+ * for storing it in the session of the map view. Only the path, the envelope,
+ * the number of features and the modification time of the file are stored,
+ * i.e. restoring a session does not read any layer. The layer is read,
+ * when its envelope becomes visible for the first time. Until then its
+ * cached thumbnail is drawn.
+ * @author Christoph
+ */
+final class SessionLayer {
+    
+    private final Path source;
+    private final Rectangle2D envelope;
+    private final int countOfFeatures;
+    private final long lastModified;
+    private int position = 0;
+    private volatile BufferedImage thumbnail = null;
+    private boolean requested = false;
+
+    /**
+     * The constructor of this class.
+     * @param source the path of the file of the layer
+     * @param envelope the envelope of the layer in map units
+     * @param countOfFeatures the number of features of the layer
+     * @param lastModified the modification time of the file in milliseconds
+     */
+    SessionLayer(Path source, Rectangle2D envelope, int countOfFeatures, long lastModified) {
+        this.source = source;
+        this.envelope = envelope;
+        this.countOfFeatures = countOfFeatures;
+        this.lastModified = lastModified;
+    }
+    
+    /**
+     * This function reads a layer of a session.
+     * @param p the Properties-object of the session
+     * @param prefix the prefix of the keys of the layer, e.g. layer.0.
+     * @return the new SessionLayer-object
+     * @throws IllegalArgumentException if a value is missing or invalid
+     */
+    static SessionLayer read(Properties p, String prefix) {
+        String file = p.getProperty(prefix + "file");
+        String[] envelope = p.getProperty(prefix + "envelope", "").split(",");
+        if(file == null || envelope.length != 4) {
+            throw new IllegalArgumentException("incomplete description of the layer " + prefix);
+        }
+        try {
+            return new SessionLayer(Paths.get(file),
+                                    new Rectangle2D.Double(Double.parseDouble(envelope[0]), Double.parseDouble(envelope[1]),
+                                                           Double.parseDouble(envelope[2]), Double.parseDouble(envelope[3])),
+                                    Integer.parseInt(p.getProperty(prefix + "features", "0")),
+                                    Long.parseLong(p.getProperty(prefix + "modified", "0")));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid description of the layer " + prefix, ex);
+        }
+    }
+    
+    /**
+     * This function stores the description of the layer in a session.
+     * @param p the Properties-object of the session
+     * @param prefix the prefix of the keys of the layer, e.g. layer.0.
+     */
+    void write(Properties p, String prefix) {
+        p.setProperty(prefix + "file", this.source.toString());
+        p.setProperty(prefix + "envelope", this.envelope.getX() + "," + this.envelope.getY() + ","
+                                           + this.envelope.getWidth() + "," + this.envelope.getHeight());
+        p.setProperty(prefix + "features", Integer.toString(this.countOfFeatures));
+        p.setProperty(prefix + "modified", Long.toString(this.lastModified));
+    }
+    
+    /**
+     * @return the path of the file of the layer
+     */
+    Path getSource() {
+        return this.source;
+    }
+    
+    /**
+     * @return the envelope of the layer in map units
+     */
+    Rectangle2D getEnvelope() {
+        return this.envelope;
+    }
+    
+    /**
+     * @return the number of features of the layer
+     */
+    int getCountOfFeatures() {
+        return this.countOfFeatures;
+    }
+    
+    /**
+     * @return the modification time of the file in milliseconds
+     */
+    long getLastModified() {
+        return this.lastModified;
+    }
+    
+    /**
+     * @return the position of the layer in the drawing order of the restored session
+     */
+    int getPosition() {
+        return this.position;
+    }
+    
+    /**
+     * This function sets the position of the layer in the drawing order of the restored session.
+     * @param position the zero-based index of the layer in the session
+     */
+    void setPosition(int position) {
+        this.position = position;
+    }
+    
+    /**
+     * @return the cached thumbnail or null, if it is not loaded yet
+     */
+    BufferedImage getThumbnail() {
+        return this.thumbnail;
+    }
+    
+    /**
+     * This function sets the thumbnail, which may be loaded by another thread.
+     * @param thumbnail the BufferedImage-object covering the envelope
+     */
+    void setThumbnail(BufferedImage thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+    
+    /**
+     * This function marks the layer as requested, i.e. the reading of
+     * the file has been started.
+     * @return TRUE if the layer was requested for the first time, otherwise FALSE
+     */
+    boolean request() {
+        boolean first = !this.requested;
+        this.requested = true;
+        return first;
+    }
+    
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package view;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import javax.imageio.ImageIO;
+import layer.Circle;
+import layer.Geometry;
+import layer.Layer;
+import layer.Point;
+import layer.Symbol;
+import layer.VertexCursor;
+import layer.VertexSequence;
+
+/**
+ * This class creates, stores and reads the thumbnails of the layers of
+ * a session. A thumbnail covers the envelope of a layer with at most
+ * 512 pixels per side and is stored as PNG in the cache directory of the
+ * application, named by a hash of the path of the layer file.
+ * <br>The geometries are copied into a sketch with plain paths in the pixels
+ * of the thumbnail and the colours of their symbols by the thread owning the
+ * layer. Only the sketch is drawn and written by a background thread. Points
+ * are drawn as dots of two pixels.
+ * @author Christoph
+ */
+final class Thumbnails {
+    
+    private static final int MAX_SIZE = 512;
+    private static final BasicStroke STROKE = new BasicStroke(1.0f);
+
+    private Thumbnails() {
+    }
+    
+    /**
+     * This function returns the path of the thumbnail of a layer file.
+     * The cache directory is located in the user directory of NetBeans,
+     * or in the home directory without NetBeans.
+     * @param source the path of the layer file
+     * @return the path of the PNG-file
+     */
+    static Path fileOf(Path source) {
+        String userDir = System.getProperty("netbeans.user");
+        Path cache = userDir == null
+                     ? Paths.get(System.getProperty("user.home"), ".toriigis", "cache", "thumbnails")
+                     : Paths.get(userDir, "var", "cache", "toriigis", "thumbnails");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(source.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for(int i = 0; i < 10; i++) {
+                name.append(String.format("%02x", hash[i]));
+            }
+            return cache.resolve(name + ".png");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not available", ex);
+        }
+    }
+    
+    /**
+     * This function reads a thumbnail, if it is newer than the layer file.
+     * @param source the path of the layer file
+     * @param lastModified the modification time of the layer file, when the session was stored
+     * @return the BufferedImage-object or null, if there is no current thumbnail
+     * @throws IOException if the thumbnail cannot be read
+     */
+    static BufferedImage read(Path source, long lastModified) throws IOException {
+        Path file = fileOf(source);
+        if(!Files.isRegularFile(file) || !Files.isRegularFile(source)
+                || Files.getLastModifiedTime(source).toMillis() != lastModified
+                || Files.getLastModifiedTime(file).toMillis() < lastModified) {
+            return null;
+        }
+        return ImageIO.read(file.toFile());
+    }
+    
+    /**
+     * This function copies the geometries of a layer into a sketch of its
+     * thumbnail, i.e. into pixel coordinates with the colours of their
+     * symbols. It has to be called by the thread, which may modify the layer,
+     * e.g. the event dispatch thread for a layer of the map. Vertices lying
+     * within the same pixel as their predecessor are dropped.
+     * @param layer the Layer-object
+     * @return the Sketch-object or null, if the layer has no extent
+     */
+    static Sketch sketch(Layer layer) {
+        Rectangle2D envelope = layer.getEnvelope();
+        if(envelope == null || envelope.isEmpty()) {
+            return null;
+        }
+        double scale = MAX_SIZE / Math.max(envelope.getWidth(), envelope.getHeight());
+        int width = Math.max(1, (int) Math.ceil(envelope.getWidth() * scale));
+        int height = Math.max(1, (int) Math.ceil(envelope.getHeight() * scale));
+        Sketch sketch = new Sketch(width, height);
+        double originX = envelope.getX();
+        double originY = envelope.getY();
+        VertexCursor cursor = new VertexCursor();
+        for(int i = 0; i < layer.getCountOfFeatures(); i++) {
+            for(Geometry geom : layer.getFeatureGeometries(i)) {
+                Symbol symbol = geom.getSymbol();
+                if(geom instanceof Point) {
+                    Point point = (Point) geom;
+                    double x = (point.getXCoord() - originX) * scale;
+                    double y = (point.getYCoord() - originY) * scale;
+                    sketch.shapes.add(new SketchShape(new Ellipse2D.Double(x - 1.0, y - 1.0, 2.0, 2.0),
+                                                      null, symbol.getColour(), true));
+                } else if(geom instanceof Circle) {
+                    Circle circle = (Circle) geom;
+                    double r = circle.getRadius() * scale;
+                    double x = (circle.getCentrePoint().getXCoord() - originX) * scale;
+                    double y = (circle.getCentrePoint().getYCoord() - originY) * scale;
+                    sketch.shapes.add(new SketchShape(new Ellipse2D.Double(x - r, y - r, 2 * r, 2 * r),
+                                                      symbol.getFillColour(), symbol.getColour(), false));
+                } else if(geom instanceof VertexSequence) {
+                    VertexSequence vertices = (VertexSequence) geom;
+                    Path2D path = new Path2D.Float();
+                    double lastX = Double.NaN;
+                    double lastY = Double.NaN;
+                    cursor.reset(vertices);
+                    while(cursor.next()) {
+                        double x = (cursor.getX() - originX) * scale;
+                        double y = (cursor.getY() - originY) * scale;
+                        if(cursor.getIndex() == 0) {
+                            path.moveTo(x, y);
+                        } else if(Math.abs(x - lastX) >= 1.0 || Math.abs(y - lastY) >= 1.0
+                                  || cursor.getIndex() == vertices.getCountOfVertices() - 1) {
+                            path.lineTo(x, y);
+                        } else {
+                            continue;
+                        }
+                        lastX = x;
+                        lastY = y;
+                    }
+                    boolean closed = vertices.isClosed() && vertices.getCountOfVertices() > 0;
+                    if(closed) {
+                        path.closePath();
+                    }
+                    sketch.shapes.add(new SketchShape(path, closed ? symbol.getFillColour() : null,
+                                                      symbol.getColour(), false));
+                }
+            }
+        }
+        return sketch;
+    }
+    
+    /**
+     * This function stores the thumbnail of a sketch, if there is no current
+     * thumbnail of the layer file yet. It can be called by a background thread.
+     * @param sketch the Sketch-object created by sketch() or null, if the layer has no extent
+     * @param source the path of the layer file
+     * @throws IOException if the thumbnail cannot be written
+     */
+    static void update(Sketch sketch, Path source) throws IOException {
+        Path file = fileOf(source);
+        if(sketch == null || (Files.isRegularFile(file) && Files.isRegularFile(source)
+                && Files.getLastModifiedTime(file).compareTo(Files.getLastModifiedTime(source)) >= 0)) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        ImageIO.write(render(sketch), "png", file.toFile());
+    }
+    
+    /**
+     * This function draws a sketch into an image.
+     * The pixel (0, 0) corresponds to the smallest coordinates of the envelope.
+     * @param sketch the Sketch-object
+     * @return the BufferedImage-object
+     */
+    static BufferedImage render(Sketch sketch) {
+        BufferedImage image = new BufferedImage(sketch.width, sketch.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setStroke(STROKE);
+            for(SketchShape shape : sketch.shapes) {
+                if(shape.fillColour != null) {
+                    g2.setColor(shape.fillColour);
+                    g2.fill(shape.shape);
+                }
+                g2.setColor(shape.colour);
+                if(shape.dot) {
+                    g2.fill(shape.shape);
+                } else {
+                    g2.draw(shape.shape);
+                }
+            }
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+    
+    /**
+     * This class is a copy of the geometries of a layer in the pixel
+     * coordinates of its thumbnail, which is not shared with the layer.
+     */
+    static final class Sketch {
+        
+        private final int width;
+        private final int height;
+        private final ArrayList<SketchShape> shapes = new ArrayList<>();
+        
+        private Sketch(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+        
+    }
+    
+    /**
+     * This class describes one geometry of a sketch with its colours.
+     */
+    private static final class SketchShape {
+        
+        private final Shape shape;
+        private final Color fillColour;
+        private final Color colour;
+        private final boolean dot;
+        
+        private SketchShape(Shape shape, Color fillColour, Color colour, boolean dot) {
+            this.shape = shape;
+            this.fillColour = fillColour;
+            this.colour = colour;
+            this.dot = dot;
+        }
+        
+    }
+    
+}
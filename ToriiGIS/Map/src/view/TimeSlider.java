@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2017 Christoph
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package view;
+
+import java.awt.BorderLayout;
+import java.beans.PropertyChangeListener;
+import java.time.Instant;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.JToggleButton;
+import layer.Layer;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * This class is the time slider of a map view with temporal layers.
+ * <br>The slider moves the time window of the map over the time range of
+ * all temporal layers, the length of the window is kept. The play button
+ * animates the map, it runs through the time range in thirty seconds.
+ * @author Christoph
+ */
+@Messages({
+    "CTL_TimeSliderPlay=\u25B6",
+    "HINT_TimeSliderPlay=Play or pause the animation of the temporal layers"
+})
+public class TimeSlider extends JPanel {
+    
+    private static final int STEPS = 1000;
+    private static final double PLAYBACK_SECONDS = 30.0;
+    private static final double WINDOW_FRACTION = 0.01;
+    
+    private final MapViewTopComponent mapView;
+    private final JToggleButton playButton = new JToggleButton(Bundle.CTL_TimeSliderPlay());
+    private final JSlider slider = new JSlider(0, STEPS, 0);
+    private final JLabel timeLabel = new JLabel();
+    private boolean adjusting = false;
+    private final PropertyChangeListener mapListener = (e) -> {
+        this.update();
+    };
+
+    /**
+     * The constructor of this class.
+     * @param mapView the map view, whose time window is controlled by the slider
+     */
+    public TimeSlider(MapViewTopComponent mapView) {
+        super(new BorderLayout(4, 0));
+        this.mapView = mapView;
+        setBorder(BorderFactory.createEmptyBorder(2, 4, 2, 4));
+        this.playButton.setToolTipText(Bundle.HINT_TimeSliderPlay());
+        this.playButton.addActionListener((e) -> {
+            if(this.playButton.isSelected()) {
+                this.play();
+            } else {
+                this.mapView.stop();
+            }
+        });
+        this.slider.addChangeListener((e) -> {
+            if(!this.adjusting) {
+                this.moveWindow();
+            }
+        });
+        add(this.playButton, BorderLayout.WEST);
+        add(this.slider, BorderLayout.CENTER);
+        add(this.timeLabel, BorderLayout.EAST);
+    }
+    
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        this.mapView.addPropertyChangeListener(MapViewTopComponent.PROP_TIME_WINDOW, this.mapListener);
+        this.mapView.addPropertyChangeListener(MapViewTopComponent.PROP_PLAYING, this.mapListener);
+        this.update();
+    }
+    
+    @Override
+    public void removeNotify() {
+        this.mapView.removePropertyChangeListener(MapViewTopComponent.PROP_TIME_WINDOW, this.mapListener);
+        this.mapView.removePropertyChangeListener(MapViewTopComponent.PROP_PLAYING, this.mapListener);
+        super.removeNotify();
+    }
+    
+    /**
+     * This function starts the animation of the map.
+     */
+    private void play() {
+        double[] extent = this.mapView.getTimeExtent();
+        if(extent == null) {
+            this.playButton.setSelected(false);
+            return;
+        }
+        if(!this.mapView.hasTimeWindow()) {
+            this.moveWindow();
+        }
+        this.mapView.play(Math.max(extent[1] - extent[0], 1.0) / PLAYBACK_SECONDS);
+    }
+    
+    /**
+     * This function moves the time window of the map to the position of the slider.
+     * A map without time window gets a window of a hundredth of the time range.
+     */
+    private void moveWindow() {
+        double[] extent = this.mapView.getTimeExtent();
+        if(extent == null) {
+            return;
+        }
+        double length = this.mapView.hasTimeWindow()
+                ? this.mapView.getTimeWindowEnd() - this.mapView.getTimeWindowStart()
+                : (extent[1] - extent[0]) * WINDOW_FRACTION;
+        double start = extent[0] + (extent[1] - extent[0]) * this.slider.getValue() / STEPS;
+        this.mapView.setTimeWindow(start, start + length);
+    }
+    
+    /**
+     * This function updates the slider, the play button and the label
+     * from the time window of the map.
+     */
+    private void update() {
+        this.adjusting = true;
+        try {
+            double[] extent = this.mapView.getTimeExtent();
+            this.slider.setEnabled(extent != null);
+            this.playButton.setEnabled(extent != null);
+            this.playButton.setSelected(this.mapView.isPlaying());
+            if(extent == null || !this.mapView.hasTimeWindow()) {
+                this.timeLabel.setText("");
+                return;
+            }
+            double start = this.mapView.getTimeWindowStart();
+            double range = extent[1] - extent[0];
+            int value = range > 0.0 ? (int) Math.round((start - extent[0]) / range * STEPS) : 0;
+            this.slider.setValue(Math.max(0, Math.min(STEPS, value)));
+            this.timeLabel.setText(this.formatTime(start));
+        } finally {
+            this.adjusting = false;
+        }
+    }
+    
+    /**
+     * This function converts a point in time into a text. Times of attributes
+     * are shown as date and time, measures as numbers.
+     * @param time the point in time
+     * @return the formatted time
+     */
+    private String formatTime(double time) {
+        for(Layer layer : this.mapView.getLayers()) {
+            if(layer.isTemporal() && !layer.isTimeFromMeasures()) {
+                return Instant.ofEpochMilli((long) time).toString();
+            }
+        }
+        return String.format("%.2f", time);
+    }
+    
+}